@@ -29,7 +29,7 @@ public class MoveAction extends AbstractAction {
 	/**
 	 * allowable error in the target error before you say it is there
 	 */
-	public static double TARGET_REACHED_ERROR = 2.0;
+	public static final double TARGET_REACHED_ERROR = 2.0;
 
 	/**
 	 * Target location
@@ -0,0 +1,29 @@
+package spacesettlers.clients;
+
+/**
+ * The timed calls the simulator makes into a team client each step
+ * (used to index the latency statistics in Team)
+ *
+ * @author amy
+ */
+public enum ClientPhase {
+	MOVEMENT_START("getMovementStart"),
+	MOVEMENT_END("getMovementEnd"),
+	POWERUPS("getPowerups"),
+	GAME_SEARCH("getGameSearch"),
+	PURCHASES("getTeamPurchases"),
+	GRAPHICS("getGraphics");
+
+	/**
+	 * Name of the TeamClient method for this phase
+	 */
+	private final String methodName;
+
+	private ClientPhase(String methodName) {
+		this.methodName = methodName;
+	}
+
+	public String getMethodName() {
+		return methodName;
+	}
+}
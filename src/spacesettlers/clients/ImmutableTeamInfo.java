@@ -1,6 +1,7 @@
 package spacesettlers.clients;
 
 import spacesettlers.objects.resources.ResourcePile;
+import spacesettlers.utilities.LatencySummary;
 
 /**
  * Immutable class that holds the necessary team info to share with
@@ -71,6 +72,11 @@ public class ImmutableTeamInfo {
 	 * The name that shows up in the ladder
 	 */
 	String ladderName;
+	
+	/**
+	 * Latency (in microseconds) and timeouts of the calls into the team client, indexed by ClientPhase
+	 */
+	LatencySummary[] clientLatency;
 
 	public ImmutableTeamInfo(Team team) {
 		score = team.score;
@@ -86,7 +92,10 @@ public class ImmutableTeamInfo {
 		this.totalCoresCollected = team.totalCoresCollected;//herr0861 edit
 		this.totalKillsReceived = team.totalKillsReceived;
 		this.totalFlagsCollected = team.totalFlagsCollected;
-		
+		this.clientLatency = new LatencySummary[team.phaseLatency.length];
+		for (int i = 0; i < clientLatency.length; i++) {
+			clientLatency[i] = team.phaseLatency[i].getSummary();
+		}
 	}
 
 	public double getScore() {
@@ -144,6 +153,19 @@ public class ImmutableTeamInfo {
 	public int getTotalFlagsCollected() {
 		return totalFlagsCollected;
 	}
+
+	/**
+	 * Latency (in microseconds) and timeouts so far of the team client for the specified phase
+	 * (null in a world that was sent to a client in its own process, which doesn't get them)
+	 * @param phase
+	 * @return
+	 */
+	public LatencySummary getClientLatency(ClientPhase phase) {
+		if (clientLatency == null) {
+			return null;
+		}
+		return clientLatency[phase.ordinal()];
+	}
 	
 	
 }
@@ -15,12 +15,14 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 import spacesettlers.actions.AbstractAction;
 import spacesettlers.actions.PurchaseCosts;
 import spacesettlers.actions.PurchaseTypes;
+import spacesettlers.events.ClientCallbackEvent;
 import spacesettlers.game.AbstractGameAgent;
 import spacesettlers.graphics.SpacewarGraphics;
 import spacesettlers.objects.AbstractActionableObject;
@@ -31,6 +33,7 @@ import spacesettlers.objects.powerups.SpaceSettlersPowerupEnum;
 import spacesettlers.objects.resources.ResourcePile;
 import spacesettlers.simulator.SpaceSettlersSimulator;
 import spacesettlers.simulator.Toroidal2DPhysics;
+import spacesettlers.utilities.LatencyHistogram;
 
 /**
  * A team holds the ships and a pointer to the client
@@ -166,6 +169,27 @@ public class Team {
 	 */
 	ExecutorService executor;
 	
+	/**
+	 * How long the last call to each client phase took (in nanoseconds, 
+	 * -1 if the client was still busy with an earlier call and wasn't asked).
+	 * Indexed by ClientPhase.
+	 */
+	long[] lastPhaseLatency;
+	
+	/**
+	 * Latency (in microseconds) and timeouts of every call into the client, indexed by ClientPhase
+	 */
+	LatencyHistogram[] phaseLatency;
+	
+	/**
+	 * How long (in milliseconds) to wait for the client's actions, purchases, powerups and
+	 * searches, its endAction and its graphics (set per team so debugging one game doesn't
+	 * turn off the timeouts of another)
+	 */
+	int actionTimeout = SpaceSettlersSimulator.TEAM_ACTION_TIMEOUT;
+	int endActionTimeout = SpaceSettlersSimulator.TEAM_END_ACTION_TIMEOUT;
+	int graphicsTimeout = SpaceSettlersSimulator.TEAM_GRAPHICS_TIMEOUT;
+	
 	/**
 	 * Initialize the team client to have an empty list of ships and drones.
 	 */
@@ -181,6 +205,11 @@ public class Team {
 		costToPurchase = new PurchaseCosts();
 		resetCostToPurchase();
 		this.maxNumberShips = maxNumberShips;
+		this.lastPhaseLatency = new long[ClientPhase.values().length];
+		this.phaseLatency = new LatencyHistogram[ClientPhase.values().length];
+		for (int i = 0; i < phaseLatency.length; i++) {
+			phaseLatency[i] = new LatencyHistogram();
+		}
 		totalResources = new ResourcePile();
 		availableResources = new ResourcePile();
 		this.totalHitsInflicted = 0;
@@ -276,6 +305,84 @@ public class Team {
 		addTeamID(ship.getId());
 	}
 	
+	/**
+	 * Return how long the last call to the client's getMovementStart took in nanoseconds
+	 * (-1 if the client was still running a previous call and was skipped)
+	 * @return
+	 */
+	public long getLastActionLatency() {
+		return lastPhaseLatency[ClientPhase.MOVEMENT_START.ordinal()];
+	}
+
+	/**
+	 * Return how long the last call to the client for the phase took in nanoseconds
+	 * (-1 if the client was still running a previous call and was skipped)
+	 * @param phase
+	 * @return
+	 */
+	public long getLastPhaseLatency(ClientPhase phase) {
+		return lastPhaseLatency[phase.ordinal()];
+	}
+
+	/**
+	 * Return the latency histogram (in microseconds) for calls to the client in this phase
+	 * @param phase
+	 * @return
+	 */
+	public LatencyHistogram getPhaseLatency(ClientPhase phase) {
+		return phaseLatency[phase.ordinal()];
+	}
+
+	/**
+	 * Return the total number of timeouts for this team over all phases
+	 * @return
+	 */
+	public long getTotalTimeouts() {
+		long total = 0;
+		for (LatencyHistogram histogram : phaseLatency) {
+			total += histogram.getTimeouts();
+		}
+		return total;
+	}
+
+	/**
+	 * Record how long a call into the client took (and commit the flight recorder
+	 * event if a recording is running)
+	 * @param phase
+	 * @param startTime System.nanoTime() before the call was submitted
+	 * @param timedOut
+	 * @param callbackEvent
+	 * @param clonedSpace the space handed to the client (null if none)
+	 * @param clonedActionableObjects the objects handed to the client (null if none)
+	 */
+	private void recordLatency(ClientPhase phase, long startTime, boolean timedOut, ClientCallbackEvent callbackEvent,
+			Toroidal2DPhysics clonedSpace, Set<AbstractActionableObject> clonedActionableObjects) {
+		long latency = System.nanoTime() - startTime;
+		lastPhaseLatency[phase.ordinal()] = latency;
+		phaseLatency[phase.ordinal()].record(latency / 1000, timedOut);
+
+		callbackEvent.end();
+		if (callbackEvent.shouldCommit()) {
+			int cloneSize = 0;
+			if (clonedSpace != null) {
+				cloneSize += clonedSpace.getAllObjects().size();
+			}
+			if (clonedActionableObjects != null) {
+				cloneSize += clonedActionableObjects.size();
+			}
+			callbackEvent.set(getLadderName(), phase.getMethodName(), timedOut, cloneSize);
+			callbackEvent.commit();
+		}
+	}
+
+	/**
+	 * Record that the client was skipped for this phase (it was still running an earlier call)
+	 * @param phase
+	 */
+	private void recordSkipped(ClientPhase phase) {
+		lastPhaseLatency[phase.ordinal()] = -1;
+	}
+
 	/**
 	 * Return the list of ships
 	 * @return
@@ -407,6 +514,23 @@ public class Team {
 		costToPurchase.doubleCosts(type);
 	}
 
+	/**
+	 * Make the thread that calls into the client.  Its context class loader is the one
+	 * that loaded the client so anything the client loads by name comes from its own jar.
+	 * 
+	 * @return
+	 */
+	ExecutorService newClientExecutor() {
+		final ClassLoader clientClassLoader = teamClient.getClass().getClassLoader();
+		return Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+				thread.setContextClassLoader(clientClassLoader);
+				return thread;
+			}
+		});
+	}
+
 	/**
 	 * Ask the team client for actions
 	 * 
@@ -423,11 +547,16 @@ public class Team {
 		
 		// if the previous thread call hasn't finished, then just return default
 		if (executor == null || executor.isTerminated()) {
-			executor = Executors.newSingleThreadExecutor();
+			executor = newClientExecutor();
 		} else {
+			recordSkipped(ClientPhase.MOVEMENT_START);
 			return teamActions;
 		}
 		
+		boolean timedOut = false;
+		long startTime = System.nanoTime();
+		ClientCallbackEvent callbackEvent = new ClientCallbackEvent();
+		callbackEvent.begin();
         Future<Map<UUID, AbstractAction>> future = executor.submit(
         		new Callable<Map<UUID, AbstractAction>>(){
         			public Map<UUID, AbstractAction> call() {
@@ -439,13 +568,14 @@ public class Team {
         
         try {
             //start
-            teamActions = future.get(SpaceSettlersSimulator.TEAM_ACTION_TIMEOUT, TimeUnit.MILLISECONDS);
+            teamActions = future.get(actionTimeout, TimeUnit.MILLISECONDS);
             //finished in time
         } catch (TimeoutException e) {
             //was terminated
         	//return empty map, this will invoke default behavior of using DoNothingAction
         	teamActions = new HashMap<UUID, AbstractAction>();
         	System.err.println(getTeamName() + " timed out in getTeamMovementStart");
+        	timedOut = true;
         } catch (InterruptedException e) {
         	//we were interrupted (should not happen but lets be good programmers) 
         	//return empty map, this will invoke default behavior of using DoNothingAction
@@ -464,6 +594,7 @@ public class Team {
         	teamActions = new HashMap<UUID, AbstractAction>();
 		}
 
+        recordLatency(ClientPhase.MOVEMENT_START, startTime, timedOut, callbackEvent, clonedSpace, clonedActionableObjects);
 
         executor.shutdownNow();
         
@@ -486,12 +617,17 @@ public class Team {
 
 		// if the previous thread call hasn't finished, then just return default
 		if (executor == null || executor.isTerminated()) {
-			executor = Executors.newSingleThreadExecutor();
+			executor = newClientExecutor();
 		} else {
+			recordSkipped(ClientPhase.MOVEMENT_END);
 			return;
 		}
 
 		//System.out.println("exec " + executor.isTerminated());
+		boolean timedOut = false;
+		long startTime = System.nanoTime();
+		ClientCallbackEvent callbackEvent = new ClientCallbackEvent();
+		callbackEvent.begin();
         Future<Boolean> future = executor.submit(
         		new Callable<Boolean>(){
         			public Boolean call() throws Exception {
@@ -503,12 +639,13 @@ public class Team {
         Boolean didReturn = false;
         try {
             //start
-        	didReturn = future.get(SpaceSettlersSimulator.TEAM_END_ACTION_TIMEOUT, TimeUnit.MILLISECONDS);
+        	didReturn = future.get(endActionTimeout, TimeUnit.MILLISECONDS);
             //finished in time
         } catch (TimeoutException e) {
             //was terminated
         	//set didReturn false
         	System.out.println(getTeamName() + " timed out in getTeamMovementEnd");
+        	timedOut = true;
         	didReturn = false;
         } catch (InterruptedException e) {
         	//we were interrupted (should not happen but lets be good programmers) 
@@ -531,6 +668,8 @@ public class Team {
 			e.printStackTrace();
 		}
 
+        recordLatency(ClientPhase.MOVEMENT_END, startTime, timedOut, callbackEvent, clonedSpace, clonedActionableObjects);
+
         executor.shutdownNow();
 		
 		// figure out how many beacons the team has collected
@@ -601,12 +740,17 @@ public class Team {
 		
         // if the previous thread call hasn't finished, then just return default
 		if (executor == null || executor.isTerminated()) {
-			executor = Executors.newSingleThreadExecutor();
+			executor = newClientExecutor();
 		} else {
+			recordSkipped(ClientPhase.PURCHASES);
 			return purchase;
 		}
 
 		//System.out.println("exec " + executor.isTerminated());
+		boolean timedOut = false;
+		long startTime = System.nanoTime();
+		ClientCallbackEvent callbackEvent = new ClientCallbackEvent();
+		callbackEvent.begin();
         Future<Map<UUID,PurchaseTypes>> future = executor.submit(
         		new Callable<Map<UUID,PurchaseTypes>>(){
         			public Map<UUID,PurchaseTypes> call() throws Exception {
@@ -617,12 +761,13 @@ public class Team {
         
         try {
             //start
-        	purchase = future.get(SpaceSettlersSimulator.TEAM_ACTION_TIMEOUT, TimeUnit.MILLISECONDS);
+        	purchase = future.get(actionTimeout, TimeUnit.MILLISECONDS);
             //finished in time
         } catch (TimeoutException e) {
             //was terminated
         	//return empty map, don't buy anything
         	System.out.println(getTeamName() + " timed out in getTeamPurchases");
+        	timedOut = true;
         	purchase = new HashMap<UUID,PurchaseTypes>();
         } catch (InterruptedException e) {
         	//we were interrupted (should not happen but lets be good programmers) 
@@ -642,6 +787,8 @@ public class Team {
 			e.printStackTrace();
 		}
 
+        recordLatency(ClientPhase.PURCHASES, startTime, timedOut, callbackEvent, clonedSpace, clonedActionableObjects);
+
         executor.shutdownNow();
         
         return purchase;
@@ -669,12 +816,17 @@ public class Team {
 		
         // if the previous thread call hasn't finished, then just return default
 		if (executor == null || executor.isTerminated()) {
-			executor = Executors.newSingleThreadExecutor();
+			executor = newClientExecutor();
 		} else {
+			recordSkipped(ClientPhase.POWERUPS);
 			return powerups;
 		}
 
 		//System.out.println("exec " + executor.isTerminated());
+		boolean timedOut = false;
+		long startTime = System.nanoTime();
+		ClientCallbackEvent callbackEvent = new ClientCallbackEvent();
+		callbackEvent.begin();
         Future<Map<UUID,SpaceSettlersPowerupEnum>> future = executor.submit(
         		new Callable<Map<UUID,SpaceSettlersPowerupEnum>>(){
         			public Map<UUID,SpaceSettlersPowerupEnum> call() throws Exception {
@@ -684,12 +836,13 @@ public class Team {
         
         try {
             //start
-        	powerups = future.get(SpaceSettlersSimulator.TEAM_ACTION_TIMEOUT, TimeUnit.MILLISECONDS);
+        	powerups = future.get(actionTimeout, TimeUnit.MILLISECONDS);
             //finished in time
         } catch (TimeoutException e) {
             //was terminated
         	//return empty map, don't buy anything
         	System.out.println(getTeamName() + " timed out in getTeamPowerups");
+        	timedOut = true;
         	powerups = new HashMap<UUID,SpaceSettlersPowerupEnum>();
         } catch (InterruptedException e) {
         	//we were interrupted (should not happen but lets be good programmers) 
@@ -707,6 +860,8 @@ public class Team {
 			e.printStackTrace();
 		}
 
+        recordLatency(ClientPhase.POWERUPS, startTime, timedOut, callbackEvent, clonedSpace, clonedActionableObjects);
+
         executor.shutdownNow();
         
         return powerups;
@@ -726,12 +881,17 @@ public class Team {
 		
         // if the previous thread call hasn't finished, then just return default
 		if (executor == null || executor.isTerminated()) {
-			executor = Executors.newSingleThreadExecutor();
+			executor = newClientExecutor();
 		} else {
+			recordSkipped(ClientPhase.GAME_SEARCH);
 			return searches;
 		}
 
 		//System.out.println("exec " + executor.isTerminated());
+		boolean timedOut = false;
+		long startTime = System.nanoTime();
+		ClientCallbackEvent callbackEvent = new ClientCallbackEvent();
+		callbackEvent.begin();
         Future<Map<UUID,AbstractGameAgent>> future = executor.submit(
         		new Callable<Map<UUID,AbstractGameAgent>>(){
         			public Map<UUID,AbstractGameAgent> call() throws Exception {
@@ -741,12 +901,13 @@ public class Team {
         
         try {
             //start
-        	searches = future.get(SpaceSettlersSimulator.TEAM_ACTION_TIMEOUT, TimeUnit.MILLISECONDS);
+        	searches = future.get(actionTimeout, TimeUnit.MILLISECONDS);
             //finished in time
         } catch (TimeoutException e) {
             //was terminated
         	//return empty map, don't buy anything
-        	System.out.println(getTeamName() + " timed out in getTeamPowerups");
+        	System.out.println(getTeamName() + " timed out in getTeamSearches");
+        	timedOut = true;
         	searches = new HashMap<UUID,AbstractGameAgent>();
         } catch (InterruptedException e) {
         	//we were interrupted (should not happen but lets be good programmers) 
@@ -764,6 +925,8 @@ public class Team {
 			e.printStackTrace();
 		}
 
+        recordLatency(ClientPhase.GAME_SEARCH, startTime, timedOut, callbackEvent, clonedSpace, clonedActionableObjects);
+
         executor.shutdownNow();
         
         return searches;
@@ -780,11 +943,16 @@ public class Team {
 
         // if the previous thread call hasn't finished, then just return default
 		if (executor == null || executor.isTerminated()) {
-			executor = Executors.newSingleThreadExecutor();
+			executor = newClientExecutor();
 		} else {
+			recordSkipped(ClientPhase.GRAPHICS);
 			return graphics;
 		}
 
+		boolean timedOut = false;
+		long startTime = System.nanoTime();
+		ClientCallbackEvent callbackEvent = new ClientCallbackEvent();
+		callbackEvent.begin();
 		Future<Set<SpacewarGraphics>> future = executor.submit(
         		new Callable<Set<SpacewarGraphics>>(){
         			public Set<SpacewarGraphics> call() throws Exception {
@@ -794,12 +962,13 @@ public class Team {
         
         try {
             //start
-        	graphics = future.get(SpaceSettlersSimulator.TEAM_GRAPHICS_TIMEOUT, TimeUnit.MILLISECONDS);
+        	graphics = future.get(graphicsTimeout, TimeUnit.MILLISECONDS);
             //finished in time
         } catch (TimeoutException e) {
             //was terminated
         	//set empty array of graphics
-        	System.out.println(getTeamName() + " timed out in getTeamGraphics");
+        	System.out.println(getTeamName() + " timed out in getGraphics");
+        	timedOut = true;
         	graphics = new LinkedHashSet<SpacewarGraphics>();
         } catch (InterruptedException e) {
         	//we were interrupted (should not happen but lets be good programmers) 
@@ -817,6 +986,8 @@ public class Team {
 			e.printStackTrace();
 		}
 
+        recordLatency(ClientPhase.GRAPHICS, startTime, timedOut, callbackEvent, null, null);
+
         executor.shutdownNow();
         
 		return graphics;
@@ -1014,6 +1185,15 @@ public class Team {
 		return ladderName;
 	}
 
+	/**
+	 * Wait as long as it takes for the client (used when debugging)
+	 */
+	public void turnOffTimeouts() {
+		actionTimeout = Integer.MAX_VALUE;
+		endActionTimeout = Integer.MAX_VALUE;
+		graphicsTimeout = Integer.MAX_VALUE;
+	}
+
 	/**
 	 * Called at the end of a simulation to cleanup the clients
 	 */
@@ -0,0 +1,84 @@
+package spacesettlers.clients;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+
+/**
+ * Class loader for one team's jar (or class directories).  The simulator classes
+ * (spacesettlers.*) and the JDK always come from the parent so every team shares one copy
+ * of the simulator and its clients can be passed around as TeamClients.  Everything else
+ * (and the example clients, which are team code) is looked for in the team's own jar
+ * first, so two teams can have classes (or libraries) with the same names and each gets
+ * its own copy, statics and all.
+ *
+ * TeamClientFactory makes one loader per jar for checking and merging clients, and a new
+ * one for each game (so games running at the same time don't share the team's statics).
+ *
+ * @author amy
+ */
+public class TeamClassLoader extends URLClassLoader {
+	/**
+	 * Packages that always come from the parent
+	 */
+	static final String[] SHARED_PACKAGES = {"java.", "javax.", "jdk.", "sun.", "spacesettlers."};
+
+	/**
+	 * Packages in the shared packages that are team code (so each loader has its own copy)
+	 */
+	static final String[] TEAM_PACKAGES = {"spacesettlers.clients.examples."};
+
+	static {
+		ClassLoader.registerAsParallelCapable();
+	}
+
+	/**
+	 * Make a loader for the team's jars and class directories
+	 * @param urls
+	 * @param parent loader with the simulator classes
+	 */
+	public TeamClassLoader(URL[] urls, ClassLoader parent) {
+		super(urls, parent);
+	}
+
+	/**
+	 * True if the class must come from the parent
+	 * @param className
+	 * @return
+	 */
+	public static boolean isShared(String className) {
+		for (String prefix : TEAM_PACKAGES) {
+			if (className.startsWith(prefix)) {
+				return false;
+			}
+		}
+		for (String prefix : SHARED_PACKAGES) {
+			if (className.startsWith(prefix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+		if (isShared(name)) {
+			return super.loadClass(name, resolve);
+		}
+
+		synchronized (getClassLoadingLock(name)) {
+			Class<?> loadedClass = findLoadedClass(name);
+			if (loadedClass == null) {
+				try {
+					loadedClass = findClass(name);
+				} catch (ClassNotFoundException e) {
+					// not in the team's jar so use the one on the simulator classpath
+					loadedClass = getParent().loadClass(name);
+				}
+			}
+			if (resolve) {
+				resolveClass(loadedClass);
+			}
+			return loadedClass;
+		}
+	}
+}
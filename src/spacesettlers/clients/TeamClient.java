@@ -4,6 +4,13 @@ import java.awt.Color;
 import java.awt.event.KeyAdapter;
 import java.awt.event.MouseAdapter;
 import java.awt.geom.AffineTransform;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
@@ -12,6 +19,8 @@ import java.util.UUID;
 import spacesettlers.actions.AbstractAction;
 import spacesettlers.actions.PurchaseCosts;
 import spacesettlers.actions.PurchaseTypes;
+import spacesettlers.clients.knowledge.KnowledgeCheckpointer;
+import spacesettlers.clients.knowledge.KnowledgeStore;
 import spacesettlers.game.AbstractGameAgent;
 import spacesettlers.graphics.SpacewarGraphics;
 import spacesettlers.objects.AbstractActionableObject;
@@ -40,6 +49,16 @@ abstract public class TeamClient {
 	 */
 	String knowledgeFile;
 	
+	/**
+	 * The knowledge read from the knowledge file (null until getKnowledgeStore is called)
+	 */
+	KnowledgeStore knowledgeStore;
+	
+	/**
+	 * Saves the knowledge store during the game (null unless startKnowledgeCheckpoints is called)
+	 */
+	KnowledgeCheckpointer knowledgeCheckpointer;
+	
 	/**
 	 * Save the random number generator for future use
 	 */
@@ -198,6 +217,159 @@ abstract public class TeamClient {
 		return knowledgeFile;
 	}
 
+	/**
+	 * The knowledge in the knowledge file, kept in the binary KnowledgeStore format (large
+	 * tables are memory mapped rather than read in).  The store is empty if there is no
+	 * knowledge file yet.  Old XML knowledge files can be read with KnowledgeStore.importXML
+	 * and put in the store.
+	 * 
+	 * @return
+	 * @throws IOException if the knowledge file isn't a knowledge store or can't be read
+	 */
+	public KnowledgeStore getKnowledgeStore() throws IOException {
+		if (knowledgeStore == null) {
+			if (knowledgeFile == null) {
+				knowledgeStore = new KnowledgeStore();
+			} else {
+				knowledgeStore = KnowledgeStore.open(new File(knowledgeFile));
+			}
+		}
+		return knowledgeStore;
+	}
+
+	/**
+	 * Save the knowledge store to the knowledge file (usually in shutDown).  The file is
+	 * replaced all at once so it is never left half written.
+	 * 
+	 * @throws IOException
+	 */
+	public void saveKnowledgeStore() throws IOException {
+		if (knowledgeFile == null) {
+			throw new IOException("Team " + teamName + " has no knowledge file to save to");
+		}
+		if (knowledgeCheckpointer != null) {
+			knowledgeCheckpointer.close();
+			knowledgeCheckpointer = null;
+		}
+		getKnowledgeStore().save(new File(knowledgeFile));
+	}
+
+	/**
+	 * Save the knowledge store in the background during the game: each call to
+	 * checkpointKnowledge saves it if it changed and at least intervalMillis have passed
+	 * since the last checkpoint.
+	 * 
+	 * @param intervalMillis
+	 */
+	public void startKnowledgeCheckpoints(long intervalMillis) {
+		if (knowledgeFile == null) {
+			System.err.println("Team " + teamName + " has no knowledge file so its knowledge can't be checkpointed");
+			return;
+		}
+		if (knowledgeCheckpointer == null) {
+			knowledgeCheckpointer = new KnowledgeCheckpointer(new File(knowledgeFile), intervalMillis);
+		}
+	}
+
+	/**
+	 * Checkpoint the knowledge store if it is time to (see startKnowledgeCheckpoints).  Call
+	 * this when the knowledge is in a state worth keeping.
+	 * 
+	 * @return true if a checkpoint was started
+	 */
+	public boolean checkpointKnowledge() {
+		if (knowledgeCheckpointer == null || knowledgeStore == null) {
+			return false;
+		}
+		return knowledgeCheckpointer.checkpoint(knowledgeStore);
+	}
+
+	/**
+	 * Merge the knowledge learned in one ladder game back into the knowledge file.  When the
+	 * ladder's mergeKnowledge option is on, each game gets its own copy of the knowledge file
+	 * (so games running at the same time don't overwrite each other) and the ladder calls
+	 * this on a new client (not one that played) as each game finishes.
+	 * 
+	 * The base is the knowledge the game started from, so the game's changes are the
+	 * difference between the base and the game's knowledge.  Override this to add just those
+	 * changes to the merged knowledge (e.g. add the game's counts minus the base's counts):
+	 * the game's knowledge alone has the base in it, so adding all of it counts the base
+	 * once for every game.
+	 * 
+	 * The default keeps the game's knowledge if no other game was merged since this one
+	 * started (so nothing is lost) and otherwise calls the two way mergeKnowledge.
+	 * 
+	 * @param baseKnowledgeFile the knowledge the game started with (null if there was none)
+	 * @param knowledgeFile the knowledge merged so far (replace it with the merged knowledge)
+	 * @param gameKnowledgeFile the knowledge the client saved at the end of the game (deleted after the merge)
+	 * @throws IOException
+	 */
+	public void mergeKnowledge(File baseKnowledgeFile, File knowledgeFile, File gameKnowledgeFile) throws IOException {
+		if (isSameKnowledge(baseKnowledgeFile, knowledgeFile)) {
+			moveKnowledge(gameKnowledgeFile, knowledgeFile);
+		} else {
+			mergeKnowledge(knowledgeFile, gameKnowledgeFile);
+		}
+	}
+
+	/**
+	 * Merge the knowledge of a game without knowing what it started from (see the three
+	 * way mergeKnowledge, which calls this when other games were merged while it ran).
+	 * 
+	 * The default keeps the game's knowledge (the last game to finish wins, just as when all
+	 * of the games wrote the same file).
+	 * 
+	 * @param knowledgeFile the knowledge merged so far (replace it with the merged knowledge)
+	 * @param gameKnowledgeFile the knowledge the client saved at the end of the game (deleted after the merge)
+	 * @throws IOException
+	 */
+	public void mergeKnowledge(File knowledgeFile, File gameKnowledgeFile) throws IOException {
+		moveKnowledge(gameKnowledgeFile, knowledgeFile);
+	}
+
+	/**
+	 * Replace the knowledge file with another one
+	 */
+	static void moveKnowledge(File gameKnowledgeFile, File knowledgeFile) throws IOException {
+		try {
+			Files.move(gameKnowledgeFile.toPath(), knowledgeFile.toPath(), StandardCopyOption.ATOMIC_MOVE, 
+					StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(gameKnowledgeFile.toPath(), knowledgeFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * True if the two knowledge files have the same contents (a missing or null file is
+	 * the same as another missing one)
+	 */
+	static boolean isSameKnowledge(File file1, File file2) throws IOException {
+		boolean exists1 = file1 != null && file1.exists();
+		boolean exists2 = file2 != null && file2.exists();
+		if (!exists1 || !exists2) {
+			return exists1 == exists2;
+		}
+		if (file1.length() != file2.length()) {
+			return false;
+		}
+
+		byte[] buffer1 = new byte[1 << 16];
+		byte[] buffer2 = new byte[1 << 16];
+		try (InputStream input1 = Files.newInputStream(file1.toPath());
+				InputStream input2 = Files.newInputStream(file2.toPath())) {
+			while (true) {
+				int length = input1.readNBytes(buffer1, 0, buffer1.length);
+				if (length == 0) {
+					return true;
+				}
+				if (input2.readNBytes(buffer2, 0, length) != length 
+						|| !Arrays.equals(buffer1, 0, length, buffer2, 0, length)) {
+					return false;
+				}
+			}
+		}
+	}
+
 	/**
 	 * If the client wants to take input from the keyboard, they need to override this
 	 * to return a proper key listener.  This shouldn't count as an exploit
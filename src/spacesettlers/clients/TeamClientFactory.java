@@ -0,0 +1,262 @@
+package spacesettlers.clients;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+
+import spacesettlers.simulator.SimulatorException;
+
+/**
+ * Makes team clients from their class names.  Each class is looked up once and its no
+ * argument constructor is kept as a MethodHandle, so making a client for a game is just a
+ * constructor call (no Class.forName or reflection each game).  The ladder preloads every
+ * client class before the first game so a missing or broken client is reported right away
+ * instead of in the middle of the ladder.
+ *
+ * A client can also come from its own jar (the classPath in its TeamClientConfig).  Each
+ * jar gets one TeamClassLoader, kept for the whole run, so its classes are loaded once
+ * and are kept apart from every other team's classes while the simulator classes
+ * (spacesettlers.*) are shared by everyone.
+ *
+ * The simulator makes each game's clients with newGameClassLoader instead, so two games
+ * running at the same time (even with the same team) never share the team's statics.
+ *
+ * @author amy
+ */
+public class TeamClientFactory {
+	/**
+	 * Constructor for each class name (and class path) typed to return a TeamClient
+	 */
+	static final ConcurrentHashMap<String, MethodHandle> constructors = new ConcurrentHashMap<String, MethodHandle>();
+
+	/**
+	 * Class loader for each team class path (keyed by the canonical paths)
+	 */
+	static final ConcurrentHashMap<String, TeamClassLoader> classLoaders = new ConcurrentHashMap<String, TeamClassLoader>();
+
+	static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(void.class);
+	static final MethodType FACTORY_TYPE = MethodType.methodType(TeamClient.class);
+
+	/**
+	 * Load and initialize the class and find its constructor (if it hasn't been already)
+	 *
+	 * @param className fully qualified class name of a TeamClient with a public no argument constructor
+	 * @throws SimulatorException if the class can't be loaded, isn't a TeamClient or has no usable constructor
+	 */
+	public static void preload(String className) throws SimulatorException {
+		getConstructor(className, null);
+	}
+
+	/**
+	 * Load and initialize the class from the team's class path and find its constructor
+	 *
+	 * @param className fully qualified class name of a TeamClient with a public no argument constructor
+	 * @param classPath the team's jars and class directories (separated by File.pathSeparator) or null to use the simulator classpath
+	 * @throws SimulatorException if the class can't be loaded, isn't a TeamClient or has no usable constructor
+	 */
+	public static void preload(String className, String classPath) throws SimulatorException {
+		getConstructor(className, classPath);
+	}
+
+	/**
+	 * Make a new client of the class
+	 *
+	 * @param className
+	 * @return
+	 * @throws SimulatorException if the class can't be loaded or the constructor fails
+	 */
+	public static TeamClient newTeamClient(String className) throws SimulatorException {
+		return newTeamClient(className, (String) null);
+	}
+
+	/**
+	 * Make a new client of the class from the team's class path
+	 *
+	 * @param className
+	 * @param classPath the team's jars and class directories or null to use the simulator classpath
+	 * @return
+	 * @throws SimulatorException if the class can't be loaded or the constructor fails
+	 */
+	public static TeamClient newTeamClient(String className, String classPath) throws SimulatorException {
+		MethodHandle constructor = getConstructor(className, classPath);
+		try {
+			return (TeamClient) constructor.invokeExact();
+		} catch (Throwable e) {
+			e.printStackTrace();
+			throw new SimulatorException("Unable to create a new instance of class " + className + ": " + e);
+		}
+	}
+
+	static MethodHandle getConstructor(String className) throws SimulatorException {
+		return getConstructor(className, null);
+	}
+
+	static MethodHandle getConstructor(String className, String classPath) throws SimulatorException {
+		String key = isEmpty(classPath) ? className : className + File.pathSeparator + classPath;
+		MethodHandle constructor = constructors.get(key);
+		if (constructor == null) {
+			constructor = findConstructor(className, getClassLoader(classPath));
+			MethodHandle existing = constructors.putIfAbsent(key, constructor);
+			if (existing != null) {
+				constructor = existing;
+			}
+		}
+		return constructor;
+	}
+
+	/**
+	 * Returns the class loader for the class path (the same one every time for the same jars)
+	 *
+	 * @param classPath jars and class directories separated by File.pathSeparator or null for the simulator classpath
+	 * @return
+	 * @throws SimulatorException if any of the jars or directories don't exist
+	 */
+	public static ClassLoader getClassLoader(String classPath) throws SimulatorException {
+		if (isEmpty(classPath)) {
+			return TeamClientFactory.class.getClassLoader();
+		}
+
+		String[] paths = classPath.split(File.pathSeparator);
+		URL[] urls = new URL[paths.length];
+		StringBuilder key = new StringBuilder();
+		try {
+			for (int i = 0; i < paths.length; i++) {
+				File file = new File(paths[i]).getCanonicalFile();
+				if (!file.exists()) {
+					throw new SimulatorException("Error: team class path entry " + paths[i] + " does not exist");
+				}
+				urls[i] = file.toURI().toURL();
+				key.append(file.getPath()).append(File.pathSeparator);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			throw new SimulatorException("Error: unable to read team class path " + classPath + ": " + e);
+		}
+
+		TeamClassLoader loader = classLoaders.get(key.toString());
+		if (loader == null) {
+			loader = new TeamClassLoader(urls, TeamClientFactory.class.getClassLoader());
+			TeamClassLoader existing = classLoaders.putIfAbsent(key.toString(), loader);
+			if (existing != null) {
+				closeLoader(loader);
+				loader = existing;
+			}
+		}
+		return loader;
+	}
+
+	/**
+	 * Make a new class loader for one game's copy of a team's classes (closed by the caller
+	 * when the game is over).  A team without a class path gets the class directories on the
+	 * simulator classpath, where the teams' own classes are, while the jars (libraries) there
+	 * are still shared.
+	 *
+	 * @param classPath jars and class directories separated by File.pathSeparator or null for the simulator classpath
+	 * @return
+	 * @throws SimulatorException if any of the jars or directories don't exist
+	 */
+	public static TeamClassLoader newGameClassLoader(String classPath) throws SimulatorException {
+		ArrayList<URL> urls = new ArrayList<URL>();
+		try {
+			if (isEmpty(classPath)) {
+				for (String path : System.getProperty("java.class.path").split(File.pathSeparator)) {
+					File file = new File(path);
+					if (file.isDirectory()) {
+						urls.add(file.getCanonicalFile().toURI().toURL());
+					}
+				}
+			} else {
+				for (String path : classPath.split(File.pathSeparator)) {
+					File file = new File(path).getCanonicalFile();
+					if (!file.exists()) {
+						throw new SimulatorException("Error: team class path entry " + path + " does not exist");
+					}
+					urls.add(file.toURI().toURL());
+				}
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			throw new SimulatorException("Error: unable to read team class path " + classPath + ": " + e);
+		}
+		return new TeamClassLoader(urls.toArray(new URL[urls.size()]), TeamClientFactory.class.getClassLoader());
+	}
+
+	/**
+	 * Make a new client of the class from a game's own class loader (see newGameClassLoader)
+	 *
+	 * @param className
+	 * @param classLoader
+	 * @return
+	 * @throws SimulatorException if the class can't be loaded or the constructor fails
+	 */
+	public static TeamClient newTeamClient(String className, ClassLoader classLoader) throws SimulatorException {
+		MethodHandle constructor = findConstructor(className, classLoader);
+		try {
+			return (TeamClient) constructor.invokeExact();
+		} catch (Throwable e) {
+			e.printStackTrace();
+			throw new SimulatorException("Unable to create a new instance of class " + className + ": " + e);
+		}
+	}
+
+	static boolean isEmpty(String classPath) {
+		return classPath == null || classPath.trim().length() == 0;
+	}
+
+	static MethodHandle findConstructor(String className, ClassLoader classLoader) throws SimulatorException {
+		Class<?> clientClass;
+		try {
+			// initialize it now so static initializers run (and fail) here and not in a game
+			clientClass = Class.forName(className, true, classLoader);
+		} catch (ClassNotFoundException e) {
+			e.printStackTrace();
+			throw new SimulatorException("Unable to make a new team client " + className);
+		} catch (LinkageError e) {
+			e.printStackTrace();
+			throw new SimulatorException("Unable to load team client class " + className + ": " + e);
+		}
+
+		if (!TeamClient.class.isAssignableFrom(clientClass) || Modifier.isAbstract(clientClass.getModifiers())) {
+			throw new SimulatorException("Error: " + className + " is not a TeamClient that can be made");
+		}
+
+		try {
+			return MethodHandles.publicLookup().findConstructor(clientClass, CONSTRUCTOR_TYPE).asType(FACTORY_TYPE);
+		} catch (NoSuchMethodException e) {
+			throw new SimulatorException("Error: " + className + " needs a public constructor with no arguments");
+		} catch (IllegalAccessException e) {
+			throw new SimulatorException("Unable to create a new instance of class " + className + ": " + e);
+		}
+	}
+
+	/**
+	 * Close a team class loader (classes it already loaded still work)
+	 *
+	 * @param loader
+	 */
+	public static void closeLoader(TeamClassLoader loader) {
+		try {
+			loader.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Forget the cached constructors and close the team class loaders (only call this
+	 * when no clients are running)
+	 */
+	public static void clear() {
+		constructors.clear();
+		for (TeamClassLoader loader : classLoaders.values()) {
+			closeLoader(loader);
+		}
+		classLoaders.clear();
+	}
+}
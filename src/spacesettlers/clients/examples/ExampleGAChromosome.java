@@ -1,6 +1,9 @@
 package spacesettlers.clients.examples;
 
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
 import java.util.HashMap;
+import java.util.Map;
 import java.util.Random;
 
 import spacesettlers.actions.AbstractAction;
@@ -16,10 +19,16 @@ import spacesettlers.simulator.Toroidal2DPhysics;
  *
  */
 public class ExampleGAChromosome {
-	private HashMap<ExampleGAState, AbstractAction> policy;
+	/**
+	 * The choices the policy can make for a state (saved as these numbers in the knowledge store)
+	 */
+	static final int DO_NOTHING = 0;
+	static final int MOVE_TO_NEAREST_ASTEROID = 1;
+
+	private HashMap<ExampleGAState, Integer> policy;
 	
 	public ExampleGAChromosome() {
-		policy = new HashMap<ExampleGAState, AbstractAction>();
+		policy = new HashMap<ExampleGAState, Integer>();
 	}
 
 	/**
@@ -34,16 +43,91 @@ public class ExampleGAChromosome {
 			// asteroid.  Note this needs to be changed in a real agent as it won't learn 
 			// much here!
 			if (rand.nextBoolean()) {
-				policy.put(currentState, new DoNothingAction());
+				policy.put(currentState, DO_NOTHING);
 			} else {
-				//System.out.println("Moving to nearestMineable Asteroid " + myShip.getPosition() + " nearest " + currentState.getNearestMineableAsteroid().getPosition());
-				policy.put(currentState, new MoveToObjectAction(space, myShip.getPosition(), currentState.getNearestMineableAsteroid()));
+				policy.put(currentState, MOVE_TO_NEAREST_ASTEROID);
 			}
 		}
 
-		return policy.get(currentState);
-
+		if (policy.get(currentState) == DO_NOTHING) {
+			return new DoNothingAction();
+		} else {
+			//System.out.println("Moving to nearestMineable Asteroid " + myShip.getPosition() + " nearest " + currentState.getNearestMineableAsteroid().getPosition());
+			return new MoveToObjectAction(space, myShip.getPosition(), currentState.getNearestMineableAsteroid());
+		}
 	}
 	
-	
+	/**
+	 * Put the policy in the knowledge tables at the index (one state and choice per entry)
+	 * 
+	 * @param states
+	 * @param choices
+	 * @param index
+	 * @return the index after the last entry
+	 */
+	int writeKnowledge(DoubleBuffer states, ByteBuffer choices, int index) {
+		for (Map.Entry<ExampleGAState, Integer> entry : policy.entrySet()) {
+			states.put(index, entry.getKey().distanceToNearestMineableAsteroid);
+			choices.put(index, (byte) (int) entry.getValue());
+			index++;
+		}
+		return index;
+	}
+
+	/**
+	 * Read the policy from the knowledge tables
+	 * 
+	 * @param states
+	 * @param choices
+	 * @param index the first entry
+	 * @param size the number of entries in the policy
+	 */
+	void readKnowledge(DoubleBuffer states, ByteBuffer choices, int index, int size) {
+		policy.clear();
+		for (int i = index; i < index + size; i++) {
+			policy.put(new ExampleGAState(states.get(i)), (int) choices.get(i));
+		}
+	}
+
+	/**
+	 * Add the other chromosome's changes to the base (for merging what was learned in games
+	 * that ran at the same time): its choices for states this one hasn't seen and the
+	 * choices it changed from the base.  Choices it didn't change are left alone (another
+	 * game may have changed them).
+	 * 
+	 * @param other
+	 * @param base the chromosome the other one started from (null if it started empty)
+	 */
+	void merge(ExampleGAChromosome other, ExampleGAChromosome base) {
+		for (Map.Entry<ExampleGAState, Integer> entry : other.policy.entrySet()) {
+			Integer baseChoice = base == null ? null : base.policy.get(entry.getKey());
+			if (baseChoice == null ? !policy.containsKey(entry.getKey()) : !baseChoice.equals(entry.getValue())) {
+				policy.put(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+
+	int getPolicySize() {
+		return policy.size();
+	}
+
+	/**
+	 * Old knowledge files (imported with XStream) have the actions in the policy rather than
+	 * the choices: change them to choices
+	 */
+	private Object readResolve() {
+		HashMap<ExampleGAState, Integer> choices = new HashMap<ExampleGAState, Integer>();
+		for (Map.Entry<ExampleGAState, ?> entry : ((HashMap<ExampleGAState, ?>) policy).entrySet()) {
+			Object choice = entry.getValue();
+			if (choice instanceof Integer) {
+				choices.put(entry.getKey(), (Integer) choice);
+			} else if (choice instanceof MoveToObjectAction) {
+				choices.put(entry.getKey(), MOVE_TO_NEAREST_ASTEROID);
+			} else {
+				choices.put(entry.getKey(), DO_NOTHING);
+			}
+		}
+		policy = choices;
+		return this;
+	}
 }
@@ -1,21 +1,20 @@
 package spacesettlers.clients.examples;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 
 import com.thoughtworks.xstream.XStream;
-import com.thoughtworks.xstream.XStreamException;
 
 import spacesettlers.actions.AbstractAction;
 import spacesettlers.actions.DoNothingAction;
 import spacesettlers.actions.PurchaseCosts;
 import spacesettlers.actions.PurchaseTypes;
 import spacesettlers.clients.TeamClient;
+import spacesettlers.clients.knowledge.KnowledgeStore;
 import spacesettlers.game.AbstractGameAgent;
 import spacesettlers.graphics.SpacewarGraphics;
 import spacesettlers.objects.AbstractActionableObject;
@@ -58,6 +57,11 @@ public class ExampleGAClient extends TeamClient {
 	 */
 	private int steps = 0;
 	
+	/**
+	 * How often (at most) the population is checkpointed to the knowledge file during a game
+	 */
+	private long checkpointIntervalMillis = 60000;
+	
 	@Override
 	public Map<UUID, AbstractAction> getMovementStart(Toroidal2DPhysics space,
 			Set<AbstractActionableObject> actionableObjects) {
@@ -112,6 +116,15 @@ public class ExampleGAClient extends TeamClient {
 				currentPolicy = population.getNextMember();
 			}
 			
+			// save what has been learned so far in case the game dies before shutDown 
+			if (getKnowledgeFile() != null) {
+				try {
+					population.writeKnowledge(getKnowledgeStore());
+					checkpointKnowledge();
+				} catch (IOException e) {
+					System.out.println("Can't checkpoint knowledge file " + e.getMessage());
+				}
+			}
 		}
 		
 	}
@@ -138,41 +151,85 @@ public class ExampleGAClient extends TeamClient {
 	 */
 	@Override
 	public void initialize(Toroidal2DPhysics space) {
-		XStream xstream = new XStream();
-		xstream.alias("ExampleGAPopulation", ExampleGAPopulation.class);
-
-		// try to load the population from the existing saved file.  If that failes, start from scratch
+		// try to load the population from the existing saved file.  If that fails, start from scratch
 		try { 
-			population = (ExampleGAPopulation) xstream.fromXML(new File(getKnowledgeFile()));
-		} catch (XStreamException e) {
-			// if you get an error, handle it other than a null pointer because
-			// the error will happen the first time you run
+			File file = getKnowledgeFile() == null ? null : new File(getKnowledgeFile());
+			if (file != null && file.exists() && !KnowledgeStore.isKnowledgeStore(file)) {
+				// a population saved as XML by an older version of this client (saved in the new format at shutDown) 
+				XStream xstream = new XStream();
+				xstream.alias("ExampleGAPopulation", ExampleGAPopulation.class);
+				population = (ExampleGAPopulation) KnowledgeStore.importXML(file, xstream);
+			} else {
+				population = ExampleGAPopulation.readKnowledge(getKnowledgeStore());
+			}
+		} catch (IOException | RuntimeException e) {
+			System.out.println("Can't read knowledge file " + e.getMessage());
+		}
+		
+		if (population == null) {
+			// this happens the first time you run
 			System.out.println("No existing population found - starting a new one from scratch");
 			population = new ExampleGAPopulation(populationSize);
 		}
 
 		currentPolicy = population.getFirstMember();
+		startKnowledgeCheckpoints(checkpointIntervalMillis);
 	}
 
 	@Override
 	public void shutDown(Toroidal2DPhysics space) {
-		XStream xstream = new XStream();
-		xstream.alias("ExampleGAPopulation", ExampleGAPopulation.class);
-
 		try { 
-			// if you want to compress the file, change FileOuputStream to a GZIPOutputStream
-			xstream.toXML(population, new FileOutputStream(new File(getKnowledgeFile())));
-		} catch (XStreamException e) {
+			population.writeKnowledge(getKnowledgeStore());
+			saveKnowledgeStore();
+		} catch (IOException e) {
 			// if you get an error, handle it somehow as it means your knowledge didn't save
 			System.out.println("Can't save knowledge file in shutdown ");
 			System.out.println(e.getMessage());
-		} catch (FileNotFoundException e) {
-			// file is missing so start from scratch (but tell the user)
-			System.out.println("Can't save knowledge file in shutdown ");
-			System.out.println(e.getMessage());
 		}
 	}
 
+	/**
+	 * Merge the changes to the population made in a ladder game into the knowledge file
+	 * (when the ladder runs games at the same time and merges their knowledge)
+	 */
+	@Override
+	public void mergeKnowledge(File baseKnowledgeFile, File knowledgeFile, File gameKnowledgeFile) throws IOException {
+		if (baseKnowledgeFile == null || !KnowledgeStore.isKnowledgeStore(baseKnowledgeFile)) {
+			// the game started from scratch (or an old XML file)
+			super.mergeKnowledge(baseKnowledgeFile, knowledgeFile, gameKnowledgeFile);
+			return;
+		}
+		mergePopulations(ExampleGAPopulation.readKnowledge(KnowledgeStore.open(baseKnowledgeFile)), 
+				knowledgeFile, gameKnowledgeFile);
+	}
+
+	/**
+	 * Merge the population learned in a ladder game that started from scratch into the knowledge file
+	 */
+	@Override
+	public void mergeKnowledge(File knowledgeFile, File gameKnowledgeFile) throws IOException {
+		mergePopulations(null, knowledgeFile, gameKnowledgeFile);
+	}
+
+	void mergePopulations(ExampleGAPopulation base, File knowledgeFile, File gameKnowledgeFile) throws IOException {
+		if (!KnowledgeStore.isKnowledgeStore(knowledgeFile) || !KnowledgeStore.isKnowledgeStore(gameKnowledgeFile)) {
+			// nothing to merge with yet (or an old XML file): keep the game's population
+			super.mergeKnowledge(knowledgeFile, gameKnowledgeFile);
+			return;
+		}
+
+		KnowledgeStore store = KnowledgeStore.open(knowledgeFile);
+		ExampleGAPopulation merged = ExampleGAPopulation.readKnowledge(store);
+		ExampleGAPopulation game = ExampleGAPopulation.readKnowledge(KnowledgeStore.open(gameKnowledgeFile));
+		if (merged == null || game == null) {
+			super.mergeKnowledge(knowledgeFile, gameKnowledgeFile);
+			return;
+		}
+		merged.merge(game, base);
+		merged.writeKnowledge(store);
+		store.save(knowledgeFile);
+	}
+
 	@Override
 	public Set<SpacewarGraphics> getGraphics() {
 		// TODO Auto-generated method stub
@@ -1,5 +1,10 @@
 package spacesettlers.clients.examples;
 
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+
+import spacesettlers.clients.knowledge.KnowledgeStore;
 import spacesettlers.simulator.Toroidal2DPhysics;
 
 /**
@@ -78,6 +83,75 @@ public class ExampleGAPopulation {
 		currentPopulationCounter = 0;
 	}
 
+	/**
+	 * Merge a population learned in another game: each member gets the other member's
+	 * changes from the base (see ExampleGAChromosome.merge), and the other population's place
+	 * in the generation and fitness scores are kept (it is the game that just finished)
+	 * 
+	 * @param other
+	 * @param base the population the other game started from (null if it started from scratch)
+	 */
+	public void merge(ExampleGAPopulation other, ExampleGAPopulation base) {
+		for (int i = 0; i < Math.min(population.length, other.population.length); i++) {
+			ExampleGAChromosome baseMember = base == null || i >= base.population.length ? null : base.population[i];
+			population[i].merge(other.population[i], baseMember);
+		}
+		if (other.fitnessScores.length == fitnessScores.length) {
+			currentPopulationCounter = other.currentPopulationCounter;
+			fitnessScores = other.fitnessScores.clone();
+		}
+	}
+
+	/**
+	 * Put the population in the knowledge store: the counter, the fitness scores, the size
+	 * of each member's policy and the states and choices of all of the policies
+	 * 
+	 * @param store
+	 */
+	public void writeKnowledge(KnowledgeStore store) {
+		store.putInts("population.counter", new int[] {currentPopulationCounter});
+		store.putDoubles("population.fitness", fitnessScores);
+
+		IntBuffer sizes = store.newInts("population.policySizes", population.length);
+		int numEntries = 0;
+		for (int i = 0; i < population.length; i++) {
+			sizes.put(i, population[i].getPolicySize());
+			numEntries += population[i].getPolicySize();
+		}
+
+		DoubleBuffer states = store.newDoubles("population.states", numEntries);
+		ByteBuffer choices = store.newBytes("population.choices", numEntries);
+		int index = 0;
+		for (ExampleGAChromosome member : population) {
+			index = member.writeKnowledge(states, choices, index);
+		}
+	}
+
+	/**
+	 * Read a population written by writeKnowledge
+	 * 
+	 * @param store
+	 * @return the population or null if the store doesn't have one
+	 */
+	public static ExampleGAPopulation readKnowledge(KnowledgeStore store) {
+		IntBuffer sizes = store.getInts("population.policySizes");
+		if (sizes == null) {
+			return null;
+		}
+		ExampleGAPopulation population = new ExampleGAPopulation(sizes.capacity());
+		population.currentPopulationCounter = store.getInts("population.counter").get(0);
+		store.getDoubles("population.fitness").get(population.fitnessScores);
+
+		DoubleBuffer states = store.getDoubles("population.states");
+		ByteBuffer choices = store.getBytes("population.choices");
+		int index = 0;
+		for (int i = 0; i < population.population.length; i++) {
+			population.population[i].readKnowledge(states, choices, index, sizes.get(i));
+			index += sizes.get(i);
+		}
+		return population;
+	}
+
 	/**
 	 * Return the first member of the popualtion
 	 * @return
@@ -23,6 +23,15 @@ public class ExampleGAState {
 		updateState(space, myShip);
 	}
 
+	/**
+	 * A state read back from the knowledge store (only the distance is saved)
+	 * 
+	 * @param distanceToNearestMineableAsteroid
+	 */
+	ExampleGAState(double distanceToNearestMineableAsteroid) {
+		this.distanceToNearestMineableAsteroid = distanceToNearestMineableAsteroid;
+	}
+
 
 	/**
 	 * Update the distance to the nearest mineable asteroid
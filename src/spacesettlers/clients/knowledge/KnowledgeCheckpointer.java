@@ -0,0 +1,146 @@
+package spacesettlers.clients.knowledge;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Saves a client's KnowledgeStore during a game so a long learning run doesn't lose
+ * everything if the game dies before shutDown.  The client calls checkpoint whenever its
+ * knowledge is in a state worth keeping (e.g. at the end of getMovementEnd).  If the
+ * interval has passed and something changed since the last checkpoint, the store is
+ * copied (which is just a memory copy of each table) and a background thread saves the
+ * copy, so the client only waits for the copy and never for the disk.  If the last
+ * checkpoint is still being written the checkpoint is skipped rather than queued.
+ *
+ * @author amy
+ */
+public class KnowledgeCheckpointer {
+	File file;
+
+	long intervalNanos;
+
+	long lastCheckpointTime;
+
+	/**
+	 * Guards pending, writing and closing
+	 */
+	final Object lock = new Object();
+
+	/**
+	 * The copy waiting for the writer (null if there isn't one)
+	 */
+	KnowledgeStore pending;
+
+	boolean writing;
+
+	boolean closing;
+
+	Thread writerThread;
+
+	/**
+	 * The number of checkpoints written
+	 */
+	volatile int numCheckpoints;
+
+	/**
+	 * Start the writer thread
+	 * @param file the knowledge file
+	 * @param intervalMillis the least time between checkpoints
+	 */
+	public KnowledgeCheckpointer(File file, long intervalMillis) {
+		this.file = file;
+		this.intervalNanos = intervalMillis * 1000000L;
+		lastCheckpointTime = System.nanoTime();
+
+		writerThread = new Thread(new Runnable() {
+			public void run() {
+				writeCheckpoints();
+			}
+		}, "SpaceSettlers knowledge checkpointer");
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+
+	/**
+	 * Checkpoint the store if it is time to and it has changed
+	 * @param store
+	 * @return true if a checkpoint was started
+	 */
+	public boolean checkpoint(KnowledgeStore store) {
+		long now = System.nanoTime();
+		if (!store.isChanged() || now - lastCheckpointTime < intervalNanos) {
+			return false;
+		}
+		synchronized (lock) {
+			if (closing || pending != null || writing) {
+				return false;
+			}
+		}
+
+		KnowledgeStore copy = store.copy();
+		store.changed = false;
+		lastCheckpointTime = now;
+		synchronized (lock) {
+			pending = copy;
+			lock.notifyAll();
+		}
+		return true;
+	}
+
+	/**
+	 * The writer thread: save each copy until the checkpointer is closed
+	 */
+	void writeCheckpoints() {
+		while (true) {
+			KnowledgeStore copy;
+			synchronized (lock) {
+				while (pending == null && !closing) {
+					try {
+						lock.wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				if (pending == null) {
+					return;
+				}
+				copy = pending;
+				pending = null;
+				writing = true;
+			}
+
+			try {
+				copy.save(file);
+				numCheckpoints++;
+			} catch (IOException e) {
+				System.err.println("Error checkpointing knowledge to " + file);
+				e.printStackTrace();
+			} finally {
+				synchronized (lock) {
+					writing = false;
+					lock.notifyAll();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Finish any checkpoint that was started and stop the writer thread (called before the
+	 * final save so an old checkpoint can't be renamed over it)
+	 */
+	public void close() {
+		synchronized (lock) {
+			closing = true;
+			lock.notifyAll();
+		}
+		try {
+			writerThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	public int getNumCheckpoints() {
+		return numCheckpoints;
+	}
+}
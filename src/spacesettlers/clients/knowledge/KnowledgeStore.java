@@ -0,0 +1,486 @@
+package spacesettlers.clients.knowledge;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.XStreamException;
+
+/**
+ * A client's knowledge as named tables of numbers (a Q-table, the genes of a population,
+ * weights...) kept in a compact binary file.  Opening a file only reads its table of
+ * contents: small tables are read in and large ones are memory mapped copy-on-write, so
+ * a client can read and change a table with millions of entries in place without the
+ * whole thing being read first (and the file doesn't change until it is saved).  The
+ * large tables of a file the client can't write to are read only.
+ *
+ * Saving writes a temporary file next to the knowledge file and renames it over the
+ * knowledge file, so a game that is killed part way through a save leaves the old
+ * knowledge rather than half of the new one.  See KnowledgeCheckpointer to save during
+ * a game.
+ *
+ * The file is little-endian (so a mapped table is used without swapping bytes on x86 and
+ * ARM):
+ * <pre>
+ * int MAGIC, short VERSION, short 0, int number of tables, int bytes of table of contents,
+ * table of contents: for each table short name length, UTF-8 name, byte TableType,
+ *                    long offset of the data in the file, int length (in entries)
+ * then the data of each table, each starting on an ALIGNMENT byte boundary
+ * </pre>
+ *
+ * A store isn't thread safe: use it from the client's own calls.
+ *
+ * @author amy
+ */
+public class KnowledgeStore {
+	/**
+	 * "SSKS"
+	 */
+	public static final int MAGIC = 0x53534B53;
+
+	public static final int VERSION = 1;
+
+	static final int HEADER_SIZE = 16;
+
+	static final int ALIGNMENT = 8;
+
+	/**
+	 * Tables at least this big (in bytes) are memory mapped instead of read in
+	 */
+	public static final int MAP_THRESHOLD = 1 << 16;
+
+	static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+	/**
+	 * What a table holds.  The ordinal is written to the file so only add new types at the end.
+	 */
+	public enum TableType {
+		BYTE(1), INT(4), LONG(8), FLOAT(4), DOUBLE(8);
+
+		final int size;
+
+		TableType(int size) {
+			this.size = size;
+		}
+	}
+
+	/**
+	 * A table and its data (position 0 and limit at the end of the table)
+	 */
+	static class Table {
+		final TableType type;
+		final ByteBuffer data;
+
+		Table(TableType type, ByteBuffer data) {
+			this.type = type;
+			this.data = data;
+		}
+
+		int length() {
+			return data.capacity() / type.size;
+		}
+	}
+
+	LinkedHashMap<String, Table> tables;
+
+	/**
+	 * True if a table was added, removed or marked changed since the last checkpoint
+	 */
+	boolean changed;
+
+	/**
+	 * Make an empty store
+	 */
+	public KnowledgeStore() {
+		tables = new LinkedHashMap<String, Table>();
+	}
+
+	/**
+	 * Open a knowledge file
+	 * @param file
+	 * @return the store (empty if the file doesn't exist yet)
+	 * @throws IOException if the file isn't a knowledge store (e.g. an old XML knowledge file) or is corrupt
+	 */
+	public static KnowledgeStore open(File file) throws IOException {
+		KnowledgeStore store = new KnowledgeStore();
+		if (!file.exists()) {
+			return store;
+		}
+
+		// a private mapping needs a channel that can write (even though nothing is written)
+		boolean writable = file.canWrite();
+		try (FileChannel channel = writable ? FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)
+				: FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long fileSize = channel.size();
+			ByteBuffer header = readFully(channel, 0, HEADER_SIZE, fileSize, file);
+			if (header.getInt() != MAGIC) {
+				throw new IOException(file + " is not a knowledge store");
+			}
+			int version = header.getShort();
+			if (version != VERSION) {
+				throw new IOException("Unsupported knowledge store version " + version + " in " + file);
+			}
+			header.getShort();
+			int numTables = header.getInt();
+			int contentsSize = header.getInt();
+			if (numTables < 0 || contentsSize < 0) {
+				throw new IOException("Corrupt knowledge store " + file);
+			}
+
+			ByteBuffer contents = readFully(channel, HEADER_SIZE, contentsSize, fileSize, file);
+			for (int i = 0; i < numTables; i++) {
+				byte[] name = new byte[contents.getShort()];
+				contents.get(name);
+				int typeOrdinal = contents.get();
+				long offset = contents.getLong();
+				int length = contents.getInt();
+				if (typeOrdinal < 0 || typeOrdinal >= TableType.values().length || length < 0) {
+					throw new IOException("Corrupt knowledge store " + file);
+				}
+				TableType type = TableType.values()[typeOrdinal];
+				long bytes = (long) length * type.size;
+				if (bytes > Integer.MAX_VALUE) {
+					throw new IOException("Corrupt knowledge store " + file);
+				}
+
+				ByteBuffer data;
+				if (bytes == 0) {
+					data = ByteBuffer.allocate(0);
+				} else if (bytes >= MAP_THRESHOLD) {
+					if (offset < 0 || offset + bytes > fileSize) {
+						throw new IOException("Corrupt knowledge store " + file);
+					}
+					// private: the client can change the table without changing the file
+					data = channel.map(writable ? MapMode.PRIVATE : MapMode.READ_ONLY, offset, bytes);
+				} else {
+					data = readFully(channel, offset, (int) bytes, fileSize, file);
+				}
+				store.tables.put(new String(name, StandardCharsets.UTF_8), new Table(type, data));
+			}
+		} catch (RuntimeException e) {
+			// a bad length in the table of contents
+			throw new IOException("Corrupt knowledge store " + file + ": " + e, e);
+		}
+		return store;
+	}
+
+	private static ByteBuffer readFully(FileChannel channel, long offset, int bytes, long fileSize, File file) throws IOException {
+		if (offset < 0 || offset + bytes > fileSize) {
+			throw new IOException(file + " is not a knowledge store or is cut short");
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(bytes).order(ORDER);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, offset + buffer.position()) < 0) {
+				throw new IOException(file + " is cut short");
+			}
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * True if the file is a knowledge store (rather than an old XML knowledge file)
+	 * @param file
+	 * @return
+	 */
+	public static boolean isKnowledgeStore(File file) {
+		try (DataInputStream input = new DataInputStream(new FileInputStream(file))) {
+			return Integer.reverseBytes(input.readInt()) == MAGIC;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Read an old knowledge file written with XStream (gzipped or not) so it can be put
+	 * in a store and saved in the new format
+	 * @param file
+	 * @param xstream set up the way the file was written (aliases and all)
+	 * @return
+	 * @throws IOException if the file can't be read or isn't XStream XML
+	 */
+	public static Object importXML(File file, XStream xstream) throws IOException {
+		try (InputStream input = new BufferedInputStream(new FileInputStream(file))) {
+			input.mark(2);
+			boolean gzipped = input.read() == 0x1f && input.read() == 0x8b;
+			input.reset();
+			return xstream.fromXML(gzipped ? new GZIPInputStream(input) : input);
+		} catch (XStreamException e) {
+			throw new IOException("Can't import knowledge from " + file + ": " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Save the store to the file (written to a new temporary file in the same directory that
+	 * is renamed over the file once it is all written, so two saves of the same file at
+	 * once can't write into each other's temporary file)
+	 * @param file
+	 * @throws IOException
+	 */
+	public void save(File file) throws IOException {
+		File tempFile = Files.createTempFile(file.getAbsoluteFile().getParentFile().toPath(), 
+				"." + file.getName() + ".", ".tmp").toFile();
+		try {
+			write(tempFile);
+			try {
+				Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			tempFile.delete();
+		}
+	}
+
+	private void write(File file) throws IOException {
+		ArrayList<byte[]> names = new ArrayList<byte[]>();
+		int contentsSize = 0;
+		for (String name : tables.keySet()) {
+			byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+			names.add(bytes);
+			contentsSize += 2 + bytes.length + 1 + 8 + 4;
+		}
+
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + contentsSize).order(ORDER);
+		header.putInt(MAGIC);
+		header.putShort((short) VERSION);
+		header.putShort((short) 0);
+		header.putInt(tables.size());
+		header.putInt(contentsSize);
+		long offset = align(HEADER_SIZE + contentsSize);
+		int i = 0;
+		ArrayList<Long> offsets = new ArrayList<Long>();
+		for (Table table : tables.values()) {
+			byte[] name = names.get(i++);
+			header.putShort((short) name.length);
+			header.put(name);
+			header.put((byte) table.type.ordinal());
+			header.putLong(offset);
+			header.putInt(table.length());
+			offsets.add(offset);
+			offset = align(offset + table.data.capacity());
+		}
+		header.flip();
+
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			writeFully(channel, header, 0);
+			i = 0;
+			for (Table table : tables.values()) {
+				writeFully(channel, getData(table), offsets.get(i++));
+			}
+			// the data has to be on the disk before the rename makes it the knowledge file
+			channel.force(true);
+		}
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer, long offset) throws IOException {
+		long position = offset;
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer, position);
+		}
+	}
+
+	private static long align(long offset) {
+		return (offset + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+	}
+
+	/**
+	 * A copy of the store (in memory, nothing mapped) for writing while the client goes on
+	 * changing its own tables
+	 * @return
+	 */
+	public KnowledgeStore copy() {
+		KnowledgeStore copy = new KnowledgeStore();
+		for (Map.Entry<String, Table> entry : tables.entrySet()) {
+			Table table = entry.getValue();
+			ByteBuffer data = ByteBuffer.allocateDirect(table.data.capacity());
+			data.put(getData(table));
+			data.flip();
+			copy.tables.put(entry.getKey(), new Table(table.type, data));
+		}
+		return copy;
+	}
+
+	/**
+	 * The whole table's data (a new view so the caller's position and order don't matter)
+	 */
+	private static ByteBuffer getData(Table table) {
+		ByteBuffer data = table.data.duplicate().order(ORDER);
+		data.clear();
+		return data;
+	}
+
+	private ByteBuffer getTable(String name, TableType type) {
+		Table table = tables.get(name);
+		if (table == null) {
+			return null;
+		}
+		if (table.type != type) {
+			throw new IllegalArgumentException("Knowledge table " + name + " holds " + table.type + " not " + type);
+		}
+		return getData(table);
+	}
+
+	private ByteBuffer newTable(String name, TableType type, int length) {
+		long bytes = (long) length * type.size;
+		if (length < 0 || bytes > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Knowledge table " + name + " can't hold " + length + " entries");
+		}
+		Table table = new Table(type, ByteBuffer.allocateDirect((int) bytes));
+		tables.put(name, table);
+		changed = true;
+		return getData(table);
+	}
+
+	/**
+	 * The table (changes to the buffer change the table: call markChanged so they are checkpointed)
+	 * @param name
+	 * @return the table or null if there isn't one with that name
+	 * @throws IllegalArgumentException if the table doesn't hold doubles
+	 */
+	public DoubleBuffer getDoubles(String name) {
+		ByteBuffer data = getTable(name, TableType.DOUBLE);
+		return data == null ? null : data.asDoubleBuffer();
+	}
+
+	/**
+	 * Make a table of zeros (replacing any table with the same name) to fill in place
+	 * @param name
+	 * @param length
+	 * @return
+	 */
+	public DoubleBuffer newDoubles(String name, int length) {
+		return newTable(name, TableType.DOUBLE, length).asDoubleBuffer();
+	}
+
+	public void putDoubles(String name, double[] values) {
+		newDoubles(name, values.length).put(values);
+	}
+
+	public FloatBuffer getFloats(String name) {
+		ByteBuffer data = getTable(name, TableType.FLOAT);
+		return data == null ? null : data.asFloatBuffer();
+	}
+
+	public FloatBuffer newFloats(String name, int length) {
+		return newTable(name, TableType.FLOAT, length).asFloatBuffer();
+	}
+
+	public void putFloats(String name, float[] values) {
+		newFloats(name, values.length).put(values);
+	}
+
+	public LongBuffer getLongs(String name) {
+		ByteBuffer data = getTable(name, TableType.LONG);
+		return data == null ? null : data.asLongBuffer();
+	}
+
+	public LongBuffer newLongs(String name, int length) {
+		return newTable(name, TableType.LONG, length).asLongBuffer();
+	}
+
+	public void putLongs(String name, long[] values) {
+		newLongs(name, values.length).put(values);
+	}
+
+	public IntBuffer getInts(String name) {
+		ByteBuffer data = getTable(name, TableType.INT);
+		return data == null ? null : data.asIntBuffer();
+	}
+
+	public IntBuffer newInts(String name, int length) {
+		return newTable(name, TableType.INT, length).asIntBuffer();
+	}
+
+	public void putInts(String name, int[] values) {
+		newInts(name, values.length).put(values);
+	}
+
+	public ByteBuffer getBytes(String name) {
+		return getTable(name, TableType.BYTE);
+	}
+
+	public ByteBuffer newBytes(String name, int length) {
+		return newTable(name, TableType.BYTE, length);
+	}
+
+	public void putBytes(String name, byte[] values) {
+		newBytes(name, values.length).put(values);
+	}
+
+	/**
+	 * True if the store has a table with that name
+	 * @param name
+	 * @return
+	 */
+	public boolean contains(String name) {
+		return tables.containsKey(name);
+	}
+
+	/**
+	 * What the table holds (null if there isn't one with that name)
+	 * @param name
+	 * @return
+	 */
+	public TableType getType(String name) {
+		Table table = tables.get(name);
+		return table == null ? null : table.type;
+	}
+
+	/**
+	 * The number of entries in the table (0 if there isn't one with that name)
+	 * @param name
+	 * @return
+	 */
+	public int getLength(String name) {
+		Table table = tables.get(name);
+		return table == null ? 0 : table.length();
+	}
+
+	public void remove(String name) {
+		if (tables.remove(name) != null) {
+			changed = true;
+		}
+	}
+
+	/**
+	 * The names of all of the tables (in the order they were added)
+	 * @return
+	 */
+	public Iterable<String> getNames() {
+		return new ArrayList<String>(tables.keySet());
+	}
+
+	/**
+	 * Tell the store that a table was changed in place (so the next checkpoint saves it)
+	 */
+	public void markChanged() {
+		changed = true;
+	}
+
+	public boolean isChanged() {
+		return changed;
+	}
+}
@@ -0,0 +1,50 @@
+package spacesettlers.clients.remote;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import spacesettlers.simulator.Toroidal2DPhysics;
+import spacesettlers.wire.WorldStateDecoder;
+import spacesettlers.wire.WorldStateEncoder;
+
+/**
+ * Sends the world in the binary wire format (see WorldStateEncoder): after the first
+ * step only what changed is sent.  One side only encodes and the other only decodes, and
+ * every snapshot has to be decoded in the order it was encoded.
+ *
+ * @author amy
+ */
+public class BinaryWorldStateCodec implements WorldStateCodec {
+	public static final String NAME = "binary";
+
+	ClassLoader classLoader;
+
+	WorldStateEncoder encoder;
+
+	WorldStateDecoder decoder;
+
+	/**
+	 * @param classLoader loads the team's classes (the ships' actions can be the team's own)
+	 */
+	public BinaryWorldStateCodec(ClassLoader classLoader) {
+		this.classLoader = classLoader;
+	}
+
+	public String getName() {
+		return NAME;
+	}
+
+	public byte[] encode(Toroidal2DPhysics space) {
+		if (encoder == null) {
+			encoder = new WorldStateEncoder(XStreamWorldStateCodec.newXStream(classLoader));
+		}
+		return encoder.encode(space);
+	}
+
+	public Toroidal2DPhysics decode(ByteBuffer buffer) throws IOException {
+		if (decoder == null) {
+			decoder = new WorldStateDecoder(XStreamWorldStateCodec.newXStream(classLoader));
+		}
+		return decoder.decode(buffer);
+	}
+}
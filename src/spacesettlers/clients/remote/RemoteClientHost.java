@@ -0,0 +1,313 @@
+package spacesettlers.clients.remote;
+
+import java.awt.Color;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+import spacesettlers.actions.PurchaseCosts;
+import spacesettlers.clients.ClientPhase;
+import spacesettlers.clients.TeamClient;
+import spacesettlers.clients.TeamClientFactory;
+import spacesettlers.objects.AbstractActionableObject;
+import spacesettlers.objects.AbstractObject;
+import spacesettlers.objects.resources.ResourcePile;
+import spacesettlers.simulator.SimulatorException;
+import spacesettlers.simulator.Toroidal2DPhysics;
+
+import com.martiansoftware.jsap.FlaggedOption;
+import com.martiansoftware.jsap.JSAP;
+import com.martiansoftware.jsap.JSAPException;
+import com.martiansoftware.jsap.JSAPResult;
+import com.martiansoftware.jsap.Parameter;
+import com.martiansoftware.jsap.SimpleJSAP;
+import com.thoughtworks.xstream.XStream;
+
+/**
+ * The client process for a RemoteTeamClient: connects back to the simulator, makes the
+ * team's client and answers the simulator's calls until it is shut down.  The simulator
+ * starts this itself (it is never run by hand).
+ *
+ * @author amy
+ */
+public class RemoteClientHost {
+	DataInputStream input;
+
+	DataOutputStream output;
+
+	TeamClient teamClient;
+
+	XStream xstream;
+
+	WorldStateCodec codec;
+
+	SnapshotRingBuffer ring;
+
+	/**
+	 * Answer the simulator's calls until it says to shut down (or goes away)
+	 * @param port
+	 * @param token
+	 * @throws IOException
+	 * @throws SimulatorException if the team's client can't be made
+	 */
+	public void run(int port, String token) throws IOException, SimulatorException {
+		Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+		try {
+			socket.setTcpNoDelay(true);
+			input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+			output.writeInt(RemoteTeamClient.HELLO);
+			output.writeInt(RemoteTeamClient.PROTOCOL_VERSION);
+			output.writeUTF(token);
+			output.flush();
+
+			if (input.readInt() != RemoteTeamClient.START) {
+				throw new IOException("The simulator didn't start the client");
+			}
+			start();
+
+			while (true) {
+				int message;
+				try {
+					message = input.readInt();
+				} catch (EOFException e) {
+					// the simulator is gone
+					return;
+				}
+				if (message == RemoteTeamClient.INITIALIZE) {
+					final Toroidal2DPhysics space = readSnapshot();
+					answer(new Phase() {
+						public Object call() {
+							teamClient.initialize(space);
+							return null;
+						}
+					});
+				} else if (message == RemoteTeamClient.CALL) {
+					answer(readCall());
+				} else if (message == RemoteTeamClient.SHUTDOWN) {
+					final Toroidal2DPhysics space = readSnapshot();
+					answer(new Phase() {
+						public Object call() {
+							teamClient.shutDown(space);
+							return null;
+						}
+					});
+					return;
+				} else {
+					throw new IOException("Unknown message from the simulator: " + message);
+				}
+			}
+		} finally {
+			socket.close();
+		}
+	}
+
+	/**
+	 * Make the team's client from the START message
+	 */
+	void start() throws IOException, SimulatorException {
+		String className = input.readUTF();
+		String classPath = input.readUTF();
+		String teamName = input.readUTF();
+		int color = input.readInt();
+		String knowledgeFile = input.readUTF();
+		int maxNumberShips = input.readInt();
+		long seed = input.readLong();
+		String ringFile = input.readUTF();
+		String codecName = input.readUTF();
+
+		teamClient = TeamClientFactory.newTeamClient(className, classPath);
+		teamClient.setTeamColor(new Color(color));
+		teamClient.setTeamName(teamName);
+		teamClient.setKnowledgeFile(knowledgeFile.isEmpty() ? null : knowledgeFile);
+		teamClient.setRandom(new Random(seed));
+		teamClient.setMaxNumberShips(maxNumberShips);
+
+		ClassLoader classLoader = teamClient.getClass().getClassLoader();
+		xstream = XStreamWorldStateCodec.newXStream(classLoader);
+		codec = newCodec(codecName, classLoader);
+		ring = SnapshotRingBuffer.open(new File(ringFile));
+	}
+
+	/**
+	 * Make the codec the simulator encodes the world with
+	 * @param name the codec's getName
+	 * @param classLoader loads the team's classes
+	 * @return
+	 * @throws IOException if the codec isn't one this knows
+	 */
+	static WorldStateCodec newCodec(String name, ClassLoader classLoader) throws IOException {
+		if (BinaryWorldStateCodec.NAME.equals(name)) {
+			return new BinaryWorldStateCodec(classLoader);
+		} else if (XStreamWorldStateCodec.NAME.equals(name)) {
+			return new XStreamWorldStateCodec(classLoader);
+		}
+		throw new IOException("Unknown world state codec " + name);
+	}
+
+	/**
+	 * Read the space the simulator sent (from the ring or the message)
+	 */
+	Toroidal2DPhysics readSnapshot() throws IOException {
+		int offset = input.readInt();
+		if (offset == RemoteTeamClient.NO_SNAPSHOT) {
+			return null;
+		} else if (offset == RemoteTeamClient.INLINE_SNAPSHOT) {
+			return codec.decode(ByteBuffer.wrap(RemoteTeamClient.readBytes(input)));
+		}
+		int sequence = input.readInt();
+		return codec.decode(ring.read(offset, sequence));
+	}
+
+	/**
+	 * Read a CALL message and return the phase to run
+	 */
+	Phase readCall() throws IOException {
+		int ordinal = input.readInt();
+		if (ordinal < 0 || ordinal >= ClientPhase.values().length) {
+			throw new IOException("Unknown client phase " + ordinal);
+		}
+		final ClientPhase phase = ClientPhase.values()[ordinal];
+		final Toroidal2DPhysics space = readSnapshot();
+
+		// the team's objects are found by id in the client's copy of the space
+		final Set<AbstractActionableObject> actionableObjects = new LinkedHashSet<AbstractActionableObject>();
+		int numObjects = input.readInt();
+		for (int i = 0; i < numObjects; i++) {
+			UUID id = new UUID(input.readLong(), input.readLong());
+			AbstractObject object = space == null ? null : space.getObjectById(id);
+			if (object instanceof AbstractActionableObject) {
+				actionableObjects.add((AbstractActionableObject) object);
+			}
+		}
+
+		Object[] purchaseArguments = null;
+		if (phase == ClientPhase.PURCHASES) {
+			purchaseArguments = (Object[]) xstream.fromXML(new String(RemoteTeamClient.readBytes(input),
+					StandardCharsets.UTF_8));
+		}
+		final Object[] arguments = purchaseArguments;
+
+		return new Phase() {
+			public Object call() {
+				switch (phase) {
+				case MOVEMENT_START:
+					return teamClient.getMovementStart(space, actionableObjects);
+				case MOVEMENT_END:
+					teamClient.getMovementEnd(space, actionableObjects);
+					return null;
+				case POWERUPS:
+					return teamClient.getPowerups(space, actionableObjects);
+				case GAME_SEARCH:
+					return teamClient.getGameSearch(space, actionableObjects);
+				case PURCHASES:
+					return teamClient.getTeamPurchases(space, actionableObjects, (ResourcePile) arguments[0],
+							(PurchaseCosts) arguments[1]);
+				case GRAPHICS:
+					return teamClient.getGraphics();
+				default:
+					return null;
+				}
+			}
+		};
+	}
+
+	/**
+	 * Run a call into the team's client and send back what it returned (or that it threw)
+	 */
+	void answer(Phase phase) throws IOException {
+		Object result;
+		Thread thread = Thread.currentThread();
+		ClassLoader hostClassLoader = thread.getContextClassLoader();
+		thread.setContextClassLoader(teamClient.getClass().getClassLoader());
+		try {
+			result = phase.call();
+		} catch (Throwable e) {
+			e.printStackTrace();
+			output.writeInt(RemoteTeamClient.FAILED);
+			output.writeUTF(String.valueOf(e));
+			output.flush();
+			return;
+		} finally {
+			thread.setContextClassLoader(hostClassLoader);
+		}
+
+		output.writeInt(RemoteTeamClient.RESULT);
+		if (result == null) {
+			RemoteTeamClient.writeBytes(output, new byte[0]);
+		} else {
+			RemoteTeamClient.writeBytes(output, xstream.toXML(result).getBytes(StandardCharsets.UTF_8));
+		}
+		output.flush();
+	}
+
+	/**
+	 * One call into the team's client
+	 */
+	interface Phase {
+		Object call();
+	}
+
+	/**
+	 * Initialize the parser with all of the command line arguments
+	 * @param args
+	 * @return
+	 */
+	private static SimpleJSAP initializeParser() {
+		SimpleJSAP parser = null;
+
+		try {
+			parser = new SimpleJSAP(
+					"RemoteClientHost",
+					"Runs a team client for a simulator in another process",
+					new Parameter[] {
+						new FlaggedOption("port",
+								JSAP.INTEGER_PARSER, null, JSAP.REQUIRED,
+								JSAP.NO_SHORTFLAG, "port",
+								"port the simulator is waiting on"),
+						new FlaggedOption("token",
+								JSAP.STRING_PARSER, null, JSAP.REQUIRED,
+								JSAP.NO_SHORTFLAG, "token",
+								"token the simulator gave this process"),
+					});
+		} catch (JSAPException e) {
+			e.printStackTrace();
+			System.err.println("Error in the parser - exiting");
+			System.exit(-1);
+		}
+		return parser;
+	}
+
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		SimpleJSAP parser = initializeParser();
+		JSAPResult config = parser.parse(args);
+		if (parser.messagePrinted()) {
+			System.exit(-1);
+		}
+
+		RemoteClientHost host = new RemoteClientHost();
+		try {
+			host.run(config.getInt("port"), config.getString("token"));
+		} catch (IOException | SimulatorException e) {
+			e.printStackTrace();
+			System.exit(-1);
+		}
+		System.exit(0);
+	}
+}
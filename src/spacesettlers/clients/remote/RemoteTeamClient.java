@@ -0,0 +1,528 @@
+package spacesettlers.clients.remote;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import spacesettlers.actions.AbstractAction;
+import spacesettlers.actions.PurchaseCosts;
+import spacesettlers.actions.PurchaseTypes;
+import spacesettlers.clients.ClientPhase;
+import spacesettlers.clients.TeamClient;
+import spacesettlers.clients.TeamClientFactory;
+import spacesettlers.configs.TeamClientConfig;
+import spacesettlers.game.AbstractGameAgent;
+import spacesettlers.graphics.SpacewarGraphics;
+import spacesettlers.objects.AbstractActionableObject;
+import spacesettlers.objects.powerups.SpaceSettlersPowerupEnum;
+import spacesettlers.objects.resources.ResourcePile;
+import spacesettlers.simulator.SimulatorException;
+import spacesettlers.simulator.SpaceSettlersSimulator;
+import spacesettlers.simulator.Toroidal2DPhysics;
+
+import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.XStreamException;
+
+/**
+ * Stands in for a team client that runs in its own JVM (see RemoteClientHost).  The
+ * simulator and Team call this like any other client.  Each call writes the client's
+ * copy of the world into a memory mapped SnapshotRingBuffer, tells the client process
+ * where it is over a loopback socket and waits for the answer.
+ *
+ * The client process has its own heap (so its garbage collection doesn't stop the
+ * simulator), a memory limit (-Xmx) and optionally a limit on its CPU time.  If it doesn't
+ * answer within KILL_TIMEOUT_FACTOR times the simulator's timeout for the call it is
+ * killed, and it does nothing for the rest of the game.  Keyboard and mouse input can't
+ * be sent to another process so remote clients don't get any.
+ *
+ * The isolation is only partial: the actions, game agents and graphics a client returns
+ * are objects of the team's own classes, and they run in the simulator's JVM once they
+ * are decoded.  Only their types are checked here.
+ *
+ * The messages are written with DataOutputStream:
+ * <pre>
+ * host to simulator: HELLO      int version, UTF token
+ * simulator to host: START      UTF class name, UTF class path, UTF team name, int color,
+ *                               UTF knowledge file, int max ships, long seed, UTF ring file,
+ *                               UTF codec name (see WorldStateCodec.getName)
+ * simulator to host: INITIALIZE snapshot
+ * simulator to host: CALL       int ClientPhase, snapshot, int n, n ids (two longs),
+ *                               for PURCHASES: int length, XML of the resources and costs
+ * simulator to host: SHUTDOWN   snapshot
+ * host to simulator: RESULT     int length, XML of the return value (empty for void)
+ * host to simulator: FAILED     UTF error (the client threw)
+ *
+ * snapshot: int offset, int sequence in the ring, or NO_SNAPSHOT, or INLINE_SNAPSHOT
+ *           int length, bytes (for a snapshot bigger than the ring)
+ * </pre>
+ *
+ * The snapshots are in the binary wire format by default (BinaryWorldStateCodec), where
+ * after the first one only what changed is sent, so the client process has to read every
+ * snapshot in order.
+ *
+ * @author amy
+ */
+public class RemoteTeamClient extends TeamClient {
+	static final int HELLO = 1;
+	static final int START = 2;
+	static final int INITIALIZE = 3;
+	static final int CALL = 4;
+	static final int SHUTDOWN = 5;
+	static final int RESULT = 6;
+	static final int FAILED = 7;
+
+	static final int PROTOCOL_VERSION = 2;
+
+	static final int NO_SNAPSHOT = -1;
+	static final int INLINE_SNAPSHOT = -2;
+
+	/**
+	 * A client process is killed if it takes this many times the simulator's timeout for a call
+	 */
+	public static final int KILL_TIMEOUT_FACTOR = 10;
+
+	/**
+	 * How long (in milliseconds) the client process has to start and to run initialize or shutDown
+	 */
+	public static final int START_TIMEOUT = 60000;
+
+	TeamClientConfig teamClientConfig;
+
+	WorldStateCodec codec;
+
+	/**
+	 * Reads the client's answers (with the team's own classes)
+	 */
+	XStream xstream;
+
+	Process process;
+
+	Socket socket;
+
+	DataInputStream input;
+
+	DataOutputStream output;
+
+	SnapshotRingBuffer ring;
+
+	/**
+	 * True once the client process has been killed or has died (it does nothing after that)
+	 */
+	volatile boolean stopped;
+
+	/**
+	 * False if the client is never killed for being slow (when debugging)
+	 */
+	boolean killTimeouts = true;
+
+	/**
+	 * Run the client in the team client config in its own process (sending the world in the
+	 * binary wire format)
+	 * @param teamClientConfig
+	 * @throws SimulatorException if the client's classes can't be found
+	 */
+	public RemoteTeamClient(TeamClientConfig teamClientConfig) throws SimulatorException {
+		this(teamClientConfig, new BinaryWorldStateCodec(TeamClientFactory.getClassLoader(teamClientConfig.getClassPath())));
+	}
+
+	/**
+	 * @param teamClientConfig
+	 * @param codec one of the codecs RemoteClientHost.newCodec knows
+	 * @throws SimulatorException if the client's classes can't be found
+	 */
+	public RemoteTeamClient(TeamClientConfig teamClientConfig, WorldStateCodec codec) throws SimulatorException {
+		this.teamClientConfig = teamClientConfig;
+		this.codec = codec;
+		xstream = XStreamWorldStateCodec.newXStream(TeamClientFactory.getClassLoader(teamClientConfig.getClassPath()));
+	}
+
+	/**
+	 * Start the client process and wait for it to connect
+	 * @throws IOException
+	 */
+	void start() throws IOException {
+		ring = SnapshotRingBuffer.create(File.createTempFile("spacesettlers-" + getTeamName().replaceAll("\\W", "_"), ".ring"),
+				SnapshotRingBuffer.DEFAULT_CAPACITY);
+		ring.getFile().deleteOnExit();
+
+		ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+		try {
+			// only the process we start knows the token
+			String token = Long.toHexString(new SecureRandom().nextLong());
+			process = makeHostProcess(serverSocket.getLocalPort(), token).start();
+
+			serverSocket.setSoTimeout(START_TIMEOUT);
+			socket = serverSocket.accept();
+			socket.setTcpNoDelay(true);
+			input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+			socket.setSoTimeout(START_TIMEOUT);
+			if (input.readInt() != HELLO || input.readInt() != PROTOCOL_VERSION || !input.readUTF().equals(token)) {
+				throw new IOException("The client process for " + getTeamName() + " doesn't speak this protocol version");
+			}
+		} finally {
+			serverSocket.close();
+		}
+
+		output.writeInt(START);
+		output.writeUTF(teamClientConfig.getClassname());
+		output.writeUTF(teamClientConfig.getClassPath() == null ? "" : teamClientConfig.getClassPath());
+		output.writeUTF(getTeamName());
+		output.writeInt(getTeamColor().getRGB());
+		output.writeUTF(getKnowledgeFile() == null ? "" : getKnowledgeFile());
+		output.writeInt(getMaxNumberShips());
+		// the simulator's random number generator picks the client's seed (for repeatability)
+		output.writeLong(random == null ? 0 : random.nextLong());
+		output.writeUTF(ring.getFile().getAbsolutePath());
+		output.writeUTF(codec.getName());
+	}
+
+	/**
+	 * The command line for the client process: the same java and classpath as the simulator,
+	 * with the team's memory limit and its CPU time limit.  The CPU limit is set with the
+	 * shell's ulimit -t, so it is the total CPU seconds over the whole life of the process
+	 * (all of its threads, including the JVM's own), not a limit per step, and it needs
+	 * /bin/sh (without it there is no CPU limit).
+	 * @param port
+	 * @param token
+	 * @return
+	 */
+	ProcessBuilder makeHostProcess(int port, String token) {
+		ArrayList<String> command = new ArrayList<String>();
+		if (teamClientConfig.getMaximumCpuSeconds() > 0 && new File("/bin/sh").exists()) {
+			command.add("/bin/sh");
+			command.add("-c");
+			command.add("ulimit -t " + teamClientConfig.getMaximumCpuSeconds() + " && exec \"$0\" \"$@\"");
+		}
+		command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+		command.add("-Xmx" + teamClientConfig.getMaximumMemoryMB() + "m");
+		command.add("-Djava.awt.headless=true");
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(RemoteClientHost.class.getName());
+		command.add("--port");
+		command.add(Integer.toString(port));
+		command.add("--token");
+		command.add(token);
+
+		ProcessBuilder builder = new ProcessBuilder(command);
+		builder.inheritIO();
+		return builder;
+	}
+
+	/**
+	 * Send a message to the client process and wait for its answer
+	 *
+	 * @param message INITIALIZE, CALL or SHUTDOWN
+	 * @param phase the phase (for CALL)
+	 * @param space the space to send (null for none)
+	 * @param actionableObjects the team's objects (for CALL)
+	 * @param arguments other arguments (null for none)
+	 * @param timeout how long (in milliseconds) to wait before killing the client (0 waits forever)
+	 * @return the client's answer (null if it failed or is stopped)
+	 */
+	synchronized Object call(int message, ClientPhase phase, Toroidal2DPhysics space,
+			Set<AbstractActionableObject> actionableObjects, Object arguments, int timeout) {
+		if (stopped) {
+			return null;
+		}
+		try {
+			output.writeInt(message);
+			if (message == CALL) {
+				output.writeInt(phase.ordinal());
+			}
+			writeSnapshot(space);
+			if (message == CALL) {
+				output.writeInt(actionableObjects == null ? 0 : actionableObjects.size());
+				if (actionableObjects != null) {
+					for (AbstractActionableObject object : actionableObjects) {
+						output.writeLong(object.getId().getMostSignificantBits());
+						output.writeLong(object.getId().getLeastSignificantBits());
+					}
+				}
+				if (phase == ClientPhase.PURCHASES) {
+					writeBytes(output, xstream.toXML(arguments).getBytes(StandardCharsets.UTF_8));
+				}
+			}
+			output.flush();
+
+			socket.setSoTimeout(timeout);
+			int reply = input.readInt();
+			if (reply == FAILED) {
+				System.err.println("Error in agent " + getTeamName() + ": " + input.readUTF());
+				return null;
+			} else if (reply != RESULT) {
+				throw new IOException("Unknown message from the client process: " + reply);
+			}
+			byte[] result = readBytes(input);
+			if (result.length == 0) {
+				return null;
+			}
+			return xstream.fromXML(new String(result, StandardCharsets.UTF_8));
+		} catch (SocketTimeoutException e) {
+			stop("did not answer in " + timeout + " ms");
+		} catch (SocketException | EOFException e) {
+			stop("stopped (" + getExitDescription() + ")");
+		} catch (IOException e) {
+			e.printStackTrace();
+			stop("could not be reached: " + e.getMessage());
+		} catch (XStreamException | ClassCastException e) {
+			System.err.println("Error in agent " + getTeamName() + ": unreadable answer from the client process");
+			e.printStackTrace();
+		}
+		return null;
+	}
+
+	/**
+	 * Write the space into the ring (or into the message if it doesn't fit)
+	 */
+	void writeSnapshot(Toroidal2DPhysics space) throws IOException {
+		if (space == null) {
+			output.writeInt(NO_SNAPSHOT);
+			return;
+		}
+		byte[] snapshot = codec.encode(space);
+		if (ring.fits(snapshot.length)) {
+			int offset = ring.write(snapshot, snapshot.length);
+			output.writeInt(offset);
+			output.writeInt(ring.getSequence());
+		} else {
+			output.writeInt(INLINE_SNAPSHOT);
+			writeBytes(output, snapshot);
+		}
+	}
+
+	/**
+	 * How the client process ended (or that it is still running)
+	 */
+	String getExitDescription() {
+		try {
+			if (process.waitFor(1, TimeUnit.SECONDS)) {
+				return "exit value " + process.exitValue();
+			}
+		} catch (InterruptedException e) {
+			// fall through
+		}
+		return "still running";
+	}
+
+	/**
+	 * Kill the client process (it does nothing for the rest of the game)
+	 * @param reason
+	 */
+	void stop(String reason) {
+		if (stopped) {
+			return;
+		}
+		stopped = true;
+		System.err.println("Client process for " + getTeamName() + " " + reason + ": stopping it for the rest of the game");
+		close();
+	}
+
+	void close() {
+		if (process != null) {
+			process.destroyForcibly();
+		}
+		try {
+			if (socket != null) {
+				socket.close();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		if (ring != null) {
+			ring.getFile().delete();
+		}
+	}
+
+	/**
+	 * Returns true if the client process was killed or died
+	 * @return
+	 */
+	public boolean isStopped() {
+		return stopped;
+	}
+
+	/**
+	 * Never kill the client for being slow (used when debugging)
+	 */
+	public void turnOffTimeouts() {
+		killTimeouts = false;
+	}
+
+	/**
+	 * How long to wait for the client before killing it (0 for no limit when debugging)
+	 */
+	int getKillTimeout(int timeout) {
+		if (!killTimeouts || timeout >= Integer.MAX_VALUE / KILL_TIMEOUT_FACTOR) {
+			return 0;
+		}
+		return timeout * KILL_TIMEOUT_FACTOR;
+	}
+
+	static void writeBytes(DataOutputStream output, byte[] bytes) throws IOException {
+		output.writeInt(bytes.length);
+		output.write(bytes);
+	}
+
+	static byte[] readBytes(DataInputStream input) throws IOException {
+		int length = input.readInt();
+		if (length < 0) {
+			throw new IOException("Bad message length " + length);
+		}
+		byte[] bytes = new byte[length];
+		input.readFully(bytes);
+		return bytes;
+	}
+
+	@Override
+	public void initialize(Toroidal2DPhysics space) {
+		try {
+			start();
+		} catch (IOException e) {
+			e.printStackTrace();
+			stop("could not be started: " + e.getMessage());
+			return;
+		}
+		call(INITIALIZE, null, space, null, null, START_TIMEOUT);
+	}
+
+	@Override
+	public void shutDown(Toroidal2DPhysics space) {
+		call(SHUTDOWN, null, space, null, null, START_TIMEOUT);
+		if (!stopped) {
+			stopped = true;
+			try {
+				if (!process.waitFor(5, TimeUnit.SECONDS)) {
+					System.err.println("Client process for " + getTeamName() + " did not exit");
+				}
+			} catch (InterruptedException e) {
+				// killed below
+			}
+			close();
+		}
+	}
+
+	@Override
+	public Map<UUID, AbstractAction> getMovementStart(Toroidal2DPhysics space,
+			Set<AbstractActionableObject> actionableObjects) {
+		Object result = call(CALL, ClientPhase.MOVEMENT_START, space, actionableObjects, null,
+				getKillTimeout(SpaceSettlersSimulator.TEAM_ACTION_TIMEOUT));
+		return toMap(result, UUID.class, AbstractAction.class);
+	}
+
+	@Override
+	public void getMovementEnd(Toroidal2DPhysics space, Set<AbstractActionableObject> actionableObjects) {
+		call(CALL, ClientPhase.MOVEMENT_END, space, actionableObjects, null,
+				getKillTimeout(SpaceSettlersSimulator.TEAM_END_ACTION_TIMEOUT));
+	}
+
+	@Override
+	public Map<UUID, SpaceSettlersPowerupEnum> getPowerups(Toroidal2DPhysics space,
+			Set<AbstractActionableObject> actionableObjects) {
+		Object result = call(CALL, ClientPhase.POWERUPS, space, actionableObjects, null,
+				getKillTimeout(SpaceSettlersSimulator.TEAM_ACTION_TIMEOUT));
+		return toMap(result, UUID.class, SpaceSettlersPowerupEnum.class);
+	}
+
+	@Override
+	public Map<UUID, AbstractGameAgent> getGameSearch(Toroidal2DPhysics space,
+			Set<AbstractActionableObject> actionableObjects) {
+		Object result = call(CALL, ClientPhase.GAME_SEARCH, space, actionableObjects, null,
+				getKillTimeout(SpaceSettlersSimulator.TEAM_ACTION_TIMEOUT));
+		return toMap(result, UUID.class, AbstractGameAgent.class);
+	}
+
+	@Override
+	public Map<UUID, PurchaseTypes> getTeamPurchases(Toroidal2DPhysics space,
+			Set<AbstractActionableObject> actionableObjects, ResourcePile resourcesAvailable,
+			PurchaseCosts purchaseCosts) {
+		Object result = call(CALL, ClientPhase.PURCHASES, space, actionableObjects,
+				new Object[] {resourcesAvailable, purchaseCosts}, getKillTimeout(SpaceSettlersSimulator.TEAM_ACTION_TIMEOUT));
+		return toMap(result, UUID.class, PurchaseTypes.class);
+	}
+
+	@Override
+	public Set<SpacewarGraphics> getGraphics() {
+		Object result = call(CALL, ClientPhase.GRAPHICS, null, null, null,
+				getKillTimeout(SpaceSettlersSimulator.TEAM_GRAPHICS_TIMEOUT));
+		return toSet(result, SpacewarGraphics.class);
+	}
+
+	/**
+	 * Copy the client's answer into a map, checking that it is a map and that every key and
+	 * value has the right type (the answer came from another process so it could be anything)
+	 * @param result the answer (null for none)
+	 * @param keyType
+	 * @param valueType
+	 * @return the map (empty if there was no answer or it had the wrong types)
+	 */
+	<K, V> Map<K, V> toMap(Object result, Class<K> keyType, Class<V> valueType) {
+		HashMap<K, V> map = new HashMap<K, V>();
+		if (result == null) {
+			return map;
+		}
+		if (!(result instanceof Map)) {
+			badAnswer(result, "a map");
+			return map;
+		}
+		for (Map.Entry<?, ?> entry : ((Map<?, ?>) result).entrySet()) {
+			if (!keyType.isInstance(entry.getKey()) || !valueType.isInstance(entry.getValue())) {
+				badAnswer(entry.getKey() + "=" + entry.getValue(), "a map of " + keyType.getSimpleName() 
+						+ " to " + valueType.getSimpleName());
+				return new HashMap<K, V>();
+			}
+			map.put(keyType.cast(entry.getKey()), valueType.cast(entry.getValue()));
+		}
+		return map;
+	}
+
+	/**
+	 * Copy the client's answer into a set, checking that it is a set and the type of every element
+	 * @param result the answer (null for none)
+	 * @param elementType
+	 * @return the set (empty if there was no answer or it had the wrong types)
+	 */
+	<E> Set<E> toSet(Object result, Class<E> elementType) {
+		LinkedHashSet<E> set = new LinkedHashSet<E>();
+		if (result == null) {
+			return set;
+		}
+		if (!(result instanceof Set)) {
+			badAnswer(result, "a set");
+			return set;
+		}
+		for (Object element : (Set<?>) result) {
+			if (!elementType.isInstance(element)) {
+				badAnswer(element, "a set of " + elementType.getSimpleName());
+				return new LinkedHashSet<E>();
+			}
+			set.add(elementType.cast(element));
+		}
+		return set;
+	}
+
+	void badAnswer(Object answer, String expected) {
+		System.err.println("Error in agent " + getTeamName() + ": expected " + expected + " from the client process but got "
+				+ (answer == null ? null : answer.getClass().getName()) + ": ignoring the answer");
+	}
+}
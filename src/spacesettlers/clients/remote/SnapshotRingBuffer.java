@@ -0,0 +1,178 @@
+package spacesettlers.clients.remote;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A ring of world snapshots in a memory mapped file shared by the simulator (which writes
+ * them) and a client process (which reads them).  Only the small message saying where
+ * the snapshot is goes over the socket; the snapshot itself is never copied through the
+ * kernel.
+ *
+ * The file starts with the magic number and the capacity of the ring.  Each snapshot is a
+ * record of a sequence number, a length and the bytes, written after the last one (or at
+ * the start of the ring if it doesn't fit before the end).  The simulator waits for the
+ * client's answer before writing the next snapshot so a record is never overwritten while
+ * it is read.  The reader checks the sequence number anyway so a stale offset is caught.
+ *
+ * @author amy
+ */
+public class SnapshotRingBuffer {
+	/**
+	 * "SSRB"
+	 */
+	public static final int MAGIC = 0x53535242;
+
+	public static final int DEFAULT_CAPACITY = 1 << 22;
+
+	static final int FILE_HEADER_SIZE = 8;
+
+	static final int RECORD_HEADER_SIZE = 8;
+
+	File file;
+
+	MappedByteBuffer buffer;
+
+	int capacity;
+
+	/**
+	 * Where the next record goes (relative to the start of the ring)
+	 */
+	int writePosition;
+
+	int sequence;
+
+	private SnapshotRingBuffer(File file, MappedByteBuffer buffer, int capacity) {
+		this.file = file;
+		this.buffer = buffer;
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Make the file and map it for writing
+	 * @param file
+	 * @param capacity bytes of snapshots the ring holds
+	 * @return
+	 * @throws IOException
+	 */
+	public static SnapshotRingBuffer create(File file, int capacity) throws IOException {
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+		try {
+			randomAccessFile.setLength(FILE_HEADER_SIZE + capacity);
+			MappedByteBuffer buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+					FILE_HEADER_SIZE + capacity);
+			buffer.putInt(0, MAGIC);
+			buffer.putInt(4, capacity);
+			return new SnapshotRingBuffer(file, buffer, capacity);
+		} finally {
+			// the mapping stays valid after the file is closed
+			randomAccessFile.close();
+		}
+	}
+
+	/**
+	 * Map a ring made by create for reading
+	 * @param file
+	 * @return
+	 * @throws IOException if the file isn't a snapshot ring
+	 */
+	public static SnapshotRingBuffer open(File file) throws IOException {
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+		try {
+			long length = randomAccessFile.length();
+			if (length < FILE_HEADER_SIZE) {
+				throw new IOException(file + " is not a snapshot ring");
+			}
+			MappedByteBuffer buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+			if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != length - FILE_HEADER_SIZE) {
+				throw new IOException(file + " is not a snapshot ring");
+			}
+			return new SnapshotRingBuffer(file, buffer, buffer.getInt(4));
+		} finally {
+			randomAccessFile.close();
+		}
+	}
+
+	/**
+	 * Returns true if a snapshot of this many bytes fits in the ring
+	 * @param length
+	 * @return
+	 */
+	public boolean fits(int length) {
+		return length + RECORD_HEADER_SIZE <= capacity;
+	}
+
+	/**
+	 * Write a snapshot
+	 * @param bytes
+	 * @param length number of bytes to write
+	 * @return the offset of the record (pass it and getSequence() to read)
+	 * @throws IllegalArgumentException if it doesn't fit (check fits first)
+	 */
+	public int write(byte[] bytes, int length) {
+		if (!fits(length)) {
+			throw new IllegalArgumentException("Snapshot of " + length + " bytes doesn't fit in the ring");
+		}
+		if (writePosition + RECORD_HEADER_SIZE + length > capacity) {
+			writePosition = 0;
+		}
+		int offset = writePosition;
+		sequence++;
+
+		int position = FILE_HEADER_SIZE + offset;
+		buffer.putInt(position, sequence);
+		buffer.putInt(position + 4, length);
+		ByteBuffer data = buffer.duplicate();
+		data.position(position + RECORD_HEADER_SIZE);
+		data.put(bytes, 0, length);
+
+		writePosition = offset + RECORD_HEADER_SIZE + length;
+		return offset;
+	}
+
+	/**
+	 * The sequence number of the last snapshot written
+	 * @return
+	 */
+	public int getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * Returns the snapshot at the offset (a view of the mapped file, nothing is copied)
+	 * @param offset
+	 * @param expectedSequence
+	 * @return
+	 * @throws IOException if the record isn't the one expected
+	 */
+	public ByteBuffer read(int offset, int expectedSequence) throws IOException {
+		if (offset < 0 || offset + RECORD_HEADER_SIZE > capacity) {
+			throw new IOException("Bad snapshot offset " + offset);
+		}
+		int position = FILE_HEADER_SIZE + offset;
+		int recordSequence = buffer.getInt(position);
+		int length = buffer.getInt(position + 4);
+		if (recordSequence != expectedSequence) {
+			throw new IOException("Expected snapshot " + expectedSequence + " but found " + recordSequence);
+		}
+		if (length < 0 || offset + RECORD_HEADER_SIZE + length > capacity) {
+			throw new IOException("Bad snapshot length " + length);
+		}
+		ByteBuffer snapshot = buffer.duplicate();
+		snapshot.position(position + RECORD_HEADER_SIZE);
+		snapshot.limit(position + RECORD_HEADER_SIZE + length);
+		return snapshot.slice();
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+}
@@ -0,0 +1,35 @@
+package spacesettlers.clients.remote;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import spacesettlers.simulator.Toroidal2DPhysics;
+
+/**
+ * Turns the world a client sees into bytes (in the simulator) and back (in the client
+ * process).
+ *
+ * @author amy
+ */
+public interface WorldStateCodec {
+	/**
+	 * The name of the codec (sent to the client process so it makes the same one)
+	 * @return
+	 */
+	public String getName();
+
+	/**
+	 * Encode the space
+	 * @param space a clone of the space made for the client
+	 * @return the encoded space
+	 */
+	public byte[] encode(Toroidal2DPhysics space);
+
+	/**
+	 * Decode a space written by encode
+	 * @param buffer the encoded space (from its position to its limit)
+	 * @return
+	 * @throws IOException if the bytes aren't a space
+	 */
+	public Toroidal2DPhysics decode(ByteBuffer buffer) throws IOException;
+}
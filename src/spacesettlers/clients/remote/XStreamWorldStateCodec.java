@@ -0,0 +1,85 @@
+package spacesettlers.clients.remote;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.UUID;
+
+import spacesettlers.actions.AbstractAction;
+import spacesettlers.clients.Team;
+import spacesettlers.game.AbstractGameAgent;
+import spacesettlers.graphics.SpacewarGraphics;
+import spacesettlers.simulator.Toroidal2DPhysics;
+
+import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.XStreamException;
+
+/**
+ * Sends the world as XStream XML.  This needs nothing but the objects themselves, so any
+ * field a client might look at makes it across, but it is slow for large worlds.
+ *
+ * @author amy
+ */
+public class XStreamWorldStateCodec implements WorldStateCodec {
+	public static final String NAME = "xml";
+
+	XStream xstream;
+
+	public XStreamWorldStateCodec() {
+		this(XStreamWorldStateCodec.class.getClassLoader());
+	}
+
+	/**
+	 * @param classLoader loads the team's classes (the ships' actions can be the team's own)
+	 */
+	public XStreamWorldStateCodec(ClassLoader classLoader) {
+		xstream = newXStream(classLoader);
+	}
+
+	/**
+	 * Make an XStream for the objects passed between the simulator and a client process.
+	 * Only the simulator's classes and the kinds of objects the clients return (actions,
+	 * game agents and graphics, which may be the team's own classes) can be read, since
+	 * the XML comes from a client we don't trust.
+	 *
+	 * @param classLoader loads the team's classes
+	 * @return
+	 */
+	public static XStream newXStream(ClassLoader classLoader) {
+		XStream xstream = new XStream();
+		XStream.setupDefaultSecurity(xstream);
+		xstream.allowTypesByWildcard(new String[] {"spacesettlers.**"});
+		xstream.allowTypeHierarchy(AbstractAction.class);
+		xstream.allowTypeHierarchy(AbstractGameAgent.class);
+		xstream.allowTypeHierarchy(SpacewarGraphics.class);
+		xstream.allowTypes(new Class<?>[] {UUID.class, Color.class, Random.class});
+		xstream.setClassLoader(classLoader);
+
+		// the teams inside the bases point back at the simulator's clients and threads
+		xstream.omitField(Team.class, "teamClient");
+		xstream.omitField(Team.class, "executor");
+		xstream.omitField(Team.class, "lastPhaseLatency");
+		xstream.omitField(Team.class, "phaseLatency");
+		return xstream;
+	}
+
+	public String getName() {
+		return NAME;
+	}
+
+	public byte[] encode(Toroidal2DPhysics space) {
+		return xstream.toXML(space).getBytes(StandardCharsets.UTF_8);
+	}
+
+	public Toroidal2DPhysics decode(ByteBuffer buffer) throws IOException {
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.get(bytes);
+		try {
+			return (Toroidal2DPhysics) xstream.fromXML(new String(bytes, StandardCharsets.UTF_8));
+		} catch (XStreamException | ClassCastException e) {
+			throw new IOException("Bad world snapshot: " + e.getMessage(), e);
+		}
+	}
+}
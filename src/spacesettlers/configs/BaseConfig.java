@@ -4,7 +4,7 @@ package spacesettlers.configs;
  * Configuration for the bases 
  * @author amy
  */
-public class BaseConfig {
+public class BaseConfig implements Cloneable {
 	/**
 	 * The name of the team to whom this base belongs
 	 */
@@ -78,8 +78,16 @@ public class BaseConfig {
 	public int getBoundingBoxLRY() {
 		return boundingBoxLRY;
 	}
-	
-	
-	
-	
+
+	/**
+	 * Returns a copy that can be changed without changing this one
+	 * @return
+	 */
+	public BaseConfig deepClone() {
+		try {
+			return (BaseConfig) clone();
+		} catch (CloneNotSupportedException e) {
+			throw new IllegalStateException(e);
+		}
+	}
 }
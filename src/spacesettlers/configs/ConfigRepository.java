@@ -0,0 +1,213 @@
+package spacesettlers.configs;
+
+import java.io.File;
+import java.util.concurrent.ConcurrentHashMap;
+
+import spacesettlers.simulator.SimulatorException;
+
+import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.security.ArrayTypePermission;
+import com.thoughtworks.xstream.security.NoTypePermission;
+import com.thoughtworks.xstream.security.NullPermission;
+import com.thoughtworks.xstream.security.PrimitiveTypePermission;
+
+/**
+ * Reads the XML configuration files.  Each file is parsed once per JVM (and again only if
+ * it changes on disk) and kept as a template; every caller gets its own deepClone of the
+ * template so a game can change its copy without affecting any other game.  The ladder
+ * used to build new XStream instances and re-read both config files for every game.
+ *
+ * One XStream (with all of the aliases) is shared by everyone since XStream is thread
+ * safe once it is set up.
+ *
+ * @author amy
+ */
+public class ConfigRepository {
+	/**
+	 * A parsed file and when it was last changed
+	 */
+	static class CachedConfig {
+		final Object template;
+		final long lastModified;
+
+		CachedConfig(Object template, long lastModified) {
+			this.template = template;
+			this.lastModified = lastModified;
+		}
+	}
+
+	static final ConcurrentHashMap<String, CachedConfig> cache = new ConcurrentHashMap<String, CachedConfig>();
+
+	static XStream xstream;
+
+	/**
+	 * Reads teams sent over the network (and nothing else)
+	 */
+	static XStream teamsXStream;
+
+	/**
+	 * The shared XStream with the aliases for every config file
+	 * @return
+	 */
+	static synchronized XStream getXStream() {
+		if (xstream == null) {
+			xstream = new XStream();
+			xstream.alias("SpaceSettlersConfig", SpaceSettlersConfig.class);
+			xstream.alias("HighLevelTeamConfig", HighLevelTeamConfig.class);
+			xstream.alias("BaseConfig", BaseConfig.class);
+			xstream.alias("AsteroidConfig", RandomAsteroidConfig.class);
+			xstream.alias("FixedAsteroidConfig", FixedAsteroidConfig.class);
+			xstream.alias("FlagConfig", FlagConfig.class);
+			xstream.alias("LadderConfig", LadderConfig.class);
+			xstream.alias("TeamClientConfig", TeamClientConfig.class);
+			xstream.alias("GameTournamentConfig", GameTournamentConfig.class);
+			xstream.alias("GameAgentConfig", GameAgentConfig.class);
+			xstream.allowTypesByRegExp(new String[] { ".*" });
+		}
+		return xstream;
+	}
+
+	/**
+	 * Returns a copy of the simulator config in the file
+	 * @param fileName
+	 * @return
+	 * @throws SimulatorException if the file can't be read or isn't a simulator config
+	 */
+	public static SpaceSettlersConfig getSpaceSettlersConfig(String fileName) throws SimulatorException {
+		return ((SpaceSettlersConfig) getTemplate(fileName, SpaceSettlersConfig.class)).deepClone();
+	}
+
+	/**
+	 * Returns a copy of the ladder config in the file
+	 * @param fileName
+	 * @return
+	 * @throws SimulatorException if the file can't be read or isn't a ladder config
+	 */
+	public static LadderConfig getLadderConfig(String fileName) throws SimulatorException {
+		return ((LadderConfig) getTemplate(fileName, LadderConfig.class)).deepClone();
+	}
+
+	/**
+	 * Returns a copy of the team client config in the file
+	 * @param fileName
+	 * @return
+	 * @throws SimulatorException if the file can't be read or isn't a team client config
+	 */
+	public static TeamClientConfig getTeamClientConfig(String fileName) throws SimulatorException {
+		return ((TeamClientConfig) getTemplate(fileName, TeamClientConfig.class)).deepClone();
+	}
+
+	/**
+	 * Returns a copy of the mini-game tournament config in the file
+	 * @param fileName
+	 * @return
+	 * @throws SimulatorException if the file can't be read or isn't a tournament config
+	 */
+	public static GameTournamentConfig getGameTournamentConfig(String fileName) throws SimulatorException {
+		return ((GameTournamentConfig) getTemplate(fileName, GameTournamentConfig.class)).deepClone();
+	}
+
+	/**
+	 * Write configs as XML (with the same aliases as the config files), e.g. to send them 
+	 * to another process
+	 * @param config
+	 * @return
+	 */
+	public static String toXML(Object config) {
+		return getXStream().toXML(config);
+	}
+
+	/**
+	 * Read configs written by toXML
+	 * @param xml
+	 * @return
+	 * @throws SimulatorException if the XML can't be parsed
+	 */
+	public static Object fromXML(String xml) throws SimulatorException {
+		try {
+			return getXStream().fromXML(xml);
+		} catch (Exception e) {
+			throw new SimulatorException("Error parsing config XML at string " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Read teams written by toXML from another process.  Unlike fromXML, only team configs
+	 * (and their strings and numbers) are allowed, since the XML came over the network.
+	 * @param xml
+	 * @return
+	 * @throws SimulatorException if the XML can't be parsed or isn't an array of teams
+	 */
+	public static HighLevelTeamConfig[] teamsFromXML(String xml) throws SimulatorException {
+		Object teams;
+		try {
+			teams = getTeamsXStream().fromXML(xml);
+		} catch (Exception e) {
+			throw new SimulatorException("Error parsing team config XML: " + e.getMessage());
+		}
+		if (!(teams instanceof HighLevelTeamConfig[])) {
+			throw new SimulatorException("Error parsing team config XML: expected teams but found " 
+					+ (teams == null ? null : teams.getClass().getName()));
+		}
+		return (HighLevelTeamConfig[]) teams;
+	}
+
+	static synchronized XStream getTeamsXStream() {
+		if (teamsXStream == null) {
+			teamsXStream = new XStream();
+			teamsXStream.alias("HighLevelTeamConfig", HighLevelTeamConfig.class);
+			teamsXStream.addPermission(NoTypePermission.NONE);
+			teamsXStream.addPermission(NullPermission.NULL);
+			teamsXStream.addPermission(PrimitiveTypePermission.PRIMITIVES);
+			teamsXStream.addPermission(ArrayTypePermission.ARRAYS);
+			teamsXStream.allowTypes(new Class<?>[] { String.class, HighLevelTeamConfig.class });
+		}
+		return teamsXStream;
+	}
+
+	/**
+	 * Returns the parsed file (parsing it if it isn't cached or has changed).  The template
+	 * must not be changed.
+	 */
+	static Object getTemplate(String fileName, Class<?> configClass) throws SimulatorException {
+		File file = new File(fileName);
+		String key = file.getAbsolutePath();
+		long lastModified = file.lastModified();
+
+		CachedConfig cached = cache.get(key);
+		if (cached == null || cached.lastModified != lastModified) {
+			cached = parse(file, key, lastModified);
+		}
+
+		if (!configClass.isInstance(cached.template)) {
+			throw new SimulatorException("Error: config file " + fileName + " is not a " + configClass.getSimpleName());
+		}
+		return cached.template;
+	}
+
+	/**
+	 * Parse the file and cache it (only one thread parses a file at a time)
+	 */
+	static synchronized CachedConfig parse(File file, String key, long lastModified) throws SimulatorException {
+		// another thread may have parsed it while this one waited
+		CachedConfig cached = cache.get(key);
+		if (cached != null && cached.lastModified == lastModified) {
+			return cached;
+		}
+
+		try {
+			cached = new CachedConfig(getXStream().fromXML(file), lastModified);
+		} catch (Exception e) {
+			throw new SimulatorException("Error parsing config file " + file + " at string " + e.getMessage());
+		}
+		cache.put(key, cached);
+		return cached;
+	}
+
+	/**
+	 * Forget all of the parsed files
+	 */
+	public static void clear() {
+		cache.clear();
+	}
+}
@@ -7,7 +7,7 @@ package spacesettlers.configs;
  * @author amy
  *
  */
-public class FixedAsteroidConfig {
+public class FixedAsteroidConfig implements Cloneable {
 	/**
 	 * a fixed location asteroid is specified with an x and y location and the radius
 	 */
@@ -44,5 +44,16 @@ public class FixedAsteroidConfig {
 	public double getMaxInitialVelocity() {
 		return maxInitialVelocity;
 	}
-	
+
+	/**
+	 * Returns a copy that can be changed without changing this one
+	 * @return
+	 */
+	public FixedAsteroidConfig deepClone() {
+		try {
+			return (FixedAsteroidConfig) clone();
+		} catch (CloneNotSupportedException e) {
+			throw new IllegalStateException(e);
+		}
+	}
 }
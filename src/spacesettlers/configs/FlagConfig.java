@@ -8,7 +8,7 @@ import spacesettlers.utilities.Position;
  * @author amy
  *
  */
-public class FlagConfig {
+public class FlagConfig implements Cloneable {
 	String teamName;
 	
 	/**
@@ -44,7 +44,22 @@ public class FlagConfig {
 		return fixedLocation;
 	}
 
-	
-
-	
+	/**
+	 * Returns a copy that can be changed without changing this one
+	 * @return
+	 */
+	public FlagConfig deepClone() {
+		try {
+			FlagConfig copy = (FlagConfig) clone();
+			if (startX != null) {
+				copy.startX = startX.clone();
+			}
+			if (startY != null) {
+				copy.startY = startY.clone();
+			}
+			return copy;
+		} catch (CloneNotSupportedException e) {
+			throw new IllegalStateException(e);
+		}
+	}
 }
@@ -0,0 +1,46 @@
+package spacesettlers.configs;
+
+/**
+ * A game agent entered in a mini-game tournament, read in from xstream
+ * 
+ * @author amy
+ */
+public class GameAgentConfig implements Cloneable {
+	/**
+	 * Name used in the results
+	 */
+	String agentName;
+	
+	/**
+	 * Full class name of the agent (it needs a constructor with no arguments)
+	 */
+	String agentClass;
+
+	public String getAgentName() {
+		return agentName;
+	}
+
+	public void setAgentName(String agentName) {
+		this.agentName = agentName;
+	}
+
+	public String getAgentClass() {
+		return agentClass;
+	}
+
+	public void setAgentClass(String agentClass) {
+		this.agentClass = agentClass;
+	}
+
+	/**
+	 * Returns a copy that can be changed without changing this one
+	 * @return
+	 */
+	public GameAgentConfig deepClone() {
+		try {
+			return (GameAgentConfig) clone();
+		} catch (CloneNotSupportedException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
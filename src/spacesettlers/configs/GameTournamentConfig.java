@@ -0,0 +1,126 @@
+package spacesettlers.configs;
+
+/**
+ * Configuration for a mini-game tournament (every agent plays every other agent at
+ * each game without the space simulator), read in from xstream
+ * 
+ * @author amy
+ */
+public class GameTournamentConfig implements Cloneable {
+	/**
+	 * The agents in the tournament
+	 */
+	GameAgentConfig[] agents;
+	
+	/**
+	 * The games to play (names from GameFactory.GAME_NAMES)
+	 */
+	String[] games;
+	
+	/**
+	 * The number of games each pair of agents plays at each game (half with each agent moving first)
+	 */
+	int numGamesPerPairing;
+	
+	/**
+	 * Number of threads (0 uses one per core)
+	 */
+	int numThreads;
+	
+	/**
+	 * Longest a move can take in milliseconds (the agent forfeits the game if it takes longer)
+	 */
+	int moveTimeLimit;
+	
+	/**
+	 * Longest a batch of games can take in seconds (0 means 600).  The games of a batch 
+	 * that takes longer aren't counted.
+	 */
+	int batchTimeLimit;
+	
+	/**
+	 * Write out the results to this file
+	 */
+	String outputFileName;
+
+	public GameAgentConfig[] getAgents() {
+		return agents;
+	}
+
+	public void setAgents(GameAgentConfig[] agents) {
+		this.agents = agents;
+	}
+
+	public String[] getGames() {
+		return games;
+	}
+
+	public void setGames(String[] games) {
+		this.games = games;
+	}
+
+	public int getNumGamesPerPairing() {
+		return numGamesPerPairing;
+	}
+
+	public void setNumGamesPerPairing(int numGamesPerPairing) {
+		this.numGamesPerPairing = numGamesPerPairing;
+	}
+
+	public int getNumThreads() {
+		return numThreads;
+	}
+
+	public void setNumThreads(int numThreads) {
+		this.numThreads = numThreads;
+	}
+
+	public int getMoveTimeLimit() {
+		return moveTimeLimit;
+	}
+
+	public void setMoveTimeLimit(int moveTimeLimit) {
+		this.moveTimeLimit = moveTimeLimit;
+	}
+
+	public int getBatchTimeLimit() {
+		if (batchTimeLimit <= 0) {
+			return 600;
+		}
+		return batchTimeLimit;
+	}
+
+	public void setBatchTimeLimit(int batchTimeLimit) {
+		this.batchTimeLimit = batchTimeLimit;
+	}
+
+	public String getOutputFileName() {
+		return outputFileName;
+	}
+
+	public void setOutputFileName(String outputFileName) {
+		this.outputFileName = outputFileName;
+	}
+
+	/**
+	 * Returns a copy that can be changed without changing this one
+	 * @return
+	 */
+	public GameTournamentConfig deepClone() {
+		try {
+			GameTournamentConfig copy = (GameTournamentConfig) clone();
+			if (agents != null) {
+				copy.agents = new GameAgentConfig[agents.length];
+				for (int i = 0; i < agents.length; i++) {
+					copy.agents[i] = agents[i].deepClone();
+				}
+			}
+			if (games != null) {
+				copy.games = games.clone();
+			}
+			return copy;
+		} catch (CloneNotSupportedException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
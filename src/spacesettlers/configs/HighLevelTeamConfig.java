@@ -5,7 +5,7 @@ package spacesettlers.configs;
  * 
  * @author amy
  */
-public class HighLevelTeamConfig {
+public class HighLevelTeamConfig implements Cloneable {
 	/**
 	 * The name of the team (will be used to match other items in the simulator)
 	 */
@@ -20,6 +20,12 @@ public class HighLevelTeamConfig {
 	 * Bounding box for the initialization of the team
 	 */
 	int initialRegionULX, initialRegionULY, initialRegionLRX, initialRegionLRY;
+
+	/**
+	 * Optional: the knowledge file for this game (instead of the one in the client's config
+	 * file).  The ladder sets it to give each game its own copy of the knowledge.
+	 */
+	String knowledgeFile;
 		
 	public void setTeamName(String teamName) {
 		this.teamName = teamName;
@@ -40,6 +46,18 @@ public class HighLevelTeamConfig {
 	}
 
 
+	public void setConfigFile(String configFile) {
+		this.configFile = configFile;
+	}
+
+	public String getKnowledgeFile() {
+		return knowledgeFile;
+	}
+
+	public void setKnowledgeFile(String knowledgeFile) {
+		this.knowledgeFile = knowledgeFile;
+	}
+
 	public int getInitialRegionULX() {
 		return initialRegionULX;
 	}
@@ -79,7 +97,32 @@ public class HighLevelTeamConfig {
 		String str = "Team name: " + this.teamName + " From file " + this.configFile;
 		return str;
 	}
-	
-	
 
+	/**
+	 * Returns a copy that can be changed without changing this one
+	 * @return
+	 */
+	public HighLevelTeamConfig deepClone() {
+		try {
+			return (HighLevelTeamConfig) clone();
+		} catch (CloneNotSupportedException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Copy an array of team configs (and the configs in it)
+	 * @param teams
+	 * @return the copy or null if teams is null
+	 */
+	public static HighLevelTeamConfig[] deepClone(HighLevelTeamConfig[] teams) {
+		if (teams == null) {
+			return null;
+		}
+		HighLevelTeamConfig[] copy = new HighLevelTeamConfig[teams.length];
+		for (int i = 0; i < teams.length; i++) {
+			copy[i] = teams[i].deepClone();
+		}
+		return copy;
+	}
 }
@@ -1,6 +1,6 @@
 package spacesettlers.configs;
 
-public class LadderConfig {
+public class LadderConfig implements Cloneable {
 	/**
 	 * The team configuration for each team
 	 */
@@ -26,6 +26,69 @@ public class LadderConfig {
 	 */
 	String outputFileName;
 
+	/**
+	 * Optional: journal of the finished games (relative to the config path like the output 
+	 * file).  If the ladder is stopped and run again with the same journal, it skips the 
+	 * games that are already in the journal.  Delete the journal to start the ladder over.
+	 */
+	String journalFileName;
+
+	/**
+	 * Optional: run each game in one of this many worker JVMs on this machine instead of 
+	 * on threads in the ladder's JVM (0 means use threads)
+	 */
+	int numWorkerProcesses;
+
+	/**
+	 * Optional: port the ladder listens on for workers.  0 picks a free port that only 
+	 * workers on this machine can reach; set it to add workers from other machines.
+	 */
+	int workerPort;
+
+	/**
+	 * Optional: address the ladder listens on for workers when workerPort is set.  Leave it
+	 * out to only take workers on this machine; set it to the address the other machines
+	 * use (or 0.0.0.0 for every interface) to add workers from other machines.
+	 */
+	String workerAddress;
+
+	/**
+	 * Optional: seconds the ladder waits for a worker to connect when none are connected (0 
+	 * means 60) before it gives up.  Gives workers started by hand on other machines time to 
+	 * connect (or reconnect).
+	 */
+	int workerWaitTime;
+
+	/**
+	 * Optional: if true, the ladder picks each match from the current skill ratings (the 
+	 * match it learns the most from) and stops once the ranking is stable instead of playing
+	 * every combination of variable teams numRepeatMatches times
+	 */
+	boolean adaptiveScheduling;
+
+	/**
+	 * Optional: most games the adaptive ladder will play (0 means no more than the full ladder)
+	 */
+	int maximumAdaptiveGames;
+
+	/**
+	 * Optional: the adaptive ladder stops when each team is ahead of the next one in the ranking 
+	 * with at least this probability (0 means 0.95) ...
+	 */
+	double rankingConfidence;
+
+	/**
+	 * Optional: ... or both of their rating deviations are below this (0 means 2.0)
+	 */
+	double maximumRatingDeviation;
+
+	/**
+	 * Optional: if true, each game gets its own copy of each team's knowledge file and the
+	 * ladder merges it back (with the client's mergeKnowledge) when the game finishes, so
+	 * games running at the same time don't overwrite each other's knowledge
+	 */
+	boolean mergeKnowledge;
+
 	public void setVariableTeams(HighLevelTeamConfig[] variableTeams) {
 		this.variableTeams = variableTeams;
 	}
@@ -42,6 +105,49 @@ public class LadderConfig {
 		return outputFileName;
 	}
 
+	public String getJournalFileName() {
+		return journalFileName;
+	}
+
+	public void setJournalFileName(String journalFileName) {
+		this.journalFileName = journalFileName;
+	}
+
+	public int getNumWorkerProcesses() {
+		return numWorkerProcesses;
+	}
+
+	public void setNumWorkerProcesses(int numWorkerProcesses) {
+		this.numWorkerProcesses = numWorkerProcesses;
+	}
+
+	public int getWorkerPort() {
+		return workerPort;
+	}
+
+	public void setWorkerPort(int workerPort) {
+		this.workerPort = workerPort;
+	}
+
+	public String getWorkerAddress() {
+		return workerAddress;
+	}
+
+	public void setWorkerAddress(String workerAddress) {
+		this.workerAddress = workerAddress;
+	}
+
+	public int getWorkerWaitTime() {
+		if (workerWaitTime <= 0) {
+			return 60;
+		}
+		return workerWaitTime;
+	}
+
+	public void setWorkerWaitTime(int workerWaitTime) {
+		this.workerWaitTime = workerWaitTime;
+	}
+
 	public void setStaticTeams(HighLevelTeamConfig[] staticTeams) {
 		this.staticTeams = staticTeams;
 	}
@@ -62,6 +168,52 @@ public class LadderConfig {
 		return numRepeatMatches;
 	}
 
+	public boolean isAdaptiveScheduling() {
+		return adaptiveScheduling;
+	}
+
+	public void setAdaptiveScheduling(boolean adaptiveScheduling) {
+		this.adaptiveScheduling = adaptiveScheduling;
+	}
+
+	public int getMaximumAdaptiveGames() {
+		return maximumAdaptiveGames;
+	}
+
+	public void setMaximumAdaptiveGames(int maximumAdaptiveGames) {
+		this.maximumAdaptiveGames = maximumAdaptiveGames;
+	}
+
+	public double getRankingConfidence() {
+		if (rankingConfidence <= 0) {
+			return 0.95;
+		}
+		return rankingConfidence;
+	}
+
+	public void setRankingConfidence(double rankingConfidence) {
+		this.rankingConfidence = rankingConfidence;
+	}
+
+	public double getMaximumRatingDeviation() {
+		if (maximumRatingDeviation <= 0) {
+			return 2.0;
+		}
+		return maximumRatingDeviation;
+	}
+
+	public void setMaximumRatingDeviation(double maximumRatingDeviation) {
+		this.maximumRatingDeviation = maximumRatingDeviation;
+	}
+
+	public boolean isMergeKnowledge() {
+		return mergeKnowledge;
+	}
+
+	public void setMergeKnowledge(boolean mergeKnowledge) {
+		this.mergeKnowledge = mergeKnowledge;
+	}
+
 	/**
 	 * Make the player names automatically generated for the ladder unique
 	 */
@@ -74,4 +226,19 @@ public class LadderConfig {
 			}
 		}
 	}
+
+	/**
+	 * Returns a copy that can be changed without changing this one
+	 * @return
+	 */
+	public LadderConfig deepClone() {
+		try {
+			LadderConfig copy = (LadderConfig) clone();
+			copy.staticTeams = HighLevelTeamConfig.deepClone(staticTeams);
+			copy.variableTeams = HighLevelTeamConfig.deepClone(variableTeams);
+			return copy;
+		} catch (CloneNotSupportedException e) {
+			throw new IllegalStateException(e);
+		}
+	}
 }
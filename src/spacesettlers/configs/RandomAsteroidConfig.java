@@ -5,7 +5,7 @@ package spacesettlers.configs;
  * @author amy
  *
  */
-public class RandomAsteroidConfig {
+public class RandomAsteroidConfig implements Cloneable {
 	double probabilityMineable;
 	
 	int numberInitialAsteroids;
@@ -68,5 +68,16 @@ public class RandomAsteroidConfig {
 	public double getProbabilityGameable() {
 		return probabilityGameable;
 	}
-	
+
+	/**
+	 * Returns a copy that can be changed without changing this one
+	 * @return
+	 */
+	public RandomAsteroidConfig deepClone() {
+		try {
+			return (RandomAsteroidConfig) clone();
+		} catch (CloneNotSupportedException e) {
+			throw new IllegalStateException(e);
+		}
+	}
 }
@@ -5,7 +5,7 @@ package spacesettlers.configs;
  * 
  * @author amy
  */
-public class SpaceSettlersConfig {
+public class SpaceSettlersConfig implements Cloneable {
 	/**
 	 * Width and height of the virtual environment
 	 */
@@ -78,6 +78,47 @@ public class SpaceSettlersConfig {
 	 */
 	String scoringMethod;
 	
+	/**
+	 * Optional: if specified, the simulator records a binary replay of every step to this file
+	 * (see spacesettlers.replay).  Leave it out to turn recording off.
+	 */
+	String replayFile;
+	
+	/**
+	 * Optional: if specified, per-step team telemetry is written to this file (see spacesettlers.telemetry)
+	 */
+	String telemetryFile;
+	
+	/**
+	 * Format for the telemetry file: csv (the default), binary, or the class name of a TelemetrySink
+	 */
+	String telemetryFormat;
+	
+	/**
+	 * Optional: if true, the simulator times each phase of every step and prints a summary at the end
+	 */
+	boolean profilePhases;
+	
+	/**
+	 * Optional: if specified, the phase profile of every step is written to this file (turns on profilePhases)
+	 */
+	String profileTraceFile;
+	
+	/**
+	 * Optional: milliseconds per move for the asteroids' Monte Carlo search agent in the
+	 * gameable asteroid games.  Leave it out (or 0) for the heuristic agent.  Only the ship's
+	 * moves count against the mini-game time limits, but each game holds a mini-game thread
+	 * for the asteroid's thinking time too (and the physics waits for the game at the next
+	 * step), so keep it small.
+	 */
+	int asteroidGameBudget;
+	
+	/**
+	 * Optional: if true, the asteroids play tic tac toe perfectly from precomputed tables
+	 * (see spacesettlers.game.TicTacToeTable).  Ignored if asteroidGameBudget is set.
+	 */
+	boolean asteroidPerfectPlay;
+	
 	/**
 	 * @return the height of the simulation environment.  This is measured in pixels.
 	 */
@@ -114,6 +155,13 @@ public class SpaceSettlersConfig {
 		return randomSeed;
 	}
 
+	/**
+	 * @param randomSeed the randomSeed to set (0 means a new seed each game)
+	 */
+	public void setRandomSeed(long randomSeed) {
+		this.randomSeed = randomSeed;
+	}
+
 	/**
 	 * @return the numBeacons
 	 */
@@ -193,4 +241,108 @@ public class SpaceSettlersConfig {
 	public void setBases(BaseConfig[] bases) {
 		this.bases = bases;
 	}
+
+	/**
+	 * Return the replay file name (null if replays are not being recorded)
+	 * @return
+	 */
+	public String getReplayFile() {
+		return replayFile;
+	}
+
+	public void setReplayFile(String replayFile) {
+		this.replayFile = replayFile;
+	}
+
+	/**
+	 * Return the telemetry file name (null if telemetry is off)
+	 * @return
+	 */
+	public String getTelemetryFile() {
+		return telemetryFile;
+	}
+
+	public void setTelemetryFile(String telemetryFile) {
+		this.telemetryFile = telemetryFile;
+	}
+
+	public String getTelemetryFormat() {
+		return telemetryFormat;
+	}
+
+	public boolean isProfilePhases() {
+		return profilePhases;
+	}
+
+	/**
+	 * Return the phase trace file name (null if not tracing)
+	 * @return
+	 */
+	public String getProfileTraceFile() {
+		return profileTraceFile;
+	}
+
+	public void setProfileTraceFile(String profileTraceFile) {
+		this.profileTraceFile = profileTraceFile;
+	}
+
+	/**
+	 * Return the time per move in milliseconds for the asteroids' game agent (0 for the heuristic agent)
+	 * @return
+	 */
+	public int getAsteroidGameBudget() {
+		return asteroidGameBudget;
+	}
+
+	public void setAsteroidGameBudget(int asteroidGameBudget) {
+		this.asteroidGameBudget = asteroidGameBudget;
+	}
+
+	/**
+	 * Return true if the asteroids play tic tac toe from the perfect play tables
+	 * @return
+	 */
+	public boolean isAsteroidPerfectPlay() {
+		return asteroidPerfectPlay;
+	}
+
+	public void setAsteroidPerfectPlay(boolean asteroidPerfectPlay) {
+		this.asteroidPerfectPlay = asteroidPerfectPlay;
+	}
+
+	/**
+	 * Returns a copy that can be changed without changing this one (the team, base,
+	 * asteroid and flag configs are copied too)
+	 * @return
+	 */
+	public SpaceSettlersConfig deepClone() {
+		try {
+			SpaceSettlersConfig copy = (SpaceSettlersConfig) clone();
+			copy.teams = HighLevelTeamConfig.deepClone(teams);
+			if (bases != null) {
+				copy.bases = new BaseConfig[bases.length];
+				for (int i = 0; i < bases.length; i++) {
+					copy.bases[i] = bases[i].deepClone();
+				}
+			}
+			if (randomAsteroids != null) {
+				copy.randomAsteroids = randomAsteroids.deepClone();
+			}
+			if (fixedAsteroids != null) {
+				copy.fixedAsteroids = new FixedAsteroidConfig[fixedAsteroids.length];
+				for (int i = 0; i < fixedAsteroids.length; i++) {
+					copy.fixedAsteroids[i] = fixedAsteroids[i].deepClone();
+				}
+			}
+			if (flags != null) {
+				copy.flags = new FlagConfig[flags.length];
+				for (int i = 0; i < flags.length; i++) {
+					copy.flags[i] = flags[i].deepClone();
+				}
+			}
+			return copy;
+		} catch (CloneNotSupportedException e) {
+			throw new IllegalStateException(e);
+		}
+	}
 }
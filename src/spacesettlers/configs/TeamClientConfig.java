@@ -1,6 +1,6 @@
 package spacesettlers.configs;
 
-public class TeamClientConfig {
+public class TeamClientConfig implements Cloneable {
 	/**
 	 * fully qualified class name for the team
 	 */
@@ -26,6 +26,31 @@ public class TeamClientConfig {
 	 */
 	String knowledgeFile;
 
+	/**
+	 * Optional:  the jar (or jars and class directories separated by the path separator) with 
+	 * the team's classes.  Each one is loaded by its own class loader so teams can't see each 
+	 * other's classes.  If this is missing, the team is loaded from the simulator's classpath.
+	 */
+	String classPath;
+
+	/**
+	 * Optional:  run the client in its own process (see RemoteTeamClient) so it can't take the 
+	 * simulator's memory or stop it with garbage collection.  Defaults to false.
+	 */
+	boolean separateProcess;
+
+	/**
+	 * Optional:  heap limit in megabytes for the client's process (defaults to 512)
+	 */
+	int maximumMemoryMB;
+
+	/**
+	 * Optional:  CPU time limit in seconds for the client's process (defaults to no limit).
+	 * This is the total CPU time of the process over the whole game (ulimit -t, so only
+	 * where there is a /bin/sh), not a limit per step.
+	 */
+	int maximumCpuSeconds;
+
 	/**
 	 * @return the classname
 	 */
@@ -74,8 +99,75 @@ public class TeamClientConfig {
 	public String getKnowledgeFile() {
 		return knowledgeFile;
 	}
-	
-	
-	
 
+	/**
+	 * @return the classPath (null if the team is on the simulator's classpath)
+	 */
+	public String getClassPath() {
+		return classPath;
+	}
+
+	/**
+	 * @param classPath the classPath to set
+	 */
+	public void setClassPath(String classPath) {
+		this.classPath = classPath;
+	}
+
+	/**
+	 * @return true if the client runs in its own process
+	 */
+	public boolean isSeparateProcess() {
+		return separateProcess;
+	}
+
+	/**
+	 * @param separateProcess the separateProcess to set
+	 */
+	public void setSeparateProcess(boolean separateProcess) {
+		this.separateProcess = separateProcess;
+	}
+
+	/**
+	 * @return the maximumMemoryMB (512 if it isn't set)
+	 */
+	public int getMaximumMemoryMB() {
+		if (maximumMemoryMB == 0) {
+			return 512;
+		}
+		return maximumMemoryMB;
+	}
+
+	/**
+	 * @param maximumMemoryMB the maximumMemoryMB to set
+	 */
+	public void setMaximumMemoryMB(int maximumMemoryMB) {
+		this.maximumMemoryMB = maximumMemoryMB;
+	}
+
+	/**
+	 * @return the maximumCpuSeconds (0 for no limit)
+	 */
+	public int getMaximumCpuSeconds() {
+		return maximumCpuSeconds;
+	}
+
+	/**
+	 * @param maximumCpuSeconds the maximumCpuSeconds to set
+	 */
+	public void setMaximumCpuSeconds(int maximumCpuSeconds) {
+		this.maximumCpuSeconds = maximumCpuSeconds;
+	}
+
+	/**
+	 * Returns a copy that can be changed without changing this one
+	 * @return
+	 */
+	public TeamClientConfig deepClone() {
+		try {
+			return (TeamClientConfig) clone();
+		} catch (CloneNotSupportedException e) {
+			throw new IllegalStateException(e);
+		}
+	}
 }
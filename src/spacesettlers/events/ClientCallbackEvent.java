@@ -0,0 +1,46 @@
+package spacesettlers.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * One timed call from Team into a team client (the event duration is the time the
+ * simulator waited for the client)
+ * 
+ * @author amy
+ */
+@Name("spacesettlers.ClientCallback")
+@Label("Client Callback")
+@Category({"SpaceSettlers", "Clients"})
+@Description("A call into a team client")
+public class ClientCallbackEvent extends Event {
+	@Label("Team")
+	String team;
+
+	@Label("Phase")
+	String phase;
+
+	@Label("Timed Out")
+	boolean timedOut;
+
+	@Label("Clone Size")
+	@Description("Number of objects cloned for the call (space plus the team's own objects)")
+	int cloneSize;
+
+	/**
+	 * Fill in everything but the duration
+	 * @param team
+	 * @param phase
+	 * @param timedOut
+	 * @param cloneSize
+	 */
+	public void set(String team, String phase, boolean timedOut, int cloneSize) {
+		this.team = team;
+		this.phase = phase;
+		this.timedOut = timedOut;
+		this.cloneSize = cloneSize;
+	}
+}
@@ -0,0 +1,38 @@
+package spacesettlers.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A collision handled by CollisionHandler.collide
+ * 
+ * @author amy
+ */
+@Name("spacesettlers.Collision")
+@Label("Collision")
+@Category({"SpaceSettlers", "Physics"})
+@Description("A collision between two objects")
+public class CollisionEvent extends Event {
+	@Label("First Type")
+	String type1;
+
+	@Label("Second Type")
+	String type2;
+
+	@Label("Type Pair")
+	@Description("Both types in alphabetical order (for grouping)")
+	String typePair;
+
+	public void set(String type1, String type2) {
+		this.type1 = type1;
+		this.type2 = type2;
+		if (type1.compareTo(type2) <= 0) {
+			typePair = type1 + "-" + type2;
+		} else {
+			typePair = type2 + "-" + type1;
+		}
+	}
+}
@@ -0,0 +1,37 @@
+package spacesettlers.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * An object that died (ships) or was removed from the simulated space
+ * 
+ * @author amy
+ */
+@Name("spacesettlers.ObjectDeath")
+@Label("Object Death")
+@Category({"SpaceSettlers", "Physics"})
+@Description("An object died or was removed from the space")
+public class ObjectDeathEvent extends Event {
+	@Label("Object Type")
+	String objectType;
+
+	@Label("Team")
+	String team;
+
+	@Label("X")
+	double x;
+
+	@Label("Y")
+	double y;
+
+	public void set(String objectType, String team, double x, double y) {
+		this.objectType = objectType;
+		this.team = team;
+		this.x = x;
+		this.y = y;
+	}
+}
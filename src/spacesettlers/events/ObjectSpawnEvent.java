@@ -0,0 +1,37 @@
+package spacesettlers.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * An object added to (or respawned in) the simulated space
+ * 
+ * @author amy
+ */
+@Name("spacesettlers.ObjectSpawn")
+@Label("Object Spawn")
+@Category({"SpaceSettlers", "Physics"})
+@Description("An object was added to or respawned in the space")
+public class ObjectSpawnEvent extends Event {
+	@Label("Object Type")
+	String objectType;
+
+	@Label("Respawn")
+	boolean respawn;
+
+	@Label("X")
+	double x;
+
+	@Label("Y")
+	double y;
+
+	public void set(String objectType, boolean respawn, double x, double y) {
+		this.objectType = objectType;
+		this.respawn = respawn;
+		this.x = x;
+		this.y = y;
+	}
+}
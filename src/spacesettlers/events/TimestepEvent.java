@@ -0,0 +1,32 @@
+package spacesettlers.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * One simulator time step (from the start of advanceTime to the end of the step)
+ * 
+ * @author amy
+ */
+@Name("spacesettlers.Timestep")
+@Label("Timestep")
+@Category({"SpaceSettlers", "Simulator"})
+@Description("One step of the simulator")
+public class TimestepEvent extends Event {
+	@Label("Timestep")
+	int timestep;
+
+	@Label("Number of Objects")
+	int numObjects;
+
+	public void setTimestep(int timestep) {
+		this.timestep = timestep;
+	}
+
+	public void setNumObjects(int numObjects) {
+		this.numObjects = numObjects;
+	}
+}
@@ -58,4 +58,72 @@ public abstract class AbstractGame {
 	 * @return
 	 */
 	public abstract AbstractGameAgent getCurrentPlayer();
+
+	/**
+	 * Return the number (player1 or player2) of the player whose turn it is
+	 * @return
+	 */
+	public int getCurrentPlayerNumber() {
+		return getTurn() ? player1 : player2;
+	}
+
+	/*
+	 * The methods below let GameTreeSearch (and student search code) play and take back moves
+	 * on one copy of the game instead of cloning boards at every node.  Moves are small ints
+	 * (for tic tac toe, the square).  Every game has to support them since the search agents
+	 * can be asked to play any game.
+	 */
+
+	/**
+	 * Return a copy of the game for searching (the agents are shared, the board is not)
+	 * @return
+	 */
+	public abstract AbstractGame copyForSearch();
+
+	/**
+	 * Largest number of legal moves in any position (the size of the array for getLegalMoves)
+	 * @return
+	 */
+	public abstract int getMaxMoves();
+
+	/**
+	 * Fill in the legal moves for the current player
+	 * @param moves array of at least getMaxMoves() entries
+	 * @return the number of moves
+	 */
+	public abstract int getLegalMoves(int[] moves);
+
+	/**
+	 * Play the move for the current player and switch turns
+	 * @param move
+	 */
+	public abstract void makeMove(int move);
+
+	/**
+	 * Take back the move (which must be the last one made) and switch turns back
+	 * @param move
+	 */
+	public abstract void unmakeMove(int move);
+
+	/**
+	 * Zobrist hash of the position (including whose turn it is)
+	 * @return
+	 */
+	public abstract long getHash();
+
+	/**
+	 * Convert a move into the action to return from getNextMove
+	 * @param move
+	 * @return
+	 */
+	public abstract AbstractGameAction getAction(int move);
+
+	/**
+	 * Heuristic value of a position that isn't over, from the point of view of the player to move
+	 * (positive is good for them).  The default knows nothing about the game.
+	 * @return
+	 */
+	public int evaluate() {
+		return 0;
+	}
 }
@@ -10,6 +10,11 @@ import java.util.concurrent.ThreadLocalRandom;
  */
 
 public class GameFactory {
+	/**
+	 * Names of the games the factory can make (used by generateNewGame(String, ...))
+	 */
+	public static final String[] GAME_NAMES = {"TicTacToe2D", "TicTacToe3D", "Mancala"};
+
 	/**
 	 * @param lhs_player Player 1
 	 * @param rhs_player Player 2
@@ -18,17 +23,38 @@ public class GameFactory {
 	 */
 	public static AbstractGame generateNewGame(final AbstractGameAgent lhs_player,
 											   final AbstractGameAgent rhs_player, ThreadLocalRandom random) {
-		int game_id = random.nextInt(2);
+		int game_id = random.nextInt(3);
 		if (game_id == 0) {
-			System.out.println("Generating a 3D Tic Tac Toe game");
 			return new TicTacToe3D(lhs_player, rhs_player);
 		} else if (game_id == 1) {
-			System.out.println("Generating a 2D Tic Tac Toe game");
 			return new TicTacToe2D(lhs_player, rhs_player);
 		} else {
-			return new TicTacToe3D(lhs_player, rhs_player);
-			// TODO: implement the next new game
-			//return new Mancala(lhs_player, rhs_player);
+			return new Mancala(lhs_player, rhs_player);
+		}
+	}
+
+	/**
+	 * Make a new game of the named type with player1 moving first (used by tournaments,
+	 * which need to choose who goes first)
+	 *
+	 * @param gameName one of GAME_NAMES
+	 * @param player1 the player who moves first
+	 * @param player2 the other player
+	 * @return the new game
+	 * @throws IllegalArgumentException if there is no game with that name
+	 */
+	public static AbstractGame generateNewGame(String gameName, final AbstractGameAgent player1,
+											   final AbstractGameAgent player2) {
+		if (gameName.equalsIgnoreCase("TicTacToe2D")) {
+			int size = TicTacToe2DBoard.getBoardSize();
+			return new TicTacToe2D(new int[size][size], true, player1, player2);
+		} else if (gameName.equalsIgnoreCase("TicTacToe3D")) {
+			int size = TicTacToe3DBoard.getBoardSize();
+			return new TicTacToe3D(new int[size][size][size], true, player1, player2);
+		} else if (gameName.equalsIgnoreCase("Mancala")) {
+			return new Mancala(new MancalaBoard().getBoard(), true, player1, player2);
+		} else {
+			throw new IllegalArgumentException("Unknown game " + gameName);
 		}
 	}
 }
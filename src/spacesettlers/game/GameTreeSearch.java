@@ -0,0 +1,308 @@
+package spacesettlers.game;
+
+/**
+ * Negamax search with alpha-beta pruning, iterative deepening and a transposition table
+ * for any game, using the search methods in AbstractGame (makeMove, unmakeMove,
+ * getLegalMoves and getHash).  The search plays and takes back moves on a single copy of
+ * the game so nothing is cloned or allocated per node.
+ *
+ * The search stops at a deadline (System.nanoTime()) and returns the best move from the
+ * deepest iteration it finished, so it can be used inside the simulator's time limits.
+ *
+ * Scores are from the point of view of the player to move.  Wins are worth WIN_SCORE minus
+ * the number of moves to reach them so quicker wins (and slower losses) are preferred.
+ * Games where a player can move twice in a row (e.g. mancala) are handled by only negating
+ * the value of a move when the turn changes.
+ *
+ * @author amy
+ */
+public class GameTreeSearch {
+	public static final int WIN_SCORE = 1000000;
+
+	/**
+	 * Deepest search possible (in moves)
+	 */
+	public static final int MAX_PLY = 64;
+
+	/**
+	 * Depth stored in the table for results that didn't hit the depth limit (good at any depth)
+	 */
+	static final int EXHAUSTIVE_DEPTH = Byte.MAX_VALUE;
+
+	/**
+	 * The clock is checked every this many nodes (plus one)
+	 */
+	static final int CHECK_INTERVAL = 1023;
+
+	static final int INFINITY = WIN_SCORE + 1;
+
+	TranspositionTable table;
+
+	/**
+	 * Move lists for each ply (so nothing is allocated during the search)
+	 */
+	int[][] moveLists;
+
+	long deadline;
+	boolean stopped;
+
+	/**
+	 * True if the current subtree stopped at the depth limit somewhere
+	 */
+	boolean hitDepthLimit;
+
+	long numNodes;
+	int completedDepth, bestScore, rootBestMove;
+
+	/**
+	 * Make a search with a 2^16 entry transposition table
+	 */
+	public GameTreeSearch() {
+		this(16);
+	}
+
+	/**
+	 * Make a search with a 2^tableSizeBits entry transposition table
+	 * @param tableSizeBits
+	 */
+	public GameTreeSearch(int tableSizeBits) {
+		table = new TranspositionTable(tableSizeBits);
+		moveLists = new int[MAX_PLY][0];
+	}
+
+	/**
+	 * Search the game for the current player
+	 *
+	 * @param game the game to search (moves are made and unmade on it, so pass a copy)
+	 * @param deadlineNanos System.nanoTime() by which the search must stop
+	 * @param maxDepth deepest iteration to search
+	 * @return the best move or TranspositionTable.NO_MOVE if there are no legal moves
+	 */
+	public int search(AbstractGame game, long deadlineNanos, int maxDepth) {
+		int maxMoves = game.getMaxMoves();
+		if (moveLists[0].length < maxMoves) {
+			moveLists = new int[MAX_PLY][maxMoves];
+		}
+
+		deadline = deadlineNanos;
+		stopped = false;
+		numNodes = 0;
+		completedDepth = 0;
+		bestScore = 0;
+
+		if (game.isGameOver() || game.getLegalMoves(moveLists[0]) == 0) {
+			return TranspositionTable.NO_MOVE;
+		}
+		int bestMove = moveLists[0][0];
+
+		maxDepth = Math.min(maxDepth, MAX_PLY - 1);
+		for (int depth = 1; depth <= maxDepth; depth++) {
+			if (System.nanoTime() - deadline > 0) {
+				break;
+			}
+
+			hitDepthLimit = false;
+			rootBestMove = TranspositionTable.NO_MOVE;
+			int score = negamax(game, depth, 0, -INFINITY, INFINITY);
+			if (stopped) {
+				break;
+			}
+
+			bestMove = rootBestMove;
+			bestScore = score;
+			completedDepth = depth;
+
+			// stop early if the result is decided or the whole tree was searched
+			if (Math.abs(score) >= WIN_SCORE - MAX_PLY || !hitDepthLimit) {
+				break;
+			}
+		}
+
+		return bestMove;
+	}
+
+	/**
+	 * Negamax with alpha-beta
+	 * @return the value for the player to move
+	 */
+	int negamax(AbstractGame game, int depth, int ply, int alpha, int beta) {
+		numNodes++;
+		if ((numNodes & CHECK_INTERVAL) == 0 && System.nanoTime() - deadline > 0) {
+			stopped = true;
+		}
+		if (stopped) {
+			return 0;
+		}
+
+		if (game.isGameOver()) {
+			return terminalScore(game, ply);
+		}
+		if (depth == 0 || ply >= MAX_PLY - 1) {
+			hitDepthLimit = true;
+			return evaluate(game);
+		}
+
+		long hash = game.getHash();
+		int originalAlpha = alpha;
+		int tableMove = TranspositionTable.NO_MOVE;
+		int slot = table.probe(hash);
+		if (slot >= 0) {
+			tableMove = table.getBestMove(slot);
+			int tableDepth = table.getDepth(slot);
+			if (tableDepth >= depth && ply > 0) {
+				int value = fromTable(table.getValue(slot), ply);
+				byte type = table.getType(slot);
+				if (type == TranspositionTable.LOWER_BOUND) {
+					alpha = Math.max(alpha, value);
+				} else if (type == TranspositionTable.UPPER_BOUND) {
+					beta = Math.min(beta, value);
+				}
+				if (type == TranspositionTable.EXACT || alpha >= beta) {
+					if (tableDepth != EXHAUSTIVE_DEPTH) {
+						hitDepthLimit = true;
+					}
+					return value;
+				}
+			}
+		}
+
+		int[] moves = moveLists[ply];
+		int numMoves = game.getLegalMoves(moves);
+		if (numMoves == 0) {
+			return 0;
+		}
+
+		// try the move from the table first
+		if (tableMove != TranspositionTable.NO_MOVE) {
+			for (int i = 1; i < numMoves; i++) {
+				if (moves[i] == tableMove) {
+					moves[i] = moves[0];
+					moves[0] = tableMove;
+					break;
+				}
+			}
+		}
+
+		boolean parentHitDepthLimit = hitDepthLimit;
+		hitDepthLimit = false;
+
+		int best = -INFINITY;
+		int bestMove = moves[0];
+		int player = game.getCurrentPlayerNumber();
+		for (int i = 0; i < numMoves; i++) {
+			int move = moves[i];
+			game.makeMove(move);
+			int value;
+			if (game.getCurrentPlayerNumber() == player) {
+				value = negamax(game, depth - 1, ply + 1, alpha, beta);
+			} else {
+				value = -negamax(game, depth - 1, ply + 1, -beta, -alpha);
+			}
+			game.unmakeMove(move);
+
+			if (stopped) {
+				return 0;
+			}
+
+			if (value > best) {
+				best = value;
+				bestMove = move;
+			}
+			if (value > alpha) {
+				alpha = value;
+				if (alpha >= beta) {
+					break;
+				}
+			}
+		}
+
+		byte type;
+		if (best <= originalAlpha) {
+			type = TranspositionTable.UPPER_BOUND;
+		} else if (best >= beta) {
+			type = TranspositionTable.LOWER_BOUND;
+		} else {
+			type = TranspositionTable.EXACT;
+		}
+		table.store(hash, hitDepthLimit ? depth : EXHAUSTIVE_DEPTH, toTable(best, ply), type, bestMove);
+
+		hitDepthLimit |= parentHitDepthLimit;
+
+		if (ply == 0) {
+			rootBestMove = bestMove;
+		}
+		return best;
+	}
+
+	/**
+	 * Heuristic value of a position at the depth limit (override to use your own)
+	 * @param game
+	 * @return value for the player to move
+	 */
+	protected int evaluate(AbstractGame game) {
+		return game.evaluate();
+	}
+
+	/**
+	 * Value of a finished game for the player to move
+	 */
+	int terminalScore(AbstractGame game, int ply) {
+		int winner = game.getWinner();
+		if (winner == game.getCurrentPlayerNumber()) {
+			return WIN_SCORE - ply;
+		} else if (winner == AbstractGame.player1 || winner == AbstractGame.player2) {
+			return -(WIN_SCORE - ply);
+		} else {
+			return 0;
+		}
+	}
+
+	/**
+	 * Win scores are stored relative to the position (not the root) so they can be reused
+	 */
+	static int toTable(int value, int ply) {
+		if (value >= WIN_SCORE - MAX_PLY) {
+			return value + ply;
+		} else if (value <= -(WIN_SCORE - MAX_PLY)) {
+			return value - ply;
+		}
+		return value;
+	}
+
+	static int fromTable(int value, int ply) {
+		if (value >= WIN_SCORE - MAX_PLY) {
+			return value - ply;
+		} else if (value <= -(WIN_SCORE - MAX_PLY)) {
+			return value + ply;
+		}
+		return value;
+	}
+
+	/**
+	 * Deepest iteration finished by the last search
+	 * @return
+	 */
+	public int getCompletedDepth() {
+		return completedDepth;
+	}
+
+	/**
+	 * Value of the best move from the last search (for the player to move)
+	 * @return
+	 */
+	public int getBestScore() {
+		return bestScore;
+	}
+
+	/**
+	 * Number of positions visited by the last search
+	 * @return
+	 */
+	public long getNumNodes() {
+		return numNodes;
+	}
+
+	public TranspositionTable getTable() {
+		return table;
+	}
+}
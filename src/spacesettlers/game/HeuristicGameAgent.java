@@ -6,10 +6,29 @@ package spacesettlers.game;
 public class HeuristicGameAgent extends AbstractGameAgent{
     HeuristicTicTacToe3DGameAgent heuristic3DTTTPlayer;
     HeuristicTicTacToe2DGameAgent heuristic2DTTTPlayer;
+    HeuristicMancalaGameAgent heuristicMancalaPlayer;
+
+    /**
+     * If true, tic tac toe moves come from the perfect play tables (TicTacToeTable)
+     */
+    boolean usePerfectPlay;
 
     public HeuristicGameAgent() {
+        this(false);
+    }
+
+    /**
+     * Make an agent that plays tic tac toe perfectly from the precomputed tables (if
+     * usePerfectPlay is true) or with the heuristic agents.  Mancala always uses the
+     * heuristic agent.
+     *
+     * @param usePerfectPlay
+     */
+    public HeuristicGameAgent(boolean usePerfectPlay) {
+        this.usePerfectPlay = usePerfectPlay;
         heuristic2DTTTPlayer = new HeuristicTicTacToe2DGameAgent();
         heuristic3DTTTPlayer = new HeuristicTicTacToe3DGameAgent();
+        heuristicMancalaPlayer = new HeuristicMancalaGameAgent();
     }
 
     /**
@@ -20,14 +39,45 @@ public class HeuristicGameAgent extends AbstractGameAgent{
      */
     @Override
     public AbstractGameAction getNextMove(AbstractGame game) {
-        if (game.getClass() == TicTacToe2D.class) {
+        if (usePerfectPlay && game.getClass() == TicTacToe2D.class) {
+            TicTacToe2DBoard board = ((TicTacToe2D) game).myBoard;
+            return getTableMove(game, TicTacToeTable.get2DTable(), board.getPlayerMask(AbstractGame.player1),
+                    board.getPlayerMask(AbstractGame.player2));
+        } else if (usePerfectPlay && game.getClass() == TicTacToe3D.class) {
+            TicTacToe3DBoard board = ((TicTacToe3D) game).myBoard;
+            return getTableMove(game, TicTacToeTable.get3DTable(), board.getPlayerMask(AbstractGame.player1),
+                    board.getPlayerMask(AbstractGame.player2));
+        } else if (game.getClass() == TicTacToe2D.class) {
             //System.out.println("Getting a move for the 2D game\n");
             heuristic2DTTTPlayer.setPlayer(this.getPlayer());
             return heuristic2DTTTPlayer.getNextMove(game);
+        } else if (game.getClass() == Mancala.class) {
+            heuristicMancalaPlayer.setPlayer(this.getPlayer());
+            return heuristicMancalaPlayer.getNextMove(game);
         } else {
             //System.out.println("Getting a move for the 3D game\n");
             heuristic3DTTTPlayer.setPlayer(this.getPlayer());
             return heuristic3DTTTPlayer.getNextMove(game);
         }
     }
+
+    /**
+     * Look up the move in the table for whoever's turn it is
+     */
+    AbstractGameAction getTableMove(AbstractGame game, TicTacToeTable table, int player1Mask, int player2Mask) {
+        int move;
+        if (game.getCurrentPlayerNumber() == AbstractGame.player1) {
+            move = table.getBestMove(player1Mask, player2Mask);
+        } else {
+            move = table.getBestMove(player2Mask, player1Mask);
+        }
+        if (move == TranspositionTable.NO_MOVE) {
+            return null;
+        }
+        return game.getAction(move);
+    }
+
+    public boolean isUsingPerfectPlay() {
+        return usePerfectPlay;
+    }
 }
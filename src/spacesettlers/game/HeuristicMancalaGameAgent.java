@@ -0,0 +1,56 @@
+package spacesettlers.game;
+
+/**
+ * Plays Mancala using simple rules: take a move that ends in our store (we go again),
+ * otherwise the move that puts the most stones in our store (captures), otherwise the
+ * pit closest to our store
+ * 
+ * @author amy
+ *
+ */
+public class HeuristicMancalaGameAgent extends AbstractGameAgent {
+
+	public HeuristicMancalaGameAgent() {
+	}
+
+	/**
+	 * Try each pit on a copy of the game and pick the best one by the rules above
+	 * 
+	 * @param game
+	 * @return
+	 */
+	public AbstractGameAction getNextMove(AbstractGame game) {
+		Mancala mancala = (Mancala) game.copyForSearch();
+		int player = mancala.getCurrentPlayerNumber();
+		int store = MancalaBoard.getStoreIndex(player);
+		int startingStore = mancala.myBoard.getNumStones(store);
+
+		int bestPit = -1;
+		int bestValue = Integer.MIN_VALUE;
+		// go from the pit closest to the store so ties favor it
+		for (int pit = MancalaBoard.NUM_PITS - 1; pit >= 0; pit--) {
+			if (!mancala.myBoard.isLegalMove(pit, player)) {
+				continue;
+			}
+
+			mancala.makeMove(pit);
+			int value = mancala.myBoard.getNumStones(store) - startingStore;
+			if (!mancala.isGameOver() && mancala.getCurrentPlayerNumber() == player) {
+				// going again is worth more than anything but a big capture
+				value += 5;
+			}
+			mancala.unmakeMove(pit);
+
+			if (value > bestValue) {
+				bestValue = value;
+				bestPit = pit;
+			}
+		}
+
+		if (bestPit < 0) {
+			return null;
+		}
+		return new MancalaAction(bestPit);
+	}
+
+}
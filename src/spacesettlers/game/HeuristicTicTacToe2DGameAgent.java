@@ -24,21 +24,21 @@ public class HeuristicTicTacToe2DGameAgent extends AbstractGameAgent {
 		//System.out.println("Player is " + this.getPlayer());
 
 		// check to see if the center is free
-		if (board.board[1][1] == board.empty) {
+		if (board.getCell(1, 1) == board.empty) {
 			return new TicTacToe2DAction(1, 1);
 		}
 
 		// check to see if we can win in one
 		for (int i = 0; i < 3; i++) {
 			for (int j = 0; j < 3; j++) {
-				if (board.board[i][j] == board.empty) {
+				if (board.getCell(i, j) == board.empty) {
 					TicTacToe2DAction action = new TicTacToe2DAction(i, j);
 					board.makeMove(action, this.player);
 					if (board.getWinningPlayer() == this.player) {
 						return action;
 					}
 					// unmake the move
-					board.board[i][j] = board.empty;
+					board.unMakeMove(action);
 				}
 			}
 		}
@@ -47,7 +47,7 @@ public class HeuristicTicTacToe2DGameAgent extends AbstractGameAgent {
 		// otherwise play the first available move
 		for (int i = 0; i < 3; i++) {
 			for (int j = 0; j < 3; j++) {
-				if (board.board[i][j] == board.empty) {
+				if (board.getCell(i, j) == board.empty) {
 					return new TicTacToe2DAction(i, j);
 				}
 			}
@@ -24,16 +24,16 @@ public class HeuristicTicTacToe3DGameAgent extends AbstractGameAgent {
 		//System.out.println("Player is " + this.getPlayer());
 
 		// check to see if the center is free
-		if (board.board[1][1][1] == board.empty) {
+		if (board.getCell(1, 1, 1) == board.empty) {
 			return new TicTacToe3DAction(1, 1, 1);
 		}
 		
 		// check to see if the other two centers are free
-		if (board.board[1][1][0] == board.empty) {
+		if (board.getCell(1, 1, 0) == board.empty) {
 			return new TicTacToe3DAction(1, 1, 0);
 		}
 
-		if (board.board[1][1][2] == board.empty) {
+		if (board.getCell(1, 1, 2) == board.empty) {
 			return new TicTacToe3DAction(1, 1, 2);
 		}
 
@@ -41,14 +41,14 @@ public class HeuristicTicTacToe3DGameAgent extends AbstractGameAgent {
 		for (int i = 0; i < 3; i++) {
 			for (int j = 0; j < 3; j++) {
 				for (int k = 0; k < 3; k++) {
-					if (board.board[i][j][k] == board.empty) {
+					if (board.getCell(i, j, k) == board.empty) {
 						TicTacToe3DAction action = new TicTacToe3DAction(i, j, k);
 						board.makeMove(action, this.player);
 						if (board.getWinningPlayer() == this.player) {
 							return action;
 						}
 						// unmake the move
-						board.board[i][j][k] = board.empty;
+						board.unMakeMove(action);
 					}
 				}
 			}
@@ -59,7 +59,7 @@ public class HeuristicTicTacToe3DGameAgent extends AbstractGameAgent {
 		for (int i = 0; i < 3; i++) {
 			for (int j = 0; j < 3; j++) {
 				for (int k = 0; k < 3; k++) {
-					if (board.board[i][j][k] == board.empty) {
+					if (board.getCell(i, j, k) == board.empty) {
 						return new TicTacToe3DAction(i, j, k);
 					}
 				}
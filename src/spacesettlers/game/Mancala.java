@@ -1,49 +1,197 @@
 package spacesettlers.game;
 
+import java.util.Arrays;
+import java.util.Random;
+
 /**
  * Standard mancala game
  *  Rules described here
  *  https://www.scholastic.com/content/dam/teachers/blogs/alycia-zimmerman/migrated-files/mancala_rules.pdf
+ *
+ * A player whose last stone lands in their own store goes again.  If a player picks an
+ * empty pit (or an illegal one) their turn is lost.
+ *
  * @author amy
  */
 public class Mancala extends AbstractGame {
-    @Override
-    public boolean isGameOver() {
-        return false;
-    }
-
-    @Override
-    public boolean getTurn() {
-        return false;
-    }
-
-    @Override
-    public void playAction(AbstractGameAction action) {
-
-    }
-
-    @Override
-    public int getWinner() {
-        return 0;
-    }
-
-    @Override
-    public AbstractGameBoard getBoard() {
-        return null;
-    }
-
-    @Override
-    public AbstractGameAgent getPlayer1() {
-        return null;
-    }
-
-    @Override
-    public AbstractGameAgent getPlayer2() {
-        return null;
-    }
-
-    @Override
-    public AbstractGameAgent getCurrentPlayer() {
-        return null;
-    }
+	/**
+	 * Values saved by makeMove for each move so unmakeMove can restore them: the 14 pits
+	 * and the turn
+	 */
+	static final int UNDO_SIZE = MancalaBoard.BOARD_LENGTH + 1;
+
+	MancalaBoard myBoard;
+	private boolean isPlayer1Turn;
+	private Random random;
+	private final AbstractGameAgent player1, player2;
+
+	/**
+	 * Saved positions for unmakeMove (grown if a search goes very deep)
+	 */
+	int[] undoStack;
+	int undoTop;
+
+	/**
+	 * Initialize a new board and choose a random first player
+	 */
+	public Mancala(final AbstractGameAgent lhs_player, final AbstractGameAgent rhs_player) {
+		myBoard = new MancalaBoard();
+		random = new Random();
+		isPlayer1Turn = true;
+
+		if (random.nextBoolean()) {
+			(this.player1 = lhs_player).setPlayer(AbstractGame.player1);
+			(this.player2 = rhs_player).setPlayer(AbstractGame.player2);
+		} else {
+			(this.player1 = rhs_player).setPlayer(AbstractGame.player1);
+			(this.player2 = lhs_player).setPlayer(AbstractGame.player2);
+		}
+	}
+
+	/**
+	 * Used for unit tests and tournaments so the board (and first player) is set to something specific
+	 * @param board
+	 */
+	public Mancala(int[] board, boolean player, final AbstractGameAgent player1, final AbstractGameAgent player2) {
+		this.myBoard = new MancalaBoard();
+		this.myBoard.setBoard(board);
+		isPlayer1Turn = player;
+		random = new Random();
+		(this.player1 = player1).setPlayer(AbstractGame.player1);
+		(this.player2 = player2).setPlayer(AbstractGame.player2);
+	}
+
+	/**
+	 * Copy used for searching (shares the agents, copies the board)
+	 * @param other
+	 */
+	private Mancala(Mancala other) {
+		myBoard = other.myBoard.deepClone();
+		isPlayer1Turn = other.isPlayer1Turn;
+		random = other.random;
+		player1 = other.player1;
+		player2 = other.player2;
+	}
+
+	@Override
+	public boolean isGameOver() {
+		return myBoard.isGameOver();
+	}
+
+	/**
+	 * Return true if is player 1's turn
+	 */
+	@Override
+	public boolean getTurn() {
+		return isPlayer1Turn;
+	}
+
+	@Override
+	public void playAction(AbstractGameAction action) {
+		MancalaAction mancalaAction = (MancalaAction) action;
+		int player = getCurrentPlayerNumber();
+		boolean goAgain = false;
+		if (mancalaAction != null && myBoard.isLegalMove(mancalaAction.pit, player)) {
+			goAgain = myBoard.sow(mancalaAction.pit, player);
+		}
+		if (!goAgain) {
+			isPlayer1Turn = !isPlayer1Turn;
+		}
+	}
+
+	/**
+	 * Returns the winning player (0 if the game isn't over and -1 for a tie)
+	 */
+	@Override
+	public int getWinner() {
+		return myBoard.getWinningPlayer();
+	}
+
+	@Override
+	public AbstractGameBoard getBoard() {
+		return myBoard.deepClone();
+	}
+
+	@Override
+	public AbstractGameAgent getPlayer1() {
+		return player1;
+	}
+
+	@Override
+	public AbstractGameAgent getPlayer2() {
+		return player2;
+	}
+
+	@Override
+	public AbstractGameAgent getCurrentPlayer() {
+		return isPlayer1Turn ? player1 : player2;
+	}
+
+	@Override
+	public AbstractGame copyForSearch() {
+		return new Mancala(this);
+	}
+
+	@Override
+	public int getMaxMoves() {
+		return MancalaBoard.NUM_PITS;
+	}
+
+	@Override
+	public int getLegalMoves(int[] moves) {
+		int player = getCurrentPlayerNumber();
+		int numMoves = 0;
+		for (int pit = 0; pit < MancalaBoard.NUM_PITS; pit++) {
+			if (myBoard.isLegalMove(pit, player)) {
+				moves[numMoves++] = pit;
+			}
+		}
+		return numMoves;
+	}
+
+	/**
+	 * Sow from the pit (which must be legal) and save the position for unmakeMove.  The
+	 * turn only changes if the last stone didn't land in the player's store.
+	 */
+	@Override
+	public void makeMove(int move) {
+		if (undoStack == null) {
+			undoStack = new int[UNDO_SIZE * GameTreeSearch.MAX_PLY];
+		} else if (undoTop + UNDO_SIZE > undoStack.length) {
+			undoStack = Arrays.copyOf(undoStack, undoStack.length * 2);
+		}
+		System.arraycopy(myBoard.pits, 0, undoStack, undoTop, MancalaBoard.BOARD_LENGTH);
+		undoStack[undoTop + MancalaBoard.BOARD_LENGTH] = isPlayer1Turn ? 1 : 0;
+		undoTop += UNDO_SIZE;
+
+		if (!myBoard.sow(move, getCurrentPlayerNumber())) {
+			isPlayer1Turn = !isPlayer1Turn;
+		}
+	}
+
+	@Override
+	public void unmakeMove(int move) {
+		undoTop -= UNDO_SIZE;
+		System.arraycopy(undoStack, undoTop, myBoard.pits, 0, MancalaBoard.BOARD_LENGTH);
+		isPlayer1Turn = undoStack[undoTop + MancalaBoard.BOARD_LENGTH] == 1;
+	}
+
+	@Override
+	public long getHash() {
+		if (isPlayer1Turn) {
+			return myBoard.getHash();
+		} else {
+			return myBoard.getHash() ^ MancalaBoard.ZOBRIST.getSideKey();
+		}
+	}
+
+	@Override
+	public AbstractGameAction getAction(int move) {
+		return new MancalaAction(move);
+	}
+
+	@Override
+	public int evaluate() {
+		return myBoard.evaluate(getCurrentPlayerNumber());
+	}
 }
@@ -0,0 +1,21 @@
+package spacesettlers.game;
+
+/**
+ * Sow the stones from one of the current player's pits (0-5, counted from the player's
+ * first pit in the direction stones are sown)
+ * 
+ * @author amy
+ */
+public class MancalaAction extends AbstractGameAction {
+	int pit;
+
+	public MancalaAction(int pit) {
+		super();
+		this.pit = pit;
+	}
+
+	public int getPit() {
+		return pit;
+	}
+
+}
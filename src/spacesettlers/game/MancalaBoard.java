@@ -1,33 +1,273 @@
 package spacesettlers.game;
 
-import java.util.ArrayList;
-
 /**
- * Mancala board is implemented as a linked list since it is easiest to send stones that way
+ * Mancala board stored as a flat array of 14 stone counts: pits 0-5 are player 1's
+ * (left to right from player 1's side), 6 is player 1's store, 7-12 are player 2's
+ * and 13 is player 2's store.  Stones are sown in increasing index order (counter
+ * clockwise) so the pit opposite pit i is 12 - i.
+ *
  * @author amy
  */
 public class MancalaBoard extends AbstractGameBoard {
-    ArrayList<MancalaPit> board;
-
-    public MancalaBoard() {
-        board = new ArrayList<MancalaPit>();
-
-        // add the first player's seed pits
-        for (int i = 0; i < 6; i++){
-            MancalaPit pit = new MancalaPit(AbstractGame.player1, false);
-            board.add(pit);
-        }
-        // and their store
-        MancalaPit pit = new MancalaPit(AbstractGame.player1, true);
-        board.add(pit);
-
-        // add the second player's seed pits
-        for (int i = 0; i < 6; i++){
-            pit = new MancalaPit(AbstractGame.player2, false);
-            board.add(pit);
-        }
-        // and their store
-        pit = new MancalaPit(AbstractGame.player2, true);
-        board.add(pit);
-    }
+	public static final int NUM_PITS = 6;
+	public static final int STARTING_STONES = 4;
+	public static final int BOARD_LENGTH = 2 * NUM_PITS + 2;
+	public static final int PLAYER1_STORE = NUM_PITS;
+	public static final int PLAYER2_STORE = BOARD_LENGTH - 1;
+	public static final int TOTAL_STONES = 2 * NUM_PITS * STARTING_STONES;
+
+	/**
+	 * Zobrist keys for each (pit, number of stones)
+	 */
+	static final ZobristTable ZOBRIST = new ZobristTable(BOARD_LENGTH * (TOTAL_STONES + 1), 0x3A3CA1AL);
+
+	int[] pits;
+
+	/**
+	 * Make a board with STARTING_STONES in every pit and empty stores
+	 */
+	public MancalaBoard() {
+		pits = new int[BOARD_LENGTH];
+		for (int i = 0; i < NUM_PITS; i++) {
+			pits[i] = STARTING_STONES;
+			pits[PLAYER1_STORE + 1 + i] = STARTING_STONES;
+		}
+	}
+
+	public MancalaBoard deepClone() {
+		MancalaBoard newBoard = new MancalaBoard();
+		System.arraycopy(pits, 0, newBoard.pits, 0, BOARD_LENGTH);
+		return newBoard;
+	}
+
+	/**
+	 * Set the board from an array of 14 counts (the array is copied)
+	 * @param newPits
+	 */
+	public void setBoard(int[] newPits) {
+		System.arraycopy(newPits, 0, pits, 0, BOARD_LENGTH);
+	}
+
+	/**
+	 * Returns a copy of the stone counts (so agents can't set anything)
+	 * @return
+	 */
+	public int[] getBoard() {
+		return pits.clone();
+	}
+
+	/**
+	 * Number of stones in the pit or store (0-13)
+	 * @param index
+	 * @return
+	 */
+	public int getNumStones(int index) {
+		return pits[index];
+	}
+
+	/**
+	 * Returns the pit as a MancalaPit (a copy)
+	 * @param index
+	 * @return
+	 */
+	public MancalaPit getPit(int index) {
+		MancalaPit pit = new MancalaPit(getOwner(index), isStore(index));
+		pit.setNumStones(pits[index]);
+		return pit;
+	}
+
+	/**
+	 * Index of the player's store
+	 * @param player
+	 * @return
+	 */
+	public static int getStoreIndex(int player) {
+		return (player == AbstractGame.player1) ? PLAYER1_STORE : PLAYER2_STORE;
+	}
+
+	/**
+	 * Index of the player's first pit (their pits are this one and the next NUM_PITS - 1)
+	 * @param player
+	 * @return
+	 */
+	public static int getFirstPitIndex(int player) {
+		return (player == AbstractGame.player1) ? 0 : PLAYER1_STORE + 1;
+	}
+
+	/**
+	 * Player who owns the pit or store
+	 * @param index
+	 * @return
+	 */
+	public static int getOwner(int index) {
+		return (index <= PLAYER1_STORE) ? AbstractGame.player1 : AbstractGame.player2;
+	}
+
+	public static boolean isStore(int index) {
+		return index == PLAYER1_STORE || index == PLAYER2_STORE;
+	}
+
+	/**
+	 * Number of stones in the player's store
+	 * @param player
+	 * @return
+	 */
+	public int getStore(int player) {
+		return pits[getStoreIndex(player)];
+	}
+
+	/**
+	 * Number of stones in the player's six pits
+	 * @param player
+	 * @return
+	 */
+	public int getStonesOnSide(int player) {
+		int first = getFirstPitIndex(player);
+		int total = 0;
+		for (int i = first; i < first + NUM_PITS; i++) {
+			total += pits[i];
+		}
+		return total;
+	}
+
+	/**
+	 * Is the move (0-5, counted from the player's first pit) legal for the player?
+	 * @param pit
+	 * @param player
+	 * @return
+	 */
+	public boolean isLegalMove(int pit, int player) {
+		return pit >= 0 && pit < NUM_PITS && pits[getFirstPitIndex(player) + pit] > 0;
+	}
+
+	/**
+	 * Sow the stones from the player's pit (0-5): one stone into each following pit,
+	 * skipping the opponent's store.  If the last stone lands in an empty pit on the
+	 * player's side, it and the stones opposite go to the player's store.  If either side
+	 * is empty afterwards, the other side's stones are swept into their owner's store.
+	 *
+	 * The move must be legal.
+	 *
+	 * @param pit
+	 * @param player
+	 * @return true if the last stone landed in the player's store (so they go again)
+	 */
+	public boolean sow(int pit, int player) {
+		int index = getFirstPitIndex(player) + pit;
+		int myStore = getStoreIndex(player);
+		int otherStore = getStoreIndex(player == AbstractGame.player1 ? AbstractGame.player2 : AbstractGame.player1);
+
+		int stones = pits[index];
+		pits[index] = 0;
+		while (stones > 0) {
+			index++;
+			if (index == BOARD_LENGTH) {
+				index = 0;
+			}
+			if (index == otherStore) {
+				continue;
+			}
+			pits[index]++;
+			stones--;
+		}
+
+		// capture if the last stone landed in one of our empty pits
+		if (index != myStore && getOwner(index) == player && pits[index] == 1) {
+			int opposite = 2 * NUM_PITS - index;
+			pits[myStore] += pits[opposite] + 1;
+			pits[opposite] = 0;
+			pits[index] = 0;
+		}
+
+		// end game sweep
+		if (getStonesOnSide(AbstractGame.player1) == 0 || getStonesOnSide(AbstractGame.player2) == 0) {
+			sweep(AbstractGame.player1);
+			sweep(AbstractGame.player2);
+		}
+
+		return index == myStore;
+	}
+
+	/**
+	 * Move all of the stones on the player's side to their store
+	 * @param player
+	 */
+	void sweep(int player) {
+		int first = getFirstPitIndex(player);
+		int store = getStoreIndex(player);
+		for (int i = first; i < first + NUM_PITS; i++) {
+			pits[store] += pits[i];
+			pits[i] = 0;
+		}
+	}
+
+	/**
+	 * The game is over when a side is empty (at which point sow has swept the other side)
+	 * @return
+	 */
+	public boolean isGameOver() {
+		return getStonesOnSide(AbstractGame.player1) == 0 || getStonesOnSide(AbstractGame.player2) == 0;
+	}
+
+	/**
+	 * finds the winning player
+	 * @return the player with more stones in their store, empty if the game is still going, and -1 for a tie
+	 */
+	public int getWinningPlayer() {
+		if (!isGameOver()) {
+			return 0;
+		}
+		int store1 = pits[PLAYER1_STORE];
+		int store2 = pits[PLAYER2_STORE];
+		if (store1 > store2) {
+			return AbstractGame.player1;
+		} else if (store2 > store1) {
+			return AbstractGame.player2;
+		} else {
+			return -1;
+		}
+	}
+
+	/**
+	 * Zobrist hash of the stone counts (not including whose turn it is)
+	 * @return
+	 */
+	public long getHash() {
+		long hash = 0;
+		for (int i = 0; i < BOARD_LENGTH; i++) {
+			hash ^= ZOBRIST.getKey(AbstractGame.player1, i * (TOTAL_STONES + 1) + Math.min(pits[i], TOTAL_STONES));
+		}
+		return hash;
+	}
+
+	/**
+	 * Heuristic value for the player: stones in their store count double and stones on
+	 * their side count once (they usually end up in the store), minus the same for the opponent
+	 * @param player
+	 * @return
+	 */
+	public int evaluate(int player) {
+		int opponent = (player == AbstractGame.player1) ? AbstractGame.player2 : AbstractGame.player1;
+		return 2 * (getStore(player) - getStore(opponent)) + (getStonesOnSide(player) - getStonesOnSide(opponent));
+	}
+
+	/**
+	 * print out the board to a string (player 2's side on top, right to left, so the board reads counter clockwise)
+	 */
+	public String toString() {
+		StringBuffer myStr = new StringBuffer();
+		myStr.append("   ");
+		for (int i = PLAYER2_STORE - 1; i > PLAYER1_STORE; i--) {
+			myStr.append(String.format("%3d", pits[i]));
+		}
+		myStr.append("\n");
+		myStr.append(String.format("%3d", pits[PLAYER2_STORE]));
+		myStr.append(String.format("%" + (3 * NUM_PITS + 3) + "d", pits[PLAYER1_STORE]));
+		myStr.append("\n   ");
+		for (int i = 0; i < NUM_PITS; i++) {
+			myStr.append(String.format("%3d", pits[i]));
+		}
+		myStr.append("\n");
+		return myStr.toString();
+	}
 }
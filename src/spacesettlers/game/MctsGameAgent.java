@@ -0,0 +1,340 @@
+package spacesettlers.game;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Monte Carlo tree search game agent.  Several workers share one tree (tree parallelism)
+ * on a ForkJoinPool until the time budget runs out, then the most visited move is played.
+ *
+ * Workers use virtual loss: a node's visit count goes up as soon as a worker passes
+ * through it (before its playout is finished), which makes the node look worse until the
+ * result is added so the other workers spread out over the tree.
+ *
+ * The tree is stored in primitive arrays indexed by node number (the children of a node are
+ * next to each other) so growing the tree doesn't allocate objects.  When the arrays are
+ * full the tree stops growing and the workers just do more playouts from the leaves.
+ *
+ * Works for any game that supports the search methods in AbstractGame.  With more time
+ * (or threads) it plays better, so it can be used to make the asteroids harder to beat.
+ *
+ * @author amy
+ */
+public class MctsGameAgent extends AbstractGameAgent {
+	/**
+	 * Default maximum number of nodes in the tree
+	 */
+	public static final int DEFAULT_MAX_NODES = 1 << 18;
+
+	/**
+	 * Exploration constant for UCT
+	 */
+	public static final double EXPLORATION = 1.4;
+
+	/**
+	 * Results are stored in half points so ties can be counted as ints
+	 */
+	static final int WIN = 2, TIE = 1, LOSS = 0;
+
+	static final int UNEXPANDED = 0, EXPANDING = 1, EXPANDED = 2;
+
+	long timeBudgetMillis;
+	int numThreads;
+	int maxIterations;
+
+	/**
+	 * Pool for the workers (null if there is only one worker, which runs on the calling thread)
+	 */
+	ForkJoinPool pool;
+
+	/**
+	 * The tree
+	 */
+	int maxNodes;
+	int[] move, mover, firstChild, numChildren;
+	AtomicIntegerArray visits, score, expandState;
+	AtomicInteger numNodes;
+
+	/**
+	 * Playouts done by the last call to getNextMove
+	 */
+	AtomicInteger numIterations;
+
+	/**
+	 * Use one thread with the given time per move
+	 * @param timeBudgetMillis
+	 */
+	public MctsGameAgent(long timeBudgetMillis) {
+		this(timeBudgetMillis, 1, DEFAULT_MAX_NODES);
+	}
+
+	/**
+	 * Use numThreads workers with the given time per move and tree size
+	 * @param timeBudgetMillis
+	 * @param numThreads
+	 * @param maxNodes
+	 */
+	public MctsGameAgent(long timeBudgetMillis, int numThreads, int maxNodes) {
+		this.timeBudgetMillis = timeBudgetMillis;
+		this.numThreads = Math.max(1, numThreads);
+		this.maxNodes = maxNodes;
+		this.maxIterations = Integer.MAX_VALUE;
+		if (this.numThreads > 1) {
+			pool = new ForkJoinPool(this.numThreads);
+		}
+
+		move = new int[maxNodes];
+		mover = new int[maxNodes];
+		firstChild = new int[maxNodes];
+		numChildren = new int[maxNodes];
+		visits = new AtomicIntegerArray(maxNodes);
+		score = new AtomicIntegerArray(maxNodes);
+		expandState = new AtomicIntegerArray(maxNodes);
+		numNodes = new AtomicInteger();
+		numIterations = new AtomicInteger();
+	}
+
+	/**
+	 * Stop after this many playouts even if there is time left (mostly for tests)
+	 * @param maxIterations
+	 */
+	public void setMaxIterations(int maxIterations) {
+		this.maxIterations = maxIterations;
+	}
+
+	/**
+	 * Number of playouts done by the last call to getNextMove
+	 * @return
+	 */
+	public int getNumIterations() {
+		return numIterations.get();
+	}
+
+	/**
+	 * Number of nodes in the tree built by the last call to getNextMove
+	 * @return
+	 */
+	public int getNumNodes() {
+		return Math.min(numNodes.get(), maxNodes);
+	}
+
+	/**
+	 * Stop the worker threads (only needed if numThreads > 1)
+	 */
+	public void shutdown() {
+		if (pool != null) {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Search for the move (synchronized because the tree is shared by all calls)
+	 */
+	@Override
+	public synchronized AbstractGameAction getNextMove(AbstractGame game) {
+		if (game.isGameOver()) {
+			return null;
+		}
+
+		final long deadline = System.nanoTime() + timeBudgetMillis * 1000000L;
+		clearTree();
+
+		if (pool == null) {
+			new Worker(game.copyForSearch(), deadline).call();
+		} else {
+			List<Future<Void>> futures = new ArrayList<Future<Void>>();
+			for (int i = 0; i < numThreads; i++) {
+				futures.add(pool.submit(new Worker(game.copyForSearch(), deadline)));
+			}
+			for (Future<Void> future : futures) {
+				try {
+					future.get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				} catch (ExecutionException e) {
+					System.err.println("MCTS worker failed: " + e.getCause());
+					e.getCause().printStackTrace();
+				}
+			}
+		}
+
+		return game.getAction(getBestMove(game));
+	}
+
+	/**
+	 * Reset the tree to just the root
+	 */
+	void clearTree() {
+		int used = getNumNodes();
+		for (int node = 0; node < used; node++) {
+			visits.set(node, 0);
+			score.set(node, 0);
+			expandState.set(node, UNEXPANDED);
+		}
+		numNodes.set(1);
+		numIterations.set(0);
+		move[0] = -1;
+		mover[0] = 0;
+		numChildren[0] = 0;
+	}
+
+	/**
+	 * The most visited move at the root (or the first legal move if there was no time to
+	 * expand the root)
+	 */
+	int getBestMove(AbstractGame game) {
+		if (expandState.get(0) != EXPANDED) {
+			int[] moves = new int[game.getMaxMoves()];
+			game.getLegalMoves(moves);
+			return moves[0];
+		}
+
+		int bestChild = firstChild[0];
+		for (int child = firstChild[0]; child < firstChild[0] + numChildren[0]; child++) {
+			if (visits.get(child) > visits.get(bestChild)) {
+				bestChild = child;
+			}
+		}
+		return move[bestChild];
+	}
+
+	/**
+	 * Expand the node if no other worker is, returns true if the node has children
+	 */
+	boolean expand(int node, AbstractGame game, int[] moves) {
+		if (expandState.get(node) == EXPANDED) {
+			return true;
+		}
+		if (!expandState.compareAndSet(node, UNEXPANDED, EXPANDING)) {
+			// another worker is expanding it so treat it as a leaf this time
+			return false;
+		}
+
+		int count = game.getLegalMoves(moves);
+		int first = numNodes.getAndAdd(count);
+		if (count == 0 || first + count > maxNodes) {
+			// out of room: leave it as a leaf for good
+			return false;
+		}
+
+		int player = game.getCurrentPlayerNumber();
+		for (int i = 0; i < count; i++) {
+			move[first + i] = moves[i];
+			mover[first + i] = player;
+			numChildren[first + i] = 0;
+		}
+		firstChild[node] = first;
+		numChildren[node] = count;
+		expandState.set(node, EXPANDED);
+		return true;
+	}
+
+	/**
+	 * Pick the child with the best UCT value (unvisited children first).  Visits include
+	 * the virtual losses of workers still playing out below the child.
+	 */
+	int selectChild(int node) {
+		int first = firstChild[node];
+		int count = numChildren[node];
+		double logParentVisits = Math.log(Math.max(1, visits.get(node)));
+		int bestChild = first;
+		double bestValue = Double.NEGATIVE_INFINITY;
+		for (int child = first; child < first + count; child++) {
+			int childVisits = visits.get(child);
+			if (childVisits == 0) {
+				return child;
+			}
+			double value = score.get(child) / (2.0 * childVisits) + EXPLORATION * Math.sqrt(logParentVisits / childVisits);
+			if (value > bestValue) {
+				bestValue = value;
+				bestChild = child;
+			}
+		}
+		return bestChild;
+	}
+
+	/**
+	 * One worker: select, expand, play out, back up until the deadline
+	 */
+	class Worker implements Callable<Void> {
+		final AbstractGame game;
+		final long deadline;
+		final int[] moves;
+		final int[] path;
+		final int[] playedMoves;
+
+		Worker(AbstractGame game, long deadline) {
+			this.game = game;
+			this.deadline = deadline;
+			this.moves = new int[game.getMaxMoves()];
+			this.path = new int[GameTreeSearch.MAX_PLY * 4];
+			this.playedMoves = new int[GameTreeSearch.MAX_PLY * 4];
+		}
+
+		public Void call() {
+			ThreadLocalRandom random = ThreadLocalRandom.current();
+			while (System.nanoTime() - deadline < 0) {
+				if (numIterations.incrementAndGet() > maxIterations) {
+					numIterations.decrementAndGet();
+					break;
+				}
+
+				int pathLength = 0;
+				int numPlayed = 0;
+
+				// selection (adding a virtual loss to each node on the way down)
+				int node = 0;
+				visits.incrementAndGet(node);
+				path[pathLength++] = node;
+				while (!game.isGameOver() && numPlayed < playedMoves.length && expand(node, game, moves)) {
+					node = selectChild(node);
+					int nodeVisits = visits.incrementAndGet(node);
+					path[pathLength++] = node;
+					game.makeMove(move[node]);
+					playedMoves[numPlayed++] = move[node];
+
+					// stop at a node no one has been to (it is expanded next time through)
+					if (nodeVisits == 1) {
+						break;
+					}
+				}
+
+				// random playout from the leaf
+				while (!game.isGameOver() && numPlayed < playedMoves.length) {
+					int count = game.getLegalMoves(moves);
+					if (count == 0) {
+						break;
+					}
+					int randomMove = moves[random.nextInt(count)];
+					game.makeMove(randomMove);
+					playedMoves[numPlayed++] = randomMove;
+				}
+
+				// back up the result (the visits were already counted on the way down)
+				int winner = game.isGameOver() ? game.getWinner() : -1;
+				for (int i = 1; i < pathLength; i++) {
+					int pathNode = path[i];
+					if (winner == mover[pathNode]) {
+						score.addAndGet(pathNode, WIN);
+					} else if (winner != AbstractGame.player1 && winner != AbstractGame.player2) {
+						score.addAndGet(pathNode, TIE);
+					}
+				}
+
+				// and put the game back to the root
+				while (numPlayed > 0) {
+					game.unmakeMove(playedMoves[--numPlayed]);
+				}
+			}
+			return null;
+		}
+	}
+}
@@ -0,0 +1,64 @@
+package spacesettlers.game;
+
+/**
+ * Game agent that picks moves with GameTreeSearch under a time budget per move.  Works
+ * for any game that supports the search methods in AbstractGame (both tic tac toe games
+ * do).  Students can use it as is, give it a different evaluation by overriding
+ * GameTreeSearch.evaluate, or use it as an opponent to test against.
+ *
+ * @author amy
+ */
+public class SearchGameAgent extends AbstractGameAgent {
+	/**
+	 * Default time per move in milliseconds (half of the simulator's mini-game move limit)
+	 */
+	public static final long DEFAULT_TIME_BUDGET = 50;
+
+	GameTreeSearch search;
+
+	long timeBudgetMillis;
+
+	int maxDepth;
+
+	/**
+	 * Search as deep as DEFAULT_TIME_BUDGET allows
+	 */
+	public SearchGameAgent() {
+		this(new GameTreeSearch(), DEFAULT_TIME_BUDGET, GameTreeSearch.MAX_PLY);
+	}
+
+	/**
+	 * Search with the specified time per move and maximum depth
+	 * @param timeBudgetMillis
+	 * @param maxDepth
+	 */
+	public SearchGameAgent(long timeBudgetMillis, int maxDepth) {
+		this(new GameTreeSearch(), timeBudgetMillis, maxDepth);
+	}
+
+	/**
+	 * Use your own search (e.g. one with a different evaluate)
+	 * @param search
+	 * @param timeBudgetMillis
+	 * @param maxDepth
+	 */
+	public SearchGameAgent(GameTreeSearch search, long timeBudgetMillis, int maxDepth) {
+		this.search = search;
+		this.timeBudgetMillis = timeBudgetMillis;
+		this.maxDepth = maxDepth;
+	}
+
+	@Override
+	public AbstractGameAction getNextMove(AbstractGame game) {
+		long deadline = System.nanoTime() + timeBudgetMillis * 1000000L;
+		int move = search.search(game.copyForSearch(), deadline, maxDepth);
+		if (move == TranspositionTable.NO_MOVE) {
+			return null;
+		}
+		return game.getAction(move);
+	}
+
+	public GameTreeSearch getSearch() {
+		return search;
+	}
+}
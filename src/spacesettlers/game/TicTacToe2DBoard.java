@@ -1,14 +1,59 @@
 package spacesettlers.game;
 
+/**
+ * 2D tic tac toe board stored as one bit mask per player (bit row * 3 + col is set if
+ * the player has that square).  Moves, unmoves and win checks are just a few bit operations
+ * so search agents can call them millions of times.  The int[][] accessors are views
+ * built from the masks.
+ *
+ * @author amy
+ */
 public class TicTacToe2DBoard extends AbstractGameBoard {
-	int[][] board;
 	static int empty = 0;
 	static int board_size = 3;
 
+	/**
+	 * Number of squares on the board
+	 */
+	public static final int NUM_CELLS = board_size * board_size;
+
+	/**
+	 * Mask with every square set
+	 */
+	public static final int FULL_MASK = (1 << NUM_CELLS) - 1;
+
+	/**
+	 * Masks for the 8 winning lines (rows, columns and diagonals)
+	 */
+	static final int[] WIN_LINES = {
+			0007, 0070, 0700, // rows
+			0111, 0222, 0444, // columns
+			0421, 0124 // diagonals
+	};
+
+	/**
+	 * Value of an open line with 0, 1, 2 or 3 pieces in it (used by evaluate)
+	 */
+	static final int[] LINE_VALUES = {0, 1, 10, 100};
+
+	/**
+	 * Zobrist keys for the squares
+	 */
+	static final ZobristTable ZOBRIST = new ZobristTable(NUM_CELLS, 0x2D2D2DL);
+
+	/**
+	 * Squares owned by player 1 and player 2
+	 */
+	int player1Mask, player2Mask;
+
+	/**
+	 * Zobrist hash of the squares (kept up to date by every move)
+	 */
+	long hash;
+
 	public TicTacToe2DBoard() {
-		board = new int[board_size][board_size];
 	}
-	
+
 	/**
 	 * Returns the empty value for the board
 	 * @return
@@ -17,7 +62,7 @@ public class TicTacToe2DBoard extends AbstractGameBoard {
 		return empty;
 	}
 
-	
+
 	/**
 	 * Returns the size along each dimension for the board
 	 * @return
@@ -26,110 +71,135 @@ public class TicTacToe2DBoard extends AbstractGameBoard {
 		return board_size;
 	}
 
+	/**
+	 * Returns the bit used for the square
+	 * @param row
+	 * @param col
+	 * @return
+	 */
+	public static int getCellBit(int row, int col) {
+		return 1 << (row * board_size + col);
+	}
+
 	public TicTacToe2DBoard deepClone() {
 		TicTacToe2DBoard newBoard = new TicTacToe2DBoard();
-
-		for (int i = 0; i < board_size; i++) {
-			for (int j = 0; j < board_size; j++) {
-				newBoard.board[i][j] = board[i][j];
-			}
-		}
+		newBoard.player1Mask = player1Mask;
+		newBoard.player2Mask = player2Mask;
+		newBoard.hash = hash;
 		return newBoard;
 	}
 
-	public void setBoard(int [][]newBoard) {
-		this.board = newBoard;
-	}
-
 	/**
-	 * finds the winning player for 2D TTT
-	 * @return 1 if there is a winner and 0 otherwise (this includes ties)
+	 * Set the board from an array (the array is copied)
+	 * @param newBoard
 	 */
-	public int getWinningPlayer() {
-		// check across the rows
+	public void setBoard(int [][]newBoard) {
+		player1Mask = 0;
+		player2Mask = 0;
 		for (int row = 0; row < board_size; row++) {
-			int num_in_row = 1;
-			int player = board[row][0];
-			if (player != empty) {
-				for (int col = 1; col < board_size; col++) {
-					if (board[row][col] == player) {
-						num_in_row++;
-					} else {
-						break;
-					}
-					if (num_in_row == board_size) {
-						return player;
-					}
+			for (int col = 0; col < board_size; col++) {
+				if (newBoard[row][col] == AbstractGame.player1) {
+					player1Mask |= getCellBit(row, col);
+				} else if (newBoard[row][col] == AbstractGame.player2) {
+					player2Mask |= getCellBit(row, col);
 				}
 			}
 		}
+		hash = ZOBRIST.hashMasks(player1Mask, player2Mask);
+	}
 
-		// check down the columns
-		for (int col = 0; col < board_size; col++) {
-			int num_in_row = 1;
-			int player = board[0][col];
-
-			if (player != empty) {
-				for (int row = 1; row < board_size; row++) {
-					if (board[row][col] == player) {
-						num_in_row++;
-					} else {
-						break;
-					}
-					if (num_in_row == board_size) {
-						return player;
-					}
-				}
-			}
+	/**
+	 * Returns the player in the square (or empty)
+	 * @param row
+	 * @param col
+	 * @return
+	 */
+	public int getCell(int row, int col) {
+		int bit = getCellBit(row, col);
+		if ((player1Mask & bit) != 0) {
+			return AbstractGame.player1;
+		} else if ((player2Mask & bit) != 0) {
+			return AbstractGame.player2;
+		} else {
+			return empty;
 		}
+	}
 
-		// check the diagonals
-		int player = board[0][0];
-		int num_in_row = 1;
-		if (player != empty) {
-			for (int row = 1; row < board_size; row++) {
-				if (board[row][row] == player) {
-					num_in_row++;
-				} else {
-					break;
-				}
-			}
-			if (num_in_row == board_size) {
-				return player;
+	/**
+	 * Returns the squares owned by the player
+	 * @param player
+	 * @return
+	 */
+	public int getPlayerMask(int player) {
+		return (player == AbstractGame.player1) ? player1Mask : player2Mask;
+	}
+
+	/**
+	 * Returns the squares no one has played in
+	 * @return
+	 */
+	public int getEmptyMask() {
+		return ~(player1Mask | player2Mask) & FULL_MASK;
+	}
+
+	/**
+	 * Returns true if the squares in the mask contain a winning line
+	 * @param mask
+	 * @return
+	 */
+	public static boolean hasWinningLine(int mask) {
+		for (int line : WIN_LINES) {
+			if ((mask & line) == line) {
+				return true;
 			}
 		}
+		return false;
+	}
 
-		player = board[0][board_size-1];
-		num_in_row = 1;
-		if (player != empty) {
-			for (int row = 1; row < board_size; row++) {
-				if (board[row][board_size-row-1] == player) {
-					num_in_row++;
-				} else {
-					break;
-				}
-			}
-			if (num_in_row == board_size) {
-				return player;
-			}
+	/**
+	 * finds the winning player for 2D TTT
+	 * @return the winning player, empty if the game is still going, and -1 for a tie
+	 */
+	public int getWinningPlayer() {
+		if (hasWinningLine(player1Mask)) {
+			return AbstractGame.player1;
+		}
+		if (hasWinningLine(player2Mask)) {
+			return AbstractGame.player2;
 		}
 
 		// make sure there are places left to play
-		for (int col = 0; col < board_size; col++) {
-			for (int row = 1; row < board_size; row++) {
-				if (board[row][col] == empty) {
-					return empty;
-				}
-			}
+		if ((player1Mask | player2Mask) != FULL_MASK) {
+			return empty;
 		}
 
 		return -1;
 	}
-	
-	
+
+
 	/**
-	 * Returns a clone of the board (so agents can't set anything)
-	 * 
+	 * Heuristic value of the board for the player: each line the opponent hasn't played in
+	 * is worth 1 with one of the player's pieces and 10 with two, minus the same for the opponent
+	 * @param player
+	 * @return
+	 */
+	public int evaluate(int player) {
+		int mine = getPlayerMask(player);
+		int theirs = (player == AbstractGame.player1) ? player2Mask : player1Mask;
+		int value = 0;
+		for (int line : WIN_LINES) {
+			if ((theirs & line) == 0) {
+				value += LINE_VALUES[Integer.bitCount(mine & line)];
+			} else if ((mine & line) == 0) {
+				value -= LINE_VALUES[Integer.bitCount(theirs & line)];
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * Returns a copy of the board as an array (so agents can't set anything)
+	 *
 	 * @return
 	 */
 	public int[][]getBoard() {
@@ -137,7 +207,7 @@ public class TicTacToe2DBoard extends AbstractGameBoard {
 
 		for (int i = 0; i < board_size; i++) {
 			for (int j = 0; j < board_size; j++) {
-				new_board[i][j] = board[i][j];
+				new_board[i][j] = getCell(i, j);
 			}
 		}
 		return new_board;
@@ -145,25 +215,66 @@ public class TicTacToe2DBoard extends AbstractGameBoard {
 
 	/**
 	 * Makes the move - if the spot is not empty, the move is ignored (turn lost)
-	 * 
+	 *
 	 * @param TTTAction
 	 * @param player
 	 */
 	public void makeMove(TicTacToe2DAction TTTAction, int player) {
-		if (board[TTTAction.row][TTTAction.col] == empty) {
-			board[TTTAction.row][TTTAction.col] = player;
+		makeMove(TTTAction.row * board_size + TTTAction.col, player);
+	}
+
+	/**
+	 * Makes the move in the square (numbered the same as the bits) - if the spot is not
+	 * empty, the move is ignored
+	 *
+	 * @param square
+	 * @param player
+	 */
+	public void makeMove(int square, int player) {
+		int bit = 1 << square;
+		if (((player1Mask | player2Mask) & bit) == 0) {
+			if (player == AbstractGame.player1) {
+				player1Mask |= bit;
+			} else {
+				player2Mask |= bit;
+			}
+			hash ^= ZOBRIST.getKey(player, square);
 		}
 	}
-	
+
 	/**
 	* Unmakes a move previously made
 	*
 	* @param TTTAction
-	*/ 
+	*/
 	public void unMakeMove(TicTacToe2DAction TTTAction) {
-		board[TTTAction.row][TTTAction.col] = empty;
+		unMakeMove(TTTAction.row * board_size + TTTAction.col);
 	}
-	
+
+	/**
+	 * Unmakes a move previously made in the square
+	 *
+	 * @param square
+	 */
+	public void unMakeMove(int square) {
+		int bit = 1 << square;
+		if ((player1Mask & bit) != 0) {
+			hash ^= ZOBRIST.getKey(AbstractGame.player1, square);
+		} else if ((player2Mask & bit) != 0) {
+			hash ^= ZOBRIST.getKey(AbstractGame.player2, square);
+		}
+		player1Mask &= ~bit;
+		player2Mask &= ~bit;
+	}
+
+	/**
+	 * Zobrist hash of the squares (not including whose turn it is)
+	 * @return
+	 */
+	public long getHash() {
+		return hash;
+	}
+
 
 	/**
 	 * print out the board to a string
@@ -173,11 +284,11 @@ public class TicTacToe2DBoard extends AbstractGameBoard {
 
 		for (int i = 0; i < board_size; i++) {
 			for (int j = 0; j < board_size; j++) {
-				myStr.append(board[i][j]);
+				myStr.append(getCell(i, j));
 			}
 			myStr.append("\n");
 		}
 		return myStr.toString();
 	}
-	
+
 }
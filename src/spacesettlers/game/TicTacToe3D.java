@@ -32,7 +32,7 @@ public class TicTacToe3D extends AbstractGame {
 	}
 
 	/**
-	 * Used only for unit tests so the board is set to something specific
+	 * Used for unit tests and tournaments so the board (and first player) is set to something specific
 	 * @param board
 	 */
 	public TicTacToe3D(int [][][]board, boolean player, final AbstractGameAgent player1, final AbstractGameAgent player2) {
@@ -58,6 +58,71 @@ public class TicTacToe3D extends AbstractGame {
 		}
 	}
 
+	/**
+	 * Copy used for searching (shares the agents, copies the board)
+	 * @param other
+	 */
+	private TicTacToe3D(TicTacToe3D other) {
+		myBoard = other.myBoard.deepClone();
+		isPlayer1Turn = other.isPlayer1Turn;
+		random = other.random;
+		player1 = other.player1;
+		player2 = other.player2;
+	}
+
+	@Override
+	public AbstractGame copyForSearch() {
+		return new TicTacToe3D(this);
+	}
+
+	@Override
+	public int getMaxMoves() {
+		return TicTacToe3DBoard.NUM_CELLS;
+	}
+
+	@Override
+	public int getLegalMoves(int[] moves) {
+		int emptySquares = myBoard.getEmptyMask();
+		int numMoves = 0;
+		while (emptySquares != 0) {
+			moves[numMoves++] = Integer.numberOfTrailingZeros(emptySquares);
+			emptySquares &= emptySquares - 1;
+		}
+		return numMoves;
+	}
+
+	@Override
+	public void makeMove(int move) {
+		myBoard.makeMove(move, getCurrentPlayerNumber());
+		isPlayer1Turn = !isPlayer1Turn;
+	}
+
+	@Override
+	public void unmakeMove(int move) {
+		myBoard.unMakeMove(move);
+		isPlayer1Turn = !isPlayer1Turn;
+	}
+
+	@Override
+	public long getHash() {
+		if (isPlayer1Turn) {
+			return myBoard.getHash();
+		} else {
+			return myBoard.getHash() ^ TicTacToe3DBoard.ZOBRIST.getSideKey();
+		}
+	}
+
+	@Override
+	public AbstractGameAction getAction(int move) {
+		int size = TicTacToe3DBoard.board_size;
+		return new TicTacToe3DAction(move / (size * size), (move / size) % size, move % size);
+	}
+
+	@Override
+	public int evaluate() {
+		return myBoard.evaluate(getCurrentPlayerNumber());
+	}
+
 	@Override
 	public AbstractGameAgent getPlayer1() { return player1; }
 	
@@ -1,12 +1,56 @@
 package spacesettlers.game;
 
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 3D tic tac toe board stored as one bit mask per player (bit row * 9 + col * 3 + depth
+ * is set if the player has that square).  Moves, unmoves and win checks are just a few bit
+ * operations so search agents can call them millions of times.  The int[][][] accessors
+ * are views built from the masks.
+ *
+ * @author amy
+ */
 public class TicTacToe3DBoard extends AbstractGameBoard {
-	int[][][] board;
 	static int empty = 0;
 	static int board_size = 3;
 
+	/**
+	 * Number of squares on the board
+	 */
+	public static final int NUM_CELLS = board_size * board_size * board_size;
+
+	/**
+	 * Mask with every square set
+	 */
+	public static final int FULL_MASK = (1 << NUM_CELLS) - 1;
+
+	/**
+	 * Masks for the 49 winning lines (every straight line of 3 squares through the cube)
+	 */
+	static final int[] WIN_LINES = computeWinLines();
+
+	/**
+	 * Value of an open line with 0, 1, 2 or 3 pieces in it (used by evaluate)
+	 */
+	static final int[] LINE_VALUES = {0, 1, 10, 100};
+
+	/**
+	 * Zobrist keys for the squares
+	 */
+	static final ZobristTable ZOBRIST = new ZobristTable(NUM_CELLS, 0x3D3D3DL);
+
+	/**
+	 * Squares owned by player 1 and player 2
+	 */
+	int player1Mask, player2Mask;
+
+	/**
+	 * Zobrist hash of the squares (kept up to date by every move)
+	 */
+	long hash;
+
 	public TicTacToe3DBoard() {
-		board = new int[board_size][board_size][board_size];
 	}
 	
 	/**
@@ -26,301 +70,186 @@ public class TicTacToe3DBoard extends AbstractGameBoard {
 		return board_size;
 	}
 
-	public TicTacToe3DBoard deepClone() {
-		TicTacToe3DBoard newBoard = new TicTacToe3DBoard();
-
-		for (int i = 0; i < board_size; i++) {
-			for (int j = 0; j < board_size; j++) {
-				for (int k = 0; k < board_size; k++) {
-					newBoard.board[i][j][k] = board[i][j][k];
-				}
-			}
-		}
-		return newBoard;
-	}
-
-	public void setBoard(int [][][]newBoard) {
-		this.board = newBoard;
+	/**
+	 * Returns the bit used for the square
+	 * @param row
+	 * @param col
+	 * @param depth
+	 * @return
+	 */
+	public static int getCellBit(int row, int col, int depth) {
+		return 1 << ((row * board_size + col) * board_size + depth);
 	}
 
-	public int getWinningPlayer() {
-		// check in the 2D boards at each depth
-		for (int dep = 0; dep < board_size; dep++) {
-
-			// check across the rows
-			for (int row = 0; row < board_size; row++) {
-				int num_in_row = 1;
-				int player = board[row][0][dep]; 
-				if (player != empty) {
-					for (int col = 1; col < board_size; col++) {
-						if (board[row][col][dep] == player) {
-							num_in_row++;
-						} else {
-							break;
-						}
-						if (num_in_row == board_size) {
-							return player;
-						}
+	/**
+	 * Finds every line of board_size squares: start from each square and step in each of the
+	 * 13 directions (half of the 26 neighbors so each line is only found once), keeping the
+	 * lines that stay on the board
+	 * @return
+	 */
+	private static int[] computeWinLines() {
+		List<Integer> lines = new ArrayList<Integer>();
+		for (int dRow = -1; dRow <= 1; dRow++) {
+			for (int dCol = -1; dCol <= 1; dCol++) {
+				for (int dDep = -1; dDep <= 1; dDep++) {
+					// only the positive half of the directions
+					int direction = (dRow * board_size + dCol) * board_size + dDep;
+					if (direction <= 0) {
+						continue;
 					}
-				}
-			}
-
-			// check down the columns
-			for (int col = 0; col < board_size; col++) {
-				int num_in_row = 1;
-				int player = board[0][col][dep];  
 
-				if (player != empty) {
-					for (int row = 1; row < board_size; row++) {
-						if (board[row][col][dep] == player) {
-							num_in_row++;
-						} else {
-							break;
-						}
-						if (num_in_row == board_size) {
-							return player;
+					for (int row = 0; row < board_size; row++) {
+						for (int col = 0; col < board_size; col++) {
+							for (int dep = 0; dep < board_size; dep++) {
+								int mask = 0;
+								int step;
+								for (step = 0; step < board_size; step++) {
+									int r = row + step * dRow;
+									int c = col + step * dCol;
+									int d = dep + step * dDep;
+									if (r < 0 || r >= board_size || c < 0 || c >= board_size || d < 0 || d >= board_size) {
+										break;
+									}
+									mask |= getCellBit(r, c, d);
+								}
+								if (step == board_size) {
+									lines.add(mask);
+								}
+							}
 						}
 					}
 				}
 			}
-
-			// check the diagonals
-			int player = board[0][0][dep];
-			int num_in_row = 1;
-			if (player != empty) {
-				for (int row = 1; row < board_size; row++) {
-					if (board[row][row][dep] == player) {
-						num_in_row++;
-					} else {
-						break;
-					}
-				}
-				if (num_in_row == board_size) {
-					return player;
-				}
-			}
-
-			player = board[0][board_size-1][dep];  
-			num_in_row = 1;
-			if (player != empty) {
-				for (int row = 1; row < board_size; row++) {
-					if (board[row][board_size-row-1][dep] == player) {
-						num_in_row++;
-					} else {
-						break;
-					}
-				}
-				if (num_in_row == board_size) {
-					return player;
-				}
-			}
 		}
 
-
-		// check the 3D diagonals
-		int centerPoint;
-		
-		//Cross diagonals (4)
-		centerPoint = board [1][1][1];
-		if (centerPoint != empty) {
-			
-			/*
-					x-- --- ---
-					--- -x- ---
-					--- --- --x
-			*/
-			if ((board[0][0][0] == centerPoint) && (board[2][2][2] == centerPoint)) {
-				return centerPoint;
-			}
-
-			/*
-					--- --- --x
-					--- -x- ---
-					x-- --- ---
-			*/
-			if ((board[2][0][0] == centerPoint) && (board[0][2][2] == centerPoint)) {
-				return centerPoint;
-			}
-
-			/*
-					--- --- x--
-					--- -x- ---
-					--x --- ---
-			*/
-			if ((board[0][0][2] == centerPoint) && (board[2][2][0] == centerPoint)) {
-				return centerPoint;
-			}
-
-			/*
-					--x --- ---
-					--- -x- ---
-					--- --- x--
-			*/
-			if ((board[0][2][0] == centerPoint) && (board[2][0][2] == centerPoint)) {
-				return centerPoint;
-			}
+		int[] winLines = new int[lines.size()];
+		for (int i = 0; i < winLines.length; i++) {
+			winLines[i] = lines.get(i);
 		}
+		return winLines;
+	}
 
-		//Columnn 3D Diagonals (6)
-		/*
-					x-- --- ---
-					--- x-- ---
-					--- --- x--
-		*/
-		/*
-					--- --- x--
-					--- x-- ---
-					x-- --- ---
-		*/
-		centerPoint = board[1][0][1];
-		if (centerPoint != empty) {
-			if ((board[0][0][0] == centerPoint)  && (board[2][0][2] == centerPoint)) {
-				return centerPoint;
-			}
+	public TicTacToe3DBoard deepClone() {
+		TicTacToe3DBoard newBoard = new TicTacToe3DBoard();
+		newBoard.player1Mask = player1Mask;
+		newBoard.player2Mask = player2Mask;
+		newBoard.hash = hash;
+		return newBoard;
+	}
 
-			if ((board[2][0][0] == centerPoint)  && (board[0][0][2] == centerPoint)) {
-				return centerPoint;
+	/**
+	 * Set the board from an array (the array is copied)
+	 * @param newBoard
+	 */
+	public void setBoard(int [][][]newBoard) {
+		player1Mask = 0;
+		player2Mask = 0;
+		for (int row = 0; row < board_size; row++) {
+			for (int col = 0; col < board_size; col++) {
+				for (int dep = 0; dep < board_size; dep++) {
+					if (newBoard[row][col][dep] == AbstractGame.player1) {
+						player1Mask |= getCellBit(row, col, dep);
+					} else if (newBoard[row][col][dep] == AbstractGame.player2) {
+						player2Mask |= getCellBit(row, col, dep);
+					}
+				}
 			}
 		}
+		hash = ZOBRIST.hashMasks(player1Mask, player2Mask);
+	}
 
-		/*
-					-x- --- ---
-					--- -x- ---
-					--- --- -x-
-		*/
-		/*
-					--- --- -x-
-					--- -x- ---
-					-x- --- ---
-		*/
-		centerPoint = board[1][1][1];
-		if (centerPoint != empty) {
-			if ((board[0][1][0] == centerPoint)  && (board[2][1][2] == centerPoint)) {
-				return centerPoint;
-			}
-
-			if ((board[2][1][0] == centerPoint)  && (board[0][1][2] == centerPoint)) {
-				return centerPoint;
-			}
+	/**
+	 * Returns the player in the square (or empty)
+	 * @param row
+	 * @param col
+	 * @param depth
+	 * @return
+	 */
+	public int getCell(int row, int col, int depth) {
+		int bit = getCellBit(row, col, depth);
+		if ((player1Mask & bit) != 0) {
+			return AbstractGame.player1;
+		} else if ((player2Mask & bit) != 0) {
+			return AbstractGame.player2;
+		} else {
+			return empty;
 		}
+	}
 
-		/*
-					--- --- --x
-					--- --x ---
-					--x --- ---
-		*/
-		/*
-					--x --- ---
-					--- --x ---
-					--- --- --x
-		*/
-		centerPoint = board[1][2][1];
-		if (centerPoint != empty) {
-			if ((board[2][2][0] == centerPoint)  && (board[0][2][2] == centerPoint)) {
-				return centerPoint;
-			}
-
-			if ((board[2][1][0] == centerPoint)  && (board[0][1][2] == centerPoint)) {
-				return centerPoint;
-			}
-		}
+	/**
+	 * Returns the squares owned by the player
+	 * @param player
+	 * @return
+	 */
+	public int getPlayerMask(int player) {
+		return (player == AbstractGame.player1) ? player1Mask : player2Mask;
+	}
 
-		//Row 3D diagonals (6)
-		/*
-					x-- -x- --x
-					--- --- ---
-					--- --- ---
-		*/
-		/*
-					--x -x- x--
-					--- --- ---
-					--- --- ---
-		*/
-		centerPoint = board[0][1][1];
-		if (centerPoint != empty) {
-			if ((board[0][0][0] == centerPoint)  && (board[0][2][2] == centerPoint)) {
-				return centerPoint;
-			}
+	/**
+	 * Returns the squares no one has played in
+	 * @return
+	 */
+	public int getEmptyMask() {
+		return ~(player1Mask | player2Mask) & FULL_MASK;
+	}
 
-			if ((board[0][2][0] == centerPoint)  && (board[0][0][2] == centerPoint)) {
-				return centerPoint;
+	/**
+	 * Returns true if the squares in the mask contain a winning line
+	 * @param mask
+	 * @return
+	 */
+	public static boolean hasWinningLine(int mask) {
+		for (int line : WIN_LINES) {
+			if ((mask & line) == line) {
+				return true;
 			}
 		}
+		return false;
+	}
 
-		/*
-					--- --- ---
-					x-- -x- --x
-					--- --- ---
-		*/
-		/*
-					--- --- ---
-					--x -x- x--
-					--- --- ---
-		*/
-		centerPoint = board[1][1][1];
-		if (centerPoint != empty) {
-			if ((board[1][0][0] == centerPoint)  && (board[1][2][2] == centerPoint)) {
-				return centerPoint;
-			}
-
-			if ((board[1][2][0] == centerPoint)  && (board[1][0][2] == centerPoint)) {
-				return centerPoint;
-			}
+	/**
+	 * finds the winning player for 3D TTT (checks all 49 lines)
+	 * @return the winning player, empty if the game is still going, and -1 for a tie
+	 */
+	public int getWinningPlayer() {
+		if (hasWinningLine(player1Mask)) {
+			return AbstractGame.player1;
 		}
-
-		/*
-					--- --- ---
-					--- --- ---
-					x-- -x- --x
-		*/
-		/*
-					--- --- ---
-					--- --- ---
-					--x -x- x--
-		*/
-		centerPoint = board[2][1][1];
-		if (centerPoint != empty) {
-			if ((board[2][0][0] == centerPoint)  && (board[2][2][2] == centerPoint)) {
-				return centerPoint;
-			}
-
-			if ((board[2][2][0] == centerPoint)  && (board[2][0][2] == centerPoint)) {
-				return centerPoint;
-			}
+		if (hasWinningLine(player2Mask)) {
+			return AbstractGame.player2;
 		}
 
-		//Check the pillars
-		/*
-					x-- x-- x--
-					--- --- ---
-					--- --- ---
-		*/
-		for (int row = 0; row < board_size; row++) {
-			for (int col = 0; col < board_size; col++) {
-				int num_in_pillar = 1;
-				int player = board[row][col][0];
-				if (player != empty) {
-					for (int dep = 1; dep < board_size; dep++) {
-						if (board[row][col][dep] == player) {
-							num_in_pillar++;
-						} else {
-							break;
-						}
-						if (num_in_pillar == board_size) {
-							return player;
-						}
-					}
-				}
-			}
+		// make sure there are places left to play (a full 3x3x3 board always has a line but be safe)
+		if ((player1Mask | player2Mask) != FULL_MASK) {
+			return empty;
 		}
 
-
-		return empty;
+		return -1;
 	}
 	
 	
 	/**
-	 * Returns a clone of the board (so agents can't set anything)
+	 * Heuristic value of the board for the player: each line the opponent hasn't played in
+	 * is worth 1 with one of the player's pieces and 10 with two, minus the same for the opponent
+	 * @param player
+	 * @return
+	 */
+	public int evaluate(int player) {
+		int mine = getPlayerMask(player);
+		int theirs = (player == AbstractGame.player1) ? player2Mask : player1Mask;
+		int value = 0;
+		for (int line : WIN_LINES) {
+			if ((theirs & line) == 0) {
+				value += LINE_VALUES[Integer.bitCount(mine & line)];
+			} else if ((mine & line) == 0) {
+				value -= LINE_VALUES[Integer.bitCount(theirs & line)];
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * Returns a copy of the board as an array (so agents can't set anything)
 	 * 
 	 * @return
 	 */
@@ -330,7 +259,7 @@ public class TicTacToe3DBoard extends AbstractGameBoard {
 		for (int i = 0; i < board_size; i++) {
 			for (int j = 0; j < board_size; j++) {
 				for (int k = 0; k < board_size; k++) {
-					new_board[i][j][k] = board[i][j][k];
+					new_board[i][j][k] = getCell(i, j, k);
 				}
 			}
 		}
@@ -344,8 +273,25 @@ public class TicTacToe3DBoard extends AbstractGameBoard {
 	 * @param player
 	 */
 	public void makeMove(TicTacToe3DAction TTTAction, int player) {
-		if (board[TTTAction.row][TTTAction.col][TTTAction.depth] == empty) {
-			board[TTTAction.row][TTTAction.col][TTTAction.depth] = player;
+		makeMove((TTTAction.row * board_size + TTTAction.col) * board_size + TTTAction.depth, player);
+	}
+
+	/**
+	 * Makes the move in the square (numbered the same as the bits) - if the spot is not
+	 * empty, the move is ignored
+	 *
+	 * @param square
+	 * @param player
+	 */
+	public void makeMove(int square, int player) {
+		int bit = 1 << square;
+		if (((player1Mask | player2Mask) & bit) == 0) {
+			if (player == AbstractGame.player1) {
+				player1Mask |= bit;
+			} else {
+				player2Mask |= bit;
+			}
+			hash ^= ZOBRIST.getKey(player, square);
 		}
 	}
 	
@@ -355,7 +301,31 @@ public class TicTacToe3DBoard extends AbstractGameBoard {
 	* @param TTTAction
 	*/ 
 	public void unMakeMove(TicTacToe3DAction TTTAction) {
-		board[TTTAction.row][TTTAction.col][TTTAction.depth] = empty;
+		unMakeMove((TTTAction.row * board_size + TTTAction.col) * board_size + TTTAction.depth);
+	}
+
+	/**
+	 * Unmakes a move previously made in the square
+	 *
+	 * @param square
+	 */
+	public void unMakeMove(int square) {
+		int bit = 1 << square;
+		if ((player1Mask & bit) != 0) {
+			hash ^= ZOBRIST.getKey(AbstractGame.player1, square);
+		} else if ((player2Mask & bit) != 0) {
+			hash ^= ZOBRIST.getKey(AbstractGame.player2, square);
+		}
+		player1Mask &= ~bit;
+		player2Mask &= ~bit;
+	}
+
+	/**
+	 * Zobrist hash of the squares (not including whose turn it is)
+	 * @return
+	 */
+	public long getHash() {
+		return hash;
 	}
 	
 
@@ -369,7 +339,7 @@ public class TicTacToe3DBoard extends AbstractGameBoard {
 			myStr.append("Board at depth " + k + "\n");
 			for (int i = 0; i < board_size; i++) {
 				for (int j = 0; j < board_size; j++) {
-					myStr.append(board[i][j][k]);
+					myStr.append(getCell(i, j, k));
 				}
 				myStr.append("\n");
 			}
@@ -0,0 +1,516 @@
+package spacesettlers.game;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+
+/**
+ * Perfect play table for the tic tac toe games.  Every position is solved (win, loss or
+ * draw for the player to move) and stored under its canonical key: the board is written
+ * in base 3 (1 for the player to move, 2 for the other player) under each rotation and
+ * reflection of the board and the smallest number is used.  So symmetric positions, and
+ * the same position with the players swapped, share one entry.
+ *
+ * 2D tic tac toe is small enough to store every position.  3D tic tac toe isn't, so its
+ * table stores every position with up to TABLE_3D_PIECES pieces (the opening book) and
+ * positions past that are solved when they are asked for.  The game is almost always
+ * decided by then so this is quick.
+ *
+ * The table is an open addressed hash table of keys with the values packed 2 bits each,
+ * and it is written to and read from disk in exactly that layout.  Run main to write the
+ * table files; if a file is missing the table is solved when it is first used.
+ *
+ * The shared tables are used by many games at once, so they are never changed once they
+ * are made: a position that isn't in the table (e.g. one no game reaches with the players
+ * moving in turn) is solved into a cache that only lasts for that getBestMove.
+ *
+ * @author amy
+ */
+public class TicTacToeTable {
+	/**
+	 * Values stored for a position (for the player to move)
+	 */
+	public static final int UNKNOWN = 0, LOSS = 1, DRAW = 2, WIN = 3;
+
+	/**
+	 * 2D positions stored (all of them)
+	 */
+	public static final int TABLE_2D_PIECES = TicTacToe2DBoard.NUM_CELLS;
+
+	/**
+	 * 3D positions stored (the opening book)
+	 */
+	public static final int TABLE_3D_PIECES = 4;
+
+	/**
+	 * Where main writes the tables (relative to the directory the simulator is run from)
+	 */
+	public static final String TABLE_2D_FILE = "spacesettlers/game/tictactoe2d.table";
+	public static final String TABLE_3D_FILE = "spacesettlers/game/tictactoe3d.table";
+
+	static final int MAGIC = 0x54545442;
+
+	static final int INITIAL_SIZE_BITS = 10;
+
+	static TicTacToeTable table2D, table3D;
+
+	final int dimensions, numCells, maxPieces;
+	final int[] winLines;
+
+	/**
+	 * weights[symmetry][square] is 3 to the power of where the symmetry moves the square
+	 */
+	final long[][] weights;
+
+	int sizeBits;
+	int numEntries;
+
+	/**
+	 * The key + 1 for each slot (0 is an empty slot)
+	 */
+	long[] keys;
+
+	/**
+	 * 32 two bit values per long
+	 */
+	long[] values;
+
+	/**
+	 * Make an empty table
+	 * @param dimensions 2 or 3
+	 * @param maxPieces positions with up to this many pieces are stored
+	 */
+	TicTacToeTable(int dimensions, int maxPieces, int sizeBits) {
+		this.dimensions = dimensions;
+		this.maxPieces = maxPieces;
+		if (dimensions == 2) {
+			numCells = TicTacToe2DBoard.NUM_CELLS;
+			winLines = TicTacToe2DBoard.WIN_LINES;
+		} else {
+			numCells = TicTacToe3DBoard.NUM_CELLS;
+			winLines = TicTacToe3DBoard.WIN_LINES;
+		}
+		weights = computeWeights(dimensions);
+		allocate(sizeBits);
+	}
+
+	/**
+	 * The 2D table (read from TABLE_2D_FILE or solved the first time it is asked for)
+	 * @return
+	 */
+	public static synchronized TicTacToeTable get2DTable() {
+		if (table2D == null) {
+			table2D = readOrSolve(2, TABLE_2D_PIECES, TABLE_2D_FILE);
+		}
+		return table2D;
+	}
+
+	/**
+	 * The 3D opening book (read from TABLE_3D_FILE or solved the first time it is asked for)
+	 * @return
+	 */
+	public static synchronized TicTacToeTable get3DTable() {
+		if (table3D == null) {
+			table3D = readOrSolve(3, TABLE_3D_PIECES, TABLE_3D_FILE);
+		}
+		return table3D;
+	}
+
+	static TicTacToeTable readOrSolve(int dimensions, int maxPieces, String fileName) {
+		File file = new File(fileName);
+		if (file.exists()) {
+			try {
+				TicTacToeTable table = read(file);
+				if (table.dimensions == dimensions && table.maxPieces == maxPieces) {
+					return table;
+				}
+				System.err.println("Table " + fileName + " is for a different game: solving it again");
+			} catch (IOException e) {
+				System.err.println("Unable to read table " + fileName + ": solving it again");
+				e.printStackTrace();
+			}
+		}
+		return solve(dimensions, maxPieces);
+	}
+
+	/**
+	 * Solve every position with up to maxPieces pieces
+	 * @param dimensions 2 or 3
+	 * @param maxPieces
+	 * @return
+	 */
+	public static TicTacToeTable solve(int dimensions, int maxPieces) {
+		TicTacToeTable table = new TicTacToeTable(dimensions, maxPieces, INITIAL_SIZE_BITS);
+		table.solve(0, 0, 0, null);
+		return table;
+	}
+
+	/**
+	 * Every rotation and reflection of the board as a map from square to square: each one
+	 * is a permutation of the axes with some of the axes flipped
+	 */
+	static long[][] computeWeights(int dimensions) {
+		int size = TicTacToe2DBoard.getBoardSize();
+		int numCells = (int) Math.pow(size, dimensions);
+		int[][] axisOrders = (dimensions == 2) ? new int[][] {{0, 1}, {1, 0}}
+				: new int[][] {{0, 1, 2}, {0, 2, 1}, {1, 0, 2}, {1, 2, 0}, {2, 0, 1}, {2, 1, 0}};
+		int numFlips = 1 << dimensions;
+
+		long[][] weights = new long[axisOrders.length * numFlips][numCells];
+		int[] coords = new int[dimensions];
+		for (int order = 0; order < axisOrders.length; order++) {
+			for (int flips = 0; flips < numFlips; flips++) {
+				long[] symmetry = weights[order * numFlips + flips];
+				for (int square = 0; square < numCells; square++) {
+					// coordinates of the square, most significant first (row, col, depth)
+					int rest = square;
+					for (int axis = dimensions - 1; axis >= 0; axis--) {
+						coords[axis] = rest % size;
+						rest /= size;
+					}
+
+					int moved = 0;
+					for (int axis = 0; axis < dimensions; axis++) {
+						int coord = coords[axisOrders[order][axis]];
+						if ((flips & (1 << axis)) != 0) {
+							coord = size - 1 - coord;
+						}
+						moved = moved * size + coord;
+					}
+
+					long weight = 1;
+					for (int i = 0; i < moved; i++) {
+						weight *= 3;
+					}
+					symmetry[square] = weight;
+				}
+			}
+		}
+		return weights;
+	}
+
+	/**
+	 * Canonical key of a position
+	 * @param mine squares of the player to move
+	 * @param theirs squares of the other player
+	 * @return
+	 */
+	public long getKey(int mine, int theirs) {
+		long best = Long.MAX_VALUE;
+		for (long[] symmetry : weights) {
+			long key = 0;
+			for (int bits = mine; bits != 0; bits &= bits - 1) {
+				key += symmetry[Integer.numberOfTrailingZeros(bits)];
+			}
+			for (int bits = theirs; bits != 0; bits &= bits - 1) {
+				key += 2 * symmetry[Integer.numberOfTrailingZeros(bits)];
+			}
+			if (key < best) {
+				best = key;
+			}
+		}
+		return best;
+	}
+
+	int getSlot(long key) {
+		return (int) (((key + 1) * 0x9E3779B97F4A7C15L) >>> (64 - sizeBits));
+	}
+
+	/**
+	 * Value of the position for the player to move, or UNKNOWN if it isn't in the table
+	 * @param mine squares of the player to move
+	 * @param theirs squares of the other player
+	 * @return
+	 */
+	public int getValue(int mine, int theirs) {
+		return getValue(getKey(mine, theirs));
+	}
+
+	int getValue(long key) {
+		int mask = keys.length - 1;
+		for (int slot = getSlot(key); keys[slot] != 0; slot = (slot + 1) & mask) {
+			if (keys[slot] == key + 1) {
+				return (int) (values[slot >>> 5] >>> ((slot & 31) * 2)) & 3;
+			}
+		}
+		return UNKNOWN;
+	}
+
+	void put(long key, int value) {
+		if (2 * (numEntries + 1) > keys.length) {
+			grow();
+		}
+		int mask = keys.length - 1;
+		int slot = getSlot(key);
+		while (keys[slot] != 0 && keys[slot] != key + 1) {
+			slot = (slot + 1) & mask;
+		}
+		if (keys[slot] == 0) {
+			keys[slot] = key + 1;
+			numEntries++;
+		}
+		int shift = (slot & 31) * 2;
+		values[slot >>> 5] = (values[slot >>> 5] & ~(3L << shift)) | ((long) value << shift);
+	}
+
+	void allocate(int sizeBits) {
+		this.sizeBits = sizeBits;
+		keys = new long[1 << sizeBits];
+		values = new long[Math.max(1, (1 << sizeBits) >>> 5)];
+		numEntries = 0;
+	}
+
+	void grow() {
+		long[] oldKeys = keys;
+		long[] oldValues = values;
+		allocate(sizeBits + 1);
+		for (int slot = 0; slot < oldKeys.length; slot++) {
+			if (oldKeys[slot] != 0) {
+				put(oldKeys[slot] - 1, (int) (oldValues[slot >>> 5] >>> ((slot & 31) * 2)) & 3);
+			}
+		}
+	}
+
+	boolean hasWinningLine(int mask) {
+		for (int line : winLines) {
+			if ((mask & line) == line) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Squares that would complete a line for the player (empty or not)
+	 */
+	int getThreats(int mine, int theirs) {
+		int threats = 0;
+		for (int line : winLines) {
+			if ((line & theirs) == 0 && Integer.bitCount(line & mine) == 2) {
+				threats |= line & ~mine;
+			}
+		}
+		return threats;
+	}
+
+	/**
+	 * Solve the position (the other player has just moved and hasn't won).  Positions in
+	 * the book are stored along with all of their children; past the book only the value
+	 * is worked out (with cutoffs).
+	 *
+	 * @param cache where book positions missing from the table are stored (null to store
+	 * them in the table, only while it is being made)
+	 * @return the value for the player to move
+	 */
+	int solve(int mine, int theirs, int numPieces, HashMap<Long, Integer> cache) {
+		int empty = ~(mine | theirs) & ((1 << numCells) - 1);
+		if (empty == 0) {
+			return DRAW;
+		}
+
+		boolean inBook = numPieces <= maxPieces;
+		long key = 0;
+		if (inBook) {
+			key = getKey(mine, theirs);
+			int value = getValue(key);
+			if (value != UNKNOWN) {
+				return value;
+			}
+			if (cache != null && cache.containsKey(key)) {
+				return cache.get(key);
+			}
+		}
+
+		int moves = empty;
+		if (!inBook) {
+			// win now if we can, otherwise we have to block
+			if ((getThreats(mine, theirs) & empty) != 0) {
+				return WIN;
+			}
+			int blocks = getThreats(theirs, mine) & empty;
+			if (Integer.bitCount(blocks) > 1) {
+				return LOSS;
+			} else if (blocks != 0) {
+				moves = blocks;
+			}
+		}
+
+		int best = LOSS;
+		for (int bits = moves; bits != 0; bits &= bits - 1) {
+			int bit = bits & -bits;
+			int value;
+			if (hasWinningLine(mine | bit)) {
+				value = WIN;
+			} else {
+				value = flip(solve(theirs, mine | bit, numPieces + 1, cache));
+			}
+			if (value > best) {
+				best = value;
+				if (best == WIN && !inBook) {
+					break;
+				}
+			}
+		}
+
+		if (inBook) {
+			if (cache == null) {
+				put(key, best);
+			} else {
+				cache.put(key, best);
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Value for the other player
+	 */
+	static int flip(int value) {
+		return LOSS + WIN - value;
+	}
+
+	/**
+	 * Best move for the player to move (the square, numbered the same as the board's bits).
+	 * An immediate win is always taken; otherwise the value of each move is looked up (or
+	 * solved if it is past the book) and ties are broken by the number of open lines.
+	 *
+	 * @param mine squares of the player to move
+	 * @param theirs squares of the other player
+	 * @return the square or TranspositionTable.NO_MOVE if the board is full
+	 */
+	public int getBestMove(int mine, int theirs) {
+		int empty = ~(mine | theirs) & ((1 << numCells) - 1);
+		int numPieces = Integer.bitCount(mine | theirs);
+
+		int wins = getThreats(mine, theirs) & empty;
+		if (wins != 0) {
+			return Integer.numberOfTrailingZeros(wins);
+		}
+
+		HashMap<Long, Integer> cache = new HashMap<Long, Integer>();
+		int bestMove = TranspositionTable.NO_MOVE;
+		int bestValue = 0;
+		int bestOpenLines = Integer.MIN_VALUE;
+		for (int bits = empty; bits != 0; bits &= bits - 1) {
+			int square = Integer.numberOfTrailingZeros(bits);
+			int newMine = mine | (1 << square);
+			// a table lookup in the book (solve only searches past it)
+			int value = flip(solve(theirs, newMine, numPieces + 1, cache));
+
+			int openLines = getOpenLines(newMine, theirs);
+			if (value > bestValue || (value == bestValue && openLines > bestOpenLines)) {
+				bestValue = value;
+				bestOpenLines = openLines;
+				bestMove = square;
+			}
+		}
+		return bestMove;
+	}
+
+	/**
+	 * Lines the player can still win minus the lines the other player can still win
+	 */
+	int getOpenLines(int mine, int theirs) {
+		int open = 0;
+		for (int line : winLines) {
+			if ((line & theirs) == 0) {
+				open++;
+			}
+			if ((line & mine) == 0) {
+				open--;
+			}
+		}
+		return open;
+	}
+
+	public int getNumEntries() {
+		return numEntries;
+	}
+
+	public int getMaxPieces() {
+		return maxPieces;
+	}
+
+	/**
+	 * Write the table (the hash table exactly as it is in memory)
+	 * @param file
+	 * @throws IOException
+	 */
+	public void write(File file) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(dimensions);
+			out.writeInt(maxPieces);
+			out.writeInt(sizeBits);
+			out.writeInt(numEntries);
+			for (long key : keys) {
+				out.writeLong(key);
+			}
+			for (long value : values) {
+				out.writeLong(value);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Read a table written by write
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public static TicTacToeTable read(File file) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if (in.readInt() != MAGIC) {
+				throw new IOException(file + " is not a tic tac toe table");
+			}
+			int dimensions = in.readInt();
+			int maxPieces = in.readInt();
+			int sizeBits = in.readInt();
+			if ((dimensions != 2 && dimensions != 3) || sizeBits < 0 || sizeBits > 30) {
+				throw new IOException(file + " is corrupt");
+			}
+			TicTacToeTable table = new TicTacToeTable(dimensions, maxPieces, sizeBits);
+			table.numEntries = in.readInt();
+			for (int i = 0; i < table.keys.length; i++) {
+				table.keys[i] = in.readLong();
+			}
+			for (int i = 0; i < table.values.length; i++) {
+				table.values[i] = in.readLong();
+			}
+			return table;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Solve both tables and write them to TABLE_2D_FILE and TABLE_3D_FILE (run from the src directory)
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		try {
+			long startTime = System.currentTimeMillis();
+			TicTacToeTable table = solve(2, TABLE_2D_PIECES);
+			table.write(new File(TABLE_2D_FILE));
+			System.out.println("2D: " + table.getNumEntries() + " positions in " + (System.currentTimeMillis() - startTime) + " ms");
+
+			startTime = System.currentTimeMillis();
+			table = solve(3, TABLE_3D_PIECES);
+			table.write(new File(TABLE_3D_FILE));
+			System.out.println("3D: " + table.getNumEntries() + " positions in " + (System.currentTimeMillis() - startTime) + " ms");
+		} catch (IOException e) {
+			System.err.println("Unable to write the tables");
+			e.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,116 @@
+package spacesettlers.game;
+
+/**
+ * Fixed size hash table of search results indexed by Zobrist hash.  Entries are stored
+ * in parallel primitive arrays (nothing is allocated after construction) and a new entry
+ * always replaces whatever was in its slot, so the table never grows.
+ *
+ * @author amy
+ */
+public class TranspositionTable {
+	/**
+	 * The stored value is exact, a lower bound (the search failed high) or an upper bound
+	 */
+	public static final byte EXACT = 0, LOWER_BOUND = 1, UPPER_BOUND = 2;
+
+	/**
+	 * Returned by probe when there is no entry for the position
+	 */
+	public static final int NO_MOVE = -1;
+
+	final int mask;
+
+	final long[] keys;
+	final int[] values, bestMoves;
+	final byte[] depths, types;
+
+	int numStores, numHits;
+
+	/**
+	 * Make a table with 2^sizeBits entries
+	 * @param sizeBits
+	 */
+	public TranspositionTable(int sizeBits) {
+		int size = 1 << sizeBits;
+		mask = size - 1;
+		keys = new long[size];
+		values = new int[size];
+		bestMoves = new int[size];
+		depths = new byte[size];
+		types = new byte[size];
+		clear();
+	}
+
+	/**
+	 * Remove all entries
+	 */
+	public void clear() {
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = 0;
+			bestMoves[i] = NO_MOVE;
+			depths[i] = -1;
+		}
+		numStores = 0;
+		numHits = 0;
+	}
+
+	/**
+	 * Returns the slot for the position or -1 if it isn't in the table
+	 * @param hash
+	 * @return
+	 */
+	public int probe(long hash) {
+		int slot = (int) hash & mask;
+		if (keys[slot] == hash && depths[slot] >= 0) {
+			numHits++;
+			return slot;
+		}
+		return -1;
+	}
+
+	/**
+	 * Store a result (replacing anything in the slot)
+	 * @param hash
+	 * @param depth
+	 * @param value
+	 * @param type EXACT, LOWER_BOUND or UPPER_BOUND
+	 * @param bestMove
+	 */
+	public void store(long hash, int depth, int value, byte type, int bestMove) {
+		int slot = (int) hash & mask;
+		keys[slot] = hash;
+		depths[slot] = (byte) Math.min(depth, Byte.MAX_VALUE);
+		values[slot] = value;
+		types[slot] = type;
+		bestMoves[slot] = bestMove;
+		numStores++;
+	}
+
+	public int getDepth(int slot) {
+		return depths[slot];
+	}
+
+	public int getValue(int slot) {
+		return values[slot];
+	}
+
+	public byte getType(int slot) {
+		return types[slot];
+	}
+
+	public int getBestMove(int slot) {
+		return bestMoves[slot];
+	}
+
+	public int getSize() {
+		return keys.length;
+	}
+
+	public int getNumStores() {
+		return numStores;
+	}
+
+	public int getNumHits() {
+		return numHits;
+	}
+}
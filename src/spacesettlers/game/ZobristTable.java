@@ -0,0 +1,70 @@
+package spacesettlers.game;
+
+import java.util.Random;
+
+/**
+ * Random keys for Zobrist hashing a two player board: the hash of a position is the XOR
+ * of the key for each (player, square) that is occupied, plus the side key when it is
+ * player 2's turn.  Making or unmaking a move is one XOR.
+ *
+ * Each board type makes one table with a fixed seed so hashes are the same every run.
+ *
+ * @author amy
+ */
+public class ZobristTable {
+	final long[] player1Keys, player2Keys;
+
+	final long sideKey;
+
+	/**
+	 * Make the keys
+	 * @param numSquares number of squares (or pit/seed combinations) on the board
+	 * @param seed
+	 */
+	public ZobristTable(int numSquares, long seed) {
+		Random random = new Random(seed);
+		player1Keys = new long[numSquares];
+		player2Keys = new long[numSquares];
+		for (int i = 0; i < numSquares; i++) {
+			player1Keys[i] = random.nextLong();
+			player2Keys[i] = random.nextLong();
+		}
+		sideKey = random.nextLong();
+	}
+
+	/**
+	 * Key for the player occupying the square
+	 * @param player AbstractGame.player1 or AbstractGame.player2
+	 * @param square
+	 * @return
+	 */
+	public long getKey(int player, int square) {
+		return (player == AbstractGame.player1) ? player1Keys[square] : player2Keys[square];
+	}
+
+	/**
+	 * Key XORed in when it is player 2's turn
+	 * @return
+	 */
+	public long getSideKey() {
+		return sideKey;
+	}
+
+	/**
+	 * Hash of a board given as one bit mask per player
+	 * @param player1Mask
+	 * @param player2Mask
+	 * @return
+	 */
+	public long hashMasks(int player1Mask, int player2Mask) {
+		long hash = 0;
+		for (int square = 0; square < player1Keys.length; square++) {
+			if ((player1Mask & (1 << square)) != 0) {
+				hash ^= player1Keys[square];
+			} else if ((player2Mask & (1 << square)) != 0) {
+				hash ^= player2Keys[square];
+			}
+		}
+		return hash;
+	}
+}
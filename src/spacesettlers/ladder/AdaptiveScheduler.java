@@ -0,0 +1,228 @@
+package spacesettlers.ladder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import spacesettlers.configs.HighLevelTeamConfig;
+
+/**
+ * Picks the matches for an adaptive ladder.  Instead of playing every combination of the
+ * variable teams, each match is built from the current skill ratings (in TeamRecord) to be
+ * the one the ladder learns the most from: it starts with the team whose rating is least
+ * certain and adds the teams whose results against it (and each other) are hardest to
+ * predict.  The ladder stops once the ranking is stable: every team is ahead of the next
+ * one with high probability, or the two are so well known that they are really a tie.
+ *
+ * Matches can be handed out before the earlier ones finish (one per ladder thread) so
+ * teams already in a running game count as a bit more certain than their rating says.
+ *
+ * A failed game doesn't change any ratings, so a team whose games keep failing would stay
+ * the least known team forever.  Every variable team in a failed game gets a failure and
+ * a team with MAX_CONSECUTIVE_FAILURES in a row is only picked when there aren't enough
+ * other teams and is left out of the stability check (one good game clears it).
+ *
+ * @author amy
+ */
+public class AdaptiveScheduler {
+	/**
+	 * Failed games in a row before a team is only picked when no other team can be
+	 */
+	public static final int MAX_CONSECUTIVE_FAILURES = 3;
+
+	HighLevelTeamConfig[] variableTeams, staticTeams;
+
+	/**
+	 * Records (with the ratings) of the variable teams, in the same order as variableTeams
+	 */
+	TeamRecord[] variableRecords;
+
+	/**
+	 * Number of running games each variable team is in
+	 */
+	int[] numRunning;
+
+	/**
+	 * Number of failed games in a row for each variable team
+	 */
+	int[] numFailures;
+
+	int numVariableTeamsPerGame;
+
+	double rankingConfidence, maximumRatingDeviation;
+
+	Random random;
+
+	/**
+	 * Make a scheduler for the teams
+	 *
+	 * @param variableTeams
+	 * @param variableRecords the record for each variable team (updated by the ladder after each game)
+	 * @param staticTeams teams in every game
+	 * @param numVariableTeamsPerGame
+	 * @param rankingConfidence probability each team must be ahead of the next for the ranking to be stable
+	 * @param maximumRatingDeviation teams with deviations below this don't need to be separated
+	 * @param random
+	 */
+	public AdaptiveScheduler(HighLevelTeamConfig[] variableTeams, TeamRecord[] variableRecords,
+			HighLevelTeamConfig[] staticTeams, int numVariableTeamsPerGame, double rankingConfidence,
+			double maximumRatingDeviation, Random random) {
+		this.variableTeams = variableTeams;
+		this.variableRecords = variableRecords;
+		this.staticTeams = staticTeams;
+		this.numVariableTeamsPerGame = Math.min(numVariableTeamsPerGame, variableTeams.length);
+		this.rankingConfidence = rankingConfidence;
+		this.maximumRatingDeviation = maximumRatingDeviation;
+		this.random = random;
+		this.numRunning = new int[variableTeams.length];
+		this.numFailures = new int[variableTeams.length];
+	}
+
+	/**
+	 * Pick the teams for the next match (the chosen variable teams and then the static ones).
+	 * Teams that keep failing are only picked when there aren't enough other teams.
+	 * @return
+	 */
+	public synchronized HighLevelTeamConfig[] nextMatch() {
+		int numTeams = variableTeams.length;
+		double[] uncertainty = new double[numTeams];
+		for (int i = 0; i < numTeams; i++) {
+			// a team in a running game will be better known by the time this game ends
+			uncertainty[i] = variableRecords[i].ratingVariance / (1 + numRunning[i]);
+		}
+
+		// start with the least known team (random tie breaks so new ladders aren't in config order)
+		int[] order = new int[numTeams];
+		for (int i = 0; i < numTeams; i++) {
+			order[i] = i;
+		}
+		for (int i = numTeams - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int swap = order[i];
+			order[i] = order[j];
+			order[j] = swap;
+		}
+
+		int[] chosen = new int[numVariableTeamsPerGame];
+		boolean[] inMatch = new boolean[numTeams];
+		for (int c = 0; c < numVariableTeamsPerGame; c++) {
+			int best = -1;
+			double bestGain = -1;
+			boolean bestFailing = false;
+			for (int i : order) {
+				if (inMatch[i]) {
+					continue;
+				}
+				double gain;
+				if (c == 0) {
+					gain = uncertainty[i];
+				} else {
+					gain = 0;
+					for (int m = 0; m < c; m++) {
+						gain += getInformationGain(variableRecords[i], uncertainty[i],
+								variableRecords[chosen[m]], uncertainty[chosen[m]]);
+					}
+				}
+				boolean failing = isFailing(i);
+				if (best == -1 || (bestFailing && !failing) || (bestFailing == failing && gain > bestGain)) {
+					bestGain = gain;
+					best = i;
+					bestFailing = failing;
+				}
+			}
+			chosen[c] = best;
+			inMatch[best] = true;
+			numRunning[best]++;
+		}
+
+		HighLevelTeamConfig[] teams = new HighLevelTeamConfig[numVariableTeamsPerGame + staticTeams.length];
+		for (int c = 0; c < numVariableTeamsPerGame; c++) {
+			teams[c] = variableTeams[chosen[c]];
+		}
+		System.arraycopy(staticTeams, 0, teams, numVariableTeamsPerGame, staticTeams.length);
+		return teams;
+	}
+
+	/**
+	 * How much a game between the two teams tells us: their uncertainty weighted by how
+	 * hard the result is to predict (the variance of the win/loss outcome)
+	 */
+	static double getInformationGain(TeamRecord team1, double uncertainty1, TeamRecord team2, double uncertainty2) {
+		double p = team1.getWinProbability(team2);
+		return p * (1 - p) * (uncertainty1 + uncertainty2);
+	}
+
+	/**
+	 * Tell the scheduler a match it picked has finished (after the ratings are updated)
+	 * @param teams the teams from nextMatch
+	 * @param failed true if the game failed (so no ratings changed)
+	 */
+	public synchronized void matchFinished(HighLevelTeamConfig[] teams, boolean failed) {
+		for (HighLevelTeamConfig team : teams) {
+			for (int i = 0; i < variableTeams.length; i++) {
+				if (variableTeams[i] == team) {
+					numRunning[i]--;
+					if (failed) {
+						numFailures[i]++;
+					} else {
+						numFailures[i] = 0;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * True if the variable team's last MAX_CONSECUTIVE_FAILURES games all failed
+	 */
+	boolean isFailing(int team) {
+		return numFailures[team] >= MAX_CONSECUTIVE_FAILURES;
+	}
+
+	/**
+	 * True if the ranking of the variable teams won't change much with more games (teams
+	 * that keep failing count as settled since more games won't tell us anything)
+	 * @return
+	 */
+	public synchronized boolean isStable() {
+		ArrayList<TeamRecord> rankedRecords = new ArrayList<TeamRecord>();
+		for (int i = 0; i < variableRecords.length; i++) {
+			if (isFailing(i)) {
+				continue;
+			}
+			if (variableRecords[i].getNumGames() == 0) {
+				return false;
+			}
+			rankedRecords.add(variableRecords[i]);
+		}
+
+		TeamRecord[] ranking = rankedRecords.toArray(new TeamRecord[rankedRecords.size()]);
+		Arrays.sort(ranking, new TeamRatingComparator());
+
+		for (int i = 0; i < ranking.length - 1; i++) {
+			TeamRecord better = ranking[i];
+			TeamRecord worse = ranking[i + 1];
+			double z = (better.ratingMean - worse.ratingMean) / Math.sqrt(better.ratingVariance + worse.ratingVariance);
+			boolean separated = normalCDF(z) >= rankingConfidence;
+			boolean tied = better.getRatingDeviation() <= maximumRatingDeviation
+					&& worse.getRatingDeviation() <= maximumRatingDeviation;
+			if (!separated && !tied) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Standard normal cumulative distribution (Abramowitz and Stegun 7.1.26, error below 1.5e-7)
+	 * @param z
+	 * @return
+	 */
+	static double normalCDF(double z) {
+		double x = Math.abs(z) / Math.sqrt(2);
+		double t = 1 / (1 + 0.3275911 * x);
+		double erf = 1 - t * (0.254829592 + t * (-0.284496736 + t * (1.421413741
+				+ t * (-1.453152027 + t * 1.061405429)))) * Math.exp(-x * x);
+		return z >= 0 ? 0.5 * (1 + erf) : 0.5 * (1 - erf);
+	}
+}
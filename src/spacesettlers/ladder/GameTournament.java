@@ -0,0 +1,542 @@
+package spacesettlers.ladder;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import spacesettlers.configs.GameAgentConfig;
+import spacesettlers.configs.GameTournamentConfig;
+import spacesettlers.game.AbstractGame;
+import spacesettlers.game.AbstractGameAction;
+import spacesettlers.game.AbstractGameAgent;
+import spacesettlers.game.GameFactory;
+import spacesettlers.simulator.SimulatorException;
+
+/**
+ * Ranks game agents by playing the mini-games (tic tac toe and mancala) on their own,
+ * without the space simulator, so millions of games can be played.  Every pair of agents
+ * plays numGamesPerPairing games of each game, alternating who goes first.  The games are
+ * split into batches that run in parallel on a thread pool (each batch makes its own
+ * agents so agents are never shared between threads).
+ *
+ * An agent that takes longer than the move time limit, throws an exception or returns
+ * no move forfeits the game.  Each move runs on a move thread and the game only waits for
+ * it until the time limit, the same way the simulator's mini-games do.  A move that is
+ * still running then is abandoned (it keeps its move thread until it returns) and the
+ * batch makes a new agent in its place.  A batch that takes longer than the batch time
+ * limit is stopped and its games aren't counted.
+ *
+ * The results are a win/draw/loss matrix for each game and an overall ranking, where
+ * the score is the average points per game (1 for a win, 1/2 for a draw) with a 95%
+ * confidence interval.  They are written to HTML like the ladder results.
+ *
+ * @author amy
+ */
+public class GameTournament {
+	/**
+	 * Games played by each task in the thread pool
+	 */
+	public static final int BATCH_SIZE = 1000;
+
+	/**
+	 * Games that go on longer than this (mancala agents that keep making illegal moves) are draws
+	 */
+	public static final int MAX_MOVES = 1000;
+
+	/**
+	 * Most abandoned moves that can still be running (more than this and the agent forfeits
+	 * without moving)
+	 */
+	public static final int MAX_ABANDONED_MOVES = 64;
+
+	/**
+	 * Results of a game (an agent that times out also forfeits)
+	 */
+	static final int DRAW = 0, PLAYER1_WINS = 1, PLAYER2_WINS = 2, PLAYER1_FORFEITS = 3, PLAYER2_FORFEITS = 4,
+			PLAYER1_TIMES_OUT = 5, PLAYER2_TIMES_OUT = 6;
+
+	/**
+	 * Counts kept for each agent and opponent (forfeits are also counted as losses)
+	 */
+	public static final int WINS = 0, DRAWS = 1, LOSSES = 2, FORFEITS = 3;
+	static final int NUM_COUNTS = 4;
+
+	static final double Z_95 = 1.96;
+
+	GameTournamentConfig config;
+
+	String[] games;
+
+	GameAgentConfig[] agents;
+
+	/**
+	 * results[game][agent][opponent][count] from the agent's point of view
+	 */
+	long[][][][] results;
+
+	/**
+	 * Agents (indices) sorted by overall score once the tournament has run
+	 */
+	ArrayList<Integer> sortedAgents;
+
+	/**
+	 * Runs the agents' moves (while the tournament is running)
+	 */
+	ThreadPoolExecutor moveExecutor;
+
+	/**
+	 * Make a tournament from the config
+	 * @param config
+	 */
+	public GameTournament(GameTournamentConfig config) {
+		this.config = config;
+		this.games = config.getGames();
+		this.agents = config.getAgents();
+		results = new long[games.length][agents.length][agents.length][NUM_COUNTS];
+	}
+
+	/**
+	 * Play all of the games
+	 * @throws SimulatorException if an agent can't be made
+	 * @throws InterruptedException
+	 * @throws ExecutionException
+	 */
+	public void run() throws SimulatorException, InterruptedException, ExecutionException {
+		// make sure every agent can be made before starting
+		for (GameAgentConfig agent : agents) {
+			makeAgent(agent);
+		}
+
+		int numThreads = config.getNumThreads() > 0 ? config.getNumThreads() : Runtime.getRuntime().availableProcessors();
+		ExecutorService threadPool = Executors.newFixedThreadPool(numThreads);
+		final AtomicInteger threadNumber = new AtomicInteger();
+		moveExecutor = new ThreadPoolExecutor(0, numThreads + MAX_ABANDONED_MOVES, 60, TimeUnit.SECONDS,
+				new SynchronousQueue<Runnable>(), new ThreadFactory() {
+					public Thread newThread(Runnable runnable) {
+						// daemon threads so an agent that never returns can't keep the JVM running
+						Thread thread = new Thread(runnable, "tournament-move-" + threadNumber.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		ArrayList<Batch> batches = new ArrayList<Batch>();
+
+		long numGames = 0;
+		for (int game = 0; game < games.length; game++) {
+			for (int agent = 0; agent < agents.length; agent++) {
+				for (int opponent = agent + 1; opponent < agents.length; opponent++) {
+					for (int first = 0; first < config.getNumGamesPerPairing(); first += BATCH_SIZE) {
+						int count = Math.min(BATCH_SIZE, config.getNumGamesPerPairing() - first);
+						Batch batch = new Batch(game, agent, opponent, first, count);
+						batch.future = threadPool.submit(batch);
+						batches.add(batch);
+						numGames += count;
+					}
+				}
+			}
+		}
+		System.out.println("Tournament will run " + numGames + " games on " + numThreads + " threads");
+
+		long batchTimeLimitNanos = TimeUnit.SECONDS.toNanos(config.getBatchTimeLimit());
+		try {
+			for (Batch batch : batches) {
+				// the time limit counts from when the batch started (or from now if it hasn't yet)
+				long batchStartTime = batch.startTime;
+				long waitNanos = batchTimeLimitNanos;
+				if (batchStartTime != 0) {
+					waitNanos -= System.nanoTime() - batchStartTime;
+				}
+				try {
+					batch.future.get(Math.max(waitNanos, 0), TimeUnit.NANOSECONDS);
+				} catch (TimeoutException e) {
+					batch.future.cancel(true);
+					System.err.println("Tournament batch of " + games[batch.game] + " games between " 
+							+ agents[batch.agent].getAgentName() + " and " + agents[batch.opponent].getAgentName()
+							+ " took longer than " + config.getBatchTimeLimit() + " seconds: its games aren't counted");
+					continue;
+				}
+				long[] agentCounts = results[batch.game][batch.agent][batch.opponent];
+				long[] opponentCounts = results[batch.game][batch.opponent][batch.agent];
+				for (int count = 0; count < NUM_COUNTS; count++) {
+					agentCounts[count] += batch.agentCounts[count];
+					opponentCounts[count] += batch.opponentCounts[count];
+				}
+			}
+		} finally {
+			threadPool.shutdownNow();
+			moveExecutor.shutdownNow();
+			threadPool.awaitTermination(1, TimeUnit.SECONDS);
+		}
+
+		// now sort the agents by score
+		sortedAgents = new ArrayList<Integer>();
+		for (int agent = 0; agent < agents.length; agent++) {
+			sortedAgents.add(agent);
+		}
+		Collections.sort(sortedAgents, new Comparator<Integer>() {
+			public int compare(Integer agent1, Integer agent2) {
+				return Double.compare(getScore(agent2), getScore(agent1));
+			}
+		});
+
+		System.out.println("Overall agent order: ");
+		for (int agent : sortedAgents) {
+			System.out.println(agents[agent].getAgentName() + " average score " + String.format("%.3f", getScore(agent)));
+		}
+	}
+
+	/**
+	 * Make an agent from its class name
+	 * @param agentConfig
+	 * @return
+	 * @throws SimulatorException
+	 */
+	static AbstractGameAgent makeAgent(GameAgentConfig agentConfig) throws SimulatorException {
+		try {
+			Class<?> agentClass = Class.forName(agentConfig.getAgentClass());
+			return (AbstractGameAgent) agentClass.getDeclaredConstructor().newInstance();
+		} catch (Exception e) {
+			throw new SimulatorException("Error making game agent " + agentConfig.getAgentName() + " from class "
+					+ agentConfig.getAgentClass() + ": " + e);
+		}
+	}
+
+	/**
+	 * Play one game
+	 * @param gameName
+	 * @param player1 the agent that moves first
+	 * @param player2
+	 * @param moveTimeLimitNanos
+	 * @param moveExecutor runs each move
+	 * @return DRAW, PLAYER1_WINS, PLAYER2_WINS, PLAYER1_FORFEITS, PLAYER2_FORFEITS, PLAYER1_TIMES_OUT
+	 * or PLAYER2_TIMES_OUT (the agent that timed out is still running its move)
+	 * @throws InterruptedException if the thread is interrupted while waiting for a move
+	 */
+	static int playGame(String gameName, AbstractGameAgent player1, AbstractGameAgent player2, long moveTimeLimitNanos,
+			ExecutorService moveExecutor) throws InterruptedException {
+		final AbstractGame game = GameFactory.generateNewGame(gameName, player1, player2);
+
+		for (int move = 0; move < MAX_MOVES && !game.isGameOver(); move++) {
+			final AbstractGameAgent currentPlayer = game.getCurrentPlayer();
+			boolean isPlayer1 = currentPlayer == player1;
+			int forfeit = isPlayer1 ? PLAYER1_FORFEITS : PLAYER2_FORFEITS;
+			Future<AbstractGameAction> future;
+			try {
+				future = moveExecutor.submit(new Callable<AbstractGameAction>() {
+					public AbstractGameAction call() {
+						return currentPlayer.getNextMove(game);
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				// too many abandoned moves are still running
+				return forfeit;
+			}
+
+			try {
+				AbstractGameAction action = future.get(moveTimeLimitNanos, TimeUnit.NANOSECONDS);
+				if (action == null) {
+					return forfeit;
+				}
+				game.playAction(action);
+			} catch (TimeoutException e) {
+				future.cancel(true);
+				return isPlayer1 ? PLAYER1_TIMES_OUT : PLAYER2_TIMES_OUT;
+			} catch (ExecutionException | RuntimeException e) {
+				// throwing or a bad move (e.g. the wrong type of action) also forfeits
+				return forfeit;
+			} catch (InterruptedException e) {
+				future.cancel(true);
+				throw e;
+			}
+		}
+
+		if (!game.isGameOver()) {
+			return DRAW;
+		}
+		int winner = game.getWinner();
+		if (winner == player1.getPlayer()) {
+			return PLAYER1_WINS;
+		} else if (winner == player2.getPlayer()) {
+			return PLAYER2_WINS;
+		} else {
+			return DRAW;
+		}
+	}
+
+	/**
+	 * Some of the games between two agents (run on the thread pool)
+	 */
+	class Batch implements Callable<Batch> {
+		final int game, agent, opponent, firstGame, numGames;
+		final long[] agentCounts, opponentCounts;
+
+		Future<Batch> future;
+
+		/**
+		 * System.nanoTime() when the batch started running (0 until then)
+		 */
+		volatile long startTime;
+
+		Batch(int game, int agent, int opponent, int firstGame, int numGames) {
+			this.game = game;
+			this.agent = agent;
+			this.opponent = opponent;
+			this.firstGame = firstGame;
+			this.numGames = numGames;
+			agentCounts = new long[NUM_COUNTS];
+			opponentCounts = new long[NUM_COUNTS];
+		}
+
+		public Batch call() throws Exception {
+			startTime = System.nanoTime();
+			AbstractGameAgent agentPlayer = makeAgent(agents[agent]);
+			AbstractGameAgent opponentPlayer = makeAgent(agents[opponent]);
+			long moveTimeLimitNanos = TimeUnit.MILLISECONDS.toNanos(config.getMoveTimeLimit());
+
+			for (int i = firstGame; i < firstGame + numGames; i++) {
+				// alternate who goes first
+				boolean agentFirst = (i % 2 == 0);
+				int result;
+				if (agentFirst) {
+					result = playGame(games[game], agentPlayer, opponentPlayer, moveTimeLimitNanos, moveExecutor);
+				} else {
+					result = playGame(games[game], opponentPlayer, agentPlayer, moveTimeLimitNanos, moveExecutor);
+				}
+
+				// an agent that timed out is still busy with its move so it is replaced
+				if (result == PLAYER1_TIMES_OUT || result == PLAYER2_TIMES_OUT) {
+					boolean player1TimedOut = (result == PLAYER1_TIMES_OUT);
+					if (player1TimedOut == agentFirst) {
+						agentPlayer = makeAgent(agents[agent]);
+					} else {
+						opponentPlayer = makeAgent(agents[opponent]);
+					}
+					result = player1TimedOut ? PLAYER1_FORFEITS : PLAYER2_FORFEITS;
+				}
+
+				if (result == DRAW) {
+					agentCounts[DRAWS]++;
+					opponentCounts[DRAWS]++;
+				} else if ((result == PLAYER1_WINS || result == PLAYER2_FORFEITS) == agentFirst) {
+					agentCounts[WINS]++;
+					opponentCounts[LOSSES]++;
+					if (result == PLAYER1_FORFEITS || result == PLAYER2_FORFEITS) {
+						opponentCounts[FORFEITS]++;
+					}
+				} else {
+					agentCounts[LOSSES]++;
+					opponentCounts[WINS]++;
+					if (result == PLAYER1_FORFEITS || result == PLAYER2_FORFEITS) {
+						agentCounts[FORFEITS]++;
+					}
+				}
+			}
+			return this;
+		}
+	}
+
+	/**
+	 * Total of a count for the agent over all of the games and opponents
+	 * @param agent
+	 * @param count WINS, DRAWS, LOSSES or FORFEITS
+	 * @return
+	 */
+	public long getTotal(int agent, int count) {
+		long total = 0;
+		for (int game = 0; game < games.length; game++) {
+			for (int opponent = 0; opponent < agents.length; opponent++) {
+				total += results[game][agent][opponent][count];
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * Count for the agent against one opponent at one game
+	 * @param game index into the config's games
+	 * @param agent
+	 * @param opponent
+	 * @param count WINS, DRAWS, LOSSES or FORFEITS
+	 * @return
+	 */
+	public long getResult(int game, int agent, int opponent, int count) {
+		return results[game][agent][opponent][count];
+	}
+
+	/**
+	 * Average points per game for the agent over everything it played
+	 * @param agent
+	 * @return
+	 */
+	public double getScore(int agent) {
+		return getScore(getTotal(agent, WINS), getTotal(agent, DRAWS), getTotal(agent, LOSSES));
+	}
+
+	/**
+	 * Half width of the 95% confidence interval on the agent's score
+	 * @param agent
+	 * @return
+	 */
+	public double getConfidence(int agent) {
+		return getConfidence(getTotal(agent, WINS), getTotal(agent, DRAWS), getTotal(agent, LOSSES));
+	}
+
+	static double getScore(long wins, long draws, long losses) {
+		long numGames = wins + draws + losses;
+		if (numGames == 0) {
+			return 0;
+		}
+		return (wins + 0.5 * draws) / numGames;
+	}
+
+	/**
+	 * Half width of the 95% confidence interval on the score (normal approximation using
+	 * the variance of the points scored per game)
+	 */
+	static double getConfidence(long wins, long draws, long losses) {
+		long numGames = wins + draws + losses;
+		if (numGames == 0) {
+			return 0;
+		}
+		double score = getScore(wins, draws, losses);
+		double variance = (wins + 0.25 * draws) / numGames - score * score;
+		return Z_95 * Math.sqrt(Math.max(variance, 0) / numGames);
+	}
+
+	/**
+	 * Agents (indices into the config's agents) from best to worst
+	 * @return
+	 */
+	public ArrayList<Integer> getSortedAgents() {
+		return sortedAgents;
+	}
+
+	/**
+	 * Saves out the results to HTML
+	 * @param fileName
+	 */
+	public void printResultsToHTML(String fileName) {
+		try (Writer writer = new BufferedWriter(new FileWriter(fileName, false))) {
+			writeHTMLHeader(writer);
+			writeHTMLTableResults(writer);
+			for (int game = 0; game < games.length; game++) {
+				writeHTMLMatrixResults(writer, game);
+			}
+			writeHTMLFooter(writer);
+		} catch (IOException e) {
+			System.err.println("Error writing tournament results.");
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * The agent's name, escaped for HTML
+	 */
+	String getHTMLName(int agent) {
+		return LadderReport.escapeHTML(agents[agent].getAgentName());
+	}
+
+	/**
+	 * Writes the overall results to a HTML table
+	 */
+	void writeHTMLTableResults(Writer writer) throws IOException {
+		writer.write("<table border=\"2\">\n");
+		writer.write("<tr>\n");
+		writer.write("<th>Place</th>");
+		writer.write("<th>Agent</th>");
+		writer.write("<th>Average Score</th>");
+		writer.write("<th>Wins</th>");
+		writer.write("<th>Draws</th>");
+		writer.write("<th>Losses</th>");
+		writer.write("<th>Forfeits</th>");
+		writer.write("</tr>");
+
+		int place = 1;
+		for (int agent : sortedAgents) {
+			writer.write("<tr>\n");
+			writer.write("<td>" + place + "</td>\n");
+			writer.write("<td>" + getHTMLName(agent) + "</td>\n");
+			writer.write("<td>" + String.format("%.3f &plusmn; %.3f", getScore(agent), getConfidence(agent)) + "</td>\n");
+			writer.write("<td>" + getTotal(agent, WINS) + "</td>\n");
+			writer.write("<td>" + getTotal(agent, DRAWS) + "</td>\n");
+			writer.write("<td>" + getTotal(agent, LOSSES) + "</td>\n");
+			writer.write("<td>" + getTotal(agent, FORFEITS) + "</td>\n");
+			writer.write("</tr>");
+			place++;
+		}
+
+		writer.write("</table>");
+	}
+
+	/**
+	 * Writes the win / draw / loss matrix for one game (row agent against column agent)
+	 * @param writer
+	 * @param game
+	 */
+	void writeHTMLMatrixResults(Writer writer, int game) throws IOException {
+		writer.write("<h3>" + LadderReport.escapeHTML(games[game]) + " (wins / draws / losses, score)</h3>\n");
+		writer.write("<table border=\"2\">\n");
+		writer.write("<tr>\n");
+		writer.write("<th>Agent</th>");
+		for (int opponent : sortedAgents) {
+			writer.write("<th>" + getHTMLName(opponent) + "</th>");
+		}
+		writer.write("</tr>");
+
+		for (int agent : sortedAgents) {
+			writer.write("<tr>\n");
+			writer.write("<td>" + getHTMLName(agent) + "</td>\n");
+			for (int opponent : sortedAgents) {
+				if (agent == opponent) {
+					writer.write("<td>-</td>\n");
+					continue;
+				}
+				long[] counts = results[game][agent][opponent];
+				writer.write("<td>" + String.format("%d / %d / %d, %.3f &plusmn; %.3f", counts[WINS], counts[DRAWS], 
+						counts[LOSSES], getScore(counts[WINS], counts[DRAWS], counts[LOSSES]),
+						getConfidence(counts[WINS], counts[DRAWS], counts[LOSSES])) + "</td>\n");
+			}
+			writer.write("</tr>");
+		}
+
+		writer.write("</table>");
+	}
+
+	/**
+	 * Writes the header information for the tournament
+	 */
+	void writeHTMLHeader(Writer writer) throws IOException {
+		writer.write("<html>\n");
+		writer.write("<title>Mini-game Tournament</title>\n");
+		writer.write("<body bgcolor=\"white\">\n");
+	}
+
+	/**
+	 * Writes the footer information for the tournament
+	 */
+	void writeHTMLFooter(Writer writer) throws IOException {
+		writer.write("<hr>\n");
+		SimpleDateFormat dateFormat = new SimpleDateFormat("EEE, d MMM yyyy HH:mm:ss Z");
+		String dateString = dateFormat.format(new Date());
+		writer.write("Last updated: " + dateString + "\n");
+		writer.write("</body></html>\n");
+	}
+}
@@ -0,0 +1,65 @@
+package spacesettlers.ladder;
+
+import spacesettlers.utilities.RunningStatistics;
+
+/**
+ * How one team has done against one opponent: wins, losses and ties in the games they
+ * were both in, and the statistics of the difference in their scores.
+ *
+ * @author amy
+ */
+public class HeadToHeadRecord {
+	String opponentName;
+
+	int wins, losses, ties;
+
+	/**
+	 * This team's score minus the opponent's score in each game
+	 */
+	RunningStatistics scoreDifference;
+
+	public HeadToHeadRecord(String opponentName) {
+		this.opponentName = opponentName;
+		scoreDifference = new RunningStatistics();
+	}
+
+	/**
+	 * Add a game the two teams played
+	 * @param score this team's score
+	 * @param opponentScore the opponent's score
+	 */
+	public void update(double score, double opponentScore) {
+		if (score > opponentScore) {
+			wins++;
+		} else if (score < opponentScore) {
+			losses++;
+		} else {
+			ties++;
+		}
+		scoreDifference.add(score - opponentScore);
+	}
+
+	public String getOpponentName() {
+		return opponentName;
+	}
+
+	public int getWins() {
+		return wins;
+	}
+
+	public int getLosses() {
+		return losses;
+	}
+
+	public int getTies() {
+		return ties;
+	}
+
+	public int getNumGames() {
+		return wins + losses + ties;
+	}
+
+	public RunningStatistics getScoreDifference() {
+		return scoreDifference;
+	}
+}
@@ -1,26 +1,22 @@
 package spacesettlers.ladder;
 
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 
-import spacesettlers.clients.Team;
+import spacesettlers.clients.TeamClientFactory;
 import spacesettlers.configs.*;
 import spacesettlers.simulator.SimulatorException;
 import spacesettlers.simulator.SpaceSettlersSimulator;
 
 import com.martiansoftware.jsap.JSAPResult;
-import com.thoughtworks.xstream.XStream;
 
 /**
  * Runs the ladder
@@ -40,9 +36,25 @@ public class Ladder {
 	
 	ArrayList<TeamRecord> sortedLadderResults;
 	
-	ArrayList<String> ladderOutputString;
-	
-	ExecutorService threadPool;
+	/**
+	 * The standings and game log pages (updated as the games finish)
+	 */
+	LadderReport report;
+
+	/**
+	 * Ladder name (from the client config) of each team, by team name
+	 */
+	HashMap<String, String> ladderNames;
+
+	/**
+	 * Journal of the finished games (null if the config file doesn't have one)
+	 */
+	LadderJournal journal;
+
+	/**
+	 * Merges each game's knowledge back into the teams' knowledge files (null unless the config file turns it on)
+	 */
+	LadderKnowledge knowledge;
 
 	/**
 	 * Make a new ladder
@@ -54,7 +66,7 @@ public class Ladder {
 		this.parserConfig = parserConfig;
 
 		ladderResultsMap = new HashMap<String, TeamRecord>();
-		ladderOutputString = new ArrayList<String>();
+		ladderNames = new HashMap<String, String>();
 	}
 
 	/**
@@ -62,6 +74,8 @@ public class Ladder {
 	 */
 	public Ladder(LadderConfig ladderConfig) {
 		this.ladderConfig = ladderConfig;
+		ladderResultsMap = new HashMap<String, TeamRecord>();
+		ladderNames = new HashMap<String, String>();
 	}
 
 	/**
@@ -72,42 +86,12 @@ public class Ladder {
 	public void loadConfigFiles(JSAPResult parserConfig) throws SimulatorException {
 		// load in the simulator config file
 		String configFile = parserConfig.getString("configPath") + parserConfig.getString("simulatorConfigFile");
-
-		XStream xstream = new XStream();
-		xstream.alias("SpaceSettlersConfig", SpaceSettlersConfig.class);
-		xstream.alias("HighLevelTeamConfig", HighLevelTeamConfig.class);
-		xstream.alias("BaseConfig", BaseConfig.class);
-		xstream.alias("AsteroidConfig", RandomAsteroidConfig.class);
-		xstream.alias("FixedAsteroidConfig", FixedAsteroidConfig.class);
-		xstream.alias("FlagConfig", FlagConfig.class);
-		xstream.allowTypesByRegExp(new String[] { ".*" });
-
-
-		try { 
-			simConfig = (SpaceSettlersConfig) xstream.fromXML(new File(configFile));
-		} catch (Exception e) {
-			throw new SimulatorException("Error parsing config file at string " + e.getMessage());
-		}
+		simConfig = ConfigRepository.getSpaceSettlersConfig(configFile);
 
 		// load in the ladder config file
 		configFile = parserConfig.getString("configPath") + parserConfig.getString("ladderConfigFile");
-
-		xstream = new XStream();
-		xstream.alias("LadderConfig", LadderConfig.class);
-		xstream.alias("HighLevelTeamConfig", HighLevelTeamConfig.class);
-		xstream.allowTypesByRegExp(new String[] { ".*" });
-		
-		try { 
-			ladderConfig = (LadderConfig) xstream.fromXML(new File(configFile));
-			
-			ladderConfig.makePlayerNamesUnique();
-			
-			
-		} catch (Exception e) {
-			throw new SimulatorException("Error parsing config file at string " + e.getMessage());
-		}
-
-
+		ladderConfig = ConfigRepository.getLadderConfig(configFile);
+		ladderConfig.makePlayerNamesUnique();
 	}
 
 	/**
@@ -117,95 +101,328 @@ public class Ladder {
 	 * @throws ExecutionException 
 	 */
 	public void run() throws SimulatorException, InterruptedException, ExecutionException {
+		preloadClients();
+		openJournal();
+		report = new LadderReport(parserConfig.getString("configPath") + ladderConfig.getOutputFileName());
+		if (ladderConfig.isMergeKnowledge()) {
+			knowledge = new LadderKnowledge(parserConfig.getString("configPath"));
+			knowledge.removeOldCopies(ladderConfig.getStaticTeams());
+			knowledge.removeOldCopies(ladderConfig.getVariableTeams());
+		}
+
+		// run the games on threads or in worker processes
+		LadderGameRunner runner;
+		if (ladderConfig.getNumWorkerProcesses() > 0 || ladderConfig.getWorkerPort() > 0) {
+			LadderCoordinator coordinator = new LadderCoordinator(parserConfig, ladderConfig.getNumWorkerProcesses(), 
+					ladderConfig.getWorkerPort(), ladderConfig.getWorkerAddress(), simConfig.getRandomSeed());
+			coordinator.setWorkerWaitTime(ladderConfig.getWorkerWaitTime() * 1000L);
+			runner = coordinator;
+		} else {
+			runner = new LadderThreadRunner(parserConfig, Math.max(ladderConfig.getNumThreads(), 1));
+		}
+
+		try {
+			if (ladderConfig.isAdaptiveScheduling()) {
+				runAdaptive(runner);
+			} else {
+				runAllMatches(runner);
+			}
+		} finally {
+			runner.shutdown();
+			closeJournal();
+		}
+
+		// now sort the final results
+		sortedLadderResults = sortResults();
+		System.out.println("Overall team order: ");
+		for (TeamRecord record : sortedLadderResults) {
+			System.out.println(record.getTeamName() + " average score " + record.getAverageScore() 
+					+ " rating " + String.format("%.2f +/- %.2f", record.getRatingMean(), record.getRatingDeviation()));
+		}
+	}
+
+	/**
+	 * Returns the teams in ladder order
+	 * @return
+	 */
+	ArrayList<TeamRecord> sortResults() {
+		ArrayList<TeamRecord> sortedResults = new ArrayList<TeamRecord>(ladderResultsMap.values());
+		if (ladderConfig.isAdaptiveScheduling()) {
+			// the teams didn't all play the same opponents so their average scores can't be compared
+			Collections.sort(sortedResults, new TeamRatingComparator());
+		} else {
+			Collections.sort(sortedResults, new TeamRecordComparator());
+		}
+		return sortedResults;
+	}
+
+	/**
+	 * Play every combination of the variable teams numRepeatMatches times (skipping the 
+	 * ones already in the journal)
+	 */
+	void runAllMatches(LadderGameRunner runner) throws SimulatorException, InterruptedException, ExecutionException {
 		ArrayList<HighLevelTeamConfig[]>clientsPerMatch = getAllClientsForAllMatches();
 		
 		int numGames = clientsPerMatch.size() * ladderConfig.getNumRepeatMatches();
 		System.out.println("Ladder will run " + numGames + " games");
+		if (report != null) {
+			report.setNumGames(numGames);
+		}
 		System.out.println("Variable teams are: ");
 		for (HighLevelTeamConfig team : ladderConfig.getVariableTeams()) {
 			System.out.println(team);
 		}
-		int gameIndex = 0;
-		
-		// create the thread pool
-		int numThreads = Math.max(ladderConfig.getNumThreads(), 1);
-		
-		threadPool = Executors.newFixedThreadPool(numThreads);
-		ArrayList<Future<LadderSingleGame>> ladderResults = new ArrayList<Future<LadderSingleGame>>();
 
+		// each game is known by its repeat and its teams
+		LinkedHashMap<String, HighLevelTeamConfig[]> gamesToPlay = new LinkedHashMap<String, HighLevelTeamConfig[]>();
 		for (int repeat = 0; repeat < ladderConfig.getNumRepeatMatches(); repeat++) {
 			for (HighLevelTeamConfig[] teamsForMatch : clientsPerMatch) {
-				gameIndex++;
+				gamesToPlay.put(getGameKey(repeat, teamsForMatch), teamsForMatch);
+			}
+		}
+		int numFinished = replayJournal(gamesToPlay.keySet());
 
-				// setup a new single game
-				LadderSingleGame newGame = new LadderSingleGame(parserConfig);
-				newGame.initializeGame(teamsForMatch, gameIndex, numGames);
-				
-				// run the game as threads are available
-				Future<LadderSingleGame> gameResult = threadPool.submit(newGame);
-				ladderResults.add(gameResult);
+		int gameIndex = numFinished;
+		for (String gameKey : gamesToPlay.keySet()) {
+			if (journal != null && journal.getCompletedGames().containsKey(gameKey)) {
+				continue;
 			}
+			gameIndex++;
+			submit(runner, gameKey, gamesToPlay.get(gameKey), gameIndex, numGames);
 		}
-		
-		// loop through all the games and see if they are done (no blocking)
-		int numFinished = 0;
-		
-		while (numFinished != numGames) {
-			numFinished = 0;
-			
-			// loop through all the games
-			for (Future<LadderSingleGame> future : ladderResults) {
-				if (future.isDone()) {
-					numFinished++;
-				} else {
-					break;
-				}
+
+		// add each game to the records (and the journal) as it finishes
+		while (numFinished < numGames) {
+			addGameResults(runner.take());
+			numFinished++;
+		}
+
+		System.out.println("Finished running games!");
+	}
+
+	/**
+	 * Pick each match from the current ratings (see AdaptiveScheduler) and stop once the
+	 * ranking is stable or the maximum number of games has been played
+	 */
+	void runAdaptive(LadderGameRunner runner) throws SimulatorException, InterruptedException, ExecutionException {
+		HighLevelTeamConfig[] variableTeams = ladderConfig.getVariableTeams();
+		TeamRecord[] variableRecords = new TeamRecord[variableTeams.length];
+		for (int i = 0; i < variableTeams.length; i++) {
+			variableRecords[i] = getTeamRecord(ladderNames.get(variableTeams[i].getTeamName()));
+		}
+
+		int numVariableTeams = Math.min(ladderConfig.getMaximumNumberVariableTeams(), variableTeams.length);
+		int maxGames = ladderConfig.getMaximumAdaptiveGames();
+		if (maxGames <= 0) {
+			long fullLadder = calculateNChooseK(variableTeams.length, numVariableTeams) * ladderConfig.getNumRepeatMatches();
+			maxGames = (int) Math.min(fullLadder, Integer.MAX_VALUE);
+		}
+		System.out.println("Adaptive ladder will run at most " + maxGames + " games");
+		if (report != null) {
+			report.setNumGames(maxGames);
+		}
+
+		AdaptiveScheduler scheduler = new AdaptiveScheduler(variableTeams, variableRecords, 
+				ladderConfig.getStaticTeams(), numVariableTeams, ladderConfig.getRankingConfidence(), 
+				ladderConfig.getMaximumRatingDeviation(), new Random());
+		HashMap<String, HighLevelTeamConfig[]> runningMatches = new HashMap<String, HighLevelTeamConfig[]>();
+
+		// the ratings from the journaled games pick up where the last run left off
+		int gameIndex = replayJournal(null);
+		int numRunning = 0;
+		while (true) {
+			// keep every thread busy until the ranking is stable
+			while (numRunning < runner.getNumParallelGames() && gameIndex < maxGames && !scheduler.isStable()) {
+				gameIndex++;
+				String gameKey = "adaptive" + gameIndex;
+				HighLevelTeamConfig[] teamsForMatch = scheduler.nextMatch();
+				submit(runner, gameKey, teamsForMatch, gameIndex, maxGames);
+				runningMatches.put(gameKey, teamsForMatch);
+				numRunning++;
 			}
-			
-			// sleep for a bit if not all the games are done
-			if (numFinished != numGames) {
-				Thread.sleep(Math.max(1000, 100 * (numGames - numFinished)));
+			if (numRunning == 0) {
+				break;
 			}
-		}		
 
-		System.out.println("Finished running games!  Now grabbing results from the threads.");
-		
-		// the games are over so combine their records and then sort them
-		for (Future<LadderSingleGame> future : ladderResults) {
-			LadderSingleGame game = future.get();
-			
-			// output the results of the match
-			ladderOutputString.addAll(game.getLadderOutputString());
-			//System.out.println("Output string is ");
-			//System.out.println(game.getLadderOutputString());
-			
-			// merge the records for each game into the global list by team
-			HashMap <String, Team> gameResults = game.getLadderResultsMap();
-			for (String teamName : gameResults.keySet()) {
-				Team thisTeam = gameResults.get(teamName);
-				
-				if (!ladderResultsMap.containsKey(teamName)) {
-					ladderResultsMap.put(teamName, new TeamRecord(thisTeam));
-				}
-				ladderResultsMap.get(teamName).update(thisTeam);
+			LadderGameResult result = runner.take();
+			numRunning--;
+			addGameResults(result);
+			scheduler.matchFinished(runningMatches.remove(result.getKey()), result.isFailed());
+		}
+
+		System.out.println("Adaptive ladder finished after " + gameIndex + " games (ranking " 
+				+ (scheduler.isStable() ? "stable" : "not yet stable") + ")");
+	}
+
+	/**
+	 * Queue a game with the runner (and remember it so its knowledge can be merged when it finishes)
+	 */
+	void submit(LadderGameRunner runner, String gameKey, HighLevelTeamConfig[] teamsForMatch, int gameIndex, 
+			int numGames) throws SimulatorException {
+		if (knowledge != null) {
+			knowledge.gameSubmitted(gameKey, teamsForMatch, gameIndex);
+		}
+		runner.submit(gameKey, teamsForMatch, gameIndex, numGames);
+	}
+
+	/**
+	 * Returns the key for a game in the journal
+	 * @param repeat
+	 * @param teamsForMatch
+	 * @return
+	 */
+	static String getGameKey(int repeat, HighLevelTeamConfig[] teamsForMatch) {
+		String key = "repeat" + repeat;
+		for (HighLevelTeamConfig team : teamsForMatch) {
+			key += ":" + team.getTeamName();
+		}
+		return key;
+	}
+
+	/**
+	 * Open the journal if the config file has one
+	 * @throws SimulatorException
+	 */
+	void openJournal() throws SimulatorException {
+		if (ladderConfig.getJournalFileName() == null) {
+			return;
+		}
+		String journalName = parserConfig.getString("configPath") + ladderConfig.getJournalFileName();
+		try {
+			journal = new LadderJournal(new File(journalName));
+		} catch (IOException e) {
+			e.printStackTrace();
+			throw new SimulatorException("Error opening ladder journal " + journalName + ": " + e.getMessage());
+		}
+		if (journal.getCompletedGames().size() > 0) {
+			System.out.println("Resuming the ladder: " + journal.getCompletedGames().size() + " games are already in the journal");
+		}
+	}
+
+	void closeJournal() {
+		if (journal != null) {
+			try {
+				journal.close();
+			} catch (IOException e) {
+				System.err.println("Error closing ladder journal");
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Add the games from the journal to the records
+	 * @param gameKeys keys of the games in this ladder (null for all of the games in the journal)
+	 * @return the number of games added
+	 */
+	int replayJournal(Set<String> gameKeys) {
+		if (journal == null) {
+			return 0;
+		}
+		int numReplayed = 0;
+		for (LadderGameResult result : journal.getCompletedGames().values()) {
+			if (gameKeys == null || gameKeys.contains(result.getKey())) {
+				addToRecords(result);
+				numReplayed++;
+			}
+		}
+		return numReplayed;
+	}
+
+	/**
+	 * Journal a finished game and add its results to the records.  Failed games aren't
+	 * journaled so a resumed ladder plays them again.
+	 * @param result
+	 */
+	void addGameResults(LadderGameResult result) {
+		// merge the game's knowledge before it is journaled (a journaled game isn't run again)
+		if (knowledge != null) {
+			knowledge.gameFinished(result);
+		}
+		if (journal != null && !result.isFailed()) {
+			try {
+				journal.append(result);
+			} catch (IOException e) {
+				// keep going (the results are still in memory) but stop journaling
+				System.err.println("Error writing ladder journal: the rest of the games will not be journaled");
+				e.printStackTrace();
+				closeJournal();
+				journal = null;
 			}
-			//System.out.println(game.getLadderResultsMap());
+		}
+		addToRecords(result);
+		// only sort the standings when the report is going to write them
+		if (report != null && report.isUpdateDue()) {
+			report.update(sortResults());
+		}
+	}
+
+	/**
+	 * Add the results of a finished game to each team's record and update the ratings
+	 * @param result
+	 */
+	void addToRecords(LadderGameResult result) {
+		// output the results of the match
+		if (report != null) {
+			report.addGame(result);
 		}
 		
-		// now sort the final results
-		sortedLadderResults = new ArrayList<TeamRecord>();
-		for (TeamRecord record : ladderResultsMap.values()) {
-			sortedLadderResults.add(record);
+		// merge the records for each game into the global list by team
+		List<TeamGameStats> teamStats = result.getTeamStats();
+		TeamRecord[] records = new TeamRecord[teamStats.size()];
+		double[] scores = new double[teamStats.size()];
+		for (int i = 0; i < teamStats.size(); i++) {
+			TeamGameStats stats = teamStats.get(i);
+			records[i] = getTeamRecord(stats.getLadderName());
+			records[i].update(stats);
+			scores[i] = stats.getScore();
 		}
-		//System.out.println("Sorted results are " + sortedLadderResults);
-		Collections.sort(sortedLadderResults, new TeamRecordComparator());
-		System.out.println("Overall team order: ");
-		for (TeamRecord record : sortedLadderResults) {
-			System.out.println(record.getTeamName() + " average score " + record.getAverageScore());
+		TeamRecord.updateHeadToHead(records, scores);
+		TeamRecord.updateRatings(records, scores);
+	}
+
+	/**
+	 * Returns the record for the team (making it if needed)
+	 * @param ladderName
+	 * @return
+	 */
+	TeamRecord getTeamRecord(String ladderName) {
+		TeamRecord record = ladderResultsMap.get(ladderName);
+		if (record == null) {
+			record = new TeamRecord(ladderName);
+			ladderResultsMap.put(ladderName, record);
 		}
+		return record;
 	}
 
 
+	/**
+	 * Load every team's client class before any games are run so a missing or broken
+	 * client stops the ladder right away (and no game pays for loading the classes)
+	 * @throws SimulatorException listing every team whose client can't be loaded
+	 */
+	void preloadClients() throws SimulatorException {
+		String errors = "";
+		ArrayList<HighLevelTeamConfig> allTeams = new ArrayList<HighLevelTeamConfig>();
+		Collections.addAll(allTeams, ladderConfig.getStaticTeams());
+		Collections.addAll(allTeams, ladderConfig.getVariableTeams());
+
+		for (HighLevelTeamConfig team : allTeams) {
+			try {
+				String configFile = parserConfig.getString("configPath") + team.getConfigFile();
+				TeamClientConfig teamClientConfig = ConfigRepository.getTeamClientConfig(configFile);
+				TeamClientFactory.preload(teamClientConfig.getClassname(), teamClientConfig.getClassPath());
+				ladderNames.put(team.getTeamName(), teamClientConfig.getLadderName());
+			} catch (SimulatorException e) {
+				errors += "\n" + team.getTeamName() + ": " + e.getMessage();
+			}
+		}
+
+		if (errors.length() > 0) {
+			throw new SimulatorException("Error: unable to load the clients for the ladder" + errors);
+		}
+	}
+
 	/**
 	 * Return the results of the ladder
 	 * @return
@@ -307,155 +524,33 @@ public class Ladder {
 	}
 
 	/**
-	 * Compute the number for n choose k.  There are more efficient
-	 * implementations but this isn't called much.
+	 * Compute the number for n choose k (multiplying and dividing one term at a time so it
+	 * doesn't overflow the way the factorials did for n of 13 or more)
 	 * 
 	 * @param n
 	 * @param k
 	 * @return
 	 */
-	protected int calculateNChooseK(int n, int k) {
-		if (k == 0) {
+	protected long calculateNChooseK(int n, int k) {
+		if (k == 0 || k > n) {
 			return 0;
-		} else {
-			return factorial(n) / (factorial(k) * factorial(n - k));
 		}
-	}
-
-	/**
-	 * Compute the factorial of n
-	 * @param n
-	 * @return
-	 */
-	private int factorial(int n) {
-		if (n <= 1) {
-			return 1;
-		} else {
-			return factorial(n - 1) * n;
+		k = Math.min(k, n - k);
+		long result = 1;
+		for (int i = 1; i <= k; i++) {
+			// result * (n - k + i) is always divisible by i
+			result = result * (n - k + i) / i;
 		}
+		return result;
 	}
 
 	/**
-	 * Saves out the results to HTML (as specified in the config file)
+	 * Saves out the final results to HTML (as specified in the config file)
 	 */
 	public void printResultsToHTML() {
-		String ladderName = parserConfig.getString("configPath") + ladderConfig.getOutputFileName();
-		try {
-			FileWriter writer = new FileWriter(ladderName, false);
-
-			// write the top of the table and page
-			String str = getHTMLHeader();
-			writer.write(str);
-			
-			// write the results
-			str = getHTMLTableResults();
-			writer.write(str);
-
-			str = getHTMLStringResults();
-			writer.write(str);
-
-			// end the table and page
-			str = getHTMLFooter();
-			writer.write(str);
-			
-			writer.close();
-		} catch (IOException e) {
-			System.err.println("Error writing ladder.");
-			e.printStackTrace();
-		}
-		
-		
-		
-		
-	}
-
-	/**
-	 * Writes the average results to a HTML table
-	 * 
-	 * @return
-	 */
-	private String getHTMLTableResults() {
-		String str = "<table border=\"2\">\n";
-		str += "<tr>\n";
-		str += "<th>Place</th>";
-		str += "<th>Team</th>";
-		str += "<th>Average Score</th>";
-		str += "<th>Average Beacons</th>";
-		str += "<th>Average Resources</th>";
-		str += "<th>Average Deaths</th>";
-		str += "<th>Average Kills</th>";
-		str += "<th>Average Assists</th>";
-		str += "<th>Average Cores</th>";
-		str += "<th>Average Stars</th>";
-		str += "</tr>";
-		
-		int place = 1;
-		for (TeamRecord record : sortedLadderResults) {
-			str += "<tr>\n";
-			str += "<td>" + place + "</td>\n";
-			str += "<td>" + record.getTeamName() + "</td>\n";
-			str += "<td>" + record.getAverageScore() + "</td>\n";
-			str += "<td>" + record.getAverageBeacons() + "</td>\n";
-			str += "<td>" + record.getAverageResources() + "</td>\n";
-			str += "<td>" + String.format("%02.02f", record.getAverageDeaths()) + "</td>\n";
-			str += "<td>" + String.format("%02.02f", record.getAverageKills()) + "</td>\n";
-			str += "<td>" + String.format("%02.02f", record.getAverageAssists()) + "</td>\n";
-			str += "<td>" + String.format("%02.02f", record.getAverageCores()) + "</td>\n";
-			str += "<td>" + String.format("%02.02f", record.getAverageStars()) + "</td>\n";
-			str += "</tr>";
-			place++;
-		}
-		
-		str += "</table>";
-		
-		return str;
-	}
-
-	/**
-	 * Writes out the game results into a string 
-	 */
-	private String getHTMLStringResults() {
-		String str = "<ul>";
-		
-		for (String gameString : ladderOutputString) {
-			str += "<li>" + gameString.replaceAll("<", "&lt;").replaceAll(">", "&gt;") + "\n";
+		if (report == null) {
+			report = new LadderReport(parserConfig.getString("configPath") + ladderConfig.getOutputFileName());
 		}
-		
-		str += "</ul>";
-		
-		return str;
-	}
-
-	/**
-	 * Writes the header information for the ladder
-	 * 
-	 * @return
-	 */
-	private String getHTMLHeader() {
-		// start the page
-		String str = "<html>\n";
-		str += "<title>Spacewar Ladder</title>\n";
-		str += "<body bgcolor=\"white\">\n";
-		
-		return str;
+		report.finish(sortedLadderResults);
 	}
-
-	/**
-	 * Writes the footer information for the ladder
-	 * 
-	 * @return
-	 */
-	private String getHTMLFooter() {
-		String str = "<hr>\n";
-		SimpleDateFormat dateFormat = new SimpleDateFormat("EEE, d MMM yyyy HH:mm:ss Z");
-		String dateString = dateFormat.format(new Date());
-		str += "Last updated: " + dateString + "\n";
-		str += "</body></html>\n";
-		
-		return str;
-	}
-
-
-
-
 }
@@ -0,0 +1,471 @@
+package spacesettlers.ladder;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import spacesettlers.configs.ConfigRepository;
+import spacesettlers.configs.HighLevelTeamConfig;
+import spacesettlers.simulator.SimulatorException;
+
+import com.martiansoftware.jsap.JSAPResult;
+
+/**
+ * Runs the ladder's games in worker JVMs (see LadderWorker) so each game gets its own
+ * statics, its own garbage collector and can crash without taking the ladder down.  The
+ * coordinator listens on a socket and starts numWorkerProcesses workers on this machine;
+ * more workers can be started by hand on other machines (with the same config files and
+ * clients) and pointed at the coordinator's port.
+ *
+ * Each worker asks for a game, gets its teams (as config XML) and random seed, runs it
+ * and sends back the results in the journal format.  While it runs a game the worker
+ * sends a heartbeat every HEARTBEAT_INTERVAL, and a worker that is silent for
+ * WORKER_TIMEOUT is given up on.  If a worker dies, stops answering or its connection
+ * drops, its game goes back on the front of the queue and (for the local workers) a new
+ * worker is started in its place.  A game that has lost MAX_GAME_ATTEMPTS workers is
+ * failed instead, so one game that crashes every worker can't stop the ladder.  With no
+ * workers at all (e.g. only workers on other machines, which haven't connected yet) the
+ * coordinator waits workerWaitTime for one before it gives up.
+ *
+ * The messages are written with DataOutputStream:
+ * <pre>
+ * worker to coordinator: HELLO     int version
+ * coordinator to worker: GAME      UTF key, int gameIndex, int numGames, long seed, int length, teams XML
+ * coordinator to worker: STOP
+ * worker to coordinator: HEARTBEAT
+ * worker to coordinator: RESULT    int length, game in the journal format (LadderJournal.encode)
+ * </pre>
+ *
+ * @author amy
+ */
+public class LadderCoordinator implements LadderGameRunner {
+	static final int HELLO = 1;
+	static final int GAME = 2;
+	static final int STOP = 3;
+	static final int RESULT = 4;
+	static final int HEARTBEAT = 5;
+
+	static final int PROTOCOL_VERSION = 2;
+
+	/**
+	 * Most times in a row each local worker is replaced (without the ladder finishing a game
+	 * in between) before the coordinator gives up on it
+	 */
+	static final int MAX_RESTARTS = 5;
+
+	/**
+	 * Most workers a game can lose before it is failed
+	 */
+	static final int MAX_GAME_ATTEMPTS = 3;
+
+	/**
+	 * Milliseconds between a worker's heartbeats while it runs a game
+	 */
+	static final int HEARTBEAT_INTERVAL = 10000;
+
+	/**
+	 * Milliseconds a worker can be silent before the coordinator gives up on it
+	 */
+	static int WORKER_TIMEOUT = 6 * HEARTBEAT_INTERVAL;
+
+	/**
+	 * A game waiting for (or running on) a worker
+	 */
+	static class GameSpec {
+		String gameKey;
+		int gameIndex, numGames;
+		long seed;
+		String teamsXML;
+
+		/**
+		 * Workers the game has been sent to
+		 */
+		int attempts;
+	}
+
+	JSAPResult parserConfig;
+
+	ServerSocket serverSocket;
+
+	LinkedBlockingDeque<GameSpec> waitingGames;
+
+	LinkedBlockingQueue<LadderGameResult> finishedGames;
+
+	ArrayList<Process> workerProcesses;
+
+	/**
+	 * Workers connected now and local workers that are running (or being restarted)
+	 */
+	AtomicInteger numConnectedWorkers, numLocalWorkers;
+
+	/**
+	 * Number of games the workers have finished
+	 */
+	AtomicInteger numResults;
+
+	/**
+	 * Milliseconds to wait for a worker when there are none
+	 */
+	long workerWaitTime;
+
+	/**
+	 * When the coordinator started or the last worker went away
+	 */
+	volatile long lastWorkerTime;
+
+	int numWorkerProcesses;
+
+	long configSeed;
+
+	Random random;
+
+	volatile boolean stopped;
+
+	/**
+	 * Start listening and start the local workers
+	 *
+	 * @param parserConfig the ladder's command line (passed on to the local workers)
+	 * @param numWorkerProcesses number of workers to start on this machine
+	 * @param port port to listen on (0 picks a free port)
+	 * @param address address to listen on (null for the loopback address, so only workers on this machine can connect)
+	 * @param configSeed the random seed from the simulator config (0 gives each game its own)
+	 * @throws SimulatorException if the coordinator can't listen on the port
+	 */
+	public LadderCoordinator(JSAPResult parserConfig, int numWorkerProcesses, int port, String address, 
+			long configSeed) throws SimulatorException {
+		this.parserConfig = parserConfig;
+		this.numWorkerProcesses = numWorkerProcesses;
+		this.configSeed = configSeed;
+		random = new Random();
+		waitingGames = new LinkedBlockingDeque<GameSpec>();
+		finishedGames = new LinkedBlockingQueue<LadderGameResult>();
+		workerProcesses = new ArrayList<Process>();
+		numConnectedWorkers = new AtomicInteger();
+		numLocalWorkers = new AtomicInteger();
+		numResults = new AtomicInteger();
+		workerWaitTime = 60000;
+		lastWorkerTime = System.currentTimeMillis();
+
+		try {
+			InetAddress bindAddress;
+			if (address == null) {
+				bindAddress = InetAddress.getLoopbackAddress();
+			} else {
+				// workers on other machines
+				bindAddress = InetAddress.getByName(address);
+			}
+			serverSocket = new ServerSocket(port, 50, bindAddress);
+		} catch (IOException e) {
+			e.printStackTrace();
+			throw new SimulatorException("Error: the ladder coordinator can't listen on port " + port + ": " + e.getMessage());
+		}
+		System.out.println("Ladder coordinator listening on " + serverSocket.getInetAddress().getHostAddress() 
+				+ " port " + serverSocket.getLocalPort());
+
+		Thread acceptThread = new Thread(new Runnable() {
+			public void run() {
+				acceptWorkers();
+			}
+		}, "Ladder coordinator");
+		acceptThread.setDaemon(true);
+		acceptThread.start();
+
+		for (int i = 0; i < numWorkerProcesses; i++) {
+			startLocalWorker(i);
+		}
+	}
+
+	/**
+	 * Keep one worker process running in this slot (replacing it if it dies)
+	 * @param workerNumber
+	 */
+	void startLocalWorker(final int workerNumber) {
+		numLocalWorkers.incrementAndGet();
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				int restarts = 0;
+				while (!stopped) {
+					int resultsAtStart = numResults.get();
+					try {
+						Process process = makeWorkerProcess(workerNumber).start();
+						synchronized (workerProcesses) {
+							workerProcesses.add(process);
+						}
+						int exitValue = process.waitFor();
+						synchronized (workerProcesses) {
+							workerProcesses.remove(process);
+						}
+						if (stopped) {
+							break;
+						}
+						System.err.println("Ladder worker " + workerNumber + " stopped (exit value " + exitValue + ")");
+					} catch (IOException e) {
+						System.err.println("Unable to start ladder worker " + workerNumber);
+						e.printStackTrace();
+					} catch (InterruptedException e) {
+						break;
+					}
+
+					// only a worker that keeps failing while the ladder gets nowhere is given up on
+					if (numResults.get() > resultsAtStart) {
+						restarts = 0;
+					}
+					restarts++;
+					if (restarts > MAX_RESTARTS) {
+						System.err.println("Ladder worker " + workerNumber + " failed too many times: not restarting it");
+						break;
+					}
+					System.err.println("Starting a new ladder worker " + workerNumber);
+				}
+				lastWorkerTime = System.currentTimeMillis();
+				numLocalWorkers.decrementAndGet();
+			}
+		}, "Ladder worker " + workerNumber);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * The command line for a local worker (the same java, classpath and config files as this JVM)
+	 * @param workerNumber
+	 * @return
+	 */
+	ProcessBuilder makeWorkerProcess(int workerNumber) {
+		ArrayList<String> command = new ArrayList<String>();
+		command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+		command.add("-Djava.awt.headless=true");
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(RunLadderWorker.class.getName());
+		command.add("--host");
+		if (serverSocket.getInetAddress().isAnyLocalAddress()) {
+			command.add(InetAddress.getLoopbackAddress().getHostAddress());
+		} else {
+			command.add(serverSocket.getInetAddress().getHostAddress());
+		}
+		command.add("--port");
+		command.add(Integer.toString(serverSocket.getLocalPort()));
+		command.add("--configPath");
+		command.add(parserConfig.getString("configPath"));
+		command.add("--simulatorConfigFile");
+		command.add(parserConfig.getString("simulatorConfigFile"));
+		command.add("--ladderConfigFile");
+		command.add(parserConfig.getString("ladderConfigFile"));
+
+		ProcessBuilder builder = new ProcessBuilder(command);
+		builder.inheritIO();
+		return builder;
+	}
+
+	/**
+	 * Accept connections from workers (each one is handled on its own thread)
+	 */
+	void acceptWorkers() {
+		while (!stopped) {
+			try {
+				final Socket socket = serverSocket.accept();
+				Thread thread = new Thread(new Runnable() {
+					public void run() {
+						handleWorker(socket);
+					}
+				}, "Ladder worker connection " + socket.getRemoteSocketAddress());
+				thread.setDaemon(true);
+				thread.start();
+			} catch (IOException e) {
+				if (!stopped) {
+					System.err.println("Error accepting a ladder worker");
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Hand games to a worker until the ladder is done or the worker goes away
+	 * @param socket
+	 */
+	void handleWorker(Socket socket) {
+		GameSpec game = null;
+		numConnectedWorkers.incrementAndGet();
+		try {
+			socket.setTcpNoDelay(true);
+			socket.setSoTimeout(WORKER_TIMEOUT);
+			DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			DataOutputStream output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+			if (input.readInt() != HELLO || input.readInt() != PROTOCOL_VERSION) {
+				System.err.println("Ladder worker " + socket.getRemoteSocketAddress() + " doesn't speak this protocol version");
+				return;
+			}
+
+			while (!stopped) {
+				game = waitingGames.poll(1, TimeUnit.SECONDS);
+				if (game == null) {
+					continue;
+				}
+
+				output.writeInt(GAME);
+				output.writeUTF(game.gameKey);
+				output.writeInt(game.gameIndex);
+				output.writeInt(game.numGames);
+				output.writeLong(game.seed);
+				writeBytes(output, game.teamsXML.getBytes(StandardCharsets.UTF_8));
+				output.flush();
+				game.attempts++;
+
+				int message = input.readInt();
+				while (message == HEARTBEAT) {
+					message = input.readInt();
+				}
+				if (message != RESULT) {
+					throw new IOException("Expected a game result from the worker");
+				}
+				LadderGameResult result = LadderJournal.decode(readBytes(input));
+				if (!result.getKey().equals(game.gameKey)) {
+					throw new IOException("Worker sent the results for " + result.getKey() + " instead of " + game.gameKey);
+				}
+				finishedGames.put(result);
+				numResults.incrementAndGet();
+				game = null;
+			}
+
+			output.writeInt(STOP);
+			output.flush();
+		} catch (SocketTimeoutException e) {
+			System.err.println("Ladder worker " + socket.getRemoteSocketAddress() + " stopped answering");
+		} catch (SocketException | EOFException e) {
+			// the worker died (its game is requeued below)
+		} catch (IOException e) {
+			System.err.println("Error talking to ladder worker " + socket.getRemoteSocketAddress());
+			e.printStackTrace();
+		} catch (IllegalArgumentException e) {
+			System.err.println("Ladder worker " + socket.getRemoteSocketAddress() + " sent a bad result");
+			e.printStackTrace();
+		} catch (InterruptedException e) {
+			// shutting down
+		} finally {
+			if (game != null) {
+				gameLost(game, socket);
+			}
+			lastWorkerTime = System.currentTimeMillis();
+			numConnectedWorkers.decrementAndGet();
+			try {
+				socket.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Requeue the game of a worker that was lost (or fail it if it has lost too many)
+	 * @param game
+	 * @param socket the lost worker's connection
+	 */
+	void gameLost(GameSpec game, Socket socket) {
+		if (game.attempts >= MAX_GAME_ATTEMPTS) {
+			System.err.println("Lost ladder worker " + socket.getRemoteSocketAddress() + ": game " + game.gameIndex 
+					+ " has lost " + game.attempts + " workers so it is failed");
+			finishedGames.add(new LadderGameResult(game.gameKey));
+		} else {
+			System.err.println("Lost ladder worker " + socket.getRemoteSocketAddress() + ": requeuing game " + game.gameIndex);
+			waitingGames.addFirst(game);
+		}
+	}
+
+	static void writeBytes(DataOutputStream output, byte[] bytes) throws IOException {
+		output.writeInt(bytes.length);
+		output.write(bytes);
+	}
+
+	static byte[] readBytes(DataInputStream input) throws IOException {
+		int length = input.readInt();
+		if (length < 0) {
+			throw new IOException("Bad message length " + length);
+		}
+		byte[] bytes = new byte[length];
+		input.readFully(bytes);
+		return bytes;
+	}
+
+	public void submit(String gameKey, HighLevelTeamConfig[] teamsForMatch, int gameIndex, int numGames) {
+		GameSpec game = new GameSpec();
+		game.gameKey = gameKey;
+		game.gameIndex = gameIndex;
+		game.numGames = numGames;
+		game.seed = configSeed;
+		while (game.seed == 0) {
+			game.seed = random.nextLong();
+		}
+		game.teamsXML = ConfigRepository.toXML(teamsForMatch);
+		waitingGames.add(game);
+	}
+
+	public LadderGameResult take() throws InterruptedException, SimulatorException {
+		while (true) {
+			LadderGameResult result = finishedGames.poll(1, TimeUnit.SECONDS);
+			if (result != null) {
+				return result;
+			}
+			if (numLocalWorkers.get() == 0 && numConnectedWorkers.get() == 0
+					&& System.currentTimeMillis() - lastWorkerTime > workerWaitTime) {
+				throw new SimulatorException("Error: no ladder workers have been connected for " 
+						+ (workerWaitTime / 1000) + " seconds");
+			}
+		}
+	}
+
+	/**
+	 * The local workers plus any extra workers connected from other machines (at least one
+	 * so there is a game waiting for the first worker to connect)
+	 */
+	public int getNumParallelGames() {
+		return Math.max(1, Math.max(numWorkerProcesses, numConnectedWorkers.get()));
+	}
+
+	/**
+	 * Set how long to wait for a worker when there are none
+	 * @param workerWaitTime milliseconds
+	 */
+	public void setWorkerWaitTime(long workerWaitTime) {
+		this.workerWaitTime = workerWaitTime;
+	}
+
+	public void shutdown() {
+		stopped = true;
+		try {
+			serverSocket.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+
+		// the workers get STOP within a second; make sure none are left behind
+		synchronized (workerProcesses) {
+			for (Process process : workerProcesses) {
+				try {
+					if (!process.waitFor(5, TimeUnit.SECONDS)) {
+						process.destroy();
+					}
+				} catch (InterruptedException e) {
+					process.destroy();
+				}
+			}
+		}
+	}
+}
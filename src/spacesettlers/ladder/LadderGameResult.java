@@ -0,0 +1,70 @@
+package spacesettlers.ladder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The results of one finished ladder game: the stats of each team and the lines the game
+ * added to the ladder output.  This is all the ladder keeps (and journals) of a game, so
+ * nothing in it points back at the simulator, the teams or their clients.  The lists
+ * can't be changed once the result is made.
+ *
+ * @author amy
+ */
+public class LadderGameResult {
+	/**
+	 * Identifies the game in the ladder (so a restarted ladder knows it was played)
+	 */
+	final String key;
+
+	final ArrayList<TeamGameStats> teamStats;
+
+	final ArrayList<String> outputStrings;
+
+	/**
+	 * Make the results of a finished game
+	 * @param key
+	 * @param teamStats the stats of each team (empty if the game failed)
+	 * @param outputStrings the lines for the ladder output
+	 */
+	public LadderGameResult(String key, List<TeamGameStats> teamStats, List<String> outputStrings) {
+		this.key = key;
+		this.teamStats = new ArrayList<TeamGameStats>(teamStats);
+		this.outputStrings = new ArrayList<String>(outputStrings);
+	}
+
+	/**
+	 * An empty result (the journal fills in the lists as it reads the game)
+	 * @param key
+	 */
+	LadderGameResult(String key) {
+		this.key = key;
+		teamStats = new ArrayList<TeamGameStats>();
+		outputStrings = new ArrayList<String>();
+	}
+
+	public String getKey() {
+		return key;
+	}
+
+	/**
+	 * Stats for each team (empty if the game failed)
+	 * @return
+	 */
+	public List<TeamGameStats> getTeamStats() {
+		return Collections.unmodifiableList(teamStats);
+	}
+
+	/**
+	 * True if the game failed (so no team has stats for it)
+	 * @return
+	 */
+	public boolean isFailed() {
+		return teamStats.isEmpty();
+	}
+
+	public List<String> getOutputStrings() {
+		return Collections.unmodifiableList(outputStrings);
+	}
+}
@@ -0,0 +1,47 @@
+package spacesettlers.ladder;
+
+import java.util.concurrent.ExecutionException;
+
+import spacesettlers.configs.HighLevelTeamConfig;
+import spacesettlers.simulator.SimulatorException;
+
+/**
+ * Runs the ladder's games: either on threads in the ladder's own JVM (LadderThreadRunner)
+ * or in worker processes (LadderCoordinator).  Games are submitted as they are scheduled
+ * and their results are taken in the order they finish.
+ *
+ * @author amy
+ */
+public interface LadderGameRunner {
+	/**
+	 * Queue a game to be run
+	 * 
+	 * @param gameKey identifies the game in the journal
+	 * @param teamsForMatch the teams in the game
+	 * @param gameIndex number of the game (for the printouts)
+	 * @param numGames number of games in the ladder (for the printouts)
+	 * @throws SimulatorException if the game can't be set up
+	 */
+	public void submit(String gameKey, HighLevelTeamConfig[] teamsForMatch, int gameIndex, int numGames) throws SimulatorException;
+
+	/**
+	 * Wait for the next game to finish and return its results
+	 * 
+	 * @return
+	 * @throws InterruptedException
+	 * @throws ExecutionException
+	 * @throws SimulatorException if there is nothing left that can run the games
+	 */
+	public LadderGameResult take() throws InterruptedException, ExecutionException, SimulatorException;
+
+	/**
+	 * Number of games that can run at the same time
+	 * @return
+	 */
+	public int getNumParallelGames();
+
+	/**
+	 * Stop running games (after the ladder is done with the runner)
+	 */
+	public void shutdown();
+}
@@ -0,0 +1,341 @@
+package spacesettlers.ladder;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Append-only journal of finished ladder games so a ladder that crashes (or is stopped)
+ * can be restarted without playing its finished games again.  Each game is written as a
+ * block of tab separated lines:
+ *
+ * <pre>
+ * GAME   key
+ * TEAM   ladderName score resources beacons kills deaths assists cores stars latency...
+ * OUTPUT line of the ladder output
+ * END    key
+ * </pre>
+ *
+ * Games are written to the file as they finish but only flushed (and synced to the disk)
+ * every BATCH_SIZE games or FLUSH_INTERVAL milliseconds (checked by a flusher thread, so
+ * games aren't left waiting when no more finish), so a crash loses at most the last batch.  When a journal is opened, only games with an END line are kept and anything
+ * after the last one (a game that was being written when the ladder died) is cut off.
+ * Failed games (no team stats) are skipped so they are played again.
+ *
+ * @author amy
+ */
+public class LadderJournal {
+	/**
+	 * Games written between flushes
+	 */
+	public static final int BATCH_SIZE = 16;
+
+	/**
+	 * Longest time (in milliseconds) a finished game waits to be flushed
+	 */
+	public static final long FLUSH_INTERVAL = 60000;
+
+	File file;
+
+	FileOutputStream outputStream;
+
+	Writer writer;
+
+	/**
+	 * Games read from the journal when it was opened (in the order they finished)
+	 */
+	LinkedHashMap<String, LadderGameResult> completedGames;
+
+	int numUnflushed;
+
+	long lastFlushTime;
+
+	/**
+	 * Longest time (in milliseconds) a finished game waits to be flushed (FLUSH_INTERVAL except in tests)
+	 */
+	long flushInterval;
+
+	/**
+	 * True once the journal is closed (which stops the flusher thread)
+	 */
+	boolean closed;
+
+	/**
+	 * Open the journal (reading any games already in it) for appending
+	 * @param file
+	 * @throws IOException
+	 */
+	public LadderJournal(File file) throws IOException {
+		this(file, FLUSH_INTERVAL);
+	}
+
+	LadderJournal(File file, long flushInterval) throws IOException {
+		this.file = file;
+		this.flushInterval = flushInterval;
+		completedGames = new LinkedHashMap<String, LadderGameResult>();
+
+		long validLength = 0;
+		if (file.exists()) {
+			validLength = read(Files.readAllBytes(file.toPath()), completedGames, file.getPath());
+		}
+		// the ladder doesn't journal failed games but older journals may have them
+		completedGames.values().removeIf(new Predicate<LadderGameResult>() {
+			public boolean test(LadderGameResult game) {
+				return game.isFailed();
+			}
+		});
+
+		outputStream = new FileOutputStream(file, true);
+		// cut off a game that was only partly written
+		outputStream.getChannel().truncate(validLength);
+		writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+		lastFlushTime = System.currentTimeMillis();
+
+		Thread flusherThread = new Thread(new Runnable() {
+			public void run() {
+				flushWhenDue();
+			}
+		}, "SpaceSettlers ladder journal flusher");
+		flusherThread.setDaemon(true);
+		flusherThread.start();
+	}
+
+	/**
+	 * Run by the flusher thread until the journal is closed: flush the games that have
+	 * waited flushInterval milliseconds
+	 */
+	synchronized void flushWhenDue() {
+		while (!closed) {
+			long waitTime = numUnflushed == 0 ? flushInterval : lastFlushTime + flushInterval - System.currentTimeMillis();
+			try {
+				if (waitTime > 0) {
+					// append wakes this up when the first game of a batch is written
+					wait(waitTime);
+				} else {
+					flush();
+				}
+			} catch (InterruptedException e) {
+				return;
+			} catch (IOException e) {
+				System.err.println("Error flushing ladder journal " + file + ": it will only be flushed as games are added");
+				e.printStackTrace();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Read the finished games from the journal
+	 * @param bytes
+	 * @param games the games read (by key)
+	 * @param source where the bytes came from (for error messages)
+	 * @return the length of the journal up to the end of the last finished game
+	 */
+	static long read(byte[] bytes, LinkedHashMap<String, LadderGameResult> games, String source) {
+		long validLength = 0;
+		LadderGameResult game = null;
+		int lineStart = 0;
+		for (int i = 0; i < bytes.length; i++) {
+			if (bytes[i] != '\n') {
+				continue;
+			}
+			String line = new String(bytes, lineStart, i - lineStart, StandardCharsets.UTF_8);
+			lineStart = i + 1;
+
+			String[] fields = line.split("\t", -1);
+			for (int f = 0; f < fields.length; f++) {
+				fields[f] = unescape(fields[f]);
+			}
+
+			try {
+				if (fields[0].equals("GAME") && fields.length == 2) {
+					game = new LadderGameResult(fields[1]);
+				} else if (game == null) {
+					// skip anything outside a game
+				} else if (fields[0].equals("TEAM")) {
+					game.teamStats.add(TeamGameStats.fromFields(fields, 1));
+				} else if (fields[0].equals("OUTPUT") && fields.length == 2) {
+					game.outputStrings.add(fields[1]);
+				} else if (fields[0].equals("END") && fields.length == 2 && fields[1].equals(game.key)) {
+					games.put(game.key, game);
+					game = null;
+					validLength = lineStart;
+				} else {
+					game = null;
+				}
+			} catch (IllegalArgumentException e) {
+				System.err.println("Error reading ladder results from " + source + ": skipping a game");
+				e.printStackTrace();
+				game = null;
+			}
+		}
+		return validLength;
+	}
+
+	/**
+	 * The games already in the journal when it was opened, by key (in the order they finished)
+	 * @return
+	 */
+	public LinkedHashMap<String, LadderGameResult> getCompletedGames() {
+		return completedGames;
+	}
+
+	/**
+	 * Write a finished game (flushing if a batch is ready)
+	 * @param game
+	 * @throws IOException
+	 */
+	public synchronized void append(LadderGameResult game) throws IOException {
+		write(writer, game);
+
+		numUnflushed++;
+		if (numUnflushed >= BATCH_SIZE || System.currentTimeMillis() - lastFlushTime >= flushInterval) {
+			flush();
+		} else if (numUnflushed == 1) {
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Write the game as a block of journal lines
+	 * @param writer
+	 * @param game
+	 * @throws IOException
+	 */
+	static void write(Writer writer, LadderGameResult game) throws IOException {
+		writeLine(writer, "GAME", game.getKey());
+		for (TeamGameStats stats : game.getTeamStats()) {
+			String[] fields = stats.toFields();
+			String[] line = new String[fields.length + 1];
+			line[0] = "TEAM";
+			System.arraycopy(fields, 0, line, 1, fields.length);
+			writeLine(writer, line);
+		}
+		for (String output : game.getOutputStrings()) {
+			writeLine(writer, "OUTPUT", output);
+		}
+		writeLine(writer, "END", game.getKey());
+	}
+
+	/**
+	 * Returns the game in the journal format (used to send results between processes)
+	 * @param game
+	 * @return
+	 */
+	public static byte[] encode(LadderGameResult game) {
+		StringWriter writer = new StringWriter();
+		try {
+			write(writer, game);
+		} catch (IOException e) {
+			// a StringWriter doesn't throw
+			throw new IllegalStateException(e);
+		}
+		return writer.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Read a game written by encode
+	 * @param bytes
+	 * @return
+	 * @throws IllegalArgumentException if the bytes aren't a whole game
+	 */
+	public static LadderGameResult decode(byte[] bytes) {
+		LinkedHashMap<String, LadderGameResult> games = new LinkedHashMap<String, LadderGameResult>();
+		read(bytes, games, "a ladder worker");
+		if (games.size() != 1) {
+			throw new IllegalArgumentException("Expected one ladder game but found " + games.size());
+		}
+		return games.values().iterator().next();
+	}
+
+	static void writeLine(Writer writer, String... fields) throws IOException {
+		for (int i = 0; i < fields.length; i++) {
+			if (i > 0) {
+				writer.write('\t');
+			}
+			writer.write(escape(fields[i]));
+		}
+		writer.write('\n');
+	}
+
+	/**
+	 * Flush the games written so far and make sure they are on the disk
+	 * @throws IOException
+	 */
+	public synchronized void flush() throws IOException {
+		writer.flush();
+		outputStream.getFD().sync();
+		numUnflushed = 0;
+		lastFlushTime = System.currentTimeMillis();
+	}
+
+	/**
+	 * Flush and close the journal
+	 * @throws IOException
+	 */
+	public synchronized void close() throws IOException {
+		closed = true;
+		notifyAll();
+		flush();
+		writer.close();
+	}
+
+	/**
+	 * Escape the characters used to separate fields and lines
+	 */
+	static String escape(String str) {
+		if (str == null) {
+			return "";
+		}
+		StringBuilder escaped = new StringBuilder(str.length());
+		for (int i = 0; i < str.length(); i++) {
+			char c = str.charAt(i);
+			if (c == '\\') {
+				escaped.append("\\\\");
+			} else if (c == '\t') {
+				escaped.append("\\t");
+			} else if (c == '\n') {
+				escaped.append("\\n");
+			} else if (c == '\r') {
+				escaped.append("\\r");
+			} else {
+				escaped.append(c);
+			}
+		}
+		return escaped.toString();
+	}
+
+	static String unescape(String str) {
+		if (str.indexOf('\\') < 0) {
+			return str;
+		}
+		StringBuilder unescaped = new StringBuilder(str.length());
+		for (int i = 0; i < str.length(); i++) {
+			char c = str.charAt(i);
+			if (c == '\\' && i + 1 < str.length()) {
+				i++;
+				char next = str.charAt(i);
+				if (next == 't') {
+					unescaped.append('\t');
+				} else if (next == 'n') {
+					unescaped.append('\n');
+				} else if (next == 'r') {
+					unescaped.append('\r');
+				} else {
+					unescaped.append(next);
+				}
+			} else {
+				unescaped.append(c);
+			}
+		}
+		return unescaped.toString();
+	}
+}
@@ -0,0 +1,345 @@
+package spacesettlers.ladder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import spacesettlers.clients.TeamClient;
+import spacesettlers.clients.TeamClientFactory;
+import spacesettlers.configs.ConfigRepository;
+import spacesettlers.configs.HighLevelTeamConfig;
+import spacesettlers.configs.TeamClientConfig;
+import spacesettlers.simulator.SimulatorException;
+
+/**
+ * Keeps the knowledge of learning clients when the ladder runs games at the same time
+ * (the ladder's mergeKnowledge option).  Without it every game reads the same knowledge
+ * file and writes it back in shutDown, so all but the last game to finish is lost.
+ *
+ * When a game starts, each team with a knowledge file gets its own copy of it, named for
+ * the game and the team, and a second copy (the base) that the game doesn't touch.  When
+ * the game finishes, the ladder merges the copy back into the team's knowledge file with
+ * the client's mergeKnowledge (one game at a time, in the ladder's own thread), so each
+ * game starts with everything merged before it started.  The base is passed to the merge
+ * too so only the game's changes are merged (and not the knowledge it started with again).
+ * The copies are just deleted if the game failed or the client never saved it.  If a merge
+ * fails, the game's copy is renamed (so it isn't taken for an old copy) and kept so nothing
+ * it learned is lost.  Copies left by games that never finished (e.g. because the ladder
+ * was stopped) are deleted when the ladder starts, since those games are run again.
+ *
+ * The copies are next to the knowledge files, so workers on other machines need a file
+ * system shared with the ladder.
+ *
+ * @author amy
+ */
+public class LadderKnowledge {
+	/**
+	 * A copy is given this modification time when the game starts, so a copy that still has
+	 * it when the game is done wasn't saved by the client
+	 */
+	static final long UNCHANGED_TIME = 0;
+
+	/**
+	 * If the file system won't set the modification time, the digest of the copy is saved
+	 * in a file with this suffix and the copy is unchanged if its contents still match it
+	 */
+	static final String DIGEST_SUFFIX = ".start";
+
+	/**
+	 * The knowledge a game started with is kept in a file with this suffix
+	 */
+	static final String BASE_SUFFIX = ".base";
+
+	String configPath;
+
+	/**
+	 * The teams and the index of each game that is running by game key
+	 */
+	HashMap<String, HighLevelTeamConfig[]> gameTeams;
+
+	HashMap<String, Integer> gameIndexes;
+
+	/**
+	 * @param configPath where the teams' config files are
+	 */
+	public LadderKnowledge(String configPath) {
+		this.configPath = configPath;
+		gameTeams = new HashMap<String, HighLevelTeamConfig[]>();
+		gameIndexes = new HashMap<String, Integer>();
+	}
+
+	/**
+	 * The name of a team's copy of its knowledge file for a game
+	 * @param knowledgeFile
+	 * @param gameIndex
+	 * @param teamName
+	 * @return
+	 */
+	static File getGameKnowledgeFile(String knowledgeFile, int gameIndex, String teamName) {
+		return new File(LadderSingleGame.getGameFileName(knowledgeFile, "-game" + gameIndex + "-" + teamName));
+	}
+
+	/**
+	 * The file with the digest of a copy as the game started (if its modification time couldn't be set)
+	 * @param gameFile
+	 * @return
+	 */
+	static File getDigestFile(File gameFile) {
+		return new File(gameFile.getPath() + DIGEST_SUFFIX);
+	}
+
+	/**
+	 * The file with the knowledge a game started with
+	 * @param gameFile
+	 * @return
+	 */
+	static File getBaseFile(File gameFile) {
+		return new File(gameFile.getPath() + BASE_SUFFIX);
+	}
+
+	/**
+	 * Give each team of a game its own copy of its knowledge file.  Called by the game as it
+	 * starts (not when it is submitted) so the copy has all of the games merged so far.
+	 *
+	 * @param teams the game's copy of the teams (their knowledge file is set to the copy)
+	 * @param configPath
+	 * @param gameIndex
+	 * @throws SimulatorException if a knowledge file can't be copied
+	 */
+	static void startGame(HighLevelTeamConfig[] teams, String configPath, int gameIndex) throws SimulatorException {
+		for (HighLevelTeamConfig team : teams) {
+			TeamClientConfig clientConfig = ConfigRepository.getTeamClientConfig(configPath + team.getConfigFile());
+			if (clientConfig.getKnowledgeFile() == null) {
+				continue;
+			}
+
+			File knowledgeFile = new File(clientConfig.getKnowledgeFile());
+			File gameFile = getGameKnowledgeFile(clientConfig.getKnowledgeFile(), gameIndex, team.getTeamName());
+			File baseFile = getBaseFile(gameFile);
+			try {
+				if (knowledgeFile.exists()) {
+					Files.copy(knowledgeFile.toPath(), baseFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+					Files.copy(baseFile.toPath(), gameFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+					markUnchanged(gameFile);
+				} else {
+					// the client hasn't learned anything yet
+					Files.deleteIfExists(gameFile.toPath());
+					Files.deleteIfExists(getDigestFile(gameFile).toPath());
+					Files.deleteIfExists(baseFile.toPath());
+				}
+			} catch (IOException e) {
+				throw new SimulatorException("Error copying knowledge file " + knowledgeFile + " for game "
+						+ gameIndex + ": " + e.getMessage());
+			}
+			team.setKnowledgeFile(gameFile.getPath());
+		}
+	}
+
+	/**
+	 * Mark a new copy so the ladder can tell if the client saved it: by its modification time
+	 * or, if the file system won't set that, by the digest of its contents
+	 * @param gameFile
+	 * @throws IOException
+	 */
+	static void markUnchanged(File gameFile) throws IOException {
+		if (gameFile.setLastModified(UNCHANGED_TIME) && gameFile.lastModified() == UNCHANGED_TIME) {
+			Files.deleteIfExists(getDigestFile(gameFile).toPath());
+		} else {
+			saveDigest(gameFile);
+		}
+	}
+
+	/**
+	 * Save the digest of a copy next to it
+	 * @param gameFile
+	 * @throws IOException
+	 */
+	static void saveDigest(File gameFile) throws IOException {
+		Files.write(getDigestFile(gameFile).toPath(), digest(gameFile));
+	}
+
+	/**
+	 * Returns true if the client never saved its copy
+	 * @param gameFile
+	 * @return
+	 * @throws IOException
+	 */
+	static boolean isUnchanged(File gameFile) throws IOException {
+		File digestFile = getDigestFile(gameFile);
+		if (digestFile.exists()) {
+			return Arrays.equals(Files.readAllBytes(digestFile.toPath()), digest(gameFile));
+		} else {
+			return gameFile.lastModified() == UNCHANGED_TIME;
+		}
+	}
+
+	/**
+	 * The SHA-256 digest of a file
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	static byte[] digest(File file) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e);
+		}
+		byte[] buffer = new byte[1 << 16];
+		try (InputStream input = Files.newInputStream(file.toPath())) {
+			int length;
+			while ((length = input.read(buffer)) >= 0) {
+				digest.update(buffer, 0, length);
+			}
+		}
+		return digest.digest();
+	}
+
+	/**
+	 * Delete the teams' copies left by games that never finished (e.g. because the ladder
+	 * was stopped).  Called before the ladder starts any games.
+	 * @param teams
+	 */
+	public void removeOldCopies(HighLevelTeamConfig[] teams) {
+		for (HighLevelTeamConfig team : teams) {
+			TeamClientConfig clientConfig;
+			try {
+				clientConfig = ConfigRepository.getTeamClientConfig(configPath + team.getConfigFile());
+			} catch (SimulatorException e) {
+				System.err.println("Error reading the config of team " + team.getTeamName() + " to remove its old knowledge");
+				e.printStackTrace();
+				continue;
+			}
+			if (clientConfig.getKnowledgeFile() == null) {
+				continue;
+			}
+
+			// the copies are named knowledge-game<index>-<team>.ext
+			File knowledgeFile = new File(clientConfig.getKnowledgeFile()).getAbsoluteFile();
+			String name = knowledgeFile.getName();
+			int tagIndex = LadderSingleGame.getTagIndex(name);
+			String prefix = name.substring(0, tagIndex) + "-game";
+			String suffix = "-" + team.getTeamName() + name.substring(tagIndex);
+			File[] files = knowledgeFile.getParentFile().listFiles();
+			if (files == null) {
+				continue;
+			}
+			for (File file : files) {
+				String fileName = file.getName();
+				if (fileName.endsWith(DIGEST_SUFFIX)) {
+					fileName = fileName.substring(0, fileName.length() - DIGEST_SUFFIX.length());
+				} else if (fileName.endsWith(BASE_SUFFIX)) {
+					fileName = fileName.substring(0, fileName.length() - BASE_SUFFIX.length());
+				}
+				if (fileName.length() > prefix.length() + suffix.length() && fileName.startsWith(prefix)
+						&& fileName.endsWith(suffix)
+						&& fileName.substring(prefix.length(), fileName.length() - suffix.length()).matches("[0-9]+")) {
+					file.delete();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Remember the teams of a game the ladder is about to run (so it knows what to merge when it finishes)
+	 * @param gameKey
+	 * @param teams
+	 * @param gameIndex
+	 */
+	public void gameSubmitted(String gameKey, HighLevelTeamConfig[] teams, int gameIndex) {
+		gameTeams.put(gameKey, teams);
+		gameIndexes.put(gameKey, gameIndex);
+	}
+
+	/**
+	 * Merge each team's copy of its knowledge from a finished game into its knowledge file
+	 * @param result
+	 */
+	public void gameFinished(LadderGameResult result) {
+		HighLevelTeamConfig[] teams = gameTeams.remove(result.getKey());
+		Integer gameIndex = gameIndexes.remove(result.getKey());
+		if (teams == null) {
+			return;
+		}
+		boolean failed = result.isFailed();
+
+		for (HighLevelTeamConfig team : teams) {
+			TeamClientConfig clientConfig;
+			try {
+				clientConfig = ConfigRepository.getTeamClientConfig(configPath + team.getConfigFile());
+			} catch (SimulatorException e) {
+				System.err.println("Error reading the config of team " + team.getTeamName() + " to merge its knowledge");
+				e.printStackTrace();
+				continue;
+			}
+			if (clientConfig.getKnowledgeFile() == null) {
+				continue;
+			}
+
+			File gameFile = getGameKnowledgeFile(clientConfig.getKnowledgeFile(), gameIndex, team.getTeamName());
+			File digestFile = getDigestFile(gameFile);
+			File baseFile = getBaseFile(gameFile);
+			if (!gameFile.exists()) {
+				digestFile.delete();
+				baseFile.delete();
+				continue;
+			}
+			try {
+				if (failed || isUnchanged(gameFile)) {
+					gameFile.delete();
+					digestFile.delete();
+					baseFile.delete();
+					continue;
+				}
+			} catch (IOException e) {
+				System.err.println("Error checking if team " + team.getTeamName() + " saved its knowledge in game "
+						+ gameIndex + ": it isn't merged and is still in " + gameFile);
+				e.printStackTrace();
+				continue;
+			}
+
+			try {
+				merge(clientConfig, team.getTeamName(), baseFile.exists() ? baseFile : null, 
+						new File(clientConfig.getKnowledgeFile()), gameFile);
+				Files.deleteIfExists(gameFile.toPath());
+			} catch (Exception e) {
+				File unmergedFile = new File(LadderSingleGame.getGameFileName(clientConfig.getKnowledgeFile(),
+						"-unmerged-game" + gameIndex + "-" + team.getTeamName() + "-" + System.currentTimeMillis()));
+				if (gameFile.renameTo(unmergedFile)) {
+					gameFile = unmergedFile;
+				}
+				System.err.println("Error merging the knowledge of team " + team.getTeamName() + " from game "
+						+ gameIndex + ": what it learned in that game is still in " + gameFile);
+				e.printStackTrace();
+			}
+			digestFile.delete();
+			baseFile.delete();
+		}
+	}
+
+	/**
+	 * Merge with a new client of the team's class (with its own classes, e.g. for xstream)
+	 */
+	void merge(TeamClientConfig clientConfig, String teamName, File baseFile, File knowledgeFile, File gameFile)
+			throws SimulatorException, IOException {
+		TeamClient client = TeamClientFactory.newTeamClient(clientConfig.getClassname(), clientConfig.getClassPath());
+		client.setTeamName(teamName);
+		client.setKnowledgeFile(knowledgeFile.getPath());
+
+		Thread thread = Thread.currentThread();
+		ClassLoader ladderClassLoader = thread.getContextClassLoader();
+		thread.setContextClassLoader(client.getClass().getClassLoader());
+		try {
+			client.mergeKnowledge(baseFile, knowledgeFile, gameFile);
+		} finally {
+			thread.setContextClassLoader(ladderClassLoader);
+		}
+	}
+}
@@ -0,0 +1,417 @@
+package spacesettlers.ladder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import spacesettlers.clients.ClientPhase;
+import spacesettlers.utilities.LatencySummary;
+import spacesettlers.utilities.RunningStatistics;
+
+/**
+ * Writes the ladder results as the games finish so students can watch the standings
+ * during a long ladder.  There are two kinds of pages:
+ * <ul>
+ * <li>the standings (the ladder's output file), rewritten at most every UPDATE_INTERVAL
+ * milliseconds and once more when the ladder is done</li>
+ * <li>the game log, GAMES_PER_PAGE games per page (output file name plus -log1, -log2, ...).
+ * Only the last page changes; full pages are written once (linking to the pages so far and
+ * the next one) and only their links are rewritten, when the ladder is done, so every page
+ * links to every other page.</li>
+ * </ul>
+ *
+ * Every page is written to a temporary file in the same directory and then renamed over
+ * the old one, so a browser (or the web server) never sees half a page.  Only the lines
+ * of the current log page are kept in memory.
+ *
+ * @author amy
+ */
+public class LadderReport {
+	public static final int GAMES_PER_PAGE = 100;
+
+	/**
+	 * Shortest time (in milliseconds) between rewrites of the standings
+	 */
+	public static final long UPDATE_INTERVAL = 5000;
+
+	/**
+	 * How often (in seconds) the pages ask the browser to reload while the ladder runs
+	 */
+	static final int REFRESH_SECONDS = 30;
+
+	File standingsFile;
+
+	/**
+	 * Log pages are logPrefix + page number + logSuffix
+	 */
+	String logPrefix, logSuffix;
+
+	int numGames, numFinishedGames, numPages;
+
+	/**
+	 * Lines of the games on the last (unfinished) log page
+	 */
+	ArrayList<String> pageLines;
+
+	int numGamesOnPage;
+
+	boolean pageChanged;
+
+	long lastUpdateTime;
+
+	/**
+	 * Make a report that writes the standings to the file (and the log next to it)
+	 * @param fileName
+	 */
+	public LadderReport(String fileName) {
+		standingsFile = new File(fileName);
+		String name = standingsFile.getName();
+		int dot = name.lastIndexOf('.');
+		String base = dot > 0 ? name.substring(0, dot) : name;
+		logSuffix = dot > 0 ? name.substring(dot) : ".html";
+		logPrefix = new File(standingsFile.getAbsoluteFile().getParentFile(), base + "-log").getPath();
+
+		pageLines = new ArrayList<String>();
+		numPages = 1;
+	}
+
+	/**
+	 * Set the number of games the ladder will play (for the progress on the standings)
+	 * @param numGames
+	 */
+	public synchronized void setNumGames(int numGames) {
+		this.numGames = numGames;
+	}
+
+	/**
+	 * Add a finished game to the log
+	 * @param result
+	 */
+	public synchronized void addGame(LadderGameResult result) {
+		pageLines.addAll(result.getOutputStrings());
+		numGamesOnPage++;
+		numFinishedGames++;
+		pageChanged = true;
+
+		// a full page never changes again so write it now and start the next one
+		if (numGamesOnPage == GAMES_PER_PAGE) {
+			writeLogPage(true);
+			pageLines.clear();
+			numGamesOnPage = 0;
+			numPages++;
+		}
+	}
+
+	/**
+	 * True if it has been long enough since the last time the standings were written (so
+	 * the ladder only sorts the standings when update will write them)
+	 * @return
+	 */
+	public synchronized boolean isUpdateDue() {
+		return System.currentTimeMillis() - lastUpdateTime >= UPDATE_INTERVAL;
+	}
+
+	/**
+	 * Rewrite the standings (and the last log page) if it has been long enough since the last time
+	 * @param standings the teams in order
+	 */
+	public synchronized void update(List<TeamRecord> standings) {
+		if (!isUpdateDue()) {
+			return;
+		}
+		write(standings, false);
+	}
+
+	/**
+	 * Write the final standings and log
+	 * @param standings the teams in order
+	 */
+	public synchronized void finish(List<TeamRecord> standings) {
+		write(standings, true);
+	}
+
+	void write(List<TeamRecord> standings, boolean finished) {
+		if (pageChanged || finished) {
+			writeLogPage(finished);
+		}
+		if (finished) {
+			for (int page = 1; page < numPages; page++) {
+				relinkLogPage(page);
+			}
+		}
+		writeStandings(standings, finished);
+		lastUpdateTime = System.currentTimeMillis();
+	}
+
+	File getLogFile(int page) {
+		return new File(logPrefix + page + logSuffix);
+	}
+
+	/**
+	 * Write the last log page
+	 * @param finished true if the page won't change again
+	 */
+	void writeLogPage(boolean finished) {
+		File file = getLogFile(numPages);
+		File tempFile = getTempFile(file);
+		// a full page also links to the next one (which is written before the ladder ends)
+		int lastLinkedPage = numGamesOnPage == GAMES_PER_PAGE ? numPages + 1 : numPages;
+		try {
+			try (Writer writer = Files.newBufferedWriter(tempFile.toPath(), StandardCharsets.UTF_8)) {
+				writeHeader(writer, "Spacewar Ladder Games (page " + numPages + ")", !finished);
+				writeLogLinks(writer, lastLinkedPage);
+				writer.write("<ul>");
+				for (String gameString : pageLines) {
+					writer.write("<li>");
+					writer.write(escapeHTML(gameString));
+					writer.write('\n');
+				}
+				writer.write("</ul>\n");
+				writeLogLinks(writer, lastLinkedPage);
+				writeFooter(writer);
+			}
+			replace(tempFile, file);
+			pageChanged = false;
+		} catch (IOException e) {
+			System.err.println("Error writing ladder game log " + file);
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Links to the standings and the log pages up to lastPage (one line starting with
+	 * getLogLinksStart so they can be found again)
+	 */
+	void writeLogLinks(Writer writer, int lastPage) throws IOException {
+		writer.write(getLogLinksStart());
+		for (int page = 1; page <= lastPage; page++) {
+			writer.write(" | <a href=\"" + getLogFile(page).getName() + "\">" + page + "</a>");
+		}
+		writer.write("</p>\n");
+	}
+
+	String getLogLinksStart() {
+		return "<p><a href=\"" + standingsFile.getName() + "\">Standings</a>";
+	}
+
+	/**
+	 * Rewrite the links of a full log page so it links to all of the pages (a line at a
+	 * time, since the games on full pages aren't kept)
+	 * @param page
+	 */
+	void relinkLogPage(int page) {
+		File file = getLogFile(page);
+		File tempFile = getTempFile(file);
+		try {
+			try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8);
+					Writer writer = Files.newBufferedWriter(tempFile.toPath(), StandardCharsets.UTF_8)) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					if (line.startsWith(getLogLinksStart())) {
+						writeLogLinks(writer, numPages);
+					} else {
+						writer.write(line);
+						writer.write('\n');
+					}
+				}
+			}
+			replace(tempFile, file);
+		} catch (IOException e) {
+			System.err.println("Error writing the links of ladder game log " + file);
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Write the standings page
+	 */
+	void writeStandings(List<TeamRecord> standings, boolean finished) {
+		File tempFile = getTempFile(standingsFile);
+		try {
+			try (Writer writer = Files.newBufferedWriter(tempFile.toPath(), StandardCharsets.UTF_8)) {
+				writeHeader(writer, "Spacewar Ladder", !finished);
+				if (finished) {
+					writer.write("<p>Final standings after " + numFinishedGames + " games</p>\n");
+				} else {
+					writer.write("<p>Standings after " + numFinishedGames + " of " + numGames + " games (still running)</p>\n");
+				}
+				writeTableResults(writer, standings);
+				writeHeadToHeadResults(writer, standings);
+				writeLatencyResults(writer, standings);
+				writer.write("<h3>Game log</h3>\n");
+				writeLogLinks(writer, numPages);
+				writeFooter(writer);
+			}
+			replace(tempFile, standingsFile);
+		} catch (IOException e) {
+			System.err.println("Error writing ladder.");
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Writes the average results to a HTML table
+	 */
+	static void writeTableResults(Writer writer, List<TeamRecord> standings) throws IOException {
+		writer.write("<table border=\"2\">\n");
+		writer.write("<tr>\n");
+		writer.write("<th>Place</th>");
+		writer.write("<th>Team</th>");
+		writer.write("<th>Average Score</th>");
+		writer.write("<th>Score (95% CI)</th>");
+		writer.write("<th>Median Score</th>");
+		writer.write("<th>Average Beacons</th>");
+		writer.write("<th>Average Resources</th>");
+		writer.write("<th>Average Deaths</th>");
+		writer.write("<th>Average Kills</th>");
+		writer.write("<th>Average Assists</th>");
+		writer.write("<th>Average Cores</th>");
+		writer.write("<th>Average Stars</th>");
+		writer.write("<th>Games</th>");
+		writer.write("<th>Rating</th>");
+		writer.write("</tr>");
+
+		int place = 1;
+		for (TeamRecord record : standings) {
+			writer.write("<tr>\n");
+			writer.write("<td>" + place + "</td>\n");
+			writer.write("<td>" + escapeHTML(record.getTeamName()) + "</td>\n");
+			writer.write("<td>" + record.getAverageScore() + "</td>\n");
+			RunningStatistics score = record.getScoreStatistics();
+			writer.write("<td>" + String.format("%.1f &plusmn; %.1f (sd %.1f)", score.getMean(), 
+					score.getConfidenceInterval95(), score.getStandardDeviation()) + "</td>\n");
+			writer.write("<td>" + String.format("%.1f", record.getScoreQuantile(0.5)) + "</td>\n");
+			writer.write("<td>" + record.getAverageBeacons() + "</td>\n");
+			writer.write("<td>" + record.getAverageResources() + "</td>\n");
+			writer.write("<td>" + String.format("%02.02f", record.getAverageDeaths()) + "</td>\n");
+			writer.write("<td>" + String.format("%02.02f", record.getAverageKills()) + "</td>\n");
+			writer.write("<td>" + String.format("%02.02f", record.getAverageAssists()) + "</td>\n");
+			writer.write("<td>" + String.format("%02.02f", record.getAverageCores()) + "</td>\n");
+			writer.write("<td>" + String.format("%02.02f", record.getAverageStars()) + "</td>\n");
+			writer.write("<td>" + record.getNumGames() + "</td>\n");
+			writer.write("<td>" + String.format("%.2f &plusmn; %.2f", record.getRatingMean(), record.getRatingDeviation()) + "</td>\n");
+			writer.write("</tr>");
+			place++;
+		}
+
+		writer.write("</table>");
+	}
+
+	/**
+	 * Writes the wins-losses-ties of each team (row) against each opponent (column)
+	 */
+	static void writeHeadToHeadResults(Writer writer, List<TeamRecord> standings) throws IOException {
+		writer.write("<h3>Head to head (wins-losses-ties, average score difference)</h3>\n");
+		writer.write("<table border=\"2\">\n");
+		writer.write("<tr>\n");
+		writer.write("<th>Team</th>");
+		for (TeamRecord opponent : standings) {
+			writer.write("<th>" + escapeHTML(opponent.getTeamName()) + "</th>");
+		}
+		writer.write("</tr>");
+
+		for (TeamRecord record : standings) {
+			writer.write("<tr>\n");
+			writer.write("<td>" + escapeHTML(record.getTeamName()) + "</td>\n");
+			for (TeamRecord opponent : standings) {
+				HeadToHeadRecord headToHead = record.getHeadToHead(opponent);
+				if (headToHead == null) {
+					writer.write("<td></td>\n");
+				} else {
+					writer.write("<td>" + headToHead.getWins() + "-" + headToHead.getLosses() + "-" + headToHead.getTies() 
+						+ String.format(", %+.1f", headToHead.getScoreDifference().getMean()) + "</td>\n");
+				}
+			}
+			writer.write("</tr>");
+		}
+
+		writer.write("</table>");
+	}
+
+	/**
+	 * Writes the client latency for each team and phase to a HTML table
+	 * (p50 / p99 / max in milliseconds and the number of timeouts)
+	 */
+	static void writeLatencyResults(Writer writer, List<TeamRecord> standings) throws IOException {
+		writer.write("<h3>Client response times (p50 / p99 / max ms, timeouts)</h3>\n");
+		writer.write("<table border=\"2\">\n");
+		writer.write("<tr>\n");
+		writer.write("<th>Team</th>");
+		for (ClientPhase phase : ClientPhase.values()) {
+			writer.write("<th>" + phase.getMethodName() + "</th>");
+		}
+		writer.write("</tr>");
+
+		for (TeamRecord record : standings) {
+			writer.write("<tr>\n");
+			writer.write("<td>" + escapeHTML(record.getTeamName()) + "</td>\n");
+			for (ClientPhase phase : ClientPhase.values()) {
+				LatencySummary latency = record.getClientLatency(phase);
+				writer.write("<td>" + String.format("%.1f / %.1f / %.1f, %d", latency.getP50() / 1000.0,
+						latency.getP99() / 1000.0, latency.getMax() / 1000.0, latency.getTimeouts()) + "</td>\n");
+			}
+			writer.write("</tr>");
+		}
+
+		writer.write("</table>");
+	}
+
+	/**
+	 * Writes the header information for a page
+	 * @param refresh true if the browser should reload the page while the ladder runs
+	 */
+	static void writeHeader(Writer writer, String title, boolean refresh) throws IOException {
+		writer.write("<html>\n");
+		writer.write("<title>" + title + "</title>\n");
+		if (refresh) {
+			writer.write("<meta http-equiv=\"refresh\" content=\"" + REFRESH_SECONDS + "\">\n");
+		}
+		writer.write("<body bgcolor=\"white\">\n");
+	}
+
+	/**
+	 * Writes the footer information for a page
+	 */
+	static void writeFooter(Writer writer) throws IOException {
+		writer.write("<hr>\n");
+		SimpleDateFormat dateFormat = new SimpleDateFormat("EEE, d MMM yyyy HH:mm:ss Z");
+		String dateString = dateFormat.format(new Date());
+		writer.write("Last updated: " + dateString + "\n");
+		writer.write("</body></html>\n");
+	}
+
+	/**
+	 * Escape the characters that mean something in HTML (ampersands first so the other
+	 * entities aren't escaped twice)
+	 */
+	static String escapeHTML(String str) {
+		if (str == null) {
+			return "";
+		}
+		return str.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+	}
+
+	static File getTempFile(File file) {
+		return new File(file.getAbsoluteFile().getParentFile(), "." + file.getName() + ".tmp");
+	}
+
+	/**
+	 * Rename the finished temporary file over the page
+	 */
+	static void replace(File tempFile, File file) throws IOException {
+		try {
+			Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+}
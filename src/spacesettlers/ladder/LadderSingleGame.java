@@ -17,28 +17,31 @@ import spacesettlers.simulator.SimulatorException;
 import spacesettlers.simulator.SpaceSettlersSimulator;
 
 import com.martiansoftware.jsap.JSAPResult;
-import com.thoughtworks.xstream.XStream;
 
 /**
  * Runs a single game of the the ladder (for multi-threading)
  * @author amy
  *
  */
-public class LadderSingleGame implements Callable {
+public class LadderSingleGame implements Callable<LadderGameResult> {
 	LadderConfig ladderConfig;
 
-	SpaceSettlersSimulator simulator;
-
 	SpaceSettlersConfig simConfig;
 
 	JSAPResult parserConfig;
 
-	HashMap <String, Team> ladderResultsMap;
-
-	ArrayList<String> ladderOutputString;
-	
 	int gameIndex, numGames;
 
+	/**
+	 * The teams passed to initializeGame
+	 */
+	HighLevelTeamConfig[] teamsForMatch;
+
+	/**
+	 * Identifies the game in the ladder journal
+	 */
+	String gameKey;
+
 	/**
 	 * Make a new ladder
 	 * @param config
@@ -47,9 +50,6 @@ public class LadderSingleGame implements Callable {
 	public LadderSingleGame(JSAPResult parserConfig) throws SimulatorException {
 		loadConfigFiles(parserConfig);
 		this.parserConfig = parserConfig;
-
-		ladderResultsMap = new HashMap<String, Team>();
-		ladderOutputString = new ArrayList<String>();
 	}
 
 	/**
@@ -60,41 +60,12 @@ public class LadderSingleGame implements Callable {
 	public void loadConfigFiles(JSAPResult parserConfig) throws SimulatorException {
 		// load in the simulator config file
 		String configFile = parserConfig.getString("configPath") + parserConfig.getString("simulatorConfigFile");
-
-		XStream xstream = new XStream();
-		xstream.alias("SpaceSettlersConfig", SpaceSettlersConfig.class);
-		xstream.alias("HighLevelTeamConfig", HighLevelTeamConfig.class);
-		xstream.alias("BaseConfig", BaseConfig.class);
-		xstream.alias("AsteroidConfig", RandomAsteroidConfig.class);
-		xstream.alias("FixedAsteroidConfig", FixedAsteroidConfig.class);
-		xstream.alias("FlagConfig", FlagConfig.class);
-		xstream.allowTypesByRegExp(new String[] { ".*" });
-
-		try { 
-			simConfig = (SpaceSettlersConfig) xstream.fromXML(new File(configFile));
-		} catch (Exception e) {
-			throw new SimulatorException("Error parsing config file at string " + e.getMessage());
-		}
+		simConfig = ConfigRepository.getSpaceSettlersConfig(configFile);
 
 		// load in the ladder config file
 		configFile = parserConfig.getString("configPath") + parserConfig.getString("ladderConfigFile");
-
-		xstream = new XStream();
-		xstream.alias("LadderConfig", LadderConfig.class);
-		xstream.alias("HighLevelTeamConfig", HighLevelTeamConfig.class);
-		xstream.allowTypesByRegExp(new String[] { ".*" });
-
-		try { 
-			ladderConfig = (LadderConfig) xstream.fromXML(new File(configFile));
-
-			ladderConfig.makePlayerNamesUnique();
-
-
-		} catch (Exception e) {
-			throw new SimulatorException("Error parsing config file at string " + e.getMessage());
-		}
-
-
+		ladderConfig = ConfigRepository.getLadderConfig(configFile);
+		ladderConfig.makePlayerNamesUnique();
 	}
 
 	/**
@@ -105,9 +76,11 @@ public class LadderSingleGame implements Callable {
 		// save the index for debugging and printouts
 		this.gameIndex = gameIndex;
 		this.numGames = numGames;
+		this.teamsForMatch = teamsForMatch;
 		
-		// setup the simulator for this match
-		simConfig.setTeams(teamsForMatch);
+		// setup the simulator for this match (with copies of the teams since the simulator
+		// changes them and other games are using the same ones)
+		simConfig.setTeams(HighLevelTeamConfig.deepClone(teamsForMatch));
 
 		// set the bases to match the teams for this game.  Read in the ones
 		// from the config file first (and rename them)
@@ -134,12 +107,68 @@ public class LadderSingleGame implements Callable {
 				flagConfigs[i].setTeamName(teamsForMatch[i].getTeamName());
 			}
 		}
+
+		// if replays, telemetry or phase traces are being recorded, give each game its own file
+		if (simConfig.getReplayFile() != null) {
+			simConfig.setReplayFile(getGameFileName(simConfig.getReplayFile(), gameIndex));
+		}
+		if (simConfig.getTelemetryFile() != null) {
+			simConfig.setTelemetryFile(getGameFileName(simConfig.getTelemetryFile(), gameIndex));
+		}
+		if (simConfig.getProfileTraceFile() != null) {
+			simConfig.setProfileTraceFile(getGameFileName(simConfig.getProfileTraceFile(), gameIndex));
+		}
+
+		// give each team its own copy of its knowledge (the ladder merges it back when the game is done)
+		if (ladderConfig.isMergeKnowledge()) {
+			LadderKnowledge.startGame(simConfig.getTeams(), parserConfig.getString("configPath"), gameIndex);
+		}
+	}
+
+	/**
+	 * Insert the game index into a file name (before the extension) so
+	 * each game in the ladder writes its own file
+	 * @param fileName
+	 * @param gameIndex
+	 * @return
+	 */
+	static String getGameFileName(String fileName, int gameIndex) {
+		return getGameFileName(fileName, "-game" + gameIndex);
+	}
+
+	/**
+	 * Insert a tag into a file name (before the extension)
+	 * @param fileName
+	 * @param tag
+	 * @return
+	 */
+	static String getGameFileName(String fileName, String tag) {
+		int tagIndex = getTagIndex(fileName);
+		return fileName.substring(0, tagIndex) + tag + fileName.substring(tagIndex);
 	}
 
 	/**
-	 * Actually run the single game 
+	 * Where getGameFileName inserts its tag (before the extension or at the end)
+	 * @param fileName
+	 * @return
 	 */
-	public Object call() throws Exception {
+	static int getTagIndex(String fileName) {
+		int dot = fileName.lastIndexOf('.');
+		int slash = Math.max(fileName.lastIndexOf('/'), fileName.lastIndexOf(File.separatorChar));
+		if (dot > slash) {
+			return dot;
+		} else {
+			return fileName.length();
+		}
+	}
+
+	/**
+	 * Actually run the single game.  Only the results are returned: the simulator (and the
+	 * teams, clients and their knowledge) can be collected as soon as this returns.
+	 */
+	public LadderGameResult call() throws Exception {
+		ArrayList<String> ladderOutputString = new ArrayList<String>();
+
 		// tell the user the match is about to begin
 		String str = "***Game " + gameIndex + " / " + numGames + " with teams ";
 		for (HighLevelTeamConfig team : simConfig.getTeams()) {
@@ -149,9 +178,10 @@ public class LadderSingleGame implements Callable {
 		System.out.println(str);
 		ladderOutputString.add(str);
 
+		ArrayList<TeamGameStats> teamStats = new ArrayList<TeamGameStats>();
 		try {
 			// try to make a simulator and run it
-			simulator = new SpaceSettlersSimulator(simConfig, parserConfig);
+			SpaceSettlersSimulator simulator = new SpaceSettlersSimulator(simConfig, parserConfig);
 
 			str = "***Game " + gameIndex + " / " + numGames + " with teams ";
 			Set<Team> teams = simulator.getTeams();
@@ -168,13 +198,16 @@ public class LadderSingleGame implements Callable {
 			// get the teams and print out their scores
 			str = "***Game " + gameIndex + " / " + numGames + " ended, scores follow ";
 
+			// one result per client (as the ladder always has)
+			HashMap<String, TeamGameStats> ladderResultsMap = new HashMap<String, TeamGameStats>();
 			for (Team team : teams) {
 				str = "Team: " + team.getLadderName() + " scored " + team.getScore();
 				ladderOutputString.add(str);
 				System.out.println(str);
 
-				ladderResultsMap.put(team.getLadderName(), team);
+				ladderResultsMap.put(team.getLadderName(), new TeamGameStats(team));
 			}
+			teamStats.addAll(ladderResultsMap.values());
 		} catch (Exception e) {
 			System.err.println("Error in match : skipping and moving to next one");
 			ladderOutputString.add("Error in match : skipping and moving to next one");
@@ -183,17 +216,26 @@ public class LadderSingleGame implements Callable {
 		}
 		
 		str = "***Game " + gameIndex + " / " + numGames + " ended, returning from thread";
-		return this;
+		return new LadderGameResult(gameKey, teamStats, ladderOutputString);
 	}
 
-	public HashMap<String, Team> getLadderResultsMap() {
-		return ladderResultsMap;
+	/**
+	 * The teams in the game (the same array given to initializeGame)
+	 * @return
+	 */
+	public HighLevelTeamConfig[] getTeamsForMatch() {
+		return teamsForMatch;
 	}
 
-	public ArrayList<String> getLadderOutputString() {
-		return ladderOutputString;
+	public String getGameKey() {
+		return gameKey;
 	}
 
+	public void setGameKey(String gameKey) {
+		this.gameKey = gameKey;
+	}
+
+
 	
 
 
@@ -0,0 +1,62 @@
+package spacesettlers.ladder;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import spacesettlers.configs.HighLevelTeamConfig;
+import spacesettlers.simulator.SimulatorException;
+
+import com.martiansoftware.jsap.JSAPResult;
+
+/**
+ * Runs the ladder's games on a pool of threads in this JVM.  A waiting game is only its
+ * teams and a finished game is only its LadderGameResult: each game's simulator is made
+ * when a thread starts it and is garbage once the game is over, so the heap holds at most
+ * numThreads simulators however long the ladder is.
+ *
+ * @author amy
+ */
+public class LadderThreadRunner implements LadderGameRunner {
+	JSAPResult parserConfig;
+
+	ExecutorService threadPool;
+
+	ExecutorCompletionService<LadderGameResult> completedGames;
+
+	int numThreads;
+
+	public LadderThreadRunner(JSAPResult parserConfig, int numThreads) {
+		this.parserConfig = parserConfig;
+		this.numThreads = numThreads;
+		threadPool = Executors.newFixedThreadPool(numThreads);
+		completedGames = new ExecutorCompletionService<LadderGameResult>(threadPool);
+	}
+
+	public void submit(final String gameKey, final HighLevelTeamConfig[] teamsForMatch, final int gameIndex,
+			final int numGames) throws SimulatorException {
+		// run the game as threads are available (setting it up only when it starts)
+		completedGames.submit(new Callable<LadderGameResult>() {
+			public LadderGameResult call() throws Exception {
+				LadderSingleGame newGame = new LadderSingleGame(parserConfig);
+				newGame.initializeGame(teamsForMatch, gameIndex, numGames);
+				newGame.setGameKey(gameKey);
+				return newGame.call();
+			}
+		});
+	}
+
+	public LadderGameResult take() throws InterruptedException, ExecutionException {
+		return completedGames.take().get();
+	}
+
+	public int getNumParallelGames() {
+		return numThreads;
+	}
+
+	public void shutdown() {
+		threadPool.shutdown();
+	}
+}
@@ -0,0 +1,201 @@
+package spacesettlers.ladder;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+
+import spacesettlers.configs.ConfigRepository;
+import spacesettlers.configs.HighLevelTeamConfig;
+import spacesettlers.simulator.SimulatorException;
+
+import com.martiansoftware.jsap.JSAPResult;
+
+/**
+ * Runs ladder games for a LadderCoordinator: connects to it, runs each game it is sent
+ * (one at a time) and sends back the results until the coordinator says to stop.  If the
+ * coordinator isn't listening yet or the connection drops, the worker tries again (waiting
+ * longer each time) and gives up after MAX_CONNECT_ATTEMPTS failures in a row.
+ *
+ * @author amy
+ */
+public class LadderWorker {
+	/**
+	 * Most times in a row the worker tries to connect before it gives up
+	 */
+	static final int MAX_CONNECT_ATTEMPTS = 10;
+
+	/**
+	 * Milliseconds to wait after the first failed connection (doubled after each one)
+	 */
+	static int CONNECT_RETRY_INTERVAL = 1000;
+
+	/**
+	 * Most milliseconds to wait between connections
+	 */
+	static final int MAX_CONNECT_RETRY_INTERVAL = 30000;
+
+	JSAPResult parserConfig;
+
+	/**
+	 * Number of games the worker has run
+	 */
+	int numGamesRun;
+
+	public LadderWorker(JSAPResult parserConfig) {
+		this.parserConfig = parserConfig;
+	}
+
+	/**
+	 * Run games from the coordinator until it says to stop, connecting again if the 
+	 * connection fails
+	 * 
+	 * @param host
+	 * @param port
+	 * @throws IOException if the worker can't connect to the coordinator
+	 * @throws SimulatorException if a game can't be set up
+	 */
+	public void run(String host, int port) throws IOException, SimulatorException {
+		int failures = 0;
+		int retryInterval = CONNECT_RETRY_INTERVAL;
+		while (true) {
+			int numGamesBefore = numGamesRun;
+			IOException error;
+			try {
+				if (runGames(new Socket(host, port))) {
+					return;
+				}
+				error = new EOFException("the connection dropped");
+			} catch (IOException e) {
+				error = e;
+			}
+
+			// a connection that ran games isn't counted against the next one
+			if (numGamesRun > numGamesBefore) {
+				failures = 0;
+				retryInterval = CONNECT_RETRY_INTERVAL;
+			}
+			failures++;
+			if (failures >= MAX_CONNECT_ATTEMPTS) {
+				throw error;
+			}
+			System.err.println("Lost the ladder coordinator at " + host + ":" + port + " (" + error.getMessage() 
+					+ "): trying again in " + retryInterval + " ms");
+			try {
+				Thread.sleep(retryInterval);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			retryInterval = Math.min(2 * retryInterval, MAX_CONNECT_RETRY_INTERVAL);
+		}
+	}
+
+	/**
+	 * Run games on one connection to the coordinator
+	 * @param socket
+	 * @return true if the coordinator said to stop, false if the connection dropped
+	 * @throws IOException if the worker couldn't talk to the coordinator (the socket is closed)
+	 * @throws SimulatorException if a game can't be set up
+	 */
+	boolean runGames(Socket socket) throws IOException, SimulatorException {
+		try {
+			socket.setTcpNoDelay(true);
+			DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			DataOutputStream output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+			output.writeInt(LadderCoordinator.HELLO);
+			output.writeInt(LadderCoordinator.PROTOCOL_VERSION);
+			output.flush();
+
+			while (true) {
+				int message = input.readInt();
+				if (message == LadderCoordinator.STOP) {
+					return true;
+				} else if (message != LadderCoordinator.GAME) {
+					throw new IOException("Unknown message from the ladder coordinator: " + message);
+				}
+
+				String gameKey = input.readUTF();
+				int gameIndex = input.readInt();
+				int numGames = input.readInt();
+				long seed = input.readLong();
+				String teamsXML = new String(LadderCoordinator.readBytes(input), StandardCharsets.UTF_8);
+
+				HighLevelTeamConfig[] teams = ConfigRepository.teamsFromXML(teamsXML);
+
+				// tell the coordinator the worker is still alive while the game runs
+				Thread heartbeatThread = startHeartbeats(output);
+				LadderGameResult result;
+				try {
+					result = runGame(gameKey, teams, gameIndex, numGames, seed);
+				} finally {
+					heartbeatThread.interrupt();
+				}
+
+				numGamesRun++;
+				synchronized (output) {
+					output.writeInt(LadderCoordinator.RESULT);
+					LadderCoordinator.writeBytes(output, LadderJournal.encode(result));
+					output.flush();
+				}
+			}
+		} catch (SocketException | EOFException e) {
+			// the coordinator is gone (or gave up on this worker)
+			return false;
+		} finally {
+			socket.close();
+		}
+	}
+
+	/**
+	 * Send a heartbeat every HEARTBEAT_INTERVAL until the thread is interrupted
+	 * @param output
+	 * @return the heartbeat thread
+	 */
+	Thread startHeartbeats(final DataOutputStream output) {
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				try {
+					while (true) {
+						Thread.sleep(LadderCoordinator.HEARTBEAT_INTERVAL);
+						synchronized (output) {
+							output.writeInt(LadderCoordinator.HEARTBEAT);
+							output.flush();
+						}
+					}
+				} catch (InterruptedException e) {
+					// the game is over
+				} catch (IOException e) {
+					// the coordinator is gone (the worker finds out when it sends the result)
+				}
+			}
+		}, "Ladder worker heartbeat");
+		thread.setDaemon(true);
+		thread.start();
+		return thread;
+	}
+
+	/**
+	 * Run one game and return its results
+	 */
+	LadderGameResult runGame(String gameKey, HighLevelTeamConfig[] teamsForMatch, int gameIndex, int numGames, 
+			long seed) throws SimulatorException {
+		LadderSingleGame game = new LadderSingleGame(parserConfig);
+		game.initializeGame(teamsForMatch, gameIndex, numGames);
+		game.setGameKey(gameKey);
+		game.simConfig.setRandomSeed(seed);
+		try {
+			return game.call();
+		} catch (Exception e) {
+			// call catches errors in the game itself so this shouldn't happen
+			e.printStackTrace();
+			return new LadderGameResult(gameKey);
+		}
+	}
+}
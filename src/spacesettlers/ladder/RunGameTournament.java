@@ -0,0 +1,126 @@
+package spacesettlers.ladder;
+
+import java.io.File;
+import java.util.concurrent.ExecutionException;
+
+import spacesettlers.configs.ConfigRepository;
+import spacesettlers.configs.GameTournamentConfig;
+import spacesettlers.simulator.SimulatorException;
+
+import com.martiansoftware.jsap.FlaggedOption;
+import com.martiansoftware.jsap.JSAP;
+import com.martiansoftware.jsap.JSAPException;
+import com.martiansoftware.jsap.JSAPResult;
+import com.martiansoftware.jsap.Parameter;
+import com.martiansoftware.jsap.SimpleJSAP;
+
+/**
+ * Runs a mini-game tournament (see GameTournament) from the command line
+ * 
+ * @author amy
+ */
+public class RunGameTournament {
+	JSAPResult config;
+
+	GameTournamentConfig tournamentConfig;
+
+	/**
+	 * Make a new tournament
+	 * @throws SimulatorException 
+	 */
+	public RunGameTournament(String[] args) throws SimulatorException {
+		SimpleJSAP parser = initializeParser(args);
+		config = parseArgs(args, parser);
+		verifyArguments();
+		loadConfigFile();
+	}
+
+	/**
+	 * Actually parse the command line arguments
+	 * @param args
+	 * @param parser
+	 * @return
+	 */
+	private JSAPResult parseArgs(String[] args, SimpleJSAP parser) {
+		// parse the arguments
+		JSAPResult parserConfig = parser.parse(args);
+		// exit if it failed to parse
+		if (parser.messagePrinted()) {
+			System.exit(-1);
+		}
+		return parserConfig;
+	}
+
+	/**
+	 * Verify that the arguments are valid.  
+	 */
+	private void verifyArguments() throws SimulatorException {
+		String configName = config.getString("tournamentConfigFile");
+		
+		// verify that the argument ended in .xml
+		if (!configName.endsWith(".xml")) {
+			throw new SimulatorException("Error: invalid tournament config file name " + configName + " It must end in .xml");
+		}
+	}
+
+	/**
+	 * Load in the tournament config file
+	 * @throws SimulatorException
+	 */
+	private void loadConfigFile() throws SimulatorException {
+		String configFile = config.getString("configPath") + config.getString("tournamentConfigFile");
+		tournamentConfig = ConfigRepository.getGameTournamentConfig(configFile);
+	}
+
+	/**
+	 * Initialize the parser with all of the command line arguments
+	 * @param args
+	 * @return
+	 */
+	private SimpleJSAP initializeParser(String[] args) {
+		SimpleJSAP parser = null;
+
+		// create the parser and specify all the command line arguments
+		try {
+			parser = new SimpleJSAP(
+					"GameTournament",
+					"Spacewar mini-game tournament",
+					new Parameter[] {
+						new FlaggedOption("tournamentConfigFile",
+								JSAP.STRING_PARSER, null, JSAP.REQUIRED,
+								JSAP.NO_SHORTFLAG, "tournamentConfigFile",
+								"configuration file for the tournament (xml)"), 
+						new FlaggedOption("configPath",
+								JSAP.STRING_PARSER, null, JSAP.REQUIRED,
+								JSAP.NO_SHORTFLAG, "configPath",
+								"path to the configuration files"), 
+					});
+		} catch (JSAPException e) {
+			e.printStackTrace();
+			System.err.println("Error in the parser - exiting");
+			System.exit(-1);
+		}
+		return parser;
+	}
+
+	/**
+	 * @param args
+	 * @throws SimulatorException 
+	 * @throws InterruptedException 
+	 * @throws ExecutionException 
+	 */
+	public static void main(String[] args) throws SimulatorException, InterruptedException, ExecutionException {
+		RunGameTournament runTournament = new RunGameTournament(args);
+		
+		GameTournament tournament = new GameTournament(runTournament.tournamentConfig);
+		
+		tournament.run();
+
+		tournament.printResultsToHTML(runTournament.config.getString("configPath") 
+				+ runTournament.tournamentConfig.getOutputFileName());
+		
+		System.out.println("Tournament finished!");
+		System.exit(0);
+	}
+
+}
@@ -0,0 +1,142 @@
+package spacesettlers.ladder;
+
+import spacesettlers.clients.ClientPhase;
+import spacesettlers.clients.Team;
+import spacesettlers.utilities.LatencyHistogram;
+
+/**
+ * The results of one team in one ladder game (everything TeamRecord needs).  These are
+ * what the ladder journal saves so a restarted ladder can rebuild its records without
+ * the simulator's Team objects.
+ *
+ * @author amy
+ */
+public class TeamGameStats {
+	String ladderName;
+
+	double score, resources;
+
+	int beacons, kills, deaths, assists, cores, stars;
+
+	/**
+	 * Latency (in microseconds) of the calls into the team client, indexed by ClientPhase
+	 */
+	LatencyHistogram[] phaseLatency;
+
+	/**
+	 * Copy the results of the team at the end of a game
+	 * @param team
+	 */
+	public TeamGameStats(Team team) {
+		ladderName = team.getLadderName();
+		score = team.getScore();
+		resources = team.getSummedTotalResources();
+		beacons = team.getTotalBeaconsCollected();
+		kills = team.getTotalKillsInflicted();
+		deaths = team.getTotalKillsReceived();
+		assists = team.getTotalAssistsInflicted();
+		cores = team.getTotalCoresCollected();
+		stars = team.getTotalStarsCollected();
+		phaseLatency = new LatencyHistogram[ClientPhase.values().length];
+		for (ClientPhase phase : ClientPhase.values()) {
+			phaseLatency[phase.ordinal()] = team.getPhaseLatency(phase);
+		}
+	}
+
+	TeamGameStats() {
+	}
+
+	/**
+	 * Write the stats as tab separated fields (see fromFields)
+	 * @return
+	 */
+	String[] toFields() {
+		String[] fields = new String[9 + phaseLatency.length];
+		fields[0] = ladderName;
+		fields[1] = Double.toString(score);
+		fields[2] = Double.toString(resources);
+		fields[3] = Integer.toString(beacons);
+		fields[4] = Integer.toString(kills);
+		fields[5] = Integer.toString(deaths);
+		fields[6] = Integer.toString(assists);
+		fields[7] = Integer.toString(cores);
+		fields[8] = Integer.toString(stars);
+		for (int i = 0; i < phaseLatency.length; i++) {
+			fields[9 + i] = phaseLatency[i].encode();
+		}
+		return fields;
+	}
+
+	/**
+	 * Read the stats written by toFields
+	 * @param fields
+	 * @param start index of the first field
+	 * @return
+	 * @throws IllegalArgumentException if the fields are not team stats
+	 */
+	static TeamGameStats fromFields(String[] fields, int start) {
+		int numPhases = ClientPhase.values().length;
+		if (fields.length - start != 9 + numPhases) {
+			throw new IllegalArgumentException("Wrong number of fields for team stats: " + (fields.length - start));
+		}
+		TeamGameStats stats = new TeamGameStats();
+		try {
+			stats.ladderName = fields[start];
+			stats.score = Double.parseDouble(fields[start + 1]);
+			stats.resources = Double.parseDouble(fields[start + 2]);
+			stats.beacons = Integer.parseInt(fields[start + 3]);
+			stats.kills = Integer.parseInt(fields[start + 4]);
+			stats.deaths = Integer.parseInt(fields[start + 5]);
+			stats.assists = Integer.parseInt(fields[start + 6]);
+			stats.cores = Integer.parseInt(fields[start + 7]);
+			stats.stars = Integer.parseInt(fields[start + 8]);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Bad team stats: " + e.getMessage(), e);
+		}
+		stats.phaseLatency = new LatencyHistogram[numPhases];
+		for (int i = 0; i < numPhases; i++) {
+			stats.phaseLatency[i] = LatencyHistogram.decode(fields[start + 9 + i]);
+		}
+		return stats;
+	}
+
+	public String getLadderName() {
+		return ladderName;
+	}
+
+	public double getScore() {
+		return score;
+	}
+
+	public double getResources() {
+		return resources;
+	}
+
+	public int getBeacons() {
+		return beacons;
+	}
+
+	public int getKills() {
+		return kills;
+	}
+
+	public int getDeaths() {
+		return deaths;
+	}
+
+	public int getAssists() {
+		return assists;
+	}
+
+	public int getCores() {
+		return cores;
+	}
+
+	public int getStars() {
+		return stars;
+	}
+
+	public LatencyHistogram getPhaseLatency(ClientPhase phase) {
+		return phaseLatency[phase.ordinal()];
+	}
+}
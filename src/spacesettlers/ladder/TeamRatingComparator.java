@@ -0,0 +1,17 @@
+package spacesettlers.ladder;
+
+import java.util.Comparator;
+
+/**
+ * Sorts teams by their skill rating (best first)
+ * 
+ * @author amy
+ */
+public class TeamRatingComparator implements Comparator<TeamRecord> {
+
+	@Override
+	public int compare(TeamRecord team1, TeamRecord team2) {
+		return Double.compare(team2.getRatingMean(), team1.getRatingMean());
+	}
+
+}
@@ -1,6 +1,14 @@
 package spacesettlers.ladder;
 
+import java.util.Collection;
+import java.util.TreeMap;
+
+import spacesettlers.clients.ClientPhase;
 import spacesettlers.clients.Team;
+import spacesettlers.utilities.LatencyHistogram;
+import spacesettlers.utilities.LatencySummary;
+import spacesettlers.utilities.QuantileSketch;
+import spacesettlers.utilities.RunningStatistics;
 
 /**
  * Stores all the information needed for a team in the ladder
@@ -32,6 +40,45 @@ public class TeamRecord {
 			
 	String teamName;
 	
+	/**
+	 * Latency (in microseconds) of the calls into the team client over all games, indexed by ClientPhase
+	 */
+	LatencyHistogram[] clientLatency;
+
+	/**
+	 * Spread and quantiles of the team's score in each game (kept without keeping the games)
+	 */
+	RunningStatistics scoreStatistics;
+
+	QuantileSketch scoreSketch;
+
+	/**
+	 * Record against each opponent, by the opponent's ladder name
+	 */
+	TreeMap<String, HeadToHeadRecord> headToHead;
+
+	/**
+	 * Skill rating of the team (the mean and variance of a Gaussian belief over its skill)
+	 * updated after every game from the team's place in that game
+	 */
+	double ratingMean, ratingVariance;
+
+	/**
+	 * Rating of a new team (the same scale as TrueSkill)
+	 */
+	public static final double INITIAL_RATING_MEAN = 25.0;
+	public static final double INITIAL_RATING_DEVIATION = INITIAL_RATING_MEAN / 3.0;
+
+	/**
+	 * Spread of the performance in a single game around the skill
+	 */
+	public static final double PERFORMANCE_DEVIATION = INITIAL_RATING_DEVIATION / 2.0;
+
+	/**
+	 * Smallest fraction of the variance kept after one game (so it never hits zero)
+	 */
+	static final double MIN_VARIANCE_FRACTION = 0.0001;
+	
 	public TeamRecord(String teamName) {
 		this.teamName = teamName;
 		reset();
@@ -64,6 +111,15 @@ public class TeamRecord {
 		averageCores = 0;
 		totalStars = 0;
 		averageStars = 0;
+		scoreStatistics = new RunningStatistics();
+		scoreSketch = new QuantileSketch();
+		headToHead = new TreeMap<String, HeadToHeadRecord>();
+		ratingMean = INITIAL_RATING_MEAN;
+		ratingVariance = INITIAL_RATING_DEVIATION * INITIAL_RATING_DEVIATION;
+		clientLatency = new LatencyHistogram[ClientPhase.values().length];
+		for (int i = 0; i < clientLatency.length; i++) {
+			clientLatency[i] = new LatencyHistogram();
+		}
 	}
 
 	@Override
@@ -97,31 +153,168 @@ public class TeamRecord {
 	 * @param team
 	 */
 	public void update(Team team) {
+		update(new TeamGameStats(team));
+	}
+
+	/**
+	 * Update the team record from the team's results in one game
+	 * @param stats
+	 */
+	public void update(TeamGameStats stats) {
 		numGames++;
 		
-		totalScore += team.getScore();
+		totalScore += stats.getScore();
 		averageScore = (double) totalScore / numGames;
+		scoreStatistics.add(stats.getScore());
+		scoreSketch.add(stats.getScore());
 		
-		totalResources += team.getSummedTotalResources();
+		totalResources += stats.getResources();
 		averageResources = (double) totalResources / numGames;
 		
-		totalBeacons += team.getTotalBeaconsCollected();
+		totalBeacons += stats.getBeacons();
 		averageBeacons = (double) totalBeacons / numGames;
 		
-		totalKills += team.getTotalKillsInflicted();
+		totalKills += stats.getKills();
 		averageKills = (double) totalKills / numGames;
 		
-		totalDeaths += team.getTotalKillsReceived();
+		totalDeaths += stats.getDeaths();
 		averageDeaths = (double) totalDeaths / numGames;
 		
-		totalAssists += team.getTotalAssistsInflicted();
+		totalAssists += stats.getAssists();
 		averageAssists = (double) totalAssists / numGames;
 		
-		totalCores += team.getTotalCoresCollected();
+		totalCores += stats.getCores();
 		averageCores = (double) totalCores / numGames;
 
-		totalStars += team.getTotalStarsCollected();
+		totalStars += stats.getStars();
 		averageStars = (double) totalStars / numGames;
+
+		for (ClientPhase phase : ClientPhase.values()) {
+			clientLatency[phase.ordinal()].add(stats.getPhaseLatency(phase));
+		}
+	}
+
+	/**
+	 * Update the head to head records of every pair of teams in one game
+	 * 
+	 * @param records the teams in the game
+	 * @param scores their scores in the game
+	 */
+	public static void updateHeadToHead(TeamRecord[] records, double[] scores) {
+		for (int i = 0; i < records.length; i++) {
+			for (int q = 0; q < records.length; q++) {
+				// the same client can be in a game twice but it doesn't play itself
+				if (records[q] == records[i]) {
+					continue;
+				}
+				records[i].getHeadToHead(records[q].teamName).update(scores[i], scores[q]);
+			}
+		}
+	}
+
+	/**
+	 * Returns the record against the opponent (making it if needed)
+	 * @param opponentName the opponent's ladder name
+	 * @return
+	 */
+	HeadToHeadRecord getHeadToHead(String opponentName) {
+		HeadToHeadRecord record = headToHead.get(opponentName);
+		if (record == null) {
+			record = new HeadToHeadRecord(opponentName);
+			headToHead.put(opponentName, record);
+		}
+		return record;
+	}
+
+	/**
+	 * The record against the opponent (null if they haven't played)
+	 * @param opponent
+	 * @return
+	 */
+	public HeadToHeadRecord getHeadToHead(TeamRecord opponent) {
+		return headToHead.get(opponent.teamName);
+	}
+
+	/**
+	 * The records against every opponent the team has played (sorted by name)
+	 * @return
+	 */
+	public Collection<HeadToHeadRecord> getHeadToHeadRecords() {
+		return headToHead.values();
+	}
+
+	/**
+	 * Update the ratings of all of the teams in one game from their scores (higher is better, 
+	 * equal scores are a tie).  This is the Bradley-Terry full pair update from Weng and Lin 
+	 * (2011), which treats a game with many teams as every pair of teams playing each other 
+	 * and only needs a few lines per team (no factor graph like TrueSkill).
+	 * 
+	 * @param records the teams in the game
+	 * @param scores their scores in the game
+	 */
+	public static void updateRatings(TeamRecord[] records, double[] scores) {
+		double[] meanChange = new double[records.length];
+		double[] varianceChange = new double[records.length];
+		double beta2 = PERFORMANCE_DEVIATION * PERFORMANCE_DEVIATION;
+
+		for (int i = 0; i < records.length; i++) {
+			for (int q = 0; q < records.length; q++) {
+				// the same client can be in a game twice but it doesn't play itself
+				if (records[q] == records[i]) {
+					continue;
+				}
+				double c = Math.sqrt(records[i].ratingVariance + records[q].ratingVariance + 2 * beta2);
+				double p = 1.0 / (1.0 + Math.exp((records[q].ratingMean - records[i].ratingMean) / c));
+				double outcome;
+				if (scores[i] > scores[q]) {
+					outcome = 1;
+				} else if (scores[i] < scores[q]) {
+					outcome = 0;
+				} else {
+					outcome = 0.5;
+				}
+
+				meanChange[i] += records[i].ratingVariance / c * (outcome - p);
+				double gamma = Math.sqrt(records[i].ratingVariance) / c;
+				varianceChange[i] += gamma * records[i].ratingVariance / (c * c) * p * (1 - p);
+			}
+		}
+
+		// apply them all at the end so the order of the teams doesn't matter
+		for (int i = 0; i < records.length; i++) {
+			records[i].ratingMean += meanChange[i];
+			records[i].ratingVariance *= Math.max(1 - varianceChange[i], MIN_VARIANCE_FRACTION);
+		}
+	}
+
+	/**
+	 * Probability this team beats the other one in a game
+	 * @param other
+	 * @return
+	 */
+	public double getWinProbability(TeamRecord other) {
+		double c = Math.sqrt(ratingVariance + other.ratingVariance + 2 * PERFORMANCE_DEVIATION * PERFORMANCE_DEVIATION);
+		return 1.0 / (1.0 + Math.exp((other.ratingMean - ratingMean) / c));
+	}
+
+	public double getRatingMean() {
+		return ratingMean;
+	}
+
+	public double getRatingDeviation() {
+		return Math.sqrt(ratingVariance);
+	}
+
+	/**
+	 * The rating the team almost surely (99.7%) has (mean minus 3 deviations)
+	 * @return
+	 */
+	public double getConservativeRating() {
+		return ratingMean - 3 * getRatingDeviation();
+	}
+
+	public int getNumGames() {
+		return numGames;
 	}
 
 	public double getAverageScore() {
@@ -129,11 +322,30 @@ public class TeamRecord {
 	}
 
 	/**
-	 * Fixes bug where students can put in JavaScript in their team name to rearrange the ladder.  fix provided by Christopher Fenner, January 2013
+	 * The team's name as it was given.  LadderReport escapes it on the web pages, which fixes the
+	 * bug where students can put JavaScript in their team name to rearrange the ladder (first fix
+	 * provided by Christopher Fenner, January 2013).
 	 * @return
 	 */
 	public String getTeamName() {
-		return teamName.replaceAll("<", "&lt;").replaceAll(">", "&gt;");
+		return teamName;
+	}
+
+	/**
+	 * Mean, standard deviation and range of the team's score over its games
+	 * @return
+	 */
+	public RunningStatistics getScoreStatistics() {
+		return scoreStatistics;
+	}
+
+	/**
+	 * Approximate quantile of the team's score over its games
+	 * @param q between 0 and 1 (0.5 is the median)
+	 * @return
+	 */
+	public double getScoreQuantile(double q) {
+		return scoreSketch.getQuantile(q);
 	}
 
 	public double getAverageBeacons() {
@@ -164,6 +376,15 @@ public class TeamRecord {
 		return averageStars;
 	}
 
+	/**
+	 * Latency (in microseconds) and timeouts of the team client in the specified phase over all games
+	 * @param phase
+	 * @return
+	 */
+	public LatencySummary getClientLatency(ClientPhase phase) {
+		return clientLatency[phase.ordinal()].getSummary();
+	}
+
 	@Override
 	public String toString() {
 		return "TeamRecord [numGames=" + numGames + ", totalScore=" + totalScore + ", averageScore=" + averageScore
@@ -171,6 +392,7 @@ public class TeamRecord {
 				+ totalResources + ", averageResources=" + averageResources + ", totalKills=" + totalKills
 				+ ", totalDeaths=" + totalDeaths + ", averageKills=" + averageKills +
 				", averageDeaths=" + averageDeaths + ", totalStars" + totalStars + ", averageStars=" + averageStars
+				+ ", ratingMean=" + ratingMean + ", ratingDeviation=" + getRatingDeviation()
 				+ ", teamName=" + teamName + "]";
 	}
 
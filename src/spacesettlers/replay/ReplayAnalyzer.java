@@ -0,0 +1,95 @@
+package spacesettlers.replay;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * Runs a visitor over many replay files in parallel.  Each file gets its own
+ * visitor (made by the supplied factory) and is read on its own thread so the 
+ * visitors never need to synchronize.  Files that can't be read are reported
+ * and skipped.
+ * 
+ * @author amy
+ */
+public class ReplayAnalyzer {
+	
+	/**
+	 * Visit every replay in the list and return the visitors (in the same order as the 
+	 * files, minus any files that could not be read).
+	 * 
+	 * @param replayFiles
+	 * @param visitorFactory makes a new visitor for each file
+	 * @param numThreads
+	 * @return map from the replay file to the visitor that walked it
+	 */
+	public static <V extends ReplayVisitor> LinkedHashMap<File, V> visitAll(List<File> replayFiles, 
+			Supplier<V> visitorFactory, int numThreads) {
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, numThreads));
+		
+		ArrayList<Future<V>> futures = new ArrayList<Future<V>>();
+		for (File replayFile : replayFiles) {
+			V visitor = visitorFactory.get();
+			futures.add(executor.submit(new VisitCallable<V>(replayFile, visitor)));
+		}
+		
+		LinkedHashMap<File, V> results = new LinkedHashMap<File, V>();
+		for (int i = 0; i < futures.size(); i++) {
+			try {
+				results.put(replayFiles.get(i), futures.get(i).get());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			} catch (ExecutionException e) {
+				System.err.println("Error reading replay " + replayFiles.get(i) + ": skipping and moving to next one");
+				e.getCause().printStackTrace();
+			}
+		}
+		executor.shutdownNow();
+		return results;
+	}
+	
+	/**
+	 * Walk a single replay with a single visitor (on the current thread)
+	 * @param replayFile
+	 * @param visitor
+	 * @throws Exception
+	 */
+	public static <V extends ReplayVisitor> V visit(File replayFile, V visitor) throws Exception {
+		try (ReplayReader reader = new ReplayReader(replayFile)) {
+			visitor.beginReplay(reader);
+			ReplayCursor cursor = reader.cursor();
+			while (cursor.next()) {
+				visitor.visitStep(cursor);
+			}
+			visitor.endReplay(reader);
+		}
+		return visitor;
+	}
+
+	/**
+	 * Callable so each replay is read on a pool thread
+	 * @author amy
+	 *
+	 */
+	static class VisitCallable<V extends ReplayVisitor> implements Callable<V> {
+		File replayFile;
+		V visitor;
+		
+		VisitCallable(File replayFile, V visitor) {
+			this.replayFile = replayFile;
+			this.visitor = visitor;
+		}
+
+		public V call() throws Exception {
+			return visit(replayFile, visitor);
+		}
+	}
+}
@@ -0,0 +1,259 @@
+package spacesettlers.replay;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+import spacesettlers.objects.resources.ResourceTypes;
+
+import static spacesettlers.replay.ReplayRecorder.*;
+
+/**
+ * A cursor over the steps of a replay.  Every accessor reads straight out of the
+ * mapped file so nothing is deserialized unless you ask for it.  Teams are indexed
+ * in the order of the replay header and objects from 0 to getNumObjects() - 1.
+ *
+ * Cursors are not thread safe but any number of cursors can share a reader.
+ *
+ * @author amy
+ */
+public class ReplayCursor {
+	ReplayReader reader;
+
+	ByteBuffer buffer;
+
+	/**
+	 * Current step index (-1 before the first call to next)
+	 */
+	int step;
+
+	/**
+	 * Offsets of the current step's team and object records
+	 */
+	int teamOffset, objectOffset;
+
+	ReplayCursor(ReplayReader reader, ByteBuffer buffer) {
+		this.reader = reader;
+		this.buffer = buffer;
+		this.step = -1;
+	}
+
+	/**
+	 * Move to the next step
+	 * @return false if there are no more steps
+	 */
+	public boolean next() {
+		if (step + 1 >= reader.getNumSteps()) {
+			return false;
+		}
+		seek(step + 1);
+		return true;
+	}
+
+	/**
+	 * Move to the specified step (0 to getNumSteps() - 1 on the reader)
+	 * @param newStep
+	 */
+	public void seek(int newStep) {
+		if (newStep < 0 || newStep >= reader.getNumSteps()) {
+			throw new IndexOutOfBoundsException("Step " + newStep + " is not in the replay");
+		}
+		step = newStep;
+		int offset = reader.getStepOffset(step);
+		teamOffset = offset + STEP_HEADER_SIZE;
+		objectOffset = teamOffset + reader.getNumTeams() * TEAM_RECORD_SIZE;
+	}
+
+	/**
+	 * The index of the current step in the replay
+	 * @return
+	 */
+	public int getStep() {
+		return step;
+	}
+
+	/**
+	 * The simulator timestep of the current step
+	 * @return
+	 */
+	public int getTimestep() {
+		return buffer.getInt(reader.getStepOffset(step));
+	}
+
+	public int getNumObjects() {
+		return buffer.getInt(reader.getStepOffset(step) + 4);
+	}
+
+	public int getNumTeams() {
+		return reader.getNumTeams();
+	}
+
+	/**
+	 * Team accessors
+	 */
+	private int team(int team, int field) {
+		return teamOffset + team * TEAM_RECORD_SIZE + field;
+	}
+
+	public double getTeamScore(int team) {
+		return buffer.getDouble(team(team, TEAM_SCORE));
+	}
+
+	public int getTeamAvailableResource(int team, ResourceTypes type) {
+		switch (type) {
+		case WATER:
+			return buffer.getInt(team(team, TEAM_AVAILABLE_WATER));
+		case FUEL:
+			return buffer.getInt(team(team, TEAM_AVAILABLE_FUEL));
+		case METALS:
+			return buffer.getInt(team(team, TEAM_AVAILABLE_METALS));
+		default:
+			return 0;
+		}
+	}
+
+	public int getTeamTotalResource(int team, ResourceTypes type) {
+		switch (type) {
+		case WATER:
+			return buffer.getInt(team(team, TEAM_TOTAL_WATER));
+		case FUEL:
+			return buffer.getInt(team(team, TEAM_TOTAL_FUEL));
+		case METALS:
+			return buffer.getInt(team(team, TEAM_TOTAL_METALS));
+		default:
+			return 0;
+		}
+	}
+
+	public int getTeamBeaconsCollected(int team) {
+		return buffer.getInt(team(team, TEAM_BEACONS));
+	}
+
+	public int getTeamCoresCollected(int team) {
+		return buffer.getInt(team(team, TEAM_CORES));
+	}
+
+	public int getTeamKillsInflicted(int team) {
+		return buffer.getInt(team(team, TEAM_KILLS_INFLICTED));
+	}
+
+	public int getTeamKillsReceived(int team) {
+		return buffer.getInt(team(team, TEAM_KILLS_RECEIVED));
+	}
+
+	public int getTeamHitsInflicted(int team) {
+		return buffer.getInt(team(team, TEAM_HITS_INFLICTED));
+	}
+
+	public int getTeamDamageInflicted(int team) {
+		return buffer.getInt(team(team, TEAM_DAMAGE_INFLICTED));
+	}
+
+	public int getTeamDamageReceived(int team) {
+		return buffer.getInt(team(team, TEAM_DAMAGE_RECEIVED));
+	}
+
+	public int getTeamFlagsCollected(int team) {
+		return buffer.getInt(team(team, TEAM_FLAGS));
+	}
+
+	/**
+	 * Object accessors
+	 */
+	private int object(int object, int field) {
+		return objectOffset + object * OBJECT_RECORD_SIZE + field;
+	}
+
+	public ReplayObjectType getObjectType(int object) {
+		return ReplayObjectType.fromOrdinal(buffer.get(object(object, OBJECT_TYPE)));
+	}
+
+	/**
+	 * The raw flag bits (see the FLAG_ constants in ReplayRecorder)
+	 * @param object
+	 * @return
+	 */
+	public int getObjectFlags(int object) {
+		return buffer.get(object(object, OBJECT_FLAGS)) & 0xFF;
+	}
+
+	public boolean isObjectAlive(int object) {
+		return (getObjectFlags(object) & FLAG_ALIVE) != 0;
+	}
+
+	/**
+	 * The index of the team that owns this object or -1 if nobody does
+	 * @param object
+	 * @return
+	 */
+	public int getObjectTeam(int object) {
+		return buffer.getShort(object(object, OBJECT_TEAM));
+	}
+
+	/**
+	 * The id of the object.  This allocates a UUID; use getObjectIdMostSignificantBits
+	 * and getObjectIdLeastSignificantBits to compare ids without allocating.
+	 * @param object
+	 * @return
+	 */
+	public UUID getObjectId(int object) {
+		return new UUID(getObjectIdMostSignificantBits(object), getObjectIdLeastSignificantBits(object));
+	}
+
+	public long getObjectIdMostSignificantBits(int object) {
+		return buffer.getLong(object(object, OBJECT_ID_MSB));
+	}
+
+	public long getObjectIdLeastSignificantBits(int object) {
+		return buffer.getLong(object(object, OBJECT_ID_LSB));
+	}
+
+	public float getObjectX(int object) {
+		return buffer.getFloat(object(object, OBJECT_X));
+	}
+
+	public float getObjectY(int object) {
+		return buffer.getFloat(object(object, OBJECT_Y));
+	}
+
+	public float getObjectOrientation(int object) {
+		return buffer.getFloat(object(object, OBJECT_ORIENTATION));
+	}
+
+	public float getObjectVelocityX(int object) {
+		return buffer.getFloat(object(object, OBJECT_VELOCITY_X));
+	}
+
+	public float getObjectVelocityY(int object) {
+		return buffer.getFloat(object(object, OBJECT_VELOCITY_Y));
+	}
+
+	/**
+	 * The energy of the object (-1 for objects that don't have energy)
+	 * @param object
+	 * @return
+	 */
+	public int getObjectEnergy(int object) {
+		return buffer.getInt(object(object, OBJECT_ENERGY));
+	}
+
+	public int getObjectMass(int object) {
+		return buffer.getInt(object(object, OBJECT_MASS));
+	}
+
+	public int getObjectRadius(int object) {
+		return buffer.getInt(object(object, OBJECT_RADIUS));
+	}
+
+	public int getObjectResource(int object, ResourceTypes type) {
+		switch (type) {
+		case WATER:
+			return buffer.getInt(object(object, OBJECT_WATER));
+		case FUEL:
+			return buffer.getInt(object(object, OBJECT_FUEL));
+		case METALS:
+			return buffer.getInt(object(object, OBJECT_METALS));
+		default:
+			return 0;
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package spacesettlers.replay;
+
+import spacesettlers.objects.AbstractObject;
+import spacesettlers.objects.AiCore;
+import spacesettlers.objects.Asteroid;
+import spacesettlers.objects.Base;
+import spacesettlers.objects.Beacon;
+import spacesettlers.objects.Drone;
+import spacesettlers.objects.Flag;
+import spacesettlers.objects.Ship;
+import spacesettlers.objects.Star;
+import spacesettlers.objects.weapons.EMP;
+import spacesettlers.objects.weapons.Missile;
+
+/**
+ * The type of an object as it is stored in a replay record.  The ordinal
+ * is written to the file so only ever add new types to the end.
+ * 
+ * @author amy
+ */
+public enum ReplayObjectType {
+	SHIP, BASE, ASTEROID, BEACON, STAR, CORE, FLAG, DRONE, MISSILE, EMP, OTHER;
+	
+	private static final ReplayObjectType[] values = values();
+
+	/**
+	 * Return the replay type for the specified object
+	 * @param object
+	 * @return
+	 */
+	public static ReplayObjectType fromObject(AbstractObject object) {
+		if (object instanceof Ship) {
+			return SHIP;
+		} else if (object instanceof Base) {
+			return BASE;
+		} else if (object instanceof Asteroid) {
+			return ASTEROID;
+		} else if (object instanceof Beacon) {
+			return BEACON;
+		} else if (object instanceof Star) {
+			return STAR;
+		} else if (object instanceof AiCore) {
+			return CORE;
+		} else if (object instanceof Flag) {
+			return FLAG;
+		} else if (object instanceof Drone) {
+			return DRONE;
+		} else if (object instanceof Missile) {
+			return MISSILE;
+		} else if (object instanceof EMP) {
+			return EMP;
+		} else {
+			return OTHER;
+		}
+	}
+
+	/**
+	 * Return the type stored with the specified ordinal (OTHER if it is out of range)
+	 * @param ordinal
+	 * @return
+	 */
+	public static ReplayObjectType fromOrdinal(int ordinal) {
+		if (ordinal < 0 || ordinal >= values.length) {
+			return OTHER;
+		}
+		return values[ordinal];
+	}
+}
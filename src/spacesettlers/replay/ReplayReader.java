@@ -0,0 +1,199 @@
+package spacesettlers.replay;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads a replay written by the ReplayRecorder.  The file is memory mapped and
+ * only the offsets of each step are computed up front so it is cheap to open
+ * hundreds of replays and read just the fields you need from a ReplayCursor.
+ *
+ * Replays larger than 2GB are not supported (a single mapping is used).
+ *
+ * @author amy
+ */
+public class ReplayReader implements Closeable {
+	/**
+	 * The open file (kept until close)
+	 */
+	FileChannel channel;
+
+	/**
+	 * The mapped file contents
+	 */
+	MappedByteBuffer buffer;
+
+	int width, height, numTeams;
+
+	String[] teamNames, ladderNames;
+
+	/**
+	 * Offset (in the file) of the first byte after the length field of each step
+	 */
+	int[] stepOffsets;
+
+	int numSteps;
+
+	/**
+	 * Map the replay file and index the steps
+	 *
+	 * @param replayFile
+	 * @throws IOException if the file isn't a replay or is truncated
+	 */
+	public ReplayReader(File replayFile) throws IOException {
+		channel = FileChannel.open(replayFile.toPath(), StandardOpenOption.READ);
+		try {
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException("Replay file " + replayFile + " is too large to map");
+			}
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			readHeader(replayFile);
+			indexSteps(replayFile);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Read the file header (dimensions and team names)
+	 * @param replayFile
+	 * @throws IOException
+	 */
+	private void readHeader(File replayFile) throws IOException {
+		if (buffer.limit() < 20 || buffer.getInt(0) != ReplayRecorder.MAGIC) {
+			throw new IOException(replayFile + " is not a replay file");
+		}
+		if (buffer.getInt(4) != ReplayRecorder.VERSION) {
+			throw new IOException(replayFile + " has unsupported replay version " + buffer.getInt(4));
+		}
+		width = buffer.getInt(8);
+		height = buffer.getInt(12);
+		numTeams = buffer.getInt(16);
+		if (numTeams < 0) {
+			throw new IOException(replayFile + " has a corrupt header");
+		}
+
+		teamNames = new String[numTeams];
+		ladderNames = new String[numTeams];
+		buffer.position(20);
+		for (int i = 0; i < numTeams; i++) {
+			teamNames[i] = getString(replayFile);
+			ladderNames[i] = getString(replayFile);
+		}
+	}
+
+	/**
+	 * Read a short length prefixed UTF-8 string at the current position
+	 * @return
+	 * @throws IOException
+	 */
+	private String getString(File replayFile) throws IOException {
+		if (buffer.remaining() < 2) {
+			throw new IOException(replayFile + " has a truncated header");
+		}
+		int length = buffer.getShort() & 0xFFFF;
+		if (buffer.remaining() < length) {
+			throw new IOException(replayFile + " has a truncated header");
+		}
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Walk the length prefixes to find the start of every step.  A partial step at
+	 * the end (a game that crashed while recording) is ignored.
+	 * @param replayFile
+	 * @throws IOException
+	 */
+	private void indexSteps(File replayFile) throws IOException {
+		stepOffsets = new int[1024];
+		numSteps = 0;
+
+		int minimumLength = ReplayRecorder.STEP_HEADER_SIZE + numTeams * ReplayRecorder.TEAM_RECORD_SIZE;
+		int offset = buffer.position();
+		int limit = buffer.limit();
+		while (offset + 4 <= limit) {
+			int length = buffer.getInt(offset);
+			if (length < minimumLength || offset + 4L + length > limit) {
+				break;
+			}
+			if (numSteps == stepOffsets.length) {
+				stepOffsets = Arrays.copyOf(stepOffsets, 2 * numSteps);
+			}
+			stepOffsets[numSteps++] = offset + 4;
+			offset += 4 + length;
+		}
+	}
+
+	/**
+	 * Return a new cursor positioned before the first step.  Cursors are cheap and
+	 * each thread should use its own.
+	 * @return
+	 */
+	public ReplayCursor cursor() {
+		return new ReplayCursor(this, buffer.duplicate());
+	}
+
+	/**
+	 * Offset of the specified step
+	 * @param step
+	 * @return
+	 */
+	int getStepOffset(int step) {
+		return stepOffsets[step];
+	}
+
+	public int getNumSteps() {
+		return numSteps;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int getNumTeams() {
+		return numTeams;
+	}
+
+	public String getTeamName(int team) {
+		return teamNames[team];
+	}
+
+	public String getLadderName(int team) {
+		return ladderNames[team];
+	}
+
+	/**
+	 * Return the index of the team with the specified team name (or -1 if it isn't in the replay)
+	 * @param teamName
+	 * @return
+	 */
+	public int getTeamIndex(String teamName) {
+		for (int i = 0; i < numTeams; i++) {
+			if (teamNames[i].equals(teamName)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Close the file.  Cursors must not be used after the reader is closed.
+	 */
+	public void close() throws IOException {
+		channel.close();
+	}
+}
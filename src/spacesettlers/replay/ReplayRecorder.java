@@ -0,0 +1,298 @@
+package spacesettlers.replay;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.UUID;
+
+import spacesettlers.clients.ImmutableTeamInfo;
+import spacesettlers.clients.Team;
+import spacesettlers.objects.AbstractActionableObject;
+import spacesettlers.objects.AbstractObject;
+import spacesettlers.objects.AiCore;
+import spacesettlers.objects.Asteroid;
+import spacesettlers.objects.Flag;
+import spacesettlers.objects.resources.ResourcePile;
+import spacesettlers.objects.resources.ResourceTypes;
+import spacesettlers.simulator.Toroidal2DPhysics;
+import spacesettlers.utilities.Position;
+
+/**
+ * Records a binary replay of a game, one record per time step.  The format is
+ * big-endian and made of fixed size records so that the ReplayReader can memory map
+ * the file and read any field directly without deserializing objects.
+ *
+ * Header: magic, version, width, height, number of teams and then (team name, ladder name)
+ * for each team.  Strings are written as an unsigned short length followed by UTF-8 bytes.
+ *
+ * Step: int length of the rest of the record, int timestep, int number of objects, then
+ * one TEAM_RECORD_SIZE record per team (in header order) and one OBJECT_RECORD_SIZE record
+ * per object.
+ *
+ * @author amy
+ */
+public class ReplayRecorder {
+	/**
+	 * "SSRP"
+	 */
+	public static final int MAGIC = 0x53535250;
+
+	public static final int VERSION = 1;
+
+	/**
+	 * Size of the per-step header (after the length field): timestep and number of objects
+	 */
+	public static final int STEP_HEADER_SIZE = 8;
+
+	/**
+	 * Team record layout
+	 */
+	public static final int TEAM_RECORD_SIZE = 64;
+	static final int TEAM_SCORE = 0;
+	static final int TEAM_AVAILABLE_WATER = 8;
+	static final int TEAM_AVAILABLE_FUEL = 12;
+	static final int TEAM_AVAILABLE_METALS = 16;
+	static final int TEAM_TOTAL_WATER = 20;
+	static final int TEAM_TOTAL_FUEL = 24;
+	static final int TEAM_TOTAL_METALS = 28;
+	static final int TEAM_BEACONS = 32;
+	static final int TEAM_CORES = 36;
+	static final int TEAM_KILLS_INFLICTED = 40;
+	static final int TEAM_KILLS_RECEIVED = 44;
+	static final int TEAM_HITS_INFLICTED = 48;
+	static final int TEAM_DAMAGE_INFLICTED = 52;
+	static final int TEAM_DAMAGE_RECEIVED = 56;
+	static final int TEAM_FLAGS = 60;
+
+	/**
+	 * Object record layout
+	 */
+	public static final int OBJECT_RECORD_SIZE = 64;
+	static final int OBJECT_TYPE = 0;
+	static final int OBJECT_FLAGS = 1;
+	static final int OBJECT_TEAM = 2;
+	static final int OBJECT_ID_MSB = 4;
+	static final int OBJECT_ID_LSB = 12;
+	static final int OBJECT_X = 20;
+	static final int OBJECT_Y = 24;
+	static final int OBJECT_ORIENTATION = 28;
+	static final int OBJECT_VELOCITY_X = 32;
+	static final int OBJECT_VELOCITY_Y = 36;
+	static final int OBJECT_ENERGY = 40;
+	static final int OBJECT_MASS = 44;
+	static final int OBJECT_RADIUS = 48;
+	static final int OBJECT_WATER = 52;
+	static final int OBJECT_FUEL = 56;
+	static final int OBJECT_METALS = 60;
+
+	/**
+	 * Bits in the object flags byte
+	 */
+	public static final int FLAG_ALIVE = 1;
+	public static final int FLAG_DRAWABLE = 2;
+	public static final int FLAG_MINEABLE = 4;
+	public static final int FLAG_GAMEABLE = 8;
+	public static final int FLAG_CARRYING_FLAG = 16;
+
+	/**
+	 * The output file
+	 */
+	OutputStream output;
+
+	/**
+	 * The teams in the order they were written to the header
+	 */
+	ArrayList<Team> teams;
+
+	/**
+	 * Map from team name to the index in the header (for the object records)
+	 */
+	HashMap<String, Integer> teamIndex;
+
+	/**
+	 * Reused between steps so recording doesn't allocate per object
+	 */
+	ByteBuffer stepBuffer;
+
+	/**
+	 * Create the replay file and write the header
+	 *
+	 * @param replayFile
+	 * @param space
+	 * @param allTeams
+	 * @throws IOException
+	 */
+	public ReplayRecorder(File replayFile, Toroidal2DPhysics space, Collection<Team> allTeams) throws IOException {
+		teams = new ArrayList<Team>(allTeams);
+		teamIndex = new HashMap<String, Integer>();
+		stepBuffer = ByteBuffer.allocate(STEP_HEADER_SIZE + 4 + 1024 * OBJECT_RECORD_SIZE);
+
+		output = new BufferedOutputStream(new FileOutputStream(replayFile), 1 << 16);
+
+		ByteBuffer header = ByteBuffer.allocate(20 + teams.size() * 2 * (2 + 512));
+		header.putInt(MAGIC);
+		header.putInt(VERSION);
+		header.putInt(space.getWidth());
+		header.putInt(space.getHeight());
+		header.putInt(teams.size());
+		for (int i = 0; i < teams.size(); i++) {
+			Team team = teams.get(i);
+			teamIndex.put(team.getTeamName(), i);
+			putString(header, team.getTeamName());
+			putString(header, team.getLadderName());
+		}
+		output.write(header.array(), 0, header.position());
+	}
+
+	/**
+	 * Write a string as a short length and the UTF-8 bytes (truncated to 512 bytes)
+	 * @param buffer
+	 * @param str
+	 */
+	private void putString(ByteBuffer buffer, String str) {
+		byte[] bytes = (str == null ? "" : str).getBytes(StandardCharsets.UTF_8);
+		int length = Math.min(bytes.length, 512);
+		buffer.putShort((short) length);
+		buffer.put(bytes, 0, length);
+	}
+
+	/**
+	 * Record one step of the game
+	 *
+	 * @param timestep
+	 * @param space
+	 * @throws IOException
+	 */
+	public void recordStep(int timestep, Toroidal2DPhysics space) throws IOException {
+		Collection<AbstractObject> objects = space.getAllObjects();
+		int length = STEP_HEADER_SIZE + teams.size() * TEAM_RECORD_SIZE + objects.size() * OBJECT_RECORD_SIZE;
+		if (stepBuffer.capacity() < length + 4) {
+			stepBuffer = ByteBuffer.allocate(2 * (length + 4));
+		}
+
+		ByteBuffer buffer = stepBuffer;
+		buffer.clear();
+		buffer.putInt(length);
+		buffer.putInt(timestep);
+		buffer.putInt(objects.size());
+
+		for (Team team : teams) {
+			writeTeam(buffer, new ImmutableTeamInfo(team));
+		}
+
+		for (AbstractObject object : objects) {
+			writeObject(buffer, object);
+		}
+
+		output.write(buffer.array(), 0, buffer.position());
+	}
+
+	/**
+	 * Write out the team record
+	 * @param buffer
+	 * @param info
+	 */
+	private void writeTeam(ByteBuffer buffer, ImmutableTeamInfo info) {
+		ResourcePile available = info.getAvailableResources();
+		ResourcePile total = info.getTotalResources();
+		buffer.putDouble(info.getScore());
+		buffer.putInt(available.getResourceQuantity(ResourceTypes.WATER));
+		buffer.putInt(available.getResourceQuantity(ResourceTypes.FUEL));
+		buffer.putInt(available.getResourceQuantity(ResourceTypes.METALS));
+		buffer.putInt(total.getResourceQuantity(ResourceTypes.WATER));
+		buffer.putInt(total.getResourceQuantity(ResourceTypes.FUEL));
+		buffer.putInt(total.getResourceQuantity(ResourceTypes.METALS));
+		buffer.putInt(info.getTotalBeaconsCollected());
+		buffer.putInt(info.getTotalCoresCollected());
+		buffer.putInt(info.getTotalKillsInflicted());
+		buffer.putInt(info.getTotalKillsReceived());
+		buffer.putInt(info.getTotalHitsInflicted());
+		buffer.putInt(info.getTotalDamageInflicted());
+		buffer.putInt(info.getTotalDamageReceived());
+		buffer.putInt(info.getTotalFlagsCollected());
+	}
+
+	/**
+	 * Write out the object record
+	 * @param buffer
+	 * @param object
+	 */
+	private void writeObject(ByteBuffer buffer, AbstractObject object) {
+		int flags = 0;
+		if (object.isAlive()) {
+			flags |= FLAG_ALIVE;
+		}
+		if (object.isDrawable()) {
+			flags |= FLAG_DRAWABLE;
+		}
+		if (object.getNumFlags() > 0) {
+			flags |= FLAG_CARRYING_FLAG;
+		}
+
+		String teamName = null;
+		int energy = -1;
+		if (object instanceof AbstractActionableObject) {
+			AbstractActionableObject actionable = (AbstractActionableObject) object;
+			teamName = actionable.getTeamName();
+			energy = (int) actionable.getEnergy();
+		} else if (object instanceof AiCore) {
+			teamName = ((AiCore) object).getTeamName();
+		} else if (object instanceof Flag) {
+			teamName = ((Flag) object).getTeamName();
+		} else if (object instanceof Asteroid) {
+			Asteroid asteroid = (Asteroid) object;
+			if (asteroid.isMineable()) {
+				flags |= FLAG_MINEABLE;
+			}
+			if (asteroid.isGameable()) {
+				flags |= FLAG_GAMEABLE;
+			}
+		}
+		Integer index = (teamName == null) ? null : teamIndex.get(teamName);
+
+		UUID id = object.getId();
+		Position position = object.getPosition();
+		ResourcePile resources = object.getResources();
+
+		buffer.put((byte) ReplayObjectType.fromObject(object).ordinal());
+		buffer.put((byte) flags);
+		buffer.putShort((short) (index == null ? -1 : index));
+		buffer.putLong(id.getMostSignificantBits());
+		buffer.putLong(id.getLeastSignificantBits());
+		buffer.putFloat((float) position.getX());
+		buffer.putFloat((float) position.getY());
+		buffer.putFloat((float) position.getOrientation());
+		buffer.putFloat((float) position.getxVelocity());
+		buffer.putFloat((float) position.getyVelocity());
+		buffer.putInt(energy);
+		buffer.putInt(object.getMass());
+		buffer.putInt(object.getRadius());
+		if (resources == null) {
+			buffer.putInt(0);
+			buffer.putInt(0);
+			buffer.putInt(0);
+		} else {
+			buffer.putInt(resources.getResourceQuantity(ResourceTypes.WATER));
+			buffer.putInt(resources.getResourceQuantity(ResourceTypes.FUEL));
+			buffer.putInt(resources.getResourceQuantity(ResourceTypes.METALS));
+		}
+	}
+
+	/**
+	 * Flush and close the replay file
+	 */
+	public void close() {
+		try {
+			output.close();
+		} catch (IOException e) {
+			System.err.println("Error closing replay file: " + e.getMessage());
+		}
+	}
+}
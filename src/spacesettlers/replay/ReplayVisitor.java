@@ -0,0 +1,30 @@
+package spacesettlers.replay;
+
+/**
+ * A visitor that is walked over every step of a replay.  The ReplayAnalyzer
+ * makes a new visitor for every replay file so a visitor does not need to be
+ * thread safe.
+ * 
+ * @author amy
+ */
+public interface ReplayVisitor {
+	/**
+	 * Called once before the first step of the replay
+	 * @param reader
+	 */
+	public void beginReplay(ReplayReader reader);
+
+	/**
+	 * Called once per recorded step.  The cursor is only valid for the duration
+	 * of the call (it is moved to the next step afterwards) so copy out anything 
+	 * that needs to be kept.
+	 * @param cursor
+	 */
+	public void visitStep(ReplayCursor cursor);
+
+	/**
+	 * Called once after the last step of the replay
+	 * @param reader
+	 */
+	public void endReplay(ReplayReader reader);
+}
@@ -0,0 +1,64 @@
+package spacesettlers.replay;
+
+import java.util.Arrays;
+
+/**
+ * Example visitor: finds the timestep of the first kill in the game and of 
+ * each team's first kill.
+ * 
+ * @author amy
+ */
+public class TimeToFirstKillVisitor implements ReplayVisitor {
+	/**
+	 * Timestep of the first kill by any team (-1 if there were none)
+	 */
+	int firstKillTimestep;
+	
+	/**
+	 * Timestep of the first kill for each team (indexed as in the replay header)
+	 */
+	int[] teamFirstKillTimestep;
+	
+	String[] ladderNames;
+
+	public void beginReplay(ReplayReader reader) {
+		firstKillTimestep = -1;
+		teamFirstKillTimestep = new int[reader.getNumTeams()];
+		Arrays.fill(teamFirstKillTimestep, -1);
+		ladderNames = new String[reader.getNumTeams()];
+		for (int i = 0; i < ladderNames.length; i++) {
+			ladderNames[i] = reader.getLadderName(i);
+		}
+	}
+
+	public void visitStep(ReplayCursor cursor) {
+		for (int team = 0; team < teamFirstKillTimestep.length; team++) {
+			if (teamFirstKillTimestep[team] < 0 && cursor.getTeamKillsInflicted(team) > 0) {
+				teamFirstKillTimestep[team] = cursor.getTimestep();
+				if (firstKillTimestep < 0) {
+					firstKillTimestep = cursor.getTimestep();
+				}
+			}
+		}
+	}
+
+	public void endReplay(ReplayReader reader) {
+	}
+
+	public int getFirstKillTimestep() {
+		return firstKillTimestep;
+	}
+
+	/**
+	 * Return the first kill timestep for the team (index from the replay header)
+	 * @param team
+	 * @return
+	 */
+	public int getTeamFirstKillTimestep(int team) {
+		return teamFirstKillTimestep[team];
+	}
+
+	public String getLadderName(int team) {
+		return ladderNames[team];
+	}
+}
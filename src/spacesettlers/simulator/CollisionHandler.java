@@ -2,6 +2,7 @@ package spacesettlers.simulator;
 
 import java.util.concurrent.ThreadLocalRandom;
 
+import spacesettlers.events.CollisionEvent;
 import spacesettlers.game.*;
 import spacesettlers.objects.AbstractObject;
 import spacesettlers.objects.AiCore;
@@ -12,6 +13,7 @@ import spacesettlers.objects.Drone;
 import spacesettlers.objects.Flag;
 import spacesettlers.objects.Ship;
 import spacesettlers.objects.Star;
+import spacesettlers.objects.resources.ResourcePile;
 import spacesettlers.objects.weapons.EMP;
 import spacesettlers.objects.weapons.Missile;
 import spacesettlers.utilities.Position;
@@ -33,6 +35,11 @@ import spacesettlers.utilities.Vector2D;
 public class CollisionHandler {
     public static final double COLLISION_PENALTY = 2.0;
 
+	/**
+	 * Plays the games for gameable asteroids off the physics thread (null to play them immediately)
+	 */
+	MiniGameExecutor miniGames;
+
 	class CollisionData {
 		double v1, v2;
 	}
@@ -45,6 +52,12 @@ public class CollisionHandler {
 	 * @param space
 	 */
 	public void collide(AbstractObject object1, AbstractObject object2, Toroidal2DPhysics space) {
+		CollisionEvent collisionEvent = new CollisionEvent();
+		if (collisionEvent.shouldCommit()) {
+			collisionEvent.set(object1.getClass().getSimpleName(), object2.getClass().getSimpleName());
+			collisionEvent.commit();
+		}
+
 		// if either object is a beacon, handle that (and don't elastically collide)
 		if (object1 instanceof Beacon) {
 			beaconCollision((Beacon) object1, object2);
@@ -510,49 +523,32 @@ public class CollisionHandler {
 	}
 
 	/**
-	 * Play a game with a ship and an asteroid
+	 * Play a game with a ship and an asteroid on the calling thread (used when there
+	 * is no mini-game executor, e.g. in unit tests).  There is no time limit.
 	 * 
 	 * @return true if the winner was the ship and false if it was the asteroid (aka simulator)
 	 */
 	public boolean playGame(AbstractGameAgent opponent) {
-		// break if there is no opponent specified
-		if (opponent == null) {
-			System.out.println("Gaming asteroid reached and no player specified by opponent: Winner is asteroid.");
+		try {
+			return MiniGameExecutor.playGame(opponent, Long.MAX_VALUE);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
 			return false;
-		} else {
-			System.out.println("Gaming asteroid reached and proceeding with game");
-		}
-
-		// create the heuristic player for the asteroid
-		HeuristicGameAgent myPlayer = new HeuristicGameAgent();
-
-		// choose the game from the gaming factory
-		final AbstractGame game = GameFactory.generateNewGame(myPlayer, opponent, ThreadLocalRandom.current());
-
-		// and set the player correctly so we try to win
-		if (game.getPlayer1() == myPlayer) {
-			System.out.println("Setting player 1 to the asteroid");
-			myPlayer.setPlayer(1);
-		} else {
-			System.out.println("Setting player 1 to the ship");
-			myPlayer.setPlayer(2);
-		}
-
-		// play the game
-		while (!game.isGameOver()) {
-			game.playAction(game.getCurrentPlayer().getNextMove(game));
-		}
-
-		// returns true if the winner was the ship agent
-		if (game.getWinner() == myPlayer.getPlayer()) {
-			System.out.println("Gaming asteroid reached: Winner is asteroid.");
+		} catch (RuntimeException e) {
+			System.err.println("Game agent threw an exception: winner is asteroid");
+			e.printStackTrace();
 			return false;
-		} else {
-			System.out.println("Gaming asteroid reached: Winner is ship.");
-			return true;
 		}
 	}
 	
+	/**
+	 * Set the executor used to play the games for gameable asteroids (null to play them
+	 * immediately on the physics thread)
+	 * @param miniGames
+	 */
+	void setMiniGameExecutor(MiniGameExecutor miniGames) {
+		this.miniGames = miniGames;
+	}
 	
 	/**
 	 * Collide with an asteroid
@@ -569,8 +565,10 @@ public class CollisionHandler {
 		
 		// if the asteroid is gameable, the ship needs to play against it before it can get the resources
 		if (asteroid.isGameable()) {
-			boolean win = playGame(ship.getCurrentGameAgent());
-			if (win) {
+			if (miniGames != null) {
+				// the result (and the resources) are applied at the start of the next step
+				miniGames.startGame(ship, ship.getCurrentGameAgent(), new ResourcePile(asteroid.getResources()));
+			} else if (playGame(ship.getCurrentGameAgent())) {
 				// if a ship ran into it, it "mines" the asteroid
 				ship.incrementNumMineableAsteroids();
 				ship.addResources(asteroid.getResources());
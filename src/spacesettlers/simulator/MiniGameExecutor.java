@@ -0,0 +1,603 @@
+package spacesettlers.simulator;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import spacesettlers.game.AbstractGame;
+import spacesettlers.game.AbstractGameAction;
+import spacesettlers.game.AbstractGameAgent;
+import spacesettlers.game.GameFactory;
+import spacesettlers.game.HeuristicGameAgent;
+import spacesettlers.game.MctsGameAgent;
+import spacesettlers.game.TicTacToeTable;
+import spacesettlers.objects.Ship;
+import spacesettlers.objects.resources.ResourcePile;
+
+/**
+ * Plays the mini-games for gameable asteroids on a small pool of threads so the games of
+ * a step are played while the rest of the step goes on.  A game starts when the ship hits
+ * the asteroid and its result is always applied at the start of the next physics step: the
+ * physics waits there for each game (in the order they were started) until the game's
+ * deadline, and a game that isn't over by then is lost by the ship.  So the step a result
+ * lands in never depends on how fast the threads are.
+ *
+ * Each of the ship's moves runs on a move thread and the game only waits for it until the
+ * move timeout.  A move that is still running then is abandoned rather than interrupted
+ * (an agent can ignore interrupts), so a hung agent only ever holds its own move thread
+ * and never one of the game threads.  A team plays one game at a time (its ships may share
+ * an agent, and the game sets the agent's player number): its other games wait for that
+ * game, and for any move the team abandoned, to finish.  So each team holds at most one
+ * move thread, however many agents it makes.
+ *
+ * The ship loses if any one of its moves takes longer than the move timeout, if all of its
+ * moves in the game take longer than the game timeout, if its agent throws an exception, if
+ * the game isn't over by its deadline (e.g. it is still waiting for the team's hung agent),
+ * or if the pools are too backed up to take the game.  Only the ship's moves are timed so
+ * the asteroid's thinking (see setAsteroidBudget) never counts against the ship.
+ *
+ * @author amy
+ */
+public class MiniGameExecutor {
+	/**
+	 * Maximum number of games waiting for a thread (more than this and the ship loses)
+	 */
+	public static final int MAX_QUEUED_GAMES = 32;
+
+	/**
+	 * Maximum number of ships' moves running at once (counting abandoned moves)
+	 */
+	public static final int MAX_MOVE_THREADS = 64;
+
+	/**
+	 * Most moves the asteroid makes in a game (its budget for each one is added to the deadline)
+	 */
+	static final int MAX_ASTEROID_MOVES = 64;
+
+	/**
+	 * Milliseconds added to each game's deadline for the heuristic asteroid and the thread handoffs
+	 */
+	static final long DEADLINE_SLACK_MILLIS = 1000;
+
+	/**
+	 * Tree size for the asteroids' Monte Carlo agents
+	 */
+	static final int ASTEROID_AGENT_NODES = 1 << 16;
+
+	ThreadPoolExecutor executor;
+
+	/**
+	 * Runs the ships' moves (a new thread whenever the others are busy, so an abandoned
+	 * move never holds up a later one)
+	 */
+	ThreadPoolExecutor moveExecutor;
+
+	/**
+	 * Time limits in nanoseconds (for one of the ship's moves and for all of them in a game)
+	 */
+	long moveTimeoutNanos, gameTimeoutNanos;
+
+	/**
+	 * Games whose results haven't been applied yet, in the order they were started (only
+	 * touched by the physics thread)
+	 */
+	List<PendingGame> pendingGames;
+
+	/**
+	 * The games waiting for each team that is playing a game (or has a move still running).
+	 * A team that isn't in the map is free.  Guarded by itself.
+	 */
+	Map<String, ArrayDeque<PendingGame>> busyTeams;
+
+	int numGames, numShipWins, numTimeouts;
+
+	/**
+	 * Milliseconds per move for the asteroid's Monte Carlo agent (0 for the heuristic agent)
+	 */
+	long asteroidBudgetMillis;
+
+	/**
+	 * One Monte Carlo agent per pool thread (so the trees are reused, not reallocated per game)
+	 */
+	ThreadLocal<MctsGameAgent> asteroidAgents;
+
+	/**
+	 * True if the asteroids play tic tac toe from the perfect play tables
+	 */
+	boolean asteroidPerfectPlay;
+
+	/**
+	 * Make a pool with the specified number of threads and time limits (in milliseconds)
+	 * @param numThreads
+	 * @param moveTimeoutMillis
+	 * @param gameTimeoutMillis
+	 */
+	public MiniGameExecutor(int numThreads, long moveTimeoutMillis, long gameTimeoutMillis) {
+		this.moveTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(moveTimeoutMillis);
+		this.gameTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(gameTimeoutMillis);
+		pendingGames = new ArrayList<PendingGame>();
+		busyTeams = new HashMap<String, ArrayDeque<PendingGame>>();
+
+		executor = new ThreadPoolExecutor(numThreads, numThreads, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(MAX_QUEUED_GAMES), newThreadFactory("mini-game-"));
+		moveExecutor = new ThreadPoolExecutor(0, MAX_MOVE_THREADS, 60, TimeUnit.SECONDS,
+				new SynchronousQueue<Runnable>(), newThreadFactory("mini-game-move-"));
+	}
+
+	/**
+	 * Make daemon threads so a hung agent can't keep the simulator from exiting
+	 * @param prefix
+	 * @return
+	 */
+	static ThreadFactory newThreadFactory(final String prefix) {
+		final AtomicInteger threadNumber = new AtomicInteger();
+		return new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, prefix + threadNumber.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+
+	/**
+	 * Make the asteroids play with a Monte Carlo search agent with the specified time per
+	 * move instead of the heuristic agent (0 goes back to the heuristic agent)
+	 * @param asteroidBudgetMillis
+	 */
+	public void setAsteroidBudget(long asteroidBudgetMillis) {
+		this.asteroidBudgetMillis = asteroidBudgetMillis;
+		if (asteroidBudgetMillis > 0) {
+			asteroidAgents = new ThreadLocal<MctsGameAgent>() {
+				protected MctsGameAgent initialValue() {
+					return new MctsGameAgent(MiniGameExecutor.this.asteroidBudgetMillis, 1, ASTEROID_AGENT_NODES);
+				}
+			};
+		} else {
+			asteroidAgents = null;
+		}
+	}
+
+	/**
+	 * Make the asteroids play tic tac toe perfectly from the precomputed tables (only used
+	 * if there is no asteroid budget).  The tables are loaded here so the first game isn't slow.
+	 * @param asteroidPerfectPlay
+	 */
+	public void setAsteroidPerfectPlay(boolean asteroidPerfectPlay) {
+		this.asteroidPerfectPlay = asteroidPerfectPlay;
+		if (asteroidPerfectPlay) {
+			TicTacToeTable.get2DTable();
+			TicTacToeTable.get3DTable();
+		}
+	}
+
+	/**
+	 * The longest the physics waits for a game once it has started: the ship's time for
+	 * the game plus the asteroid's
+	 * @return nanoseconds
+	 */
+	long getGameDeadlineNanos() {
+		return gameTimeoutNanos + TimeUnit.MILLISECONDS.toNanos(asteroidBudgetMillis * MAX_ASTEROID_MOVES 
+				+ DEADLINE_SLACK_MILLIS);
+	}
+
+	/**
+	 * Start a game between the ship's agent and the asteroid (or queue it behind the game
+	 * the ship's team is already playing).  If the ship wins, it gets the prize when the
+	 * results are applied.
+	 *
+	 * @param ship
+	 * @param agent the ship's game agent
+	 * @param prize the asteroid's resources
+	 */
+	public void startGame(Ship ship, AbstractGameAgent agent, ResourcePile prize) {
+		PendingGame game = new PendingGame(ship, agent, prize);
+		pendingGames.add(game);
+		numGames++;
+		if (agent == null) {
+			return;
+		}
+
+		game.future = new GameTask(game);
+		synchronized (busyTeams) {
+			ArrayDeque<PendingGame> waitingGames = busyTeams.get(game.teamName);
+			if (waitingGames != null) {
+				// the team is still playing (or stuck in) another game
+				waitingGames.add(game);
+				return;
+			}
+			busyTeams.put(game.teamName, new ArrayDeque<PendingGame>());
+			game.dispatched = true;
+		}
+		dispatch(game);
+	}
+
+	/**
+	 * Hand a game to the pool (the ship loses if the pool is backed up or shut down)
+	 * @param game
+	 */
+	void dispatch(PendingGame game) {
+		try {
+			executor.execute(game.future);
+		} catch (RejectedExecutionException e) {
+			game.future.cancel(false);
+		}
+	}
+
+	/**
+	 * Wait for each of the games started in the last step (until its deadline) and give the
+	 * winning ships their resources, in the order the games were started.  Called by the
+	 * physics at the start of each step.
+	 */
+	public void applyResults() {
+		for (PendingGame game : pendingGames) {
+			boolean win = game.getResult();
+			if (win) {
+				numShipWins++;
+				if (game.ship.isAlive()) {
+					game.ship.incrementNumMineableAsteroids();
+					game.ship.addResources(game.prize);
+				}
+			}
+		}
+		pendingGames.clear();
+	}
+
+	/**
+	 * Number of games whose results haven't been applied yet
+	 * @return
+	 */
+	public int getNumPendingGames() {
+		return pendingGames.size();
+	}
+
+	/**
+	 * Stop the pools (any unfinished games are lost by the ship)
+	 */
+	public void shutdown() {
+		for (PendingGame game : pendingGames) {
+			if (game.future != null) {
+				game.future.cancel(true);
+			}
+		}
+		pendingGames.clear();
+		executor.shutdownNow();
+		moveExecutor.shutdownNow();
+	}
+
+	/**
+	 * Number of games started
+	 * @return
+	 */
+	public int getNumGames() {
+		return numGames;
+	}
+
+	/**
+	 * Number of games the ships won (whether or not the ship was still alive to collect)
+	 * @return
+	 */
+	public int getNumShipWins() {
+		return numShipWins;
+	}
+
+	/**
+	 * Number of games the ship lost by running out of time
+	 * @return
+	 */
+	public int getNumTimeouts() {
+		return numTimeouts;
+	}
+
+	/**
+	 * Play a game between a new heuristic agent (for the asteroid) and the opponent (the ship)
+	 * on the calling thread.
+	 *
+	 * @param opponent the ship's agent
+	 * @param moveTimeoutNanos the longest the opponent can take for one move (the opponent loses if it is exceeded)
+	 * @return true if the opponent won and false if the asteroid won (or the opponent ran out of time)
+	 * @throws InterruptedException if the thread is interrupted between moves
+	 */
+	public static boolean playGame(AbstractGameAgent opponent, long moveTimeoutNanos) throws InterruptedException {
+		return playGame(new HeuristicGameAgent(), opponent, moveTimeoutNanos);
+	}
+
+	/**
+	 * Play a game between the asteroid's agent and the opponent (the ship) on the calling
+	 * thread.  The opponent's moves are timed after they return, so the caller must not
+	 * mind waiting for a hung agent, and the opponent must not be in another game at the
+	 * same time (the game sets its player number).
+	 *
+	 * @param asteroidPlayer the asteroid's agent
+	 * @param opponent the ship's agent
+	 * @param moveTimeoutNanos the longest the opponent can take for one move (the opponent loses if it is exceeded)
+	 * @return true if the opponent won and false if the asteroid won (or the opponent ran out of time)
+	 * @throws InterruptedException if the thread is interrupted between moves
+	 */
+	public static boolean playGame(AbstractGameAgent asteroidPlayer, AbstractGameAgent opponent, long moveTimeoutNanos)
+			throws InterruptedException {
+		if (opponent == null) {
+			return false;
+		}
+
+		AbstractGame game = GameFactory.generateNewGame(asteroidPlayer, opponent, ThreadLocalRandom.current());
+		while (!game.isGameOver()) {
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+
+			AbstractGameAgent currentPlayer = game.getCurrentPlayer();
+			if (currentPlayer == opponent) {
+				long startTime = System.nanoTime();
+				game.playAction(currentPlayer.getNextMove(game));
+				if (System.nanoTime() - startTime > moveTimeoutNanos) {
+					throw new MiniGameTimeoutException("move");
+				}
+			} else {
+				game.playAction(currentPlayer.getNextMove(game));
+			}
+		}
+
+		// the ship wins unless the asteroid does
+		return game.getWinner() != asteroidPlayer.getPlayer();
+	}
+
+	/**
+	 * Thrown when the ship takes too long for a single move or for the whole game
+	 */
+	static class MiniGameTimeoutException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		MiniGameTimeoutException(String limit) {
+			super(limit);
+		}
+	}
+
+	/**
+	 * Runs a game on the pool.  A game that is cancelled before it starts (its deadline
+	 * passed or the pool wouldn't take it) never runs, so it lets go of its team here.
+	 */
+	class GameTask extends FutureTask<Boolean> {
+		final PendingGame game;
+
+		GameTask(PendingGame game) {
+			super(game);
+			this.game = game;
+		}
+
+		@Override
+		protected void done() {
+			if (isCancelled() && game.started.compareAndSet(false, true)) {
+				game.abandon();
+			}
+		}
+	}
+
+	/**
+	 * A game that has been started (or is waiting for its team) but whose result hasn't been applied
+	 */
+	class PendingGame implements Callable<Boolean> {
+		final Ship ship;
+		final String teamName;
+		final AbstractGameAgent agent;
+		final ResourcePile prize;
+
+		/**
+		 * The game (null if the ship has no agent)
+		 */
+		GameTask future;
+
+		/**
+		 * True once the game has been handed to the pool (guarded by busyTeams)
+		 */
+		boolean dispatched;
+
+		/**
+		 * Set when the game starts running (or is cancelled before it does)
+		 */
+		final AtomicBoolean started = new AtomicBoolean();
+
+		/**
+		 * System.nanoTime() when the game started running (0 until then)
+		 */
+		volatile long startTime;
+
+		/**
+		 * The game and each of the agent's moves that is still running hold the team (it is
+		 * free for another game when the last of them is done)
+		 */
+		final AtomicInteger agentHolds = new AtomicInteger(1);
+
+		PendingGame(Ship ship, AbstractGameAgent agent, ResourcePile prize) {
+			this.ship = ship;
+			this.teamName = ship.getTeamName();
+			this.agent = agent;
+			this.prize = prize;
+		}
+
+		public Boolean call() throws Exception {
+			if (!started.compareAndSet(false, true)) {
+				// cancelled as it was starting
+				return false;
+			}
+			startTime = System.nanoTime();
+			try {
+				AbstractGameAgent asteroidPlayer;
+				if (asteroidAgents != null) {
+					asteroidPlayer = asteroidAgents.get();
+				} else {
+					asteroidPlayer = new HeuristicGameAgent(asteroidPerfectPlay);
+				}
+				return play(asteroidPlayer);
+			} finally {
+				release();
+			}
+		}
+
+		/**
+		 * Play the game with each of the ship's moves on a move thread
+		 * @param asteroidPlayer
+		 * @return true if the ship won
+		 */
+		boolean play(AbstractGameAgent asteroidPlayer) throws InterruptedException, ExecutionException {
+			// the ship's time left for the rest of the game
+			long remaining = gameTimeoutNanos;
+			final AbstractGame game = GameFactory.generateNewGame(asteroidPlayer, agent, ThreadLocalRandom.current());
+			while (!game.isGameOver()) {
+				if (Thread.interrupted()) {
+					throw new InterruptedException();
+				}
+
+				AbstractGameAgent currentPlayer = game.getCurrentPlayer();
+				if (currentPlayer == agent) {
+					String limit = moveTimeoutNanos < remaining ? "move" : "game";
+					long startTime = System.nanoTime();
+					AbstractGameAction action = getMove(game, Math.min(moveTimeoutNanos, remaining), limit);
+					remaining -= System.nanoTime() - startTime;
+					game.playAction(action);
+				} else {
+					game.playAction(currentPlayer.getNextMove(game));
+				}
+			}
+
+			// the ship wins unless the asteroid does
+			return game.getWinner() != asteroidPlayer.getPlayer();
+		}
+
+		/**
+		 * Get the ship's next move on a move thread, waiting for it only until the timeout
+		 */
+		AbstractGameAction getMove(final AbstractGame game, long timeoutNanos, String limit)
+				throws InterruptedException, ExecutionException {
+			agentHolds.incrementAndGet();
+			Future<AbstractGameAction> move;
+			try {
+				move = moveExecutor.submit(new Callable<AbstractGameAction>() {
+					public AbstractGameAction call() {
+						try {
+							return agent.getNextMove(game);
+						} finally {
+							release();
+						}
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				release();
+				throw e;
+			}
+
+			try {
+				return move.get(Math.max(timeoutNanos, 0), TimeUnit.NANOSECONDS);
+			} catch (TimeoutException e) {
+				// the move keeps its thread (and the agent) until it returns
+				move.cancel(true);
+				throw new MiniGameTimeoutException(limit);
+			} catch (InterruptedException e) {
+				move.cancel(true);
+				throw e;
+			}
+		}
+
+		/**
+		 * Let go of the team (after the last hold is released the team's next game starts)
+		 */
+		void release() {
+			if (agentHolds.decrementAndGet() > 0) {
+				return;
+			}
+			PendingGame next;
+			synchronized (busyTeams) {
+				ArrayDeque<PendingGame> waitingGames = busyTeams.get(teamName);
+				next = waitingGames.poll();
+				if (next == null) {
+					busyTeams.remove(teamName);
+				} else {
+					next.dispatched = true;
+				}
+			}
+			if (next != null) {
+				dispatch(next);
+			}
+		}
+
+		/**
+		 * The game was cancelled before it started
+		 */
+		void abandon() {
+			synchronized (busyTeams) {
+				if (!dispatched) {
+					// still waiting for its team
+					busyTeams.get(teamName).remove(this);
+					return;
+				}
+			}
+			release();
+		}
+
+		/**
+		 * Wait for the game until its deadline (counted from when it started running, or
+		 * from now if it is still waiting for a thread or its team)
+		 * @return true if the ship won
+		 */
+		boolean getResult() {
+			if (future == null) {
+				return false;
+			}
+
+			long gameStartTime = startTime;
+			long waitNanos = getGameDeadlineNanos();
+			if (gameStartTime != 0) {
+				waitNanos -= System.nanoTime() - gameStartTime;
+			}
+			try {
+				return future.get(Math.max(waitNanos, 0), TimeUnit.NANOSECONDS);
+			} catch (TimeoutException e) {
+				future.cancel(true);
+				numTimeouts++;
+				System.err.println("Mini-game for ship " + ship.getTeamName() + " wasn't over by its deadline: winner is asteroid");
+				return false;
+			} catch (CancellationException e) {
+				System.err.println("Mini-game for ship " + ship.getTeamName() + " couldn't be started: winner is asteroid");
+				return false;
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof ExecutionException) {
+					// thrown by the agent on its move thread
+					cause = cause.getCause();
+				}
+				if (cause instanceof MiniGameTimeoutException) {
+					numTimeouts++;
+					System.err.println("Mini-game " + cause.getMessage() + " for ship " + ship.getTeamName()
+							+ " timed out: winner is asteroid");
+				} else if (cause instanceof RejectedExecutionException) {
+					System.err.println("No thread free for a mini-game move for ship " + ship.getTeamName() 
+							+ ": winner is asteroid");
+				} else {
+					System.err.println("Mini-game agent for ship " + ship.getTeamName() + " threw an exception: winner is asteroid");
+					cause.printStackTrace();
+				}
+				return false;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+	}
+}
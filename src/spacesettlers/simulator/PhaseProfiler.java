@@ -0,0 +1,218 @@
+package spacesettlers.simulator;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A simple profiler for the phases of a simulator time step.  The simulator calls
+ * mark(phase) at the end of each phase and the time since the previous mark is charged
+ * to that phase, so there is one System.nanoTime() call per phase and nothing is
+ * allocated while the game is running.
+ *
+ * When profiling is turned off the simulator has no profiler at all (every call
+ * site checks for null) so it costs nothing.
+ *
+ * @author amy
+ */
+public class PhaseProfiler {
+	static final SimulatorPhase[] PHASES = SimulatorPhase.values();
+
+	/**
+	 * Totals, maximums and the current step's time in nanoseconds, indexed by SimulatorPhase
+	 */
+	long[] totalNanos, maxNanos, stepNanos;
+
+	/**
+	 * Total and maximum time for whole steps
+	 */
+	long totalStepNanos, maxStepNanos;
+
+	long stepStart, lastMark;
+
+	int numSteps;
+
+	/**
+	 * Optional per-step trace (null if not tracing)
+	 */
+	BufferedWriter traceWriter;
+
+	/**
+	 * Reused to build each line of the trace
+	 */
+	StringBuilder traceLine;
+
+	/**
+	 * Make a profiler that only keeps the summary
+	 */
+	public PhaseProfiler() {
+		totalNanos = new long[PHASES.length];
+		maxNanos = new long[PHASES.length];
+		stepNanos = new long[PHASES.length];
+	}
+
+	/**
+	 * Make a profiler that also writes the time of every phase of every step (in nanoseconds)
+	 * to a CSV file
+	 * @param traceFile
+	 * @throws IOException
+	 */
+	public PhaseProfiler(String traceFile) throws IOException {
+		this();
+		if (traceFile != null) {
+			traceLine = new StringBuilder();
+			traceWriter = new BufferedWriter(new FileWriter(traceFile), 1 << 16);
+			traceLine.append("timestep");
+			for (SimulatorPhase phase : PHASES) {
+				traceLine.append(',').append(phase.name());
+			}
+			traceLine.append(",TOTAL");
+			traceWriter.append(traceLine);
+			traceWriter.newLine();
+		}
+	}
+
+	/**
+	 * Make the profiler the config asks for
+	 * @param profilePhases
+	 * @param traceFile
+	 * @return the profiler or null if profiling is off (neither is set)
+	 */
+	public static PhaseProfiler createProfiler(boolean profilePhases, String traceFile) {
+		if (!profilePhases && traceFile == null) {
+			return null;
+		}
+		try {
+			return new PhaseProfiler(traceFile);
+		} catch (IOException e) {
+			System.err.println("Error creating phase trace file " + traceFile + ": profiling without a trace");
+			e.printStackTrace();
+			return new PhaseProfiler();
+		}
+	}
+
+	/**
+	 * Start timing a new step
+	 */
+	public void beginStep() {
+		Arrays.fill(stepNanos, 0);
+		stepStart = System.nanoTime();
+		lastMark = stepStart;
+	}
+
+	/**
+	 * Charge the time since the last mark (or the start of the step) to the phase
+	 * @param phase
+	 */
+	public void mark(SimulatorPhase phase) {
+		long now = System.nanoTime();
+		stepNanos[phase.ordinal()] += now - lastMark;
+		lastMark = now;
+	}
+
+	/**
+	 * Finish the step: add it to the totals and write the trace line
+	 * @param timestep
+	 */
+	public void endStep(int timestep) {
+		long stepTime = System.nanoTime() - stepStart;
+		for (int i = 0; i < stepNanos.length; i++) {
+			totalNanos[i] += stepNanos[i];
+			if (stepNanos[i] > maxNanos[i]) {
+				maxNanos[i] = stepNanos[i];
+			}
+		}
+		totalStepNanos += stepTime;
+		if (stepTime > maxStepNanos) {
+			maxStepNanos = stepTime;
+		}
+		numSteps++;
+
+		if (traceWriter != null) {
+			traceLine.setLength(0);
+			traceLine.append(timestep);
+			for (long nanos : stepNanos) {
+				traceLine.append(',').append(nanos);
+			}
+			traceLine.append(',').append(stepTime);
+			try {
+				traceWriter.append(traceLine);
+				traceWriter.newLine();
+			} catch (IOException e) {
+				System.err.println("Error writing phase trace: no longer tracing");
+				e.printStackTrace();
+				close();
+			}
+		}
+	}
+
+	/**
+	 * Forget the steps so far (e.g. the warm up steps) and start the summary over
+	 */
+	public void reset() {
+		Arrays.fill(totalNanos, 0);
+		Arrays.fill(maxNanos, 0);
+		Arrays.fill(stepNanos, 0);
+		totalStepNanos = 0;
+		maxStepNanos = 0;
+		numSteps = 0;
+	}
+
+	/**
+	 * Close the trace file (if there is one)
+	 */
+	public void close() {
+		if (traceWriter != null) {
+			try {
+				traceWriter.close();
+			} catch (IOException e) {
+				System.err.println("Error closing phase trace: " + e.getMessage());
+			}
+			traceWriter = null;
+		}
+	}
+
+	public int getNumSteps() {
+		return numSteps;
+	}
+
+	/**
+	 * Total time spent in the phase over all steps (in nanoseconds)
+	 * @param phase
+	 * @return
+	 */
+	public long getTotalNanos(SimulatorPhase phase) {
+		return totalNanos[phase.ordinal()];
+	}
+
+	/**
+	 * Longest time the phase took in any one step (in nanoseconds)
+	 * @param phase
+	 * @return
+	 */
+	public long getMaxNanos(SimulatorPhase phase) {
+		return maxNanos[phase.ordinal()];
+	}
+
+	/**
+	 * Return the summary table: total, mean and max time per phase and the share of the step
+	 * @return
+	 */
+	public String getSummary() {
+		StringBuilder str = new StringBuilder();
+		str.append(String.format("Phase profile over %d steps%n", numSteps));
+		str.append(String.format("%-20s %12s %12s %12s %7s%n", "Phase", "Total (ms)", "Mean (us)", "Max (us)", "%"));
+		for (SimulatorPhase phase : PHASES) {
+			str.append(formatRow(phase.name(), totalNanos[phase.ordinal()], maxNanos[phase.ordinal()]));
+		}
+		str.append(formatRow("TOTAL", totalStepNanos, maxStepNanos));
+		return str.toString();
+	}
+
+	private String formatRow(String name, long total, long max) {
+		double mean = (numSteps == 0) ? 0 : (double) total / numSteps;
+		double percent = (totalStepNanos == 0) ? 0 : 100.0 * total / totalStepNanos;
+		return String.format("%-20s %12.1f %12.1f %12.1f %7.2f%n", name, total / 1.0e6, mean / 1.0e3, max / 1.0e3, percent);
+	}
+}
@@ -0,0 +1,24 @@
+package spacesettlers.simulator;
+
+/**
+ * The parts of a simulator time step measured by the PhaseProfiler.  The PHYSICS_
+ * phases are inside Toroidal2DPhysics.advanceTime.
+ *
+ * @author amy
+ */
+public enum SimulatorPhase {
+	UPDATE_TEAM_INFO,
+	TEAM_ACTIONS,
+	TEAM_POWERUPS,
+	TEAM_SEARCHES,
+	PHYSICS_HEALING,
+	PHYSICS_COLLISIONS,
+	PHYSICS_POWERUPS,
+	PHYSICS_MOVEMENT,
+	PHYSICS_DEATHS,
+	TEAM_MOVEMENT_END,
+	TEAM_PURCHASES,
+	CLEANUP,
+	RESPAWN,
+	UPDATE_SCORES;
+}
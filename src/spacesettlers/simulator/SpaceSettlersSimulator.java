@@ -2,6 +2,8 @@ package spacesettlers.simulator;
 
 import java.awt.Color;
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.Map;
@@ -15,7 +17,6 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
 import com.martiansoftware.jsap.JSAPResult;
-import com.thoughtworks.xstream.XStream;
 
 import spacesettlers.actions.AbstractAction;
 import spacesettlers.actions.DoNothingAction;
@@ -23,7 +24,11 @@ import spacesettlers.actions.PurchaseTypes;
 import spacesettlers.clients.ImmutableTeamInfo;
 import spacesettlers.clients.Team;
 import spacesettlers.clients.TeamClient;
+import spacesettlers.clients.TeamClassLoader;
+import spacesettlers.clients.TeamClientFactory;
+import spacesettlers.clients.remote.RemoteTeamClient;
 import spacesettlers.configs.*;
+import spacesettlers.events.TimestepEvent;
 import spacesettlers.game.AbstractGameAgent;
 import spacesettlers.gui.SpaceSettlersGUI;
 import spacesettlers.objects.AbstractActionableObject;
@@ -36,6 +41,9 @@ import spacesettlers.objects.Flag;
 import spacesettlers.objects.Ship;
 import spacesettlers.objects.Star;
 import spacesettlers.objects.powerups.SpaceSettlersPowerupEnum;
+import spacesettlers.replay.ReplayRecorder;
+import spacesettlers.telemetry.TelemetryRecorder;
+import spacesettlers.telemetry.TelemetrySink;
 import spacesettlers.utilities.Position;
 import spacesettlers.utilities.Vector2D;
 
@@ -44,22 +52,37 @@ public final class SpaceSettlersSimulator {
 	/**
 	 * Max time allowed in MILLISECONDS for a team to return actions
 	 */
-	public static int TEAM_ACTION_TIMEOUT = 300;
+	public static final int TEAM_ACTION_TIMEOUT = 300;
 
 	/**
 	 * Max time allowed in MILLISECONDS for a getMovement to return
 	 */
-	public static int MOVEMENT_TIMEOUT = 300;
+	public static final int MOVEMENT_TIMEOUT = 300;
 
 	/**
 	 * Max time allowed in MILLISECONDS for a endAction to return
 	 */
-	public static int TEAM_END_ACTION_TIMEOUT = 300;
+	public static final int TEAM_END_ACTION_TIMEOUT = 300;
 
 	/**
 	 * Max time allowed in MILLISECONDS for a graphic generation to return
 	 */
-	public static int TEAM_GRAPHICS_TIMEOUT = 200;
+	public static final int TEAM_GRAPHICS_TIMEOUT = 200;
+
+	/**
+	 * Max time allowed in MILLISECONDS for a ship's game agent to make one move in an asteroid mini-game
+	 */
+	public static final int MINI_GAME_MOVE_TIMEOUT = 100;
+
+	/**
+	 * Max time allowed in MILLISECONDS for all of a ship's game agent's moves in one asteroid mini-game
+	 */
+	public static final int MINI_GAME_TIMEOUT = 1000;
+
+	/**
+	 * Number of threads used to play the asteroid mini-games
+	 */
+	public static final int MINI_GAME_THREADS = 2;
 
 	/**
 	 * Probability that new asteroids spawn on any given turn
@@ -102,10 +125,15 @@ public final class SpaceSettlersSimulator {
 	int timestep;
 
 	/**
-	 * If debug mode is true, then only run single threaded
+	 * If debug mode is true, then only run single threaded (and with no timeouts)
 	 */
 	boolean debug = false;
 
+	/**
+	 * Class loaders for this game's copies of the teams' code (closed when the teams shut down)
+	 */
+	ArrayList<TeamClassLoader> teamClassLoaders = new ArrayList<TeamClassLoader>();
+
 	/**
 	 * True if the simulation is paused and false otherwise
 	 */
@@ -116,6 +144,11 @@ public final class SpaceSettlersSimulator {
 	 */
 	int graphicsSleep = 40;
 
+	/**
+	 * Times the phases of each step (null unless profiling is turned on in the config file)
+	 */
+	PhaseProfiler profiler;
+
 	/**
 	 * Create a simulator with the command line arguments already parsed.  
 	 * @param args
@@ -134,19 +167,12 @@ public final class SpaceSettlersSimulator {
 			random = new Random(simConfig.getRandomSeed());
 		}
 
+		// see if debug mode is on (before the teams are made so their timeouts can be turned off)
+		debug = parserConfig.getBoolean("debug");
+
 		// and use it to make agents and the world
 		initializeSimulation(parserConfig);
 
-		// see if debug mode is on
-		if (parserConfig.getBoolean("debug")) {
-			debug = true;
-
-			TEAM_ACTION_TIMEOUT = Integer.MAX_VALUE;
-			MOVEMENT_TIMEOUT = Integer.MAX_VALUE;
-			TEAM_END_ACTION_TIMEOUT = Integer.MAX_VALUE;
-			TEAM_GRAPHICS_TIMEOUT = Integer.MAX_VALUE;
-		}
-
 		// create the GUI after everything is created in the simulator
 		System.out.println(this);
 		createGUI(parserConfig);
@@ -171,6 +197,9 @@ public final class SpaceSettlersSimulator {
 			random = new Random(simConfig.getRandomSeed());
 		}
 
+		// see if debug mode is on (before the teams are made so their timeouts can be turned off)
+		debug = parserConfig.getBoolean("debug");
+
 		// and use it to make agents and the world
 		initializeSimulation(parserConfig);
 
@@ -179,15 +208,6 @@ public final class SpaceSettlersSimulator {
 			gui = new SpaceSettlersGUI(simConfig, this);
 		}
 
-		// see if debug mode is on
-		if (parserConfig.getBoolean("debug")) {
-			debug = true;
-
-			TEAM_ACTION_TIMEOUT = Integer.MAX_VALUE;
-			MOVEMENT_TIMEOUT = Integer.MAX_VALUE;
-			TEAM_END_ACTION_TIMEOUT = Integer.MAX_VALUE;
-			TEAM_GRAPHICS_TIMEOUT = Integer.MAX_VALUE;
-		}
 		// create the GUI after everything is created in the simulator
 		System.out.println(this);
 		createGUI(parserConfig);
@@ -517,6 +537,9 @@ public final class SpaceSettlersSimulator {
 		int numShips = Math.min(simConfig.getMaximumInitialShipsPerTeam(), teamClientConfig.getNumberInitialShipsInTeam());
 
 		Team team = new Team(teamClient, teamClientConfig.getLadderName(), simConfig.getMaximumShipsPerTeam());
+		if (debug) {
+			team.turnOffTimeouts();
+		}
 
 		for (int s = 0; s < numShips; s++) {
 			// put the ships in the initial region for the team
@@ -547,19 +570,7 @@ public final class SpaceSettlersSimulator {
 	 */
 	public TeamClientConfig getTeamClientConfig(HighLevelTeamConfig teamConfig, String configPath) throws SimulatorException {
 		String fileName = configPath + teamConfig.getConfigFile();
-
-		XStream xstream = new XStream();
-		xstream.alias("TeamClientConfig", TeamClientConfig.class);
-		xstream.allowTypesByRegExp(new String[] { ".*" });
-		TeamClientConfig lowLevelTeamConfig;
-
-		try { 
-			lowLevelTeamConfig = (TeamClientConfig) xstream.fromXML(new File(fileName));
-		} catch (Exception e) {
-			throw new SimulatorException("Error parsing config team config file " + fileName + " at string " + e.getMessage());
-		}
-
-		return lowLevelTeamConfig;
+		return ConfigRepository.getTeamClientConfig(fileName);
 	}
 
 
@@ -571,33 +582,46 @@ public final class SpaceSettlersSimulator {
 	 * @return
 	 * @throws SimulatorException 
 	 */
-	@SuppressWarnings("unchecked")
 	public TeamClient createTeamClient(HighLevelTeamConfig teamConfig, TeamClientConfig teamClientConfig) throws SimulatorException {
-		try {
-			// make a team client of the class specified in the config file
-			Class<TeamClient> newTeamClass = (Class<TeamClient>) Class.forName(teamClientConfig.getClassname());
-			TeamClient newTeamClient = (TeamClient) newTeamClass.newInstance();
-
-			Color teamColor = new Color(teamClientConfig.getTeamColorRed(), teamClientConfig.getTeamColorGreen(), 
-					teamClientConfig.getTeamColorBlue());
-			newTeamClient.setTeamColor(teamColor);
-			newTeamClient.setTeamName(teamConfig.getTeamName());
+		// make a team client of the class specified in the config file (or a stand in for it
+		// when it runs in its own process).  Each game loads its own copy of the team's
+		// classes so games running at the same time don't share the team's statics.
+		TeamClient newTeamClient;
+		if (teamClientConfig.isSeparateProcess()) {
+			RemoteTeamClient remoteClient = new RemoteTeamClient(teamClientConfig);
+			if (debug) {
+				remoteClient.turnOffTimeouts();
+			}
+			newTeamClient = remoteClient;
+		} else {
+			TeamClassLoader classLoader = TeamClientFactory.newGameClassLoader(teamClientConfig.getClassPath());
+			teamClassLoaders.add(classLoader);
+			newTeamClient = TeamClientFactory.newTeamClient(teamClientConfig.getClassname(), classLoader);
+		}
+
+		Color teamColor = new Color(teamClientConfig.getTeamColorRed(), teamClientConfig.getTeamColorGreen(), 
+				teamClientConfig.getTeamColorBlue());
+		newTeamClient.setTeamColor(teamColor);
+		newTeamClient.setTeamName(teamConfig.getTeamName());
+		if (teamConfig.getKnowledgeFile() != null) {
+			// the ladder's own copy for this game
+			newTeamClient.setKnowledgeFile(teamConfig.getKnowledgeFile());
+		} else {
 			newTeamClient.setKnowledgeFile(teamClientConfig.getKnowledgeFile());
-			newTeamClient.setRandom(random);
-			newTeamClient.setMaxNumberShips(simConfig.getMaximumShipsPerTeam());
-			newTeamClient.initialize(simulatedSpace.deepClone());
-			return newTeamClient;
-		} catch (ClassNotFoundException e) {
-			e.printStackTrace();
-			throw new SimulatorException("Unable to make a new team client " + teamClientConfig.getClassname());
-		} catch (InstantiationException e) {
-			e.printStackTrace();
-			throw new SimulatorException("Unable to create a new instance of class " + teamClientConfig.getClassname());
-		} catch (IllegalAccessException e) {
-			e.printStackTrace();
-			throw new SimulatorException("Unable to create a new instance of class " + teamClientConfig.getClassname());
 		}
+		newTeamClient.setRandom(random);
+		newTeamClient.setMaxNumberShips(simConfig.getMaximumShipsPerTeam());
 
+		// let the client find its own classes (e.g. when it reads its knowledge with xstream)
+		Thread thread = Thread.currentThread();
+		ClassLoader simulatorClassLoader = thread.getContextClassLoader();
+		thread.setContextClassLoader(newTeamClient.getClass().getClassLoader());
+		try {
+			newTeamClient.initialize(simulatedSpace.deepClone());
+		} finally {
+			thread.setContextClassLoader(simulatorClassLoader);
+		}
+		return newTeamClient;
 	}
 
 	/**
@@ -614,21 +638,7 @@ public final class SpaceSettlersSimulator {
 	 */
 	public SpaceSettlersConfig loadConfigFiles(JSAPResult parserConfig) throws SimulatorException {
 		String configFile = parserConfig.getString("configPath") + parserConfig.getString("simulatorConfigFile");
-
-		XStream xstream = new XStream();
-		xstream.alias("SpaceSettlersConfig", SpaceSettlersConfig.class);
-		xstream.alias("HighLevelTeamConfig", HighLevelTeamConfig.class);
-		xstream.alias("BaseConfig", BaseConfig.class);
-		xstream.alias("AsteroidConfig", RandomAsteroidConfig.class);
-		xstream.alias("FixedAsteroidConfig", FixedAsteroidConfig.class);
-		xstream.alias("FlagConfig", FlagConfig.class);
-		xstream.allowTypesByRegExp(new String[] { ".*" });
-
-		try { 
-			simConfig = (SpaceSettlersConfig) xstream.fromXML(new File(configFile));
-		} catch (Exception e) {
-			throw new SimulatorException("Error parsing config file at string " + e.getMessage());
-		}
+		simConfig = ConfigRepository.getSpaceSettlersConfig(configFile);
 		return simConfig;
 	}
 
@@ -638,6 +648,9 @@ public final class SpaceSettlersSimulator {
 	void advanceTime() {
 		// update the team info (to send into the space for use by other teams)
 		updateTeamInfo();
+		if (profiler != null) {
+			profiler.mark(SimulatorPhase.UPDATE_TEAM_INFO);
+		}
 
 		ExecutorService teamExecutor;
 		if (debug) {
@@ -701,6 +714,9 @@ public final class SpaceSettlersSimulator {
 		} //End for loop through teams
 
 		teamExecutor.shutdown();
+		if (profiler != null) {
+			profiler.mark(SimulatorPhase.TEAM_ACTIONS);
+		}
 
 		// get the power ups being used on this turn
 		Map<UUID, SpaceSettlersPowerupEnum> allPowerups = new HashMap<UUID, SpaceSettlersPowerupEnum>();
@@ -728,6 +744,10 @@ public final class SpaceSettlersSimulator {
 			}
 		}
 
+		if (profiler != null) {
+			profiler.mark(SimulatorPhase.TEAM_POWERUPS);
+		}
+
 		// get the game searches being used on this turn
 		Map<UUID, AbstractGameAgent> allSearches = new HashMap<UUID, AbstractGameAgent>();
 		for (Team team : teams) {
@@ -749,14 +769,20 @@ public final class SpaceSettlersSimulator {
 			}
 		}
 
+		if (profiler != null) {
+			profiler.mark(SimulatorPhase.TEAM_SEARCHES);
+		}
 		
-		// now update the physics on all objects
+		// now update the physics on all objects (it marks its own phases)
 		simulatedSpace.advanceTime(random, this.getTimestep(), allPowerups);
 
 		// and end any actions inside the team
 		for (Team team : teams) {
 			team.getTeamMovementEnd(simulatedSpace);
 		}
+		if (profiler != null) {
+			profiler.mark(SimulatorPhase.TEAM_MOVEMENT_END);
+		}
 
 		// handle purchases at the end of a turn (so ships will have movements next turn)
 		for (Team team : teams) {
@@ -764,6 +790,9 @@ public final class SpaceSettlersSimulator {
 			Map<UUID, PurchaseTypes> purchases = team.getTeamPurchases(simulatedSpace);
 			handlePurchases(team, purchases);
 		}
+		if (profiler != null) {
+			profiler.mark(SimulatorPhase.TEAM_PURCHASES);
+		}
 
 		// cleanup and remove dead weapons
 		simulatedSpace.cleanupDeadWeapons();
@@ -782,6 +811,9 @@ public final class SpaceSettlersSimulator {
 			Asteroid asteroid = createNewRandomAsteroid(simConfig.getRandomAsteroids(), true);
 			simulatedSpace.addObject(asteroid);
 		}
+		if (profiler != null) {
+			profiler.mark(SimulatorPhase.CLEANUP);
+		}
 
 		// respawn any objects that should respawn - this includes Flags)
 		simulatedSpace.respawnDeadObjects(random);
@@ -802,7 +834,14 @@ public final class SpaceSettlersSimulator {
 			}
 		}
 
+		if (profiler != null) {
+			profiler.mark(SimulatorPhase.RESPAWN);
+		}
+
 		updateScores();
+		if (profiler != null) {
+			profiler.mark(SimulatorPhase.UPDATE_SCORES);
+		}
 
 		//		for (Team team : teams) {
 		//			for (Ship ship : team.getShips()) {
@@ -1159,6 +1198,42 @@ public final class SpaceSettlersSimulator {
 			gui.redraw();
 		}
 
+		// record a replay if one was asked for
+		ReplayRecorder replayRecorder = null;
+		if (simConfig.getReplayFile() != null) {
+			try {
+				replayRecorder = new ReplayRecorder(new File(simConfig.getReplayFile()), simulatedSpace, teams);
+			} catch (IOException e) {
+				System.err.println("Error creating replay file " + simConfig.getReplayFile() + ": not recording this game");
+				e.printStackTrace();
+			}
+		}
+
+		// stream telemetry if it was asked for
+		TelemetryRecorder telemetryRecorder = null;
+		if (simConfig.getTelemetryFile() != null) {
+			try {
+				TelemetrySink sink = TelemetryRecorder.createSink(simConfig.getTelemetryFormat());
+				telemetryRecorder = new TelemetryRecorder(sink, simConfig.getTelemetryFile(), teams);
+			} catch (Exception e) {
+				System.err.println("Error creating telemetry file " + simConfig.getTelemetryFile() + ": not recording telemetry");
+				e.printStackTrace();
+			}
+		}
+
+		// time the phases of each step if profiling was asked for
+		profiler = PhaseProfiler.createProfiler(simConfig.isProfilePhases(), simConfig.getProfileTraceFile());
+		if (profiler != null) {
+			simulatedSpace.setProfiler(profiler);
+		}
+
+		// play the asteroid mini-games off the physics thread
+		MiniGameExecutor miniGames = new MiniGameExecutor(MINI_GAME_THREADS, 
+				debug ? Integer.MAX_VALUE : MINI_GAME_MOVE_TIMEOUT, debug ? Integer.MAX_VALUE : MINI_GAME_TIMEOUT);
+		miniGames.setAsteroidBudget(simConfig.getAsteroidGameBudget());
+		miniGames.setAsteroidPerfectPlay(simConfig.isAsteroidPerfectPlay());
+		simulatedSpace.setMiniGameExecutor(miniGames);
+
 		// run the game loop until the maximum time has elapsed
 		// if the pause is activated, just wait
 		for (timestep = 0; timestep < simConfig.getSimulationSteps(); timestep++) {
@@ -1166,7 +1241,38 @@ public final class SpaceSettlersSimulator {
 				mySleep(50);
 			}
 
-			advanceTime();
+			TimestepEvent timestepEvent = new TimestepEvent();
+			timestepEvent.begin();
+
+			if (profiler != null) {
+				profiler.beginStep();
+				advanceTime();
+				profiler.endStep(timestep);
+			} else {
+				advanceTime();
+			}
+
+			timestepEvent.end();
+			if (timestepEvent.shouldCommit()) {
+				timestepEvent.setTimestep(timestep);
+				timestepEvent.setNumObjects(simulatedSpace.getAllObjects().size());
+				timestepEvent.commit();
+			}
+
+			if (replayRecorder != null) {
+				try {
+					replayRecorder.recordStep(timestep, simulatedSpace);
+				} catch (IOException e) {
+					System.err.println("Error writing replay file " + simConfig.getReplayFile() + ": stopping the recording");
+					e.printStackTrace();
+					replayRecorder.close();
+					replayRecorder = null;
+				}
+			}
+
+			if (telemetryRecorder != null) {
+				telemetryRecorder.recordStep(timestep);
+			}
 
 			if (gui != null) {
 				gui.redraw();
@@ -1188,6 +1294,23 @@ public final class SpaceSettlersSimulator {
 		// update the team info (to send into the space for use by other teams)
 		updateTeamInfo();
 
+		// games started on the last step never get their results
+		simulatedSpace.setMiniGameExecutor(null);
+		miniGames.shutdown();
+
+		if (replayRecorder != null) {
+			replayRecorder.close();
+		}
+
+		if (telemetryRecorder != null) {
+			telemetryRecorder.close();
+		}
+
+		if (profiler != null) {
+			profiler.close();
+			System.out.print(profiler.getSummary());
+		}
+
 		// shutdown all the teams
 		shutdownTeams();
 	}
@@ -1199,6 +1322,10 @@ public final class SpaceSettlersSimulator {
 		for (Team team : teams) {
 			team.shutdownClients(simulatedSpace);
 		}
+		for (TeamClassLoader classLoader : teamClassLoaders) {
+			TeamClientFactory.closeLoader(classLoader);
+		}
+		teamClassLoaders.clear();
 	}
 
 	/**
@@ -1209,6 +1336,14 @@ public final class SpaceSettlersSimulator {
 		return timestep;
 	}
 
+	/**
+	 * Returns the phase profiler (null if profiling is off)
+	 * @return
+	 */
+	public PhaseProfiler getProfiler() {
+		return profiler;
+	}
+
 	/**
 	 * Returns the list of teams
 	 * @return
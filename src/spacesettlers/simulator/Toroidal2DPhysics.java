@@ -12,6 +12,8 @@ import spacesettlers.actions.DoNothingAction;
 import spacesettlers.actions.AbstractAction;
 import spacesettlers.clients.ImmutableTeamInfo;
 import spacesettlers.configs.SpaceSettlersConfig;
+import spacesettlers.events.ObjectDeathEvent;
+import spacesettlers.events.ObjectSpawnEvent;
 import spacesettlers.objects.Asteroid;
 import spacesettlers.objects.Base;
 import spacesettlers.objects.Beacon;
@@ -140,6 +142,22 @@ public class Toroidal2DPhysics {
 	 */
 	Set<ImmutableTeamInfo> teamInfo;
 
+	/**
+	 * Phase profiler from the simulator (null unless profiling, never copied to clones)
+	 */
+	PhaseProfiler profiler;
+
+	/**
+	 * True if spawns and deaths should be reported to the flight recorder (false for
+	 * the clones handed to the clients)
+	 */
+	boolean recordEvents;
+
+	/**
+	 * Plays the games for gameable asteroids (null to play them on the physics thread, never copied to clones)
+	 */
+	MiniGameExecutor miniGames;
+
 	/**
 	 * Constructor for the regular game
 	 * 
@@ -165,6 +183,7 @@ public class Toroidal2DPhysics {
 		objectsById = new HashMap<UUID, AbstractObject>();
 		maxTime = simConfig.getSimulationSteps();
 		teamInfo = new LinkedHashSet<ImmutableTeamInfo>();
+		recordEvents = true;
 	}
 
 	/**
@@ -194,6 +213,7 @@ public class Toroidal2DPhysics {
 		weapons = new LinkedHashSet<AbstractWeapon>();
 		objectsById = new HashMap<UUID, AbstractObject>();
 		teamInfo = new LinkedHashSet<ImmutableTeamInfo>();
+		recordEvents = true;
 	}
 
 	/**
@@ -273,6 +293,10 @@ public class Toroidal2DPhysics {
 		}
 
 		objectsById.put(obj.getId(), obj);
+
+		if (recordEvents) {
+			recordSpawn(obj, false);
+		}
 	}
 
 	/**
@@ -283,6 +307,10 @@ public class Toroidal2DPhysics {
 	public void removeObject(AbstractObject obj) {
 		allObjects.remove(obj);
 
+		if (recordEvents) {
+			recordDeath(obj);
+		}
+
 		if (obj.getClass() == Beacon.class) {
 			beacons.remove((Beacon) obj);
 		}
@@ -620,6 +648,11 @@ public class Toroidal2DPhysics {
 
 		this.currentTimeStep = currentTimeStep;
 
+		// apply the results of the mini-games started last step (waiting for each one until its deadline)
+		if (miniGames != null) {
+			miniGames.applyResults();
+		}
+
 		// heal any base injuries
 		for (Base base : bases) {
 			base.updateEnergy(base.getHealingIncrement());
@@ -633,8 +666,15 @@ public class Toroidal2DPhysics {
 			}
 		}
 
+		if (profiler != null) {
+			profiler.mark(SimulatorPhase.PHYSICS_HEALING);
+		}
+
 		// detect collisions across all objects
 		detectCollisions();
+		if (profiler != null) {
+			profiler.mark(SimulatorPhase.PHYSICS_COLLISIONS);
+		}
 
 		// get the power ups and create any objects (weapons) as necessary
 		for (UUID key : powerups.keySet()) {
@@ -649,6 +689,9 @@ public class Toroidal2DPhysics {
 			// otherwise, handle the power up
 			handlePowerup((AbstractActionableObject) swobject, powerups.get(key));
 		}
+		if (profiler != null) {
+			profiler.mark(SimulatorPhase.PHYSICS_POWERUPS);
+		}
 
 		// now move all objects that are moveable (which may include weapons)
 		for (AbstractObject object : allObjects) {
@@ -775,6 +818,9 @@ public class Toroidal2DPhysics {
 			}
 
 		}
+		if (profiler != null) {
+			profiler.mark(SimulatorPhase.PHYSICS_MOVEMENT);
+		}
 
 		// go through and see if any bases have died
 		Set<Base> basesClone = new LinkedHashSet<Base>(bases);
@@ -833,6 +879,9 @@ public class Toroidal2DPhysics {
 				
 				// mark the ship as having been killed
 				ship.incrementKillsReceived();
+				if (recordEvents) {
+					recordDeath(ship);
+				}
 
 				
 				// Spawn a new AiCore with the same velocity magnitude and direction as its
@@ -879,6 +928,60 @@ public class Toroidal2DPhysics {
 		for (Ship ship : ships) {
 			ship.updateTags();
 		}
+		if (profiler != null) {
+			profiler.mark(SimulatorPhase.PHYSICS_DEATHS);
+		}
+	}
+
+	/**
+	 * Report an object spawning to the flight recorder (does nothing unless a recording is running)
+	 * @param obj
+	 * @param respawn true if the object was dead and came back
+	 */
+	private void recordSpawn(AbstractObject obj, boolean respawn) {
+		ObjectSpawnEvent spawnEvent = new ObjectSpawnEvent();
+		if (spawnEvent.shouldCommit()) {
+			Position position = obj.getPosition();
+			spawnEvent.set(obj.getClass().getSimpleName(), respawn, position.getX(), position.getY());
+			spawnEvent.commit();
+		}
+	}
+
+	/**
+	 * Report an object dying (or being removed) to the flight recorder
+	 * @param obj
+	 */
+	private void recordDeath(AbstractObject obj) {
+		ObjectDeathEvent deathEvent = new ObjectDeathEvent();
+		if (deathEvent.shouldCommit()) {
+			String team = null;
+			if (obj instanceof AbstractActionableObject) {
+				team = ((AbstractActionableObject) obj).getTeamName();
+			} else if (obj instanceof AiCore) {
+				team = ((AiCore) obj).getTeamName();
+			}
+			Position position = obj.getPosition();
+			deathEvent.set(obj.getClass().getSimpleName(), team, position.getX(), position.getY());
+			deathEvent.commit();
+		}
+	}
+
+	/**
+	 * Set the executor used to play the games for gameable asteroids (null to play them
+	 * on the physics thread)
+	 * @param miniGames
+	 */
+	void setMiniGameExecutor(MiniGameExecutor miniGames) {
+		this.miniGames = miniGames;
+		collisionHandler.setMiniGameExecutor(miniGames);
+	}
+
+	/**
+	 * Set the profiler used to time the phases of advanceTime (null to turn it off)
+	 * @param profiler
+	 */
+	void setProfiler(PhaseProfiler profiler) {
+		this.profiler = profiler;
 	}
 
 	/**
@@ -1134,6 +1237,9 @@ public class Toroidal2DPhysics {
 				object.setPosition(newPosition);
 				object.setAlive(true);
 				object.setDrawable(true);
+				if (recordEvents) {
+					recordSpawn(object, true);
+				}
 
 				// reset the UUID if it is a beacon or a star
 				if (object instanceof Beacon || object instanceof Star) {
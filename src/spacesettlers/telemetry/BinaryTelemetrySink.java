@@ -0,0 +1,83 @@
+package spacesettlers.telemetry;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Writes telemetry in a compact big-endian columnar format:
+ * 
+ * Header: magic "SSTM", version, number of teams, then each ladder name (writeUTF), then
+ * the number of columns and each column name (writeUTF).
+ * 
+ * Batch: int number of rows, int coalesced steps, then each column in COLUMN_NAMES order 
+ * stored contiguously (score and energy as doubles, the client phase latencies as longs,
+ * everything else as ints).
+ * 
+ * @author amy
+ */
+public class BinaryTelemetrySink implements TelemetrySink {
+	/**
+	 * "SSTM"
+	 */
+	public static final int MAGIC = 0x5353544D;
+	
+	public static final int VERSION = 1;
+	
+	DataOutputStream output;
+
+	public void open(String fileName, String[] ladderNames) throws IOException {
+		output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName), 1 << 16));
+		output.writeInt(MAGIC);
+		output.writeInt(VERSION);
+		output.writeInt(ladderNames.length);
+		for (String name : ladderNames) {
+			output.writeUTF(name == null ? "" : name);
+		}
+		output.writeInt(TelemetryBatch.COLUMN_NAMES.length);
+		for (String name : TelemetryBatch.COLUMN_NAMES) {
+			output.writeUTF(name);
+		}
+	}
+
+	public void write(TelemetryBatch batch) throws IOException {
+		int size = batch.size();
+		output.writeInt(size);
+		output.writeInt(batch.getCoalescedSteps());
+		writeColumn(batch.timestep, size);
+		writeColumn(batch.team, size);
+		writeColumn(batch.score, size);
+		writeColumn(batch.water, size);
+		writeColumn(batch.fuel, size);
+		writeColumn(batch.metals, size);
+		writeColumn(batch.totalResources, size);
+		writeColumn(batch.killsInflicted, size);
+		writeColumn(batch.killsReceived, size);
+		writeColumn(batch.damageInflicted, size);
+		writeColumn(batch.damageReceived, size);
+		writeColumn(batch.energy, size);
+		writeColumn(batch.clientTimeouts, size);
+		for (long[] latency : batch.phaseLatency) {
+			for (int i = 0; i < size; i++) {
+				output.writeLong(latency[i]);
+			}
+		}
+	}
+	
+	private void writeColumn(int[] column, int size) throws IOException {
+		for (int i = 0; i < size; i++) {
+			output.writeInt(column[i]);
+		}
+	}
+
+	private void writeColumn(double[] column, int size) throws IOException {
+		for (int i = 0; i < size; i++) {
+			output.writeDouble(column[i]);
+		}
+	}
+
+	public void close() throws IOException {
+		output.close();
+	}
+}
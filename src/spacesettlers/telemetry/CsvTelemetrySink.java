@@ -0,0 +1,76 @@
+package spacesettlers.telemetry;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+
+/**
+ * Writes telemetry as a CSV file with one row per team per step.  The team
+ * column holds the ladder name.
+ * 
+ * @author amy
+ */
+public class CsvTelemetrySink implements TelemetrySink {
+	BufferedWriter writer;
+	
+	String[] ladderNames;
+	
+	/**
+	 * Reused to build each line
+	 */
+	StringBuilder line;
+
+	public void open(String fileName, String[] ladderNames) throws IOException {
+		this.ladderNames = new String[ladderNames.length];
+		for (int i = 0; i < ladderNames.length; i++) {
+			this.ladderNames[i] = quote(ladderNames[i]);
+		}
+		line = new StringBuilder();
+		writer = new BufferedWriter(new FileWriter(fileName), 1 << 16);
+		writer.write(String.join(",", TelemetryBatch.COLUMN_NAMES));
+		writer.newLine();
+	}
+
+	/**
+	 * Quote a name for CSV if it needs it
+	 * @param str
+	 * @return
+	 */
+	static String quote(String str) {
+		if (str == null) {
+			return "";
+		}
+		if (str.indexOf(',') < 0 && str.indexOf('"') < 0 && str.indexOf('\n') < 0) {
+			return str;
+		}
+		return "\"" + str.replace("\"", "\"\"") + "\"";
+	}
+
+	public void write(TelemetryBatch batch) throws IOException {
+		for (int row = 0; row < batch.size(); row++) {
+			line.setLength(0);
+			line.append(batch.timestep[row]).append(',');
+			line.append(ladderNames[batch.team[row]]).append(',');
+			line.append(batch.score[row]).append(',');
+			line.append(batch.water[row]).append(',');
+			line.append(batch.fuel[row]).append(',');
+			line.append(batch.metals[row]).append(',');
+			line.append(batch.totalResources[row]).append(',');
+			line.append(batch.killsInflicted[row]).append(',');
+			line.append(batch.killsReceived[row]).append(',');
+			line.append(batch.damageInflicted[row]).append(',');
+			line.append(batch.damageReceived[row]).append(',');
+			line.append(batch.energy[row]).append(',');
+			line.append(batch.clientTimeouts[row]);
+			for (long[] latency : batch.phaseLatency) {
+				line.append(',').append(latency[row]);
+			}
+			writer.append(line);
+			writer.newLine();
+		}
+	}
+
+	public void close() throws IOException {
+		writer.close();
+	}
+}
@@ -0,0 +1,216 @@
+package spacesettlers.telemetry;
+
+import java.util.Arrays;
+
+import spacesettlers.clients.ClientPhase;
+import spacesettlers.clients.Team;
+import spacesettlers.objects.Ship;
+import spacesettlers.objects.resources.ResourcePile;
+import spacesettlers.objects.resources.ResourceTypes;
+
+/**
+ * A batch of telemetry stored by column (one row per team per step).  The arrays
+ * are allocated once and reused so recording a step never allocates.
+ *
+ * The column arrays are longer than the batch: only the first size() entries are valid.
+ *
+ * @author amy
+ */
+public class TelemetryBatch {
+	/**
+	 * Names of the columns in the order the built-in sinks write them (the last ones
+	 * are the latency of each ClientPhase in nanoseconds)
+	 */
+	public static final String[] COLUMN_NAMES = getColumnNames();
+
+	private static final ClientPhase[] PHASES = ClientPhase.values();
+
+	int size;
+
+	int[] timestep, team;
+	double[] score;
+	int[] water, fuel, metals, totalResources;
+	int[] killsInflicted, killsReceived, damageInflicted, damageReceived;
+	double[] energy;
+	int[] clientTimeouts;
+	
+	/**
+	 * Latency of each client phase for the step, indexed by [ClientPhase][row]
+	 */
+	long[][] phaseLatency;
+
+	/**
+	 * Number of steps that were folded into this batch (overwritten) because the
+	 * writer was behind
+	 */
+	int coalescedSteps;
+
+	/**
+	 * Make a batch that can hold the specified number of rows
+	 * @param capacity
+	 */
+	public TelemetryBatch(int capacity) {
+		timestep = new int[capacity];
+		team = new int[capacity];
+		score = new double[capacity];
+		water = new int[capacity];
+		fuel = new int[capacity];
+		metals = new int[capacity];
+		totalResources = new int[capacity];
+		killsInflicted = new int[capacity];
+		killsReceived = new int[capacity];
+		damageInflicted = new int[capacity];
+		damageReceived = new int[capacity];
+		energy = new double[capacity];
+		clientTimeouts = new int[capacity];
+		phaseLatency = new long[PHASES.length][capacity];
+	}
+
+	private static String[] getColumnNames() {
+		String[] fixedNames = {"timestep", "team", "score", "water", "fuel", "metals",
+				"totalResources", "killsInflicted", "killsReceived", "damageInflicted", "damageReceived",
+				"energy", "clientTimeouts"};
+		ClientPhase[] phases = ClientPhase.values();
+		String[] names = Arrays.copyOf(fixedNames, fixedNames.length + phases.length);
+		for (int i = 0; i < phases.length; i++) {
+			names[fixedNames.length + i] = phases[i].getMethodName() + "Nanos";
+		}
+		return names;
+	}
+
+	/**
+	 * Add a row for the team
+	 * @param step
+	 * @param teamIndex
+	 * @param teamInfo
+	 */
+	void addRow(int step, int teamIndex, Team teamInfo) {
+		int row = size++;
+		ResourcePile available = teamInfo.getAvailableResources();
+
+		double teamEnergy = 0;
+		for (Ship ship : teamInfo.getShips()) {
+			teamEnergy += ship.getEnergy();
+		}
+
+		timestep[row] = step;
+		team[row] = teamIndex;
+		score[row] = teamInfo.getScore();
+		water[row] = available.getResourceQuantity(ResourceTypes.WATER);
+		fuel[row] = available.getResourceQuantity(ResourceTypes.FUEL);
+		metals[row] = available.getResourceQuantity(ResourceTypes.METALS);
+		totalResources[row] = teamInfo.getTotalResources().getTotal();
+		killsInflicted[row] = teamInfo.getTotalKillsInflicted();
+		killsReceived[row] = teamInfo.getTotalKillsReceived();
+		damageInflicted[row] = teamInfo.getTotalDamageInflicted();
+		damageReceived[row] = teamInfo.getTotalDamageReceived();
+		energy[row] = teamEnergy;
+		clientTimeouts[row] = (int) teamInfo.getTotalTimeouts();
+		for (int i = 0; i < PHASES.length; i++) {
+			phaseLatency[i][row] = teamInfo.getLastPhaseLatency(PHASES[i]);
+		}
+	}
+
+	/**
+	 * Remove the last rows (so the newest step can overwrite them)
+	 * @param numRows
+	 */
+	void removeLastRows(int numRows) {
+		size = Math.max(0, size - numRows);
+		coalescedSteps++;
+	}
+
+	/**
+	 * Empty the batch so it can be reused
+	 */
+	void clear() {
+		size = 0;
+		coalescedSteps = 0;
+	}
+
+	/**
+	 * Is there room for the specified number of rows?
+	 * @param numRows
+	 * @return
+	 */
+	boolean hasRoom(int numRows) {
+		return size + numRows <= timestep.length;
+	}
+
+	/**
+	 * Number of valid rows
+	 * @return
+	 */
+	public int size() {
+		return size;
+	}
+
+	public int getCoalescedSteps() {
+		return coalescedSteps;
+	}
+
+	public int[] getTimestep() {
+		return timestep;
+	}
+
+	public int[] getTeam() {
+		return team;
+	}
+
+	public double[] getScore() {
+		return score;
+	}
+
+	public int[] getWater() {
+		return water;
+	}
+
+	public int[] getFuel() {
+		return fuel;
+	}
+
+	public int[] getMetals() {
+		return metals;
+	}
+
+	public int[] getTotalResources() {
+		return totalResources;
+	}
+
+	public int[] getKillsInflicted() {
+		return killsInflicted;
+	}
+
+	public int[] getKillsReceived() {
+		return killsReceived;
+	}
+
+	public int[] getDamageInflicted() {
+		return damageInflicted;
+	}
+
+	public int[] getDamageReceived() {
+		return damageReceived;
+	}
+
+	public double[] getEnergy() {
+		return energy;
+	}
+
+	/**
+	 * Total client timeouts for the team so far (all phases)
+	 * @return
+	 */
+	public int[] getClientTimeouts() {
+		return clientTimeouts;
+	}
+
+	/**
+	 * Time the team's client took in the specified phase in nanoseconds (-1 if it was skipped)
+	 * @param phase
+	 * @return
+	 */
+	public long[] getPhaseLatency(ClientPhase phase) {
+		return phaseLatency[phase.ordinal()];
+	}
+}
@@ -0,0 +1,213 @@
+package spacesettlers.telemetry;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import spacesettlers.clients.Team;
+
+/**
+ * Records per-step team telemetry and hands it to a TelemetrySink on a background
+ * thread.  The simulation loop only ever copies numbers into a preallocated batch;
+ * when a batch fills it is queued for the writer and an empty one is taken from a
+ * small pool.
+ *
+ * If the writer falls behind and the pool is empty, the loop never waits: the newest
+ * step overwrites the last step in the current batch (the stats are running totals so
+ * the latest sample is the one worth keeping) and the number of coalesced steps is
+ * reported when the recorder is closed.
+ *
+ * @author amy
+ */
+public class TelemetryRecorder {
+	/**
+	 * Number of batches shared between the simulator and the writer
+	 */
+	public static final int NUM_BATCHES = 4;
+
+	/**
+	 * Number of steps held in a batch
+	 */
+	public static final int STEPS_PER_BATCH = 256;
+
+	/**
+	 * The teams in the order of the team column
+	 */
+	ArrayList<Team> teams;
+
+	TelemetrySink sink;
+
+	/**
+	 * Empty batches ready for the simulator and full batches waiting for the writer
+	 */
+	ArrayBlockingQueue<TelemetryBatch> freeBatches, fullBatches;
+
+	/**
+	 * The batch the simulator is currently filling
+	 */
+	TelemetryBatch currentBatch;
+
+	Thread writerThread;
+
+	volatile boolean closing;
+
+	/**
+	 * Total steps coalesced over the whole game
+	 */
+	int totalCoalescedSteps;
+
+	/**
+	 * Set by the writer thread if the sink fails (the rest of the game is not recorded)
+	 */
+	volatile boolean sinkFailed;
+
+	/**
+	 * Open the sink and start the writer thread
+	 *
+	 * @param sink
+	 * @param fileName
+	 * @param allTeams
+	 * @throws IOException
+	 */
+	public TelemetryRecorder(TelemetrySink sink, String fileName, Collection<Team> allTeams) throws IOException {
+		this.sink = sink;
+		this.teams = new ArrayList<Team>(allTeams);
+
+		String[] ladderNames = new String[teams.size()];
+		for (int i = 0; i < ladderNames.length; i++) {
+			ladderNames[i] = teams.get(i).getLadderName();
+		}
+		sink.open(fileName, ladderNames);
+
+		freeBatches = new ArrayBlockingQueue<TelemetryBatch>(NUM_BATCHES);
+		fullBatches = new ArrayBlockingQueue<TelemetryBatch>(NUM_BATCHES);
+		for (int i = 0; i < NUM_BATCHES - 1; i++) {
+			freeBatches.add(new TelemetryBatch(Math.max(1, teams.size()) * STEPS_PER_BATCH));
+		}
+		currentBatch = new TelemetryBatch(Math.max(1, teams.size()) * STEPS_PER_BATCH);
+
+		writerThread = new Thread(new Runnable() {
+			public void run() {
+				writeBatches();
+			}
+		}, "SpaceSettlers telemetry writer");
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+
+	/**
+	 * Make the sink named in the config file: "csv", "binary" or the class
+	 * name of a TelemetrySink
+	 * @param format
+	 * @return
+	 * @throws Exception if the class can't be made
+	 */
+	public static TelemetrySink createSink(String format) throws Exception {
+		if (format == null || format.equalsIgnoreCase("csv")) {
+			return new CsvTelemetrySink();
+		} else if (format.equalsIgnoreCase("binary")) {
+			return new BinaryTelemetrySink();
+		} else {
+			return (TelemetrySink) Class.forName(format).getDeclaredConstructor().newInstance();
+		}
+	}
+
+	/**
+	 * Record one step for all the teams.  Called from the simulation loop and never blocks.
+	 * @param timestep
+	 */
+	public void recordStep(int timestep) {
+		int numTeams = teams.size();
+		if (!currentBatch.hasRoom(numTeams)) {
+			TelemetryBatch nextBatch = freeBatches.poll();
+			if (nextBatch != null) {
+				// can't fail: there are only NUM_BATCHES batches in total
+				fullBatches.offer(currentBatch);
+				currentBatch = nextBatch;
+			} else {
+				// the writer is behind so coalesce this step into the last one
+				currentBatch.removeLastRows(numTeams);
+				totalCoalescedSteps++;
+			}
+		}
+
+		for (int i = 0; i < numTeams; i++) {
+			currentBatch.addRow(timestep, i, teams.get(i));
+		}
+	}
+
+	/**
+	 * The writer thread: write full batches until the recorder is closed
+	 */
+	void writeBatches() {
+		while (true) {
+			TelemetryBatch batch;
+			try {
+				batch = fullBatches.poll(50, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				return;
+			}
+
+			if (batch == null) {
+				// closing is set after the last batch is queued so an empty queue means we are done
+				if (closing && fullBatches.isEmpty()) {
+					return;
+				}
+				continue;
+			}
+
+			if (!sinkFailed) {
+				try {
+					sink.write(batch);
+				} catch (Exception e) {
+					System.err.println("Error writing telemetry: the rest of the game will not be recorded");
+					e.printStackTrace();
+					sinkFailed = true;
+				}
+			}
+			batch.clear();
+			freeBatches.offer(batch);
+		}
+	}
+
+	/**
+	 * Write out anything left, stop the writer thread and close the sink.  Called
+	 * once at the end of the game (this is the only call that waits on the writer).
+	 */
+	public void close() {
+		if (currentBatch.size() > 0) {
+			try {
+				fullBatches.put(currentBatch);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		closing = true;
+
+		try {
+			writerThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		try {
+			sink.close();
+		} catch (IOException e) {
+			System.err.println("Error closing telemetry: " + e.getMessage());
+		}
+
+		if (totalCoalescedSteps > 0) {
+			System.out.println("Telemetry writer fell behind: coalesced " + totalCoalescedSteps + " steps");
+		}
+	}
+
+	/**
+	 * Return the number of steps coalesced so far because the writer was behind
+	 * @return
+	 */
+	public int getTotalCoalescedSteps() {
+		return totalCoalescedSteps;
+	}
+}
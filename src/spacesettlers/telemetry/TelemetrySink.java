@@ -0,0 +1,36 @@
+package spacesettlers.telemetry;
+
+import java.io.IOException;
+
+/**
+ * A destination for telemetry.  All of the methods are called from the telemetry 
+ * writer thread (never from the simulation loop) so a sink can take its time.
+ * 
+ * A sink needs a public no-argument constructor so it can be named by class in 
+ * the simulator config file.
+ * 
+ * @author amy
+ */
+public interface TelemetrySink {
+	/**
+	 * Open the sink before any batches are written
+	 * @param fileName output file name from the config file
+	 * @param ladderNames names of the teams (indexed the same as the team column)
+	 * @throws IOException
+	 */
+	public void open(String fileName, String[] ladderNames) throws IOException;
+	
+	/**
+	 * Write a batch.  The batch is reused once this returns so copy out anything
+	 * that needs to be kept.
+	 * @param batch
+	 * @throws IOException
+	 */
+	public void write(TelemetryBatch batch) throws IOException;
+	
+	/**
+	 * Flush and close the sink
+	 * @throws IOException
+	 */
+	public void close() throws IOException;
+}
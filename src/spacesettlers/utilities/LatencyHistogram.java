@@ -0,0 +1,237 @@
+package spacesettlers.utilities;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-size log-linear histogram (in the style of HdrHistogram) for latencies.
+ * Each power of two is split into SUB_BUCKETS linear buckets so any recorded value
+ * is reported to within about 6%.  Recording is lock-free (atomic increments only)
+ * so it can be called from the client threads while the simulator or ladder reads it.
+ *
+ * The histogram doesn't care about units but the simulator records microseconds.
+ * Values above MAX_TRACKABLE_VALUE are counted in the top bucket (the maximum is
+ * still exact).
+ *
+ * @author amy
+ */
+public class LatencyHistogram {
+	/**
+	 * log2 of the number of linear buckets per power of two
+	 */
+	static final int SUB_BUCKET_BITS = 4;
+
+	static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	/**
+	 * log2 of the largest value tracked with full precision
+	 */
+	static final int MAX_EXPONENT = 32;
+
+	public static final long MAX_TRACKABLE_VALUE = (1L << MAX_EXPONENT) - 1;
+
+	static final int NUM_BUCKETS = SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	AtomicLongArray counts;
+
+	AtomicLong count, sum, max, timeouts;
+
+	/**
+	 * Summary cached by getSummary (recomputed when the count changes)
+	 */
+	volatile LatencySummary summary;
+
+	public LatencyHistogram() {
+		counts = new AtomicLongArray(NUM_BUCKETS);
+		count = new AtomicLong();
+		sum = new AtomicLong();
+		max = new AtomicLong();
+		timeouts = new AtomicLong();
+	}
+
+	/**
+	 * Return the bucket a value falls in
+	 * @param value
+	 * @return
+	 */
+	static int getBucket(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) Math.max(0, value);
+		}
+		if (value > MAX_TRACKABLE_VALUE) {
+			return NUM_BUCKETS - 1;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int shift = exponent - SUB_BUCKET_BITS;
+		int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+		return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket;
+	}
+
+	/**
+	 * Return the largest value that falls in the bucket
+	 * @param bucket
+	 * @return
+	 */
+	static long getBucketUpperBound(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+		long subBucket = SUB_BUCKETS + (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+		return ((subBucket + 1) << shift) - 1;
+	}
+
+	/**
+	 * Record a value
+	 * @param value
+	 */
+	public void record(long value) {
+		record(value, false);
+	}
+
+	/**
+	 * Record a value and whether it was a timeout
+	 * @param value
+	 * @param timedOut
+	 */
+	public void record(long value, boolean timedOut) {
+		if (value < 0) {
+			value = 0;
+		}
+		counts.incrementAndGet(getBucket(value));
+		count.incrementAndGet();
+		sum.addAndGet(value);
+		if (timedOut) {
+			timeouts.incrementAndGet();
+		}
+
+		long currentMax = max.get();
+		while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+			currentMax = max.get();
+		}
+	}
+
+	/**
+	 * Add all of the values from another histogram into this one
+	 * @param other
+	 */
+	public void add(LatencyHistogram other) {
+		for (int i = 0; i < NUM_BUCKETS; i++) {
+			long bucketCount = other.counts.get(i);
+			if (bucketCount > 0) {
+				counts.addAndGet(i, bucketCount);
+			}
+		}
+		count.addAndGet(other.count.get());
+		sum.addAndGet(other.sum.get());
+		timeouts.addAndGet(other.timeouts.get());
+
+		long otherMax = other.max.get();
+		long currentMax = max.get();
+		while (otherMax > currentMax && !max.compareAndSet(currentMax, otherMax)) {
+			currentMax = max.get();
+		}
+	}
+
+	/**
+	 * Return the value at the specified percentile (0-100).  The value is the upper
+	 * bound of the bucket it falls in (never more than the maximum).
+	 * @param percentile
+	 * @return
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long totalCount = count.get();
+		if (totalCount == 0) {
+			return 0;
+		}
+		long target = Math.max(1, (long) Math.ceil((percentile / 100.0) * totalCount));
+		long seen = 0;
+		for (int i = 0; i < NUM_BUCKETS; i++) {
+			seen += counts.get(i);
+			if (seen >= target) {
+				return Math.min(getBucketUpperBound(i), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	public long getTimeouts() {
+		return timeouts.get();
+	}
+
+	public double getMean() {
+		long totalCount = count.get();
+		if (totalCount == 0) {
+			return 0;
+		}
+		return (double) sum.get() / totalCount;
+	}
+
+	/**
+	 * Write the histogram as a single line of text (count,sum,max,timeouts then
+	 * bucket:count for each bucket that isn't empty) that decode reads back
+	 * @return
+	 */
+	public String encode() {
+		StringBuilder str = new StringBuilder();
+		str.append(count.get()).append(',').append(sum.get()).append(',');
+		str.append(max.get()).append(',').append(timeouts.get());
+		for (int i = 0; i < NUM_BUCKETS; i++) {
+			long bucketCount = counts.get(i);
+			if (bucketCount > 0) {
+				str.append(',').append(i).append(':').append(bucketCount);
+			}
+		}
+		return str.toString();
+	}
+
+	/**
+	 * Read a histogram written by encode
+	 * @param str
+	 * @return
+	 * @throws IllegalArgumentException if the string isn't an encoded histogram
+	 */
+	public static LatencyHistogram decode(String str) {
+		String[] fields = str.split(",");
+		if (fields.length < 4) {
+			throw new IllegalArgumentException("Not a latency histogram: " + str);
+		}
+		LatencyHistogram histogram = new LatencyHistogram();
+		try {
+			histogram.count.set(Long.parseLong(fields[0]));
+			histogram.sum.set(Long.parseLong(fields[1]));
+			histogram.max.set(Long.parseLong(fields[2]));
+			histogram.timeouts.set(Long.parseLong(fields[3]));
+			for (int i = 4; i < fields.length; i++) {
+				int colon = fields[i].indexOf(':');
+				histogram.counts.set(Integer.parseInt(fields[i].substring(0, colon)), 
+						Long.parseLong(fields[i].substring(colon + 1)));
+			}
+		} catch (RuntimeException e) {
+			throw new IllegalArgumentException("Not a latency histogram: " + str, e);
+		}
+		return histogram;
+	}
+
+	/**
+	 * Return an immutable summary (count, timeouts, p50, p99, max, mean).  The summary is
+	 * cached until more values are recorded.
+	 * @return
+	 */
+	public LatencySummary getSummary() {
+		LatencySummary current = summary;
+		if (current == null || current.getCount() != count.get()) {
+			current = new LatencySummary(this);
+			summary = current;
+		}
+		return current;
+	}
+}
@@ -0,0 +1,59 @@
+package spacesettlers.utilities;
+
+/**
+ * Immutable summary of a LatencyHistogram (safe to hand to team clients)
+ *
+ * @author amy
+ */
+public final class LatencySummary {
+	final long count, timeouts, p50, p99, max;
+
+	final double mean;
+
+	public LatencySummary(LatencyHistogram histogram) {
+		count = histogram.getCount();
+		timeouts = histogram.getTimeouts();
+		p50 = histogram.getValueAtPercentile(50);
+		p99 = histogram.getValueAtPercentile(99);
+		max = histogram.getMax();
+		mean = histogram.getMean();
+	}
+
+	/**
+	 * Number of values recorded
+	 * @return
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Number of the recorded values that were timeouts
+	 * @return
+	 */
+	public long getTimeouts() {
+		return timeouts;
+	}
+
+	public long getP50() {
+		return p50;
+	}
+
+	public long getP99() {
+		return p99;
+	}
+
+	public long getMax() {
+		return max;
+	}
+
+	public double getMean() {
+		return mean;
+	}
+
+	@Override
+	public String toString() {
+		return "LatencySummary [count=" + count + ", timeouts=" + timeouts + ", p50=" + p50 + ", p99=" + p99
+				+ ", max=" + max + ", mean=" + mean + "]";
+	}
+}
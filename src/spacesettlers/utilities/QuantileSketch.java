@@ -0,0 +1,149 @@
+package spacesettlers.utilities;
+
+import java.util.Arrays;
+
+/**
+ * Approximate quantiles (median, percentiles) of a stream of values in a fixed amount of
+ * memory.  This is the streaming histogram of Ben-Haim and Tom-Tov (2010): each value
+ * becomes a bin and when there are more than maxBins bins the two closest are merged into
+ * their weighted mean.  Until maxBins values have been added the quantiles are exact; after
+ * that the error is spread across the range of the values, which is plenty for scores.
+ *
+ * @author amy
+ */
+public class QuantileSketch {
+	public static final int DEFAULT_MAX_BINS = 64;
+
+	int maxBins;
+
+	/**
+	 * Centers and counts of the bins (sorted by center), numBins of them in use
+	 */
+	double[] centers;
+
+	long[] counts;
+
+	int numBins;
+
+	long count;
+
+	double min, max;
+
+	public QuantileSketch() {
+		this(DEFAULT_MAX_BINS);
+	}
+
+	public QuantileSketch(int maxBins) {
+		if (maxBins < 2) {
+			throw new IllegalArgumentException("A quantile sketch needs at least 2 bins");
+		}
+		this.maxBins = maxBins;
+		// one extra so a value can be inserted before merging
+		centers = new double[maxBins + 1];
+		counts = new long[maxBins + 1];
+		min = Double.POSITIVE_INFINITY;
+		max = Double.NEGATIVE_INFINITY;
+	}
+
+	/**
+	 * Add a value
+	 * @param value
+	 */
+	public void add(double value) {
+		count++;
+		min = Math.min(min, value);
+		max = Math.max(max, value);
+
+		int index = Arrays.binarySearch(centers, 0, numBins, value);
+		if (index >= 0) {
+			counts[index]++;
+			return;
+		}
+
+		index = -index - 1;
+		System.arraycopy(centers, index, centers, index + 1, numBins - index);
+		System.arraycopy(counts, index, counts, index + 1, numBins - index);
+		centers[index] = value;
+		counts[index] = 1;
+		numBins++;
+
+		if (numBins > maxBins) {
+			mergeClosestBins();
+		}
+	}
+
+	/**
+	 * Merge the two neighboring bins with the closest centers
+	 */
+	void mergeClosestBins() {
+		int closest = 0;
+		double closestGap = Double.POSITIVE_INFINITY;
+		for (int i = 0; i < numBins - 1; i++) {
+			double gap = centers[i + 1] - centers[i];
+			if (gap < closestGap) {
+				closestGap = gap;
+				closest = i;
+			}
+		}
+
+		long mergedCount = counts[closest] + counts[closest + 1];
+		centers[closest] = (centers[closest] * counts[closest] + centers[closest + 1] * counts[closest + 1]) / mergedCount;
+		counts[closest] = mergedCount;
+		System.arraycopy(centers, closest + 2, centers, closest + 1, numBins - closest - 2);
+		System.arraycopy(counts, closest + 2, counts, closest + 1, numBins - closest - 2);
+		numBins--;
+	}
+
+	/**
+	 * Returns the approximate value below which the fraction q of the values fall.  Each bin's
+	 * values are assumed to be spread evenly around its center (halfway to its neighbors, or
+	 * out to the minimum and maximum for the first and last bins).
+	 *
+	 * @param q between 0 and 1
+	 * @return the quantile (0 if there are no values)
+	 */
+	public double getQuantile(double q) {
+		if (count == 0) {
+			return 0;
+		}
+		if (q <= 0) {
+			return min;
+		}
+		if (q >= 1) {
+			return max;
+		}
+
+		double target = q * count;
+		double cumulative = 0;
+		for (int i = 0; i < numBins; i++) {
+			if (cumulative + counts[i] >= target) {
+				if (counts[i] == 1) {
+					return centers[i];
+				}
+				// interpolate across the bin
+				double low = i == 0 ? min : (centers[i - 1] + centers[i]) / 2;
+				double high = i == numBins - 1 ? max : (centers[i] + centers[i + 1]) / 2;
+				double fraction = (target - cumulative) / counts[i];
+				return low + fraction * (high - low);
+			}
+			cumulative += counts[i];
+		}
+		return max;
+	}
+
+	public double getMedian() {
+		return getQuantile(0.5);
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Number of bins in use (never more than maxBins)
+	 * @return
+	 */
+	public int getNumBins() {
+		return numBins;
+	}
+}
@@ -0,0 +1,118 @@
+package spacesettlers.utilities;
+
+/**
+ * Mean, variance, minimum and maximum of a stream of values without keeping the values.
+ * The mean and variance use Welford's update, which stays accurate when the values are
+ * large and close together (summing the squares does not).  Two sets of statistics can
+ * be merged (Chan et al.'s parallel update) so each thread or game can keep its own.
+ *
+ * @author amy
+ */
+public class RunningStatistics {
+	/**
+	 * Normal quantile for a two sided 95% confidence interval
+	 */
+	public static final double Z_95 = 1.959964;
+
+	long count;
+
+	double mean;
+
+	/**
+	 * Sum of the squared differences from the mean
+	 */
+	double m2;
+
+	double min, max;
+
+	public RunningStatistics() {
+		min = Double.POSITIVE_INFINITY;
+		max = Double.NEGATIVE_INFINITY;
+	}
+
+	/**
+	 * Add a value
+	 * @param value
+	 */
+	public void add(double value) {
+		count++;
+		double delta = value - mean;
+		mean += delta / count;
+		m2 += delta * (value - mean);
+		min = Math.min(min, value);
+		max = Math.max(max, value);
+	}
+
+	/**
+	 * Add all of the values seen by the other statistics
+	 * @param other
+	 */
+	public void add(RunningStatistics other) {
+		if (other.count == 0) {
+			return;
+		}
+		long newCount = count + other.count;
+		double delta = other.mean - mean;
+		mean += delta * other.count / newCount;
+		m2 += other.m2 + delta * delta * ((double) count * other.count / newCount);
+		count = newCount;
+		min = Math.min(min, other.min);
+		max = Math.max(max, other.max);
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public double getMean() {
+		return mean;
+	}
+
+	/**
+	 * The sample variance (0 until there are two values)
+	 * @return
+	 */
+	public double getVariance() {
+		if (count < 2) {
+			return 0;
+		}
+		return m2 / (count - 1);
+	}
+
+	public double getStandardDeviation() {
+		return Math.sqrt(getVariance());
+	}
+
+	/**
+	 * Half the width of the 95% confidence interval of the mean (normal approximation)
+	 * @return
+	 */
+	public double getConfidenceInterval95() {
+		if (count < 2) {
+			return 0;
+		}
+		return Z_95 * getStandardDeviation() / Math.sqrt(count);
+	}
+
+	/**
+	 * Smallest value (0 if there are none)
+	 * @return
+	 */
+	public double getMin() {
+		return count == 0 ? 0 : min;
+	}
+
+	/**
+	 * Largest value (0 if there are none)
+	 * @return
+	 */
+	public double getMax() {
+		return count == 0 ? 0 : max;
+	}
+
+	@Override
+	public String toString() {
+		return "RunningStatistics [count=" + count + ", mean=" + mean + ", standardDeviation=" + getStandardDeviation()
+				+ ", min=" + getMin() + ", max=" + getMax() + "]";
+	}
+}
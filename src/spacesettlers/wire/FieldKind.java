@@ -0,0 +1,640 @@
+package spacesettlers.wire;
+
+import java.awt.Color;
+import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+
+import spacesettlers.actions.AbstractAction;
+import spacesettlers.clients.Team;
+import spacesettlers.game.AbstractGameAgent;
+import spacesettlers.objects.AbstractObject;
+import spacesettlers.objects.powerups.SpaceSettlersPowerupEnum;
+import spacesettlers.objects.resources.ResourcePile;
+import spacesettlers.objects.resources.ResourceTypes;
+import spacesettlers.utilities.Position;
+import spacesettlers.utilities.Vector2D;
+
+/**
+ * The kinds of fields the wire format knows how to send.  The ordinal is written in the
+ * schema so only ever add new kinds to the end.
+ *
+ * Each kind turns the value of a field into a wire value (something that can be compared
+ * with the last step's value and doesn't change if the object does), writes and reads it,
+ * and turns it back into a new value for the field.  REF, REFS and TEAM point at other
+ * objects (by id) or teams (by name) and are set once everything in the step is decoded.
+ * OPAQUE values (actions and game agents, which can be the team's own classes) are sent
+ * as XStream XML.  The XML is their wire value, so they are sent whenever the XML changes
+ * (even if the field still points at the same object, e.g. an action that has finished),
+ * and the decoder makes a new object from it every step.
+ *
+ * @author amy
+ */
+public enum FieldKind {
+	BOOLEAN {
+		void write(WorldStateEncoder encoder, ByteBuffer buffer, Object value) {
+			buffer.put((byte) (((Boolean) value) ? 1 : 0));
+		}
+
+		Object read(WorldStateDecoder decoder, ByteBuffer buffer) {
+			return buffer.get() != 0;
+		}
+	},
+	INT {
+		void write(WorldStateEncoder encoder, ByteBuffer buffer, Object value) {
+			buffer.putInt((Integer) value);
+		}
+
+		Object read(WorldStateDecoder decoder, ByteBuffer buffer) {
+			return buffer.getInt();
+		}
+	},
+	LONG {
+		void write(WorldStateEncoder encoder, ByteBuffer buffer, Object value) {
+			buffer.putLong((Long) value);
+		}
+
+		Object read(WorldStateDecoder decoder, ByteBuffer buffer) {
+			return buffer.getLong();
+		}
+	},
+	FLOAT {
+		void write(WorldStateEncoder encoder, ByteBuffer buffer, Object value) {
+			buffer.putFloat((Float) value);
+		}
+
+		Object read(WorldStateDecoder decoder, ByteBuffer buffer) {
+			return buffer.getFloat();
+		}
+	},
+	DOUBLE {
+		void write(WorldStateEncoder encoder, ByteBuffer buffer, Object value) {
+			buffer.putDouble((Double) value);
+		}
+
+		Object read(WorldStateDecoder decoder, ByteBuffer buffer) {
+			return buffer.getDouble();
+		}
+	},
+	STRING {
+		void write(WorldStateEncoder encoder, ByteBuffer buffer, Object value) {
+			WorldStateEncoder.putString(buffer, (String) value);
+		}
+
+		Object read(WorldStateDecoder decoder, ByteBuffer buffer) {
+			return WorldStateDecoder.getString(buffer);
+		}
+	},
+	ID {
+		void write(WorldStateEncoder encoder, ByteBuffer buffer, Object value) {
+			putNullable(buffer, value);
+			if (value != null) {
+				putId(buffer, (UUID) value);
+			}
+		}
+
+		Object read(WorldStateDecoder decoder, ByteBuffer buffer) {
+			if (buffer.get() == 0) {
+				return null;
+			}
+			return getId(buffer);
+		}
+	},
+	/**
+	 * Wire value: the ARGB (Integer)
+	 */
+	COLOR {
+		Object toWire(WorldStateEncoder encoder, Object fieldValue) {
+			return fieldValue == null ? null : ((Color) fieldValue).getRGB();
+		}
+
+		void write(WorldStateEncoder encoder, ByteBuffer buffer, Object value) {
+			putNullable(buffer, value);
+			if (value != null) {
+				buffer.putInt((Integer) value);
+			}
+		}
+
+		Object read(WorldStateDecoder decoder, ByteBuffer buffer) {
+			if (buffer.get() == 0) {
+				return null;
+			}
+			return buffer.getInt();
+		}
+
+		Object toField(WorldStateDecoder decoder, Object value) {
+			return value == null ? null : new Color((Integer) value, true);
+		}
+	},
+	/**
+	 * Wire value: x, y, orientation, x velocity, y velocity, angular velocity (double[])
+	 */
+	POSITION {
+		Object toWire(WorldStateEncoder encoder, Object fieldValue) {
+			return fieldValue == null ? null : positionToWire((Position) fieldValue, new double[POSITION_SIZE], 0);
+		}
+
+		void write(WorldStateEncoder encoder, ByteBuffer buffer, Object value) {
+			putNullable(buffer, value);
+			if (value != null) {
+				for (double d : (double[]) value) {
+					buffer.putDouble(d);
+				}
+			}
+		}
+
+		Object read(WorldStateDecoder decoder, ByteBuffer buffer) {
+			if (buffer.get() == 0) {
+				return null;
+			}
+			return getDoubles(buffer, POSITION_SIZE);
+		}
+
+		Object toField(WorldStateDecoder decoder, Object value) {
+			return value == null ? null : wireToPosition((double[]) value, 0);
+		}
+	},
+	/**
+	 * Wire value: the positions one after another (double[])
+	 */
+	POSITIONS {
+		Object toWire(WorldStateEncoder encoder, Object fieldValue) {
+			if (fieldValue == null) {
+				return null;
+			}
+			Position[] positions = (Position[]) fieldValue;
+			double[] value = new double[positions.length * POSITION_SIZE];
+			for (int i = 0; i < positions.length; i++) {
+				positionToWire(positions[i], value, i * POSITION_SIZE);
+			}
+			return value;
+		}
+
+		void write(WorldStateEncoder encoder, ByteBuffer buffer, Object value) {
+			putNullable(buffer, value);
+			if (value != null) {
+				double[] doubles = (double[]) value;
+				buffer.putShort((short) (doubles.length / POSITION_SIZE));
+				for (double d : doubles) {
+					buffer.putDouble(d);
+				}
+			}
+		}
+
+		Object read(WorldStateDecoder decoder, ByteBuffer buffer) {
+			if (buffer.get() == 0) {
+				return null;
+			}
+			return getDoubles(buffer, buffer.getShort() * POSITION_SIZE);
+		}
+
+		Object toField(WorldStateDecoder decoder, Object value) {
+			if (value == null) {
+				return null;
+			}
+			double[] doubles = (double[]) value;
+			Position[] positions = new Position[doubles.length / POSITION_SIZE];
+			for (int i = 0; i < positions.length; i++) {
+				positions[i] = wireToPosition(doubles, i * POSITION_SIZE);
+			}
+			return positions;
+		}
+	},
+	/**
+	 * Wire value: the quantity of each ResourceTypes (int[])
+	 */
+	RESOURCES {
+		Object toWire(WorldStateEncoder encoder, Object fieldValue) {
+			if (fieldValue == null) {
+				return null;
+			}
+			ResourcePile pile = (ResourcePile) fieldValue;
+			int[] value = new int[RESOURCE_TYPES.length];
+			for (int i = 0; i < RESOURCE_TYPES.length; i++) {
+				value[i] = pile.getResourceQuantity(RESOURCE_TYPES[i]);
+			}
+			return value;
+		}
+
+		void write(WorldStateEncoder encoder, ByteBuffer buffer, Object value) {
+			putNullable(buffer, value);
+			if (value != null) {
+				int[] quantities = (int[]) value;
+				buffer.put((byte) quantities.length);
+				for (int quantity : quantities) {
+					buffer.putInt(quantity);
+				}
+			}
+		}
+
+		Object read(WorldStateDecoder decoder, ByteBuffer buffer) {
+			if (buffer.get() == 0) {
+				return null;
+			}
+			int[] quantities = new int[buffer.get()];
+			for (int i = 0; i < quantities.length; i++) {
+				quantities[i] = buffer.getInt();
+			}
+			return quantities;
+		}
+
+		Object toField(WorldStateDecoder decoder, Object value) {
+			if (value == null) {
+				return null;
+			}
+			int[] quantities = (int[]) value;
+			ResourcePile pile = new ResourcePile();
+			for (int i = 0; i < quantities.length && i < RESOURCE_TYPES.length; i++) {
+				pile.setResources(RESOURCE_TYPES[i], quantities[i]);
+			}
+			return pile;
+		}
+	},
+	/**
+	 * Wire value: the ordinals of the power ups in the set's order (byte[])
+	 */
+	POWERUPS {
+		Object toWire(WorldStateEncoder encoder, Object fieldValue) {
+			if (fieldValue == null) {
+				return null;
+			}
+			@SuppressWarnings("unchecked")
+			Set<SpaceSettlersPowerupEnum> powerups = (Set<SpaceSettlersPowerupEnum>) fieldValue;
+			byte[] value = new byte[powerups.size()];
+			int i = 0;
+			for (SpaceSettlersPowerupEnum powerup : powerups) {
+				value[i++] = (byte) powerup.ordinal();
+			}
+			return value;
+		}
+
+		void write(WorldStateEncoder encoder, ByteBuffer buffer, Object value) {
+			putNullable(buffer, value);
+			if (value != null) {
+				byte[] ordinals = (byte[]) value;
+				buffer.put((byte) ordinals.length);
+				buffer.put(ordinals);
+			}
+		}
+
+		Object read(WorldStateDecoder decoder, ByteBuffer buffer) {
+			if (buffer.get() == 0) {
+				return null;
+			}
+			byte[] ordinals = new byte[buffer.get()];
+			buffer.get(ordinals);
+			return ordinals;
+		}
+
+		Object toField(WorldStateDecoder decoder, Object value) {
+			if (value == null) {
+				return null;
+			}
+			SpaceSettlersPowerupEnum[] values = SpaceSettlersPowerupEnum.values();
+			LinkedHashSet<SpaceSettlersPowerupEnum> powerups = new LinkedHashSet<SpaceSettlersPowerupEnum>();
+			for (byte ordinal : (byte[]) value) {
+				if (ordinal >= 0 && ordinal < values.length) {
+					powerups.add(values[ordinal]);
+				}
+			}
+			return powerups;
+		}
+	},
+	/**
+	 * Wire value: the id of the object (UUID)
+	 */
+	REF {
+		Object toWire(WorldStateEncoder encoder, Object fieldValue) {
+			return fieldValue == null ? null : ((AbstractObject) fieldValue).getId();
+		}
+
+		void write(WorldStateEncoder encoder, ByteBuffer buffer, Object value) {
+			ID.write(encoder, buffer, value);
+		}
+
+		Object read(WorldStateDecoder decoder, ByteBuffer buffer) {
+			return ID.read(decoder, buffer);
+		}
+
+		Object toField(WorldStateDecoder decoder, Object value) {
+			return value == null ? null : decoder.getObject((UUID) value);
+		}
+
+		boolean isReference() {
+			return true;
+		}
+	},
+	/**
+	 * Wire value: the ids of the objects in the set's order (UUID[])
+	 */
+	REFS {
+		Object toWire(WorldStateEncoder encoder, Object fieldValue) {
+			if (fieldValue == null) {
+				return null;
+			}
+			Collection<?> objects = (Collection<?>) fieldValue;
+			UUID[] ids = new UUID[objects.size()];
+			int i = 0;
+			for (Object object : objects) {
+				ids[i++] = ((AbstractObject) object).getId();
+			}
+			return ids;
+		}
+
+		void write(WorldStateEncoder encoder, ByteBuffer buffer, Object value) {
+			IDS.write(encoder, buffer, value);
+		}
+
+		Object read(WorldStateDecoder decoder, ByteBuffer buffer) {
+			return IDS.read(decoder, buffer);
+		}
+
+		Object toField(WorldStateDecoder decoder, Object value) {
+			if (value == null) {
+				return null;
+			}
+			LinkedHashSet<AbstractObject> objects = new LinkedHashSet<AbstractObject>();
+			for (UUID id : (UUID[]) value) {
+				AbstractObject object = decoder.getObject(id);
+				if (object != null) {
+					objects.add(object);
+				}
+			}
+			return objects;
+		}
+
+		boolean isReference() {
+			return true;
+		}
+	},
+	/**
+	 * Wire value: the ids in the set's order (UUID[])
+	 */
+	IDS {
+		Object toWire(WorldStateEncoder encoder, Object fieldValue) {
+			if (fieldValue == null) {
+				return null;
+			}
+			return ((Collection<?>) fieldValue).toArray(new UUID[0]);
+		}
+
+		void write(WorldStateEncoder encoder, ByteBuffer buffer, Object value) {
+			putNullable(buffer, value);
+			if (value != null) {
+				UUID[] ids = (UUID[]) value;
+				buffer.putInt(ids.length);
+				for (UUID id : ids) {
+					putId(buffer, id);
+				}
+			}
+		}
+
+		Object read(WorldStateDecoder decoder, ByteBuffer buffer) {
+			if (buffer.get() == 0) {
+				return null;
+			}
+			UUID[] ids = new UUID[buffer.getInt()];
+			for (int i = 0; i < ids.length; i++) {
+				ids[i] = getId(buffer);
+			}
+			return ids;
+		}
+
+		Object toField(WorldStateDecoder decoder, Object value) {
+			if (value == null) {
+				return null;
+			}
+			return new LinkedHashSet<UUID>(Arrays.asList((UUID[]) value));
+		}
+	},
+	/**
+	 * Wire value: the team's name (the teams are sent once per step)
+	 */
+	TEAM {
+		Object toWire(WorldStateEncoder encoder, Object fieldValue) {
+			return fieldValue == null ? null : ((Team) fieldValue).getTeamName();
+		}
+
+		void write(WorldStateEncoder encoder, ByteBuffer buffer, Object value) {
+			STRING.write(encoder, buffer, value);
+		}
+
+		Object read(WorldStateDecoder decoder, ByteBuffer buffer) {
+			return STRING.read(decoder, buffer);
+		}
+
+		Object toField(WorldStateDecoder decoder, Object value) {
+			return value == null ? null : decoder.getTeam((String) value);
+		}
+
+		boolean isReference() {
+			return true;
+		}
+	},
+	/**
+	 * Wire value: the object itself (compared by identity, sent as XML)
+	 */
+	/**
+	 * Wire value: the XStream XML (byte[])
+	 */
+	OPAQUE {
+		Object toWire(WorldStateEncoder encoder, Object fieldValue) {
+			return fieldValue == null ? null : encoder.toXML(fieldValue);
+		}
+
+		void write(WorldStateEncoder encoder, ByteBuffer buffer, Object value) {
+			putNullable(buffer, value);
+			if (value != null) {
+				byte[] xml = (byte[]) value;
+				buffer.putInt(xml.length);
+				buffer.put(xml);
+			}
+		}
+
+		Object read(WorldStateDecoder decoder, ByteBuffer buffer) {
+			if (buffer.get() == 0) {
+				return null;
+			}
+			byte[] xml = new byte[buffer.getInt()];
+			buffer.get(xml);
+			return xml;
+		}
+
+		Object toField(WorldStateDecoder decoder, Object value) {
+			if (value == null) {
+				return null;
+			}
+			byte[] xml = (byte[]) value;
+			return decoder.fromXML(ByteBuffer.wrap(xml), xml.length);
+		}
+	};
+
+	static final int POSITION_SIZE = 6;
+
+	static final ResourceTypes[] RESOURCE_TYPES = ResourceTypes.values();
+
+	private static final FieldKind[] values = values();
+
+	/**
+	 * Turn the value of a field into its wire value
+	 * @param encoder turns OPAQUE values into XML
+	 * @param fieldValue
+	 * @return
+	 */
+	Object toWire(WorldStateEncoder encoder, Object fieldValue) {
+		return fieldValue;
+	}
+
+	/**
+	 * Write a wire value
+	 */
+	abstract void write(WorldStateEncoder encoder, ByteBuffer buffer, Object value);
+
+	/**
+	 * Read a wire value
+	 */
+	abstract Object read(WorldStateDecoder decoder, ByteBuffer buffer);
+
+	/**
+	 * Turn a wire value into a new value for the field
+	 * @param decoder finds objects and teams for the reference kinds
+	 * @param value
+	 * @return
+	 */
+	Object toField(WorldStateDecoder decoder, Object value) {
+		return value;
+	}
+
+	/**
+	 * True if the field can only be set once all of the step's objects are decoded
+	 */
+	boolean isReference() {
+		return false;
+	}
+
+	/**
+	 * True if the wire value hasn't changed (so it isn't sent in a delta)
+	 */
+	boolean same(Object value, Object otherValue) {
+		return Objects.deepEquals(value, otherValue);
+	}
+
+	/**
+	 * The kind stored with the specified ordinal (null if it is out of range)
+	 * @param ordinal
+	 * @return
+	 */
+	public static FieldKind fromOrdinal(int ordinal) {
+		if (ordinal < 0 || ordinal >= values.length) {
+			return null;
+		}
+		return values[ordinal];
+	}
+
+	/**
+	 * The kind for a field or null if the field isn't part of the world state (e.g. graphics
+	 * or the team's client)
+	 * @param field
+	 * @return
+	 */
+	public static FieldKind forField(Field field) {
+		Class<?> type = field.getType();
+		if (type == boolean.class) {
+			return BOOLEAN;
+		} else if (type == int.class) {
+			return INT;
+		} else if (type == long.class) {
+			return LONG;
+		} else if (type == float.class) {
+			return FLOAT;
+		} else if (type == double.class) {
+			return DOUBLE;
+		} else if (type == String.class) {
+			return STRING;
+		} else if (type == UUID.class) {
+			return ID;
+		} else if (type == Color.class) {
+			return COLOR;
+		} else if (type == Position.class) {
+			return POSITION;
+		} else if (type == Position[].class) {
+			return POSITIONS;
+		} else if (type == ResourcePile.class) {
+			return RESOURCES;
+		} else if (AbstractObject.class.isAssignableFrom(type)) {
+			return REF;
+		} else if (type == Team.class) {
+			return TEAM;
+		} else if (AbstractAction.class.isAssignableFrom(type) || AbstractGameAgent.class.isAssignableFrom(type)) {
+			return OPAQUE;
+		} else if (type == Set.class) {
+			Class<?> elementType = getElementType(field);
+			if (elementType == SpaceSettlersPowerupEnum.class) {
+				return POWERUPS;
+			} else if (elementType == UUID.class) {
+				return IDS;
+			} else if (elementType != null && AbstractObject.class.isAssignableFrom(elementType)) {
+				return REFS;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * The class of the elements of a Set field (null if it isn't declared with one)
+	 */
+	private static Class<?> getElementType(Field field) {
+		Type type = field.getGenericType();
+		if (type instanceof ParameterizedType) {
+			Type[] arguments = ((ParameterizedType) type).getActualTypeArguments();
+			if (arguments.length == 1 && arguments[0] instanceof Class) {
+				return (Class<?>) arguments[0];
+			}
+		}
+		return null;
+	}
+
+	static void putNullable(ByteBuffer buffer, Object value) {
+		buffer.put((byte) (value == null ? 0 : 1));
+	}
+
+	static void putId(ByteBuffer buffer, UUID id) {
+		buffer.putLong(id.getMostSignificantBits());
+		buffer.putLong(id.getLeastSignificantBits());
+	}
+
+	static UUID getId(ByteBuffer buffer) {
+		return new UUID(buffer.getLong(), buffer.getLong());
+	}
+
+	static double[] getDoubles(ByteBuffer buffer, int length) {
+		double[] doubles = new double[length];
+		buffer.asDoubleBuffer().get(doubles);
+		buffer.position(buffer.position() + length * 8);
+		return doubles;
+	}
+
+	static double[] positionToWire(Position position, double[] value, int offset) {
+		value[offset] = position.getX();
+		value[offset + 1] = position.getY();
+		value[offset + 2] = position.getOrientation();
+		value[offset + 3] = position.getxVelocity();
+		value[offset + 4] = position.getyVelocity();
+		value[offset + 5] = position.getAngularVelocity();
+		return value;
+	}
+
+	static Position wireToPosition(double[] value, int offset) {
+		Position position = new Position(value[offset], value[offset + 1], value[offset + 2]);
+		position.setTranslationalVelocity(new Vector2D(value[offset + 3], value[offset + 4]));
+		position.setAngularVelocity(value[offset + 5]);
+		return position;
+	}
+}
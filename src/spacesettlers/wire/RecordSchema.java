@@ -0,0 +1,202 @@
+package spacesettlers.wire;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import spacesettlers.clients.ImmutableTeamInfo;
+import spacesettlers.clients.Team;
+import spacesettlers.objects.AbstractObject;
+
+/**
+ * The fields of one class in the wire format.  The schema is made from the class itself
+ * (every instance field of the class and its superclasses that has a FieldKind) so a new
+ * field in an object is sent without any changes here.  Fields that aren't world state
+ * (graphics, the team's client, thread pools) have no kind and are left out.
+ *
+ * Each key frame describes the schema of every class it sends (the class name and the
+ * name and kind of each field) and the decoder matches the fields by name to its own
+ * version of the class.  Fields the decoder doesn't know are read and dropped and fields
+ * the encoder didn't send keep their default value, so both ends don't have to be built
+ * from exactly the same classes.
+ *
+ * @author amy
+ */
+public class RecordSchema {
+	/**
+	 * Schema of each local class (made once)
+	 */
+	static final ConcurrentHashMap<Class<?>, RecordSchema> schemas = new ConcurrentHashMap<Class<?>, RecordSchema>();
+
+	final Class<?> type;
+
+	/**
+	 * Name and kind of each field in the order they are written
+	 */
+	final String[] names;
+
+	final FieldKind[] kinds;
+
+	/**
+	 * The local field for each of the fields (null if this class doesn't have it)
+	 */
+	final WireField[] fields;
+
+	private RecordSchema(Class<?> type, String[] names, FieldKind[] kinds, WireField[] fields) {
+		this.type = type;
+		this.names = names;
+		this.kinds = kinds;
+		this.fields = fields;
+	}
+
+	/**
+	 * The schema of a local class
+	 * @param type
+	 * @return
+	 */
+	public static RecordSchema forClass(Class<?> type) {
+		RecordSchema schema = schemas.get(type);
+		if (schema == null) {
+			ArrayList<WireField> fields = getFields(type);
+			String[] names = new String[fields.size()];
+			FieldKind[] kinds = new FieldKind[fields.size()];
+			for (int i = 0; i < fields.size(); i++) {
+				names[i] = fields.get(i).name;
+				kinds[i] = fields.get(i).kind;
+			}
+			schema = new RecordSchema(type, names, kinds, fields.toArray(new WireField[fields.size()]));
+			RecordSchema existing = schemas.putIfAbsent(type, schema);
+			if (existing != null) {
+				schema = existing;
+			}
+		}
+		return schema;
+	}
+
+	/**
+	 * The fields of the class (superclass fields first)
+	 */
+	static ArrayList<WireField> getFields(Class<?> type) {
+		ArrayList<WireField> fields = new ArrayList<WireField>();
+		if (type.getSuperclass() != null && type.getSuperclass() != Object.class) {
+			fields.addAll(getFields(type.getSuperclass()));
+		}
+		for (Field field : type.getDeclaredFields()) {
+			int modifiers = field.getModifiers();
+			if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()) {
+				continue;
+			}
+			FieldKind kind = FieldKind.forField(field);
+			if (kind != null) {
+				fields.add(new WireField(field, kind));
+			}
+		}
+		return fields;
+	}
+
+	/**
+	 * The wire values of all of the fields of the object
+	 * @param encoder
+	 * @param object
+	 * @param teams collects the teams the object points at by name (null to not collect them)
+	 * @return
+	 */
+	Object[] getValues(WorldStateEncoder encoder, Object object, Map<String, Team> teams) {
+		Object[] values = new Object[fields.length];
+		for (int i = 0; i < fields.length; i++) {
+			Object fieldValue = fields[i].getFieldValue(object);
+			if (teams != null && kinds[i] == FieldKind.TEAM && fieldValue != null) {
+				Team team = (Team) fieldValue;
+				if (!teams.containsKey(team.getTeamName())) {
+					teams.put(team.getTeamName(), team);
+				}
+			}
+			values[i] = kinds[i].toWire(encoder, fieldValue);
+		}
+		return values;
+	}
+
+	/**
+	 * Set the fields of the object from wire values
+	 * @param decoder
+	 * @param object
+	 * @param values
+	 * @param references true to set only the fields that point at other objects, false for only the others
+	 */
+	void setValues(WorldStateDecoder decoder, Object object, Object[] values, boolean references) {
+		for (int i = 0; i < fields.length; i++) {
+			if (fields[i] != null && kinds[i].isReference() == references) {
+				fields[i].set(decoder, object, values[i]);
+			}
+		}
+	}
+
+	/**
+	 * Write the description of this schema (class name, then the name and kind of each field)
+	 * @param buffer
+	 */
+	void write(ByteBuffer buffer) {
+		WorldStateEncoder.putString(buffer, type.getName());
+		buffer.putShort((short) names.length);
+		for (int i = 0; i < names.length; i++) {
+			WorldStateEncoder.putString(buffer, names[i]);
+			buffer.put((byte) kinds[i].ordinal());
+		}
+	}
+
+	/**
+	 * Read a schema written by write and match its fields to the local class
+	 * @param buffer
+	 * @return
+	 * @throws IOException if the class isn't one that can be sent or a field kind is unknown
+	 */
+	static RecordSchema read(ByteBuffer buffer) throws IOException {
+		String className = WorldStateDecoder.getString(buffer);
+		Class<?> type;
+		try {
+			type = Class.forName(className, false, RecordSchema.class.getClassLoader());
+		} catch (ClassNotFoundException e) {
+			throw new IOException("Unknown class " + className + " in world state");
+		}
+		// only the simulator's own objects are ever made from the wire
+		if (!(AbstractObject.class.isAssignableFrom(type) || type == Team.class || type == ImmutableTeamInfo.class)
+				|| Modifier.isAbstract(type.getModifiers())) {
+			throw new IOException("Class " + className + " can't be sent in world state");
+		}
+
+		HashMap<String, WireField> localFields = new HashMap<String, WireField>();
+		for (WireField field : forClass(type).fields) {
+			localFields.put(field.name, field);
+		}
+
+		int numFields = buffer.getShort();
+		String[] names = new String[numFields];
+		FieldKind[] kinds = new FieldKind[numFields];
+		WireField[] fields = new WireField[numFields];
+		for (int i = 0; i < numFields; i++) {
+			names[i] = WorldStateDecoder.getString(buffer);
+			kinds[i] = FieldKind.fromOrdinal(buffer.get());
+			if (kinds[i] == null) {
+				throw new IOException("Unknown kind for field " + names[i] + " of " + className);
+			}
+			WireField field = localFields.get(names[i]);
+			if (field != null && field.kind == kinds[i]) {
+				fields[i] = field;
+			}
+		}
+		return new RecordSchema(type, names, kinds, fields);
+	}
+
+	public Class<?> getType() {
+		return type;
+	}
+
+	public int getNumFields() {
+		return names.length;
+	}
+}
@@ -0,0 +1,64 @@
+package spacesettlers.wire;
+
+import java.lang.reflect.Field;
+
+/**
+ * A field of a class in the wire format: its name in the schema (the declaring class's
+ * simple name and the field name, since subclasses sometimes hide a field of the same
+ * name), its kind and the field itself.
+ *
+ * @author amy
+ */
+public class WireField {
+	final String name;
+
+	final FieldKind kind;
+
+	final Field field;
+
+	WireField(Field field, FieldKind kind) {
+		this.field = field;
+		this.kind = kind;
+		this.name = field.getDeclaringClass().getSimpleName() + "." + field.getName();
+		field.setAccessible(true);
+	}
+
+	/**
+	 * The value of this field in the object
+	 * @param object
+	 * @return
+	 */
+	Object getFieldValue(Object object) {
+		try {
+			return field.get(object);
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Set this field in the object from a wire value
+	 * @param decoder
+	 * @param object
+	 * @param value
+	 */
+	void set(WorldStateDecoder decoder, Object object, Object value) {
+		try {
+			Object fieldValue = kind.toField(decoder, value);
+			if (fieldValue == null && field.getType().isPrimitive()) {
+				return;
+			}
+			field.set(object, fieldValue);
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public FieldKind getKind() {
+		return kind;
+	}
+}
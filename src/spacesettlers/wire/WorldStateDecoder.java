@@ -0,0 +1,317 @@
+package spacesettlers.wire;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.UUID;
+
+import spacesettlers.clients.ImmutableTeamInfo;
+import spacesettlers.clients.Team;
+import spacesettlers.objects.AbstractObject;
+import spacesettlers.simulator.Toroidal2DPhysics;
+
+import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.XStreamException;
+import com.thoughtworks.xstream.converters.reflection.ReflectionProvider;
+import com.thoughtworks.xstream.core.JVM;
+
+import static spacesettlers.wire.WorldStateEncoder.*;
+
+/**
+ * Reads frames written by a WorldStateEncoder back into a new Toroidal2DPhysics.  Frames
+ * have to be decoded in the order they were written (starting at a key frame) since each
+ * one only has what changed since the one before.
+ *
+ * Everything is read straight out of the buffer it is given (e.g. a slice of a memory
+ * mapped file) and nothing in it is copied first.  Each frame makes all new objects, so
+ * the space can be changed by whoever gets it without changing the next frame.
+ *
+ * The objects are made without calling their constructors (the same way XStream makes
+ * them) so anything that isn't sent (their graphics) is null.
+ *
+ * @author amy
+ */
+public class WorldStateDecoder {
+	/**
+	 * Makes objects without calling their constructors
+	 */
+	static final ReflectionProvider reflectionProvider = JVM.newReflectionProvider();
+
+	static final Field currentTimeStepField = getSpaceField("currentTimeStep");
+	static final Field maxTimeField = getSpaceField("maxTime");
+	static final Field recordEventsField = getSpaceField("recordEvents");
+
+	/**
+	 * An object as it was read in the last frame
+	 */
+	static class ObjectState {
+		final RecordSchema schema;
+		final Object[] values;
+
+		ObjectState(RecordSchema schema, Object[] values) {
+			this.schema = schema;
+			this.values = values;
+		}
+	}
+
+	/**
+	 * Reads the actions and game agents of ships and drones
+	 */
+	XStream xstream;
+
+	/**
+	 * Sequence number of the last frame decoded (-1 if the next one has to be a key frame)
+	 */
+	int lastSequence;
+
+	ArrayList<ObjectState> previousObjects;
+
+	/**
+	 * Schemas read since the last key frame by id
+	 */
+	HashMap<Integer, RecordSchema> schemas;
+
+	/**
+	 * The objects and teams of the frame being decoded (for the fields that point at them)
+	 */
+	HashMap<UUID, AbstractObject> objectsById;
+
+	HashMap<String, Team> teams;
+
+	/**
+	 * @param xstream reads actions and game agents (see XStreamWorldStateCodec.newXStream)
+	 */
+	public WorldStateDecoder(XStream xstream) {
+		this.xstream = xstream;
+		lastSequence = -1;
+		previousObjects = new ArrayList<ObjectState>();
+		schemas = new HashMap<Integer, RecordSchema>();
+	}
+
+	/**
+	 * Decode the next frame
+	 * @param buffer the frame (from its position to its limit)
+	 * @return
+	 * @throws IOException if the frame isn't a world state, isn't the next frame or is corrupt
+	 */
+	public Toroidal2DPhysics decode(ByteBuffer buffer) throws IOException {
+		try {
+			return readFrame(buffer);
+		} catch (BufferUnderflowException | IllegalArgumentException | IllegalStateException
+				| ClassCastException | IndexOutOfBoundsException e) {
+			lastSequence = -1;
+			throw new IOException("Corrupt world state frame: " + e, e);
+		} catch (IOException e) {
+			lastSequence = -1;
+			throw e;
+		} finally {
+			objectsById = null;
+			teams = null;
+		}
+	}
+
+	private Toroidal2DPhysics readFrame(ByteBuffer buffer) throws IOException {
+		if (buffer.getInt() != MAGIC) {
+			throw new IOException("Not a world state frame");
+		}
+		int version = buffer.getShort();
+		if (version != VERSION) {
+			throw new IOException("Unsupported world state version " + version);
+		}
+		boolean keyFrame = (buffer.get() & FLAG_KEY_FRAME) != 0;
+		int sequence = buffer.getInt();
+		if (keyFrame) {
+			schemas.clear();
+		} else if (lastSequence < 0 || sequence != lastSequence + 1) {
+			throw new IOException("Expected world state frame " + (lastSequence + 1) + " but got " + sequence);
+		}
+
+		int height = buffer.getInt();
+		int width = buffer.getInt();
+		double timeStep = buffer.getDouble();
+		int currentTimeStep = buffer.getInt();
+		int maxTime = buffer.getInt();
+
+		ArrayList<ObjectState> objects = new ArrayList<ObjectState>();
+		ArrayList<ObjectState> teamRecords = new ArrayList<ObjectState>();
+		ArrayList<ObjectState> teamInfoRecords = new ArrayList<ObjectState>();
+		int entry;
+		while ((entry = buffer.get()) != END) {
+			switch (entry) {
+			case SCHEMA:
+				int schemaId = buffer.getShort();
+				schemas.put(schemaId, RecordSchema.read(buffer));
+				break;
+			case NEW_OBJECT:
+				objects.add(readRecord(buffer));
+				break;
+			case SAME_OBJECT:
+				objects.add(getPrevious(buffer.getInt()));
+				break;
+			case CHANGED_OBJECT:
+				objects.add(readChanges(buffer, getPrevious(buffer.getInt())));
+				break;
+			case TEAM:
+				teamRecords.add(readRecord(buffer));
+				break;
+			case TEAM_INFO:
+				teamInfoRecords.add(readRecord(buffer));
+				break;
+			default:
+				throw new IOException("Unknown world state entry " + entry);
+			}
+		}
+
+		// make everything and then point the objects at each other
+		objectsById = new HashMap<UUID, AbstractObject>();
+		teams = new HashMap<String, Team>();
+		ArrayList<Object> newObjects = new ArrayList<Object>();
+		for (ObjectState state : objects) {
+			AbstractObject object = (AbstractObject) newRecord(state);
+			objectsById.put(object.getId(), object);
+			newObjects.add(object);
+		}
+		for (ObjectState state : teamRecords) {
+			Team team = (Team) newRecord(state);
+			teams.put(team.getTeamName(), team);
+			newObjects.add(team);
+		}
+		LinkedHashSet<ImmutableTeamInfo> teamInfo = new LinkedHashSet<ImmutableTeamInfo>();
+		for (ObjectState state : teamInfoRecords) {
+			teamInfo.add((ImmutableTeamInfo) newRecord(state));
+		}
+
+		ArrayList<ObjectState> states = new ArrayList<ObjectState>(objects);
+		states.addAll(teamRecords);
+		for (int i = 0; i < newObjects.size(); i++) {
+			states.get(i).schema.setValues(this, newObjects.get(i), states.get(i).values, true);
+		}
+
+		Toroidal2DPhysics space = new Toroidal2DPhysics(height, width, timeStep);
+		try {
+			currentTimeStepField.setInt(space, currentTimeStep);
+			maxTimeField.setInt(space, maxTime);
+			// like a clone, the client's copy doesn't record events
+			recordEventsField.setBoolean(space, false);
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		}
+		for (int i = 0; i < objects.size(); i++) {
+			space.addObject((AbstractObject) newObjects.get(i));
+		}
+		space.setTeamInfo(teamInfo);
+
+		previousObjects = objects;
+		lastSequence = sequence;
+		return space;
+	}
+
+	private ObjectState getPrevious(int index) throws IOException {
+		if (index < 0 || index >= previousObjects.size()) {
+			throw new IOException("Bad object index " + index + " in world state");
+		}
+		return previousObjects.get(index);
+	}
+
+	private RecordSchema getSchema(int schemaId) throws IOException {
+		RecordSchema schema = schemas.get(schemaId);
+		if (schema == null) {
+			throw new IOException("Unknown schema " + schemaId + " in world state");
+		}
+		return schema;
+	}
+
+	private ObjectState readRecord(ByteBuffer buffer) throws IOException {
+		RecordSchema schema = getSchema(buffer.getShort());
+		Object[] values = new Object[schema.kinds.length];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = schema.kinds[i].read(this, buffer);
+		}
+		return new ObjectState(schema, values);
+	}
+
+	private ObjectState readChanges(ByteBuffer buffer, ObjectState previous) {
+		FieldKind[] kinds = previous.schema.kinds;
+		byte[] changed = new byte[(kinds.length + 7) / 8];
+		buffer.get(changed);
+		Object[] values = previous.values.clone();
+		for (int i = 0; i < kinds.length; i++) {
+			if ((changed[i / 8] & (1 << (i % 8))) != 0) {
+				values[i] = kinds[i].read(this, buffer);
+			}
+		}
+		return new ObjectState(previous.schema, values);
+	}
+
+	/**
+	 * Make the object and set everything but the fields that point at other objects
+	 */
+	private Object newRecord(ObjectState state) {
+		Object record = reflectionProvider.newInstance(state.schema.type);
+		state.schema.setValues(this, record, state.values, false);
+		return record;
+	}
+
+	/**
+	 * The object with the id in the frame being decoded (null if there isn't one)
+	 * @param id
+	 * @return
+	 */
+	AbstractObject getObject(UUID id) {
+		return objectsById.get(id);
+	}
+
+	/**
+	 * The team with the name in the frame being decoded (null if there isn't one)
+	 * @param teamName
+	 * @return
+	 */
+	Team getTeam(String teamName) {
+		return teams.get(teamName);
+	}
+
+	/**
+	 * Read an action or game agent written as XML
+	 */
+	Object fromXML(ByteBuffer buffer, int length) {
+		ByteBuffer xml = buffer.slice();
+		xml.limit(length);
+		buffer.position(buffer.position() + length);
+		try {
+			return xstream.fromXML(StandardCharsets.UTF_8.decode(xml).toString());
+		} catch (XStreamException e) {
+			throw new IllegalArgumentException("Unreadable object in world state: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Read a string written by WorldStateEncoder.putString
+	 * @param buffer
+	 * @return
+	 */
+	static String getString(ByteBuffer buffer) {
+		int length = buffer.getShort();
+		if (length < 0) {
+			return null;
+		}
+		ByteBuffer bytes = buffer.slice();
+		bytes.limit(length);
+		buffer.position(buffer.position() + length);
+		return StandardCharsets.UTF_8.decode(bytes).toString();
+	}
+
+	private static Field getSpaceField(String name) {
+		try {
+			Field field = Toroidal2DPhysics.class.getDeclaredField(name);
+			field.setAccessible(true);
+			return field;
+		} catch (NoSuchFieldException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
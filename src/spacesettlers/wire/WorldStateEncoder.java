@@ -0,0 +1,311 @@
+package spacesettlers.wire;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.UUID;
+
+import spacesettlers.clients.ImmutableTeamInfo;
+import spacesettlers.clients.Team;
+import spacesettlers.objects.AbstractObject;
+import spacesettlers.simulator.Toroidal2DPhysics;
+
+import com.thoughtworks.xstream.XStream;
+
+/**
+ * Writes the world (a Toroidal2DPhysics) in the binary wire format, one frame per step.
+ * A key frame has every field of every object.  The frames in between only have the
+ * fields that changed since the frame before (most objects don't move and most fields of
+ * the ones that do don't change), so a WorldStateDecoder has to read every frame in order
+ * from the last key frame.
+ *
+ * The format is big-endian.  A frame is
+ * <pre>
+ * int MAGIC, short VERSION, byte flags (FLAG_KEY_FRAME), int sequence number,
+ * int height, int width, double time step, int current time step, int max time,
+ * then entries until END:
+ *   SCHEMA         short schema id, the schema (see RecordSchema), sent before it is used
+ *   NEW_OBJECT     short schema id, every field
+ *   SAME_OBJECT    int index of the object in the last frame
+ *   CHANGED_OBJECT int index of the object in the last frame, a bit for each field
+ *                  (rounded up to bytes), the fields whose bit is set
+ *   TEAM           short schema id, every field of a team some object points at
+ *   TEAM_INFO      short schema id, every field of one of the space's ImmutableTeamInfo
+ * </pre>
+ * Strings are a short length (-1 for null) and the UTF-8 bytes.  The objects are in the
+ * same order as in the space.  Schema ids are only good until the next key frame.
+ *
+ * @author amy
+ */
+public class WorldStateEncoder {
+	/**
+	 * "SSWS"
+	 */
+	public static final int MAGIC = 0x53535753;
+
+	public static final int VERSION = 1;
+
+	public static final int FLAG_KEY_FRAME = 1;
+
+	static final int END = 0;
+	static final int SCHEMA = 1;
+	static final int NEW_OBJECT = 2;
+	static final int SAME_OBJECT = 3;
+	static final int CHANGED_OBJECT = 4;
+	static final int TEAM = 5;
+	static final int TEAM_INFO = 6;
+
+	/**
+	 * Frames between key frames (so a frame can be decoded without all of the game before it)
+	 */
+	public static final int DEFAULT_KEY_FRAME_INTERVAL = 100;
+
+	/**
+	 * An object as it was written in the last frame
+	 */
+	static class ObjectState {
+		final RecordSchema schema;
+		final int schemaId;
+		final Object[] values;
+
+		ObjectState(RecordSchema schema, int schemaId, Object[] values) {
+			this.schema = schema;
+			this.schemaId = schemaId;
+			this.values = values;
+		}
+	}
+
+	/**
+	 * Writes the actions and game agents of ships and drones
+	 */
+	XStream xstream;
+
+	int keyFrameInterval;
+
+	/**
+	 * Reused between frames (grown when a frame doesn't fit)
+	 */
+	ByteBuffer buffer;
+
+	int sequence;
+
+	/**
+	 * Objects in the last frame and their index by id (empty before the first frame)
+	 */
+	ArrayList<ObjectState> previousObjects;
+
+	HashMap<UUID, Integer> previousIndex;
+
+	/**
+	 * Schemas sent since the last key frame
+	 */
+	HashMap<Class<?>, Integer> schemaIds;
+
+	boolean keyFrameRequested;
+
+	/**
+	 * @param xstream writes actions and game agents (see XStreamWorldStateCodec.newXStream)
+	 */
+	public WorldStateEncoder(XStream xstream) {
+		this(xstream, DEFAULT_KEY_FRAME_INTERVAL);
+	}
+
+	/**
+	 * @param xstream writes actions and game agents (see XStreamWorldStateCodec.newXStream)
+	 * @param keyFrameInterval frames from one key frame to the next (0 for only the first frame)
+	 */
+	public WorldStateEncoder(XStream xstream, int keyFrameInterval) {
+		this.xstream = xstream;
+		this.keyFrameInterval = keyFrameInterval;
+		buffer = ByteBuffer.allocate(1 << 16);
+		previousObjects = new ArrayList<ObjectState>();
+		previousIndex = new HashMap<UUID, Integer>();
+		schemaIds = new HashMap<Class<?>, Integer>();
+		keyFrameRequested = true;
+	}
+
+	/**
+	 * Make the next frame a key frame (e.g. when the decoder has lost track)
+	 */
+	public void requestKeyFrame() {
+		keyFrameRequested = true;
+	}
+
+	/**
+	 * Encode the space as the next frame
+	 * @param space
+	 * @return the frame (from position to limit of a buffer that is reused by the next call)
+	 */
+	public ByteBuffer encodeToBuffer(Toroidal2DPhysics space) {
+		boolean keyFrame = keyFrameRequested || (keyFrameInterval > 0 && sequence % keyFrameInterval == 0);
+		while (true) {
+			try {
+				buffer.clear();
+				writeFrame(space, keyFrame);
+				buffer.flip();
+				return buffer;
+			} catch (BufferOverflowException e) {
+				// nothing is kept from a frame until it is all written so just start over
+				buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+			}
+		}
+	}
+
+	/**
+	 * Encode the space as the next frame
+	 * @param space
+	 * @return
+	 */
+	public byte[] encode(Toroidal2DPhysics space) {
+		ByteBuffer frame = encodeToBuffer(space);
+		return Arrays.copyOfRange(frame.array(), frame.position(), frame.limit());
+	}
+
+	private void writeFrame(Toroidal2DPhysics space, boolean keyFrame) {
+		HashMap<Class<?>, Integer> frameSchemaIds = keyFrame ? new HashMap<Class<?>, Integer>()
+				: new HashMap<Class<?>, Integer>(schemaIds);
+		ArrayList<ObjectState> objects = new ArrayList<ObjectState>();
+		HashMap<UUID, Integer> index = new HashMap<UUID, Integer>();
+		LinkedHashMap<String, Team> teams = new LinkedHashMap<String, Team>();
+
+		buffer.putInt(MAGIC);
+		buffer.putShort((short) VERSION);
+		buffer.put((byte) (keyFrame ? FLAG_KEY_FRAME : 0));
+		buffer.putInt(sequence);
+		buffer.putInt(space.getHeight());
+		buffer.putInt(space.getWidth());
+		buffer.putDouble(space.getTimestepDuration());
+		buffer.putInt(space.getCurrentTimestep());
+		buffer.putInt(space.getMaxTime());
+
+		for (AbstractObject object : space.getAllObjects()) {
+			RecordSchema schema = RecordSchema.forClass(object.getClass());
+			int schemaId = writeSchema(schema, frameSchemaIds);
+			Object[] values = schema.getValues(this, object, teams);
+			ObjectState state = new ObjectState(schema, schemaId, values);
+
+			Integer previous = keyFrame ? null : previousIndex.get(object.getId());
+			ObjectState previousState = previous == null ? null : previousObjects.get(previous);
+			if (previousState == null || previousState.schema != schema) {
+				buffer.put((byte) NEW_OBJECT);
+				buffer.putShort((short) schemaId);
+				writeValues(schema, values);
+			} else {
+				writeChanges(previous, previousState, values);
+			}
+			index.put(object.getId(), objects.size());
+			objects.add(state);
+		}
+
+		for (Team team : teams.values()) {
+			writeRecord(TEAM, team, frameSchemaIds);
+		}
+		for (ImmutableTeamInfo info : space.getTeamInfo()) {
+			writeRecord(TEAM_INFO, info, frameSchemaIds);
+		}
+		buffer.put((byte) END);
+
+		// the frame is done so it is the base for the next one
+		schemaIds = frameSchemaIds;
+		previousObjects = objects;
+		previousIndex = index;
+		sequence++;
+		keyFrameRequested = false;
+	}
+
+	/**
+	 * Write the schema if it hasn't been sent since the last key frame
+	 * @return its id
+	 */
+	private int writeSchema(RecordSchema schema, HashMap<Class<?>, Integer> frameSchemaIds) {
+		Integer schemaId = frameSchemaIds.get(schema.type);
+		if (schemaId == null) {
+			schemaId = frameSchemaIds.size();
+			frameSchemaIds.put(schema.type, schemaId);
+			buffer.put((byte) SCHEMA);
+			buffer.putShort((short) (int) schemaId);
+			schema.write(buffer);
+		}
+		return schemaId;
+	}
+
+	/**
+	 * Write an object that was in the last frame (just its index if nothing changed)
+	 */
+	private void writeChanges(int previous, ObjectState previousState, Object[] values) {
+		FieldKind[] kinds = previousState.schema.kinds;
+		byte[] changed = new byte[(values.length + 7) / 8];
+		boolean anyChanged = false;
+		for (int i = 0; i < values.length; i++) {
+			if (!kinds[i].same(values[i], previousState.values[i])) {
+				changed[i / 8] |= 1 << (i % 8);
+				anyChanged = true;
+			}
+		}
+
+		if (!anyChanged) {
+			buffer.put((byte) SAME_OBJECT);
+			buffer.putInt(previous);
+			return;
+		}
+		buffer.put((byte) CHANGED_OBJECT);
+		buffer.putInt(previous);
+		buffer.put(changed);
+		for (int i = 0; i < values.length; i++) {
+			if ((changed[i / 8] & (1 << (i % 8))) != 0) {
+				kinds[i].write(this, buffer, values[i]);
+			}
+		}
+	}
+
+	private void writeRecord(int type, Object record, HashMap<Class<?>, Integer> frameSchemaIds) {
+		RecordSchema schema = RecordSchema.forClass(record.getClass());
+		int schemaId = writeSchema(schema, frameSchemaIds);
+		buffer.put((byte) type);
+		buffer.putShort((short) schemaId);
+		writeValues(schema, schema.getValues(this, record, null));
+	}
+
+	private void writeValues(RecordSchema schema, Object[] values) {
+		for (int i = 0; i < values.length; i++) {
+			schema.kinds[i].write(this, buffer, values[i]);
+		}
+	}
+
+	/**
+	 * XML of an action or game agent
+	 */
+	byte[] toXML(Object value) {
+		return xstream.toXML(value).getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Write a string as a short length (-1 for null) and the UTF-8 bytes
+	 * @param buffer
+	 * @param str
+	 */
+	static void putString(ByteBuffer buffer, String str) {
+		if (str == null) {
+			buffer.putShort((short) -1);
+			return;
+		}
+		byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length > Short.MAX_VALUE) {
+			throw new IllegalArgumentException("String too long for the world state: " + bytes.length + " bytes");
+		}
+		buffer.putShort((short) bytes.length);
+		buffer.put(bytes);
+	}
+
+	/**
+	 * The number of frames written
+	 * @return
+	 */
+	public int getSequence() {
+		return sequence;
+	}
+}
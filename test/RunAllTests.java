@@ -2,16 +2,44 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 
 import spacesettlers.actions.ActionTests;
+import spacesettlers.clients.TestTeamClientFactory;
+import spacesettlers.clients.knowledge.TestKnowledgeStore;
+import spacesettlers.clients.remote.TestRemoteTeamClient;
+import spacesettlers.configs.TestConfigRepository;
+import spacesettlers.events.EventsTests;
+import spacesettlers.replay.ReplayTests;
 import spacesettlers.simulator.SimulatorTests;
+import spacesettlers.telemetry.TelemetryTests;
 import spacesettlers.utilities.UtilitiesTest;
+import spacesettlers.wire.TestWorldStateEncoder;
+import spacesettlers.ladder.TestAdaptiveScheduler;
+import spacesettlers.ladder.TestGameTournament;
 import spacesettlers.ladder.TestLadder;
+import spacesettlers.ladder.TestLadderCoordinator;
+import spacesettlers.ladder.TestLadderJournal;
+import spacesettlers.ladder.TestLadderKnowledge;
+import spacesettlers.ladder.TestLadderReport;
 
 @RunWith(Suite.class)
 @Suite.SuiteClasses({
   ActionTests.class,
+  TestTeamClientFactory.class,
+  TestKnowledgeStore.class,
+  TestRemoteTeamClient.class,
+  TestConfigRepository.class,
+  EventsTests.class,
+  ReplayTests.class,
   SimulatorTests.class,
+  TelemetryTests.class,
+  TestAdaptiveScheduler.class,
+  TestGameTournament.class,
   TestLadder.class,
+  TestLadderCoordinator.class,
+  TestLadderJournal.class,
+  TestLadderKnowledge.class,
+  TestLadderReport.class,
   UtilitiesTest.class,
+  TestWorldStateEncoder.class,
 })
 
 public class RunAllTests {
@@ -0,0 +1,167 @@
+package spacesettlers.clients;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.nio.file.Files;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import spacesettlers.simulator.SimulatorException;
+
+/**
+ * Test making team clients from class names
+ * @author amy
+ */
+public class TestTeamClientFactory {
+
+	@Before
+	public void setUp() {
+		TeamClientFactory.clear();
+	}
+
+	@After
+	public void tearDown() {
+		TeamClientFactory.clear();
+	}
+
+	@Test
+	public void testNewTeamClient() throws Exception {
+		String className = DoNothingTeamClient.class.getName();
+		TeamClient client1 = TeamClientFactory.newTeamClient(className);
+		TeamClient client2 = TeamClientFactory.newTeamClient(className);
+
+		assertTrue(client1 instanceof DoNothingTeamClient);
+		assertNotSame(client1, client2);
+
+		// the constructor is only looked up once
+		assertSame(TeamClientFactory.getConstructor(className), TeamClientFactory.getConstructor(className));
+	}
+
+	@Test
+	public void testPreload() throws Exception {
+		TeamClientFactory.preload(RandomTeamClient.class.getName());
+		assertTrue(TeamClientFactory.constructors.containsKey(RandomTeamClient.class.getName()));
+	}
+
+	@Test(expected = SimulatorException.class)
+	public void testMissingClass() throws Exception {
+		TeamClientFactory.preload("spacesettlers.clients.NoSuchTeamClient");
+	}
+
+	@Test(expected = SimulatorException.class)
+	public void testNotATeamClient() throws Exception {
+		TeamClientFactory.preload(String.class.getName());
+	}
+
+	@Test(expected = SimulatorException.class)
+	public void testAbstractClient() throws Exception {
+		TeamClientFactory.newTeamClient(TeamClient.class.getName());
+	}
+
+	@Test
+	public void testSharedClasses() {
+		assertTrue(TeamClassLoader.isShared("spacesettlers.clients.TeamClient"));
+		assertTrue(TeamClassLoader.isShared("java.util.HashMap"));
+		assertFalse(TeamClassLoader.isShared("student.StudentTeamClient"));
+		assertFalse(TeamClassLoader.isShared("spacesettlers.clients.examples.ExampleGAClient"));
+	}
+
+	@Test(expected = SimulatorException.class)
+	public void testMissingClassPath() throws Exception {
+		TeamClientFactory.preload(DoNothingTeamClient.class.getName(), "no/such/team.jar");
+	}
+
+	@Test
+	public void testClassLoaderPerClassPath() throws Exception {
+		File dir1 = compileClient();
+		File dir2 = compileClient();
+		String className = "student.CountingTeamClient";
+
+		// one loader for each class path no matter how it is written
+		assertSame(TeamClientFactory.getClassLoader(dir1.getPath()), 
+				TeamClientFactory.getClassLoader(dir1.getAbsolutePath()));
+		assertNotSame(TeamClientFactory.getClassLoader(dir1.getPath()), 
+				TeamClientFactory.getClassLoader(dir2.getPath()));
+
+		TeamClient client1 = TeamClientFactory.newTeamClient(className, dir1.getPath());
+		TeamClientFactory.newTeamClient(className, dir1.getPath());
+		TeamClient client2 = TeamClientFactory.newTeamClient(className, dir2.getPath());
+
+		// each class path gets its own copy of the team's classes (and their statics)
+		// but they share the simulator classes
+		assertNotSame(client1.getClass(), client2.getClass());
+		assertSame(TeamClient.class, client1.getClass().getSuperclass().getSuperclass());
+		assertEquals(2, client1.getClass().getField("numMade").getInt(null));
+		assertEquals(1, client2.getClass().getField("numMade").getInt(null));
+	}
+
+	@Test
+	public void testClassLoaderPerGame() throws Exception {
+		File dir = compileClient();
+		String className = "student.CountingTeamClient";
+
+		// two games of the same team each get their own copy of its classes (and statics)
+		TeamClassLoader loader1 = TeamClientFactory.newGameClassLoader(dir.getPath());
+		TeamClassLoader loader2 = TeamClientFactory.newGameClassLoader(dir.getPath());
+		TeamClient client1 = TeamClientFactory.newTeamClient(className, loader1);
+		TeamClient client2 = TeamClientFactory.newTeamClient(className, loader2);
+
+		assertNotSame(client1.getClass(), client2.getClass());
+		assertEquals(1, client1.getClass().getField("numMade").getInt(null));
+		assertEquals(1, client2.getClass().getField("numMade").getInt(null));
+		TeamClientFactory.closeLoader(loader1);
+		TeamClientFactory.closeLoader(loader2);
+	}
+
+	@Test
+	public void testClassLoaderPerGameWithoutClassPath() throws Exception {
+		String className = "spacesettlers.clients.examples.ExampleGAClient";
+
+		// the example clients on the simulator classpath are team code too
+		TeamClassLoader loader1 = TeamClientFactory.newGameClassLoader(null);
+		TeamClassLoader loader2 = TeamClientFactory.newGameClassLoader(null);
+		Class<?> class1 = loader1.loadClass(className);
+		Class<?> class2 = loader2.loadClass(className);
+
+		assertNotSame(class1, class2);
+		assertSame(TeamClient.class, loader1.loadClass(TeamClient.class.getName()));
+		TeamClientFactory.closeLoader(loader1);
+		TeamClientFactory.closeLoader(loader2);
+	}
+
+	/**
+	 * Compile a small client outside the spacesettlers packages into a new directory
+	 */
+	File compileClient() throws Exception {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		assertNotNull("compiling a client needs a JDK", compiler);
+
+		File dir = Files.createTempDirectory("teamclient").toFile();
+		dir.deleteOnExit();
+		File source = new File(dir, "CountingTeamClient.java");
+		FileWriter writer = new FileWriter(source);
+		writer.write("package student;\n"
+				+ "public class CountingTeamClient extends spacesettlers.clients.DoNothingTeamClient {\n"
+				+ "  public static int numMade = 0;\n"
+				+ "  public CountingTeamClient() { numMade++; }\n"
+				+ "}\n");
+		writer.close();
+
+		int result = compiler.run(null, null, null, "-nowarn", "-cp", System.getProperty("java.class.path"), 
+				"-d", dir.getPath(), source.getPath());
+		assertEquals(0, result);
+		return dir;
+	}
+}
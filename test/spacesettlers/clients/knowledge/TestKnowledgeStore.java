@@ -0,0 +1,203 @@
+package spacesettlers.clients.knowledge;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.file.Files;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import spacesettlers.clients.examples.ExampleGAPopulation;
+
+import com.thoughtworks.xstream.XStream;
+
+/**
+ * Test saving, opening and checkpointing knowledge stores
+ * @author amy
+ */
+public class TestKnowledgeStore {
+	File directory;
+
+	File file;
+
+	@Before
+	public void setUp() throws Exception {
+		directory = Files.createTempDirectory("knowledge").toFile();
+		file = new File(directory, "knowledge.bin");
+	}
+
+	@After
+	public void tearDown() {
+		for (File child : directory.listFiles()) {
+			child.delete();
+		}
+		directory.delete();
+	}
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		KnowledgeStore store = new KnowledgeStore();
+		store.putInts("ints", new int[] {1, -2, 3});
+		store.putLongs("longs", new long[] {Long.MAX_VALUE});
+		store.putFloats("floats", new float[] {0.5f, 1.5f});
+		store.putBytes("bytes", new byte[] {7});
+		DoubleBuffer qTable = store.newDoubles("qTable", 100000);
+		for (int i = 0; i < qTable.capacity(); i++) {
+			qTable.put(i, i * 0.25);
+		}
+		store.save(file);
+
+		// only the knowledge file is left behind
+		assertEquals(1, directory.listFiles().length);
+		assertTrue(KnowledgeStore.isKnowledgeStore(file));
+
+		KnowledgeStore copy = KnowledgeStore.open(file);
+		assertEquals(KnowledgeStore.TableType.INT, copy.getType("ints"));
+		assertEquals(-2, copy.getInts("ints").get(1));
+		assertEquals(Long.MAX_VALUE, copy.getLongs("longs").get(0));
+		assertEquals(1.5f, copy.getFloats("floats").get(1), 0);
+		assertEquals(7, copy.getBytes("bytes").get(0));
+		assertEquals(100000, copy.getLength("qTable"));
+		assertEquals(99999 * 0.25, copy.getDoubles("qTable").get(99999), 0);
+		assertNull(copy.getDoubles("missing"));
+		assertFalse(copy.isChanged());
+
+		try {
+			copy.getDoubles("ints");
+			fail("read ints as doubles");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Large tables are mapped and changing them doesn't change the file until it is saved
+	 */
+	@Test
+	public void testMappedTablesAreCopyOnWrite() throws Exception {
+		KnowledgeStore store = new KnowledgeStore();
+		store.newDoubles("qTable", 1 << 16);
+		store.save(file);
+
+		KnowledgeStore mapped = KnowledgeStore.open(file);
+		assertTrue(mapped.tables.get("qTable").data instanceof MappedByteBuffer);
+		mapped.getDoubles("qTable").put(5, 42);
+		assertEquals(0, KnowledgeStore.open(file).getDoubles("qTable").get(5), 0);
+
+		// save over the file it was mapped from
+		mapped.save(file);
+		assertEquals(42, KnowledgeStore.open(file).getDoubles("qTable").get(5), 0);
+	}
+
+	/**
+	 * Saves of the same file at the same time each write their own temporary file
+	 */
+	@Test
+	public void testConcurrentSaves() throws Exception {
+		Thread[] threads = new Thread[4];
+		final IOException[] errors = new IOException[threads.length];
+		for (int t = 0; t < threads.length; t++) {
+			final int value = t;
+			threads[t] = new Thread(new Runnable() {
+				public void run() {
+					KnowledgeStore store = new KnowledgeStore();
+					store.newInts("value", 1 << 16).put(0, value);
+					try {
+						for (int i = 0; i < 10; i++) {
+							store.save(file);
+						}
+					} catch (IOException e) {
+						errors[value] = e;
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (int t = 0; t < threads.length; t++) {
+			threads[t].join();
+			assertNull(errors[t]);
+		}
+
+		// the file is one of the saves (not a mix of them) and no temporary files are left
+		KnowledgeStore saved = KnowledgeStore.open(file);
+		assertEquals(1 << 16, saved.getLength("value"));
+		assertTrue(saved.getInts("value").get(0) < threads.length);
+		assertEquals(1, directory.listFiles().length);
+	}
+
+	@Test
+	public void testNotAKnowledgeStore() throws Exception {
+		Files.write(file.toPath(), "<ExampleKnowledge/>".getBytes());
+		assertFalse(KnowledgeStore.isKnowledgeStore(file));
+		try {
+			KnowledgeStore.open(file);
+			fail("opened an XML file");
+		} catch (IOException e) {
+			// expected
+		}
+
+		// no file yet is an empty store
+		assertFalse(KnowledgeStore.open(new File(directory, "new.bin")).getNames().iterator().hasNext());
+	}
+
+	@Test
+	public void testCheckpoints() throws Exception {
+		KnowledgeStore store = new KnowledgeStore();
+		KnowledgeCheckpointer checkpointer = new KnowledgeCheckpointer(file, 0);
+		assertFalse(checkpointer.checkpoint(store));
+
+		IntBuffer counts = store.newInts("counts", 10);
+		counts.put(0, 1);
+		assertTrue(checkpointer.checkpoint(store));
+		assertFalse(store.isChanged());
+
+		// the copy was taken at the checkpoint so this change waits for the next one
+		counts.put(0, 2);
+		checkpointer.close();
+		assertEquals(1, checkpointer.getNumCheckpoints());
+		assertEquals(1, KnowledgeStore.open(file).getInts("counts").get(0));
+
+		store.markChanged();
+		store.save(file);
+		assertEquals(2, KnowledgeStore.open(file).getInts("counts").get(0));
+	}
+
+	/**
+	 * An old gzipped XStream knowledge file is imported and saved in the new format
+	 */
+	@Test
+	public void testImportXML() throws Exception {
+		XStream xstream = new XStream();
+		xstream.allowTypesByWildcard(new String[] {"spacesettlers.**"});
+		xstream.alias("ExampleGAPopulation", ExampleGAPopulation.class);
+		File xmlFile = new File(directory, "population.xml.gz");
+		try (OutputStream output = new GZIPOutputStream(new FileOutputStream(xmlFile))) {
+			xstream.toXML(new ExampleGAPopulation(5), output);
+		}
+		assertFalse(KnowledgeStore.isKnowledgeStore(xmlFile));
+
+		ExampleGAPopulation population = (ExampleGAPopulation) KnowledgeStore.importXML(xmlFile, xstream);
+		KnowledgeStore store = new KnowledgeStore();
+		population.writeKnowledge(store);
+		store.save(file);
+
+		KnowledgeStore copy = KnowledgeStore.open(file);
+		assertEquals(5, copy.getLength("population.fitness"));
+		assertNotNull(ExampleGAPopulation.readKnowledge(copy));
+		assertNull(ExampleGAPopulation.readKnowledge(new KnowledgeStore()));
+	}
+}
@@ -0,0 +1,184 @@
+package spacesettlers.clients.remote;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.awt.Color;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import spacesettlers.actions.AbstractAction;
+import spacesettlers.actions.DoNothingAction;
+import spacesettlers.actions.PurchaseCosts;
+import spacesettlers.actions.PurchaseTypes;
+import spacesettlers.clients.ClientPhase;
+import spacesettlers.configs.ConfigRepository;
+import spacesettlers.configs.TeamClientConfig;
+import spacesettlers.graphics.SpacewarGraphics;
+import spacesettlers.objects.AbstractActionableObject;
+import spacesettlers.objects.Ship;
+import spacesettlers.objects.resources.ResourcePile;
+import spacesettlers.simulator.Toroidal2DPhysics;
+import spacesettlers.utilities.Position;
+
+public class TestRemoteTeamClient {
+	File ringFile;
+	Toroidal2DPhysics space;
+	Ship ship;
+	RemoteTeamClient client;
+
+	@Before
+	public void setUp() throws Exception {
+		ringFile = File.createTempFile("test", ".ring");
+		space = new Toroidal2DPhysics(480, 640, 0.05);
+		ship = new Ship("team1", Color.BLUE, new Position(100, 200));
+		space.addObject(ship);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (client != null) {
+			client.close();
+		}
+		ringFile.delete();
+	}
+
+	RemoteTeamClient makeClient(String className) throws Exception {
+		TeamClientConfig config = (TeamClientConfig) ConfigRepository.fromXML("<TeamClientConfig><classname>"
+				+ className + "</classname><separateProcess>true</separateProcess>"
+				+ "<maximumMemoryMB>128</maximumMemoryMB></TeamClientConfig>");
+		RemoteTeamClient remote = new RemoteTeamClient(config);
+		remote.setTeamName("team1");
+		remote.setTeamColor(Color.BLUE);
+		remote.setRandom(new Random(0));
+		remote.setMaxNumberShips(1);
+		return remote;
+	}
+
+	/**
+	 * Snapshots are read back from another mapping of the file and wrap to the start of the ring
+	 */
+	@Test
+	public void testRingBuffer() throws Exception {
+		SnapshotRingBuffer writer = SnapshotRingBuffer.create(ringFile, 64);
+		SnapshotRingBuffer reader = SnapshotRingBuffer.open(ringFile);
+		assertEquals(64, reader.getCapacity());
+
+		byte[] bytes = new byte[20];
+		for (int i = 0; i < 4; i++) {
+			bytes[0] = (byte) i;
+			int offset = writer.write(bytes, bytes.length);
+			assertEquals(i % 2 == 0 ? 0 : 28, offset);
+			ByteBuffer snapshot = reader.read(offset, writer.getSequence());
+			assertEquals(bytes.length, snapshot.remaining());
+			assertEquals(i, snapshot.get(0));
+		}
+
+		assertFalse(writer.fits(57));
+		try {
+			reader.read(0, writer.getSequence() - 2);
+			fail("read an overwritten snapshot");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testXStreamCodec() throws Exception {
+		XStreamWorldStateCodec codec = new XStreamWorldStateCodec();
+		Toroidal2DPhysics copy = codec.decode(ByteBuffer.wrap(codec.encode(space.deepClone())));
+		Ship copiedShip = (Ship) copy.getObjectById(ship.getId());
+		assertEquals(100, copiedShip.getPosition().getX(), 0);
+		assertEquals(200, copiedShip.getPosition().getY(), 0);
+	}
+
+	@Test
+	public void testBinaryCodec() throws Exception {
+		BinaryWorldStateCodec encoder = new BinaryWorldStateCodec(getClass().getClassLoader());
+		BinaryWorldStateCodec decoder = new BinaryWorldStateCodec(getClass().getClassLoader());
+		decoder.decode(ByteBuffer.wrap(encoder.encode(space.deepClone())));
+		ship.getPosition().setX(150);
+		Toroidal2DPhysics copy = decoder.decode(ByteBuffer.wrap(encoder.encode(space.deepClone())));
+		Ship copiedShip = (Ship) copy.getObjectById(ship.getId());
+		assertEquals(150, copiedShip.getPosition().getX(), 0);
+		assertEquals(200, copiedShip.getPosition().getY(), 0);
+	}
+
+	/**
+	 * A client in its own process gets the space and its ships and its actions come back
+	 */
+	@Test
+	public void testRemoteClient() throws Exception {
+		client = makeClient("spacesettlers.clients.DoNothingTeamClient");
+		client.initialize(space.deepClone());
+
+		Set<AbstractActionableObject> ships = new HashSet<AbstractActionableObject>();
+		ships.add(ship);
+		for (int step = 0; step < 3; step++) {
+			Map<UUID, AbstractAction> actions = client.getMovementStart(space.deepClone(), ships);
+			assertEquals(1, actions.size());
+			assertTrue(actions.get(ship.getId()) instanceof DoNothingAction);
+		}
+
+		Map<UUID, PurchaseTypes> purchases = client.getTeamPurchases(space.deepClone(), ships,
+				new ResourcePile(), new PurchaseCosts());
+		assertTrue(purchases.isEmpty());
+
+		client.shutDown(space.deepClone());
+		assertTrue(client.process.waitFor(10, TimeUnit.SECONDS));
+		assertFalse(client.ring.getFile().exists());
+	}
+
+	/**
+	 * A client that never answers is killed and does nothing after that
+	 */
+	@Test
+	public void testStuckClientIsKilled() throws Exception {
+		client = makeClient("spacesettlers.clients.InfiniteLoopTeamClient");
+		client.initialize(space.deepClone());
+
+		Set<AbstractActionableObject> ships = new HashSet<AbstractActionableObject>();
+		ships.add(ship);
+		long start = System.currentTimeMillis();
+		assertTrue(client.call(RemoteTeamClient.CALL, ClientPhase.MOVEMENT_START,
+				space.deepClone(), ships, null, 500) == null);
+		assertTrue(System.currentTimeMillis() - start < 5000);
+		assertTrue(client.isStopped());
+		assertTrue(client.getMovementStart(space.deepClone(), ships).isEmpty());
+		assertTrue(client.process.waitFor(10, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * Answers of the wrong type are dropped instead of reaching the simulator
+	 */
+	@Test
+	public void testAnswersAreTypeChecked() throws Exception {
+		RemoteTeamClient remote = makeClient("spacesettlers.clients.DoNothingTeamClient");
+		HashMap<Object, Object> answer = new HashMap<Object, Object>();
+		answer.put(ship.getId(), new DoNothingAction());
+		assertEquals(1, remote.toMap(answer, UUID.class, AbstractAction.class).size());
+
+		answer.put(ship.getId(), "not an action");
+		assertTrue(remote.toMap(answer, UUID.class, AbstractAction.class).isEmpty());
+		answer.clear();
+		answer.put("not an id", new DoNothingAction());
+		assertTrue(remote.toMap(answer, UUID.class, AbstractAction.class).isEmpty());
+		assertTrue(remote.toMap("not a map", UUID.class, AbstractAction.class).isEmpty());
+		assertTrue(remote.toSet(answer, SpacewarGraphics.class).isEmpty());
+		assertTrue(remote.toSet(null, SpacewarGraphics.class).isEmpty());
+	}
+}
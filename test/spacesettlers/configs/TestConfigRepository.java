@@ -0,0 +1,106 @@
+package spacesettlers.configs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.FileWriter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import spacesettlers.simulator.SimulatorException;
+
+/**
+ * Test that config files are parsed once and each caller gets its own copy
+ * @author amy
+ */
+public class TestConfigRepository {
+	File file;
+
+	static final String SIM_CONFIG = "<SpaceSettlersConfig>\n"
+			+ "<height>1080</height>\n"
+			+ "<width>1600</width>\n"
+			+ "<simulationSteps>100</simulationSteps>\n"
+			+ "<teams><HighLevelTeamConfig><teamName>A</teamName><configFile>a.xml</configFile></HighLevelTeamConfig></teams>\n"
+			+ "<bases><BaseConfig><teamName>A</teamName><x>10</x><y>20</y></BaseConfig></bases>\n"
+			+ "<flags><FlagConfig><teamName>A</teamName><startX><int>5</int></startX><startY><int>6</int></startY></FlagConfig></flags>\n"
+			+ "</SpaceSettlersConfig>\n";
+
+	@Before
+	public void setUp() throws Exception {
+		ConfigRepository.clear();
+		file = File.createTempFile("config", ".xml");
+		write(SIM_CONFIG);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		file.delete();
+		ConfigRepository.clear();
+	}
+
+	void write(String contents) throws Exception {
+		FileWriter writer = new FileWriter(file);
+		writer.write(contents);
+		writer.close();
+	}
+
+	@Test
+	public void testParsedOnce() throws Exception {
+		SpaceSettlersConfig config1 = ConfigRepository.getSpaceSettlersConfig(file.getPath());
+		Object template = ConfigRepository.getTemplate(file.getPath(), SpaceSettlersConfig.class);
+		SpaceSettlersConfig config2 = ConfigRepository.getSpaceSettlersConfig(file.getPath());
+
+		assertSame(template, ConfigRepository.getTemplate(file.getPath(), SpaceSettlersConfig.class));
+		assertEquals(1, ConfigRepository.cache.size());
+		assertNotSame(config1, config2);
+		assertEquals(1600, config2.getWidth());
+		assertEquals("A", config2.getTeams()[0].getTeamName());
+		assertEquals(20, config2.getBases()[0].getY());
+	}
+
+	/**
+	 * Changing a copy doesn't change the template or the other copies
+	 */
+	@Test
+	public void testCopiesAreIndependent() throws Exception {
+		SpaceSettlersConfig config1 = ConfigRepository.getSpaceSettlersConfig(file.getPath());
+		config1.getTeams()[0].setTeamName("B");
+		config1.getBases()[0].setTeamName("B");
+		config1.getFlags()[0].setTeamName("B");
+		config1.getFlags()[0].getStartX()[0] = 50;
+		config1.setReplayFile("replay.ssrp");
+
+		SpaceSettlersConfig config2 = ConfigRepository.getSpaceSettlersConfig(file.getPath());
+		assertEquals("A", config2.getTeams()[0].getTeamName());
+		assertEquals("A", config2.getBases()[0].getTeamName());
+		assertEquals("A", config2.getFlags()[0].getTeamName());
+		assertEquals(5, config2.getFlags()[0].getStartX()[0]);
+		assertEquals(null, config2.getReplayFile());
+	}
+
+	/**
+	 * The file is parsed again if it changes
+	 */
+	@Test
+	public void testReloadWhenChanged() throws Exception {
+		assertEquals(100, ConfigRepository.getSpaceSettlersConfig(file.getPath()).getSimulationSteps());
+
+		write(SIM_CONFIG.replace("<simulationSteps>100", "<simulationSteps>200"));
+		file.setLastModified(file.lastModified() + 2000);
+		assertEquals(200, ConfigRepository.getSpaceSettlersConfig(file.getPath()).getSimulationSteps());
+	}
+
+	@Test(expected = SimulatorException.class)
+	public void testWrongType() throws Exception {
+		ConfigRepository.getLadderConfig(file.getPath());
+	}
+
+	@Test(expected = SimulatorException.class)
+	public void testMissingFile() throws Exception {
+		ConfigRepository.getTeamClientConfig(file.getPath() + ".missing");
+	}
+}
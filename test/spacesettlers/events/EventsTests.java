@@ -0,0 +1,13 @@
+package spacesettlers.events;
+
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+
+@RunWith(Suite.class)
+@Suite.SuiteClasses({
+  TestEvents.class,
+})
+
+public class EventsTests {
+
+}
@@ -0,0 +1,107 @@
+package spacesettlers.events;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Color;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import spacesettlers.objects.Beacon;
+import spacesettlers.objects.Ship;
+import spacesettlers.simulator.CollisionHandler;
+import spacesettlers.simulator.Toroidal2DPhysics;
+import spacesettlers.utilities.Position;
+
+/**
+ * Checks that the physics and collision handler emit flight recorder events
+ * @author amy
+ *
+ */
+public class TestEvents {
+	Toroidal2DPhysics space;
+	Recording recording;
+	File recordingFile;
+
+	@Before
+	public void setUp() throws Exception {
+		space = new Toroidal2DPhysics(480, 640, 1);
+		recording = new Recording();
+		recording.enable("spacesettlers.ObjectSpawn");
+		recording.enable("spacesettlers.ObjectDeath");
+		recording.enable("spacesettlers.Collision");
+		recording.start();
+		recordingFile = File.createTempFile("events", ".jfr");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		recording.close();
+		recordingFile.delete();
+	}
+
+	private List<RecordedEvent> stopAndRead() throws IOException {
+		recording.stop();
+		recording.dump(recordingFile.toPath());
+		return RecordingFile.readAllEvents(recordingFile.toPath());
+	}
+
+	private int count(List<RecordedEvent> events, String name) {
+		int count = 0;
+		for (RecordedEvent event : events) {
+			if (event.getEventType().getName().equals(name)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@Test
+	public void testSpawnAndDeath() throws IOException {
+		Ship ship = new Ship("team1", Color.BLUE, new Position(10, 20));
+		Beacon beacon = new Beacon(new Position(100, 200));
+		space.addObject(ship);
+		space.addObject(beacon);
+
+		// clones are made for every client call and should not be recorded
+		space.deepClone();
+
+		space.removeObject(beacon);
+
+		List<RecordedEvent> events = stopAndRead();
+		assertEquals(2, count(events, "spacesettlers.ObjectSpawn"));
+		assertEquals(1, count(events, "spacesettlers.ObjectDeath"));
+		for (RecordedEvent event : events) {
+			if (event.getEventType().getName().equals("spacesettlers.ObjectDeath")) {
+				assertEquals("Beacon", event.getString("objectType"));
+				assertEquals(100, event.getDouble("x"), 0.001);
+			}
+		}
+	}
+
+	@Test
+	public void testCollisionTypePair() throws IOException {
+		Ship ship = new Ship("team1", Color.BLUE, new Position(100, 100));
+		Beacon beacon = new Beacon(new Position(105, 100));
+		space.addObject(ship);
+		space.addObject(beacon);
+
+		new CollisionHandler().collide(beacon, ship, space);
+
+		List<RecordedEvent> events = stopAndRead();
+		assertEquals(1, count(events, "spacesettlers.Collision"));
+		for (RecordedEvent event : events) {
+			if (event.getEventType().getName().equals("spacesettlers.Collision")) {
+				assertEquals("Beacon", event.getString("type1"));
+				assertEquals("Beacon-Ship", event.getString("typePair"));
+			}
+		}
+	}
+}
@@ -5,7 +5,8 @@ import org.junit.runners.Suite;
 
 @RunWith(Suite.class)
 @Suite.SuiteClasses({
-  TestTicTacToe3D.class, TestTicTacToe2D.class, TestMancala.class,
+  TestTicTacToe3D.class, TestTicTacToe2D.class, TestMancala.class, TestGameTreeSearch.class, TestMctsGameAgent.class,
+  TestTicTacToeTable.class,
 })
 
 public class GameTests {
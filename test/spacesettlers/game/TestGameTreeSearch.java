@@ -0,0 +1,123 @@
+package spacesettlers.game;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Check the search finds wins, blocks losses, plays tic tac toe perfectly and stops on time
+ * @author amy
+ *
+ */
+public class TestGameTreeSearch {
+	GameTreeSearch search;
+
+	private static final class MockAbstractGameAgent extends AbstractGameAgent {
+		@Override
+		public AbstractGameAction getNextMove(AbstractGame game) {
+			return null;
+		}
+	}
+
+	private static final MockAbstractGameAgent mockAgent1 = new MockAbstractGameAgent();
+	private static final MockAbstractGameAgent mockAgent2 = new MockAbstractGameAgent();
+
+	@Before
+	public void setUp() throws Exception {
+		search = new GameTreeSearch(12);
+	}
+
+	private long deadline(long millis) {
+		return System.nanoTime() + millis * 1000000L;
+	}
+
+	@Test
+	public void testWinInOne() {
+		int [][] board = new int[3][3];
+		board[0][0] = 1;
+		board[0][1] = 1;
+		board[1][0] = 2;
+		board[1][1] = 2;
+		TicTacToe2D game = new TicTacToe2D(board, true, mockAgent1, mockAgent2);
+
+		int move = search.search(game.copyForSearch(), deadline(1000), GameTreeSearch.MAX_PLY);
+		assertEquals(2, move);
+		assertEquals(GameTreeSearch.WIN_SCORE - 1, search.getBestScore());
+	}
+
+	@Test
+	public void testBlock() {
+		int [][] board = new int[3][3];
+		board[0][0] = 1;
+		board[2][1] = 1;
+		board[1][0] = 2;
+		board[1][1] = 2;
+		TicTacToe2D game = new TicTacToe2D(board, true, mockAgent1, mockAgent2);
+
+		int move = search.search(game.copyForSearch(), deadline(1000), GameTreeSearch.MAX_PLY);
+		assertEquals(5, move);
+	}
+
+	@Test
+	public void testEmptyBoardIsATie() {
+		TicTacToe2D game = new TicTacToe2D(new int[3][3], true, mockAgent1, mockAgent2);
+		search.search(game.copyForSearch(), deadline(5000), GameTreeSearch.MAX_PLY);
+		assertEquals(0, search.getBestScore());
+		assertTrue(search.getCompletedDepth() <= 9);
+
+		// and two searching agents always tie each other
+		SearchGameAgent agent1 = new SearchGameAgent(1000, GameTreeSearch.MAX_PLY);
+		SearchGameAgent agent2 = new SearchGameAgent(1000, GameTreeSearch.MAX_PLY);
+		game = new TicTacToe2D(agent1, agent2);
+		while (!game.isGameOver()) {
+			game.playAction(game.getCurrentPlayer().getNextMove(game));
+		}
+		assertEquals(-1, game.getWinner());
+	}
+
+	@Test
+	public void testHashMakeUnmake() {
+		TicTacToe3D game = new TicTacToe3D(new int[3][3][3], true, mockAgent1, mockAgent2);
+		long emptyHash = game.getHash();
+
+		game.makeMove(0);
+		game.makeMove(13);
+		game.makeMove(26);
+		long hash = game.getHash();
+		assertNotEquals(emptyHash, hash);
+
+		game.unmakeMove(26);
+		game.unmakeMove(13);
+		game.unmakeMove(0);
+		assertEquals(emptyHash, game.getHash());
+
+		// the same position reached in a different order has the same hash
+		game.makeMove(26);
+		game.makeMove(13);
+		game.makeMove(0);
+		assertEquals(hash, game.getHash());
+
+		// and matches a board set up from an array
+		int [][][] board = new int[3][3][3];
+		board[0][0][0] = 1;
+		board[1][1][1] = 2;
+		board[2][2][2] = 1;
+		assertEquals(hash, new TicTacToe3D(board, false, mockAgent1, mockAgent2).getHash());
+	}
+
+	@Test
+	public void testDeadline() {
+		TicTacToe3D game = new TicTacToe3D(new int[3][3][3], true, mockAgent1, mockAgent2);
+
+		long startTime = System.nanoTime();
+		int move = search.search(game.copyForSearch(), deadline(20), GameTreeSearch.MAX_PLY);
+		long elapsedMillis = (System.nanoTime() - startTime) / 1000000;
+
+		assertTrue("took " + elapsedMillis + "ms", elapsedMillis < 500);
+		assertTrue(move >= 0 && move < TicTacToe3DBoard.NUM_CELLS);
+		assertTrue(search.getCompletedDepth() >= 1);
+	}
+}
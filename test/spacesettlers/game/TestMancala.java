@@ -1,7 +1,132 @@
 package spacesettlers.game;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
 /**
  * Test mancala boards
  */
 public class TestMancala {
+	private static final class MockAbstractGameAgent extends AbstractGameAgent {
+		@Override
+		public AbstractGameAction getNextMove(AbstractGame game) {
+			return null;
+		}
+	}
+
+	private static final MockAbstractGameAgent mockAgent1 = new MockAbstractGameAgent();
+	private static final MockAbstractGameAgent mockAgent2 = new MockAbstractGameAgent();
+
+	@Test
+	public void testNewBoard() {
+		MancalaBoard board = new MancalaBoard();
+		assertEquals(24, board.getStonesOnSide(AbstractGame.player1));
+		assertEquals(24, board.getStonesOnSide(AbstractGame.player2));
+		assertEquals(0, board.getStore(AbstractGame.player1));
+		assertFalse(board.isGameOver());
+		assertEquals(0, board.getWinningPlayer());
+	}
+
+	/**
+	 * Pit 2 has 4 stones so the last lands in the store and player 1 goes again
+	 */
+	@Test
+	public void testExtraTurn() {
+		Mancala game = new Mancala(new MancalaBoard().getBoard(), true, mockAgent1, mockAgent2);
+		game.playAction(new MancalaAction(2));
+		MancalaBoard board = (MancalaBoard) game.getBoard();
+		assertArrayEquals(new int[] {4, 4, 0, 5, 5, 5, 1, 4, 4, 4, 4, 4, 4, 0}, board.getBoard());
+		assertTrue(game.getTurn());
+
+		// and pit 0 doesn't reach the store so it's player 2's turn
+		game.playAction(new MancalaAction(0));
+		assertFalse(game.getTurn());
+	}
+
+	/**
+	 * Sowing skips the opponent's store and the last stone in an empty pit captures
+	 */
+	@Test
+	public void testSkipStoreAndCapture() {
+		int[] pits = new int[14];
+		pits[5] = 9;	// goes 6 (store), 7-12, skips 13, then 0 and 1
+		pits[1] = 0;
+		pits[11] = 3;	// opposite pit 1
+		pits[3] = 1;	// keep a stone on player 1's side
+		Mancala game = new Mancala(pits, true, mockAgent1, mockAgent2);
+		game.playAction(new MancalaAction(5));
+
+		MancalaBoard board = (MancalaBoard) game.getBoard();
+		assertEquals(0, board.getNumStones(MancalaBoard.PLAYER2_STORE));
+		assertEquals(1, board.getNumStones(0));
+		// captured the last stone in pit 1 plus the 4 opposite it
+		assertEquals(0, board.getNumStones(1));
+		assertEquals(0, board.getNumStones(11));
+		assertEquals(1 + 1 + 4, board.getStore(AbstractGame.player1));
+	}
+
+	/**
+	 * When one side empties, the other side is swept into its store
+	 */
+	@Test
+	public void testEndGameSweep() {
+		int[] pits = new int[14];
+		pits[5] = 1;
+		pits[6] = 20;
+		pits[7] = 3;
+		pits[12] = 2;
+		pits[13] = 22;
+		Mancala game = new Mancala(pits, true, mockAgent1, mockAgent2);
+		game.playAction(new MancalaAction(5));
+
+		assertTrue(game.isGameOver());
+		MancalaBoard board = (MancalaBoard) game.getBoard();
+		assertEquals(21, board.getStore(AbstractGame.player1));
+		assertEquals(27, board.getStore(AbstractGame.player2));
+		assertEquals(AbstractGame.player2, game.getWinner());
+	}
+
+	@Test
+	public void testMakeUnmakeAndHash() {
+		Mancala game = new Mancala(new MancalaBoard().getBoard(), true, mockAgent1, mockAgent2);
+		int[] start = ((MancalaBoard) game.getBoard()).getBoard();
+		long startHash = game.getHash();
+
+		game.makeMove(2);
+		game.makeMove(5);
+		game.makeMove(0);
+		assertNotEquals(startHash, game.getHash());
+
+		game.unmakeMove(0);
+		game.unmakeMove(5);
+		game.unmakeMove(2);
+		assertArrayEquals(start, ((MancalaBoard) game.getBoard()).getBoard());
+		assertEquals(startHash, game.getHash());
+		assertTrue(game.getTurn());
+	}
+
+	/**
+	 * Searching and heuristic agents can play full games
+	 */
+	@Test
+	public void testFullGames() {
+		for (int i = 0; i < 3; i++) {
+			SearchGameAgent searchAgent = new SearchGameAgent(20, GameTreeSearch.MAX_PLY);
+			HeuristicGameAgent heuristicAgent = new HeuristicGameAgent();
+			Mancala game = new Mancala(searchAgent, heuristicAgent);
+			int numMoves = 0;
+			while (!game.isGameOver()) {
+				game.playAction(game.getCurrentPlayer().getNextMove(game));
+				numMoves++;
+				assertTrue(numMoves < 500);
+			}
+			MancalaBoard board = (MancalaBoard) game.getBoard();
+			assertEquals(MancalaBoard.TOTAL_STONES, board.getStore(AbstractGame.player1) + board.getStore(AbstractGame.player2));
+		}
+	}
 }
@@ -0,0 +1,104 @@
+package spacesettlers.game;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Check the Monte Carlo agent finds obvious moves, uses all its workers and stops on time
+ * @author amy
+ *
+ */
+public class TestMctsGameAgent {
+	MctsGameAgent agent, parallelAgent;
+
+	private static final class MockAbstractGameAgent extends AbstractGameAgent {
+		@Override
+		public AbstractGameAction getNextMove(AbstractGame game) {
+			return null;
+		}
+	}
+
+	private static final MockAbstractGameAgent mockAgent = new MockAbstractGameAgent();
+
+	@Before
+	public void setUp() throws Exception {
+		agent = new MctsGameAgent(5000, 1, 1 << 14);
+		agent.setMaxIterations(5000);
+		parallelAgent = new MctsGameAgent(50, 4, 1 << 16);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		agent.shutdown();
+		parallelAgent.shutdown();
+	}
+
+	@Test
+	public void testWinInOne() {
+		int [][] board = new int[3][3];
+		board[0][0] = 1;
+		board[0][1] = 1;
+		board[1][0] = 2;
+		board[1][1] = 2;
+		TicTacToe2D game = new TicTacToe2D(board, true, agent, mockAgent);
+
+		TicTacToe2DAction action = (TicTacToe2DAction) agent.getNextMove(game);
+		assertEquals(0, action.getRow());
+		assertEquals(2, action.getCol());
+		assertEquals(5000, agent.getNumIterations());
+	}
+
+	@Test
+	public void testBlock() {
+		int [][] board = new int[3][3];
+		board[0][0] = 1;
+		board[2][1] = 1;
+		board[1][0] = 2;
+		board[1][1] = 2;
+		TicTacToe2D game = new TicTacToe2D(board, true, agent, mockAgent);
+
+		TicTacToe2DAction action = (TicTacToe2DAction) agent.getNextMove(game);
+		assertEquals(1, action.getRow());
+		assertEquals(2, action.getCol());
+	}
+
+	@Test
+	public void testParallelBudget() {
+		TicTacToe3D game = new TicTacToe3D(new int[3][3][3], true, parallelAgent, mockAgent);
+
+		long startTime = System.nanoTime();
+		TicTacToe3DAction action = (TicTacToe3DAction) parallelAgent.getNextMove(game);
+		long elapsedMillis = (System.nanoTime() - startTime) / 1000000;
+
+		assertTrue("took " + elapsedMillis + "ms", elapsedMillis < 500);
+		assertTrue(parallelAgent.getNumIterations() > 0);
+		assertTrue(parallelAgent.getNumNodes() > 1);
+
+		// the game itself wasn't changed by the search
+		assertEquals(0, game.myBoard.getPlayerMask(1) | game.myBoard.getPlayerMask(2));
+		assertNotEquals(null, action);
+	}
+
+	@Test
+	public void testNeverLosesToHeuristic() {
+		MctsGameAgent player = new MctsGameAgent(1000, 2, 1 << 16);
+		player.setMaxIterations(20000);
+		try {
+			for (int i = 0; i < 4; i++) {
+				HeuristicGameAgent heuristic = new HeuristicGameAgent();
+				TicTacToe2D game = new TicTacToe2D(player, heuristic);
+				while (!game.isGameOver()) {
+					game.playAction(game.getCurrentPlayer().getNextMove(game));
+				}
+				assertNotEquals(heuristic.getPlayer(), game.getWinner());
+			}
+		} finally {
+			player.shutdown();
+		}
+	}
+}
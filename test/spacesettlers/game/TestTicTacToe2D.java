@@ -152,8 +152,52 @@ public class TestTicTacToe2D {
 		game = new TicTacToe2D(board, true, mockAgent, mockAgent);
 		assertTrue(game.isGameOver());
 	}
-	
 
-	
-	
-}
\ No newline at end of file
+	/**
+	 * A full bottom two rows with an empty square in the top row is not a tie
+	 */
+	@Test
+	public void testNotTieWithEmptyTopRow() {
+		int [][] board = new int[3][3];
+		// 1 2 0
+		// 2 1 1
+		// 2 1 2
+		board[0][0] = 1;
+		board[0][1] = 2;
+		board[1][0] = 2;
+		board[1][1] = 1;
+		board[1][2] = 1;
+		board[2][0] = 2;
+		board[2][1] = 1;
+		board[2][2] = 2;
+		game = new TicTacToe2D(board, true, mockAgent, mockAgent);
+		assertFalse(game.isGameOver());
+	}
+
+	/**
+	 * Make and unmake moves and check the array view matches
+	 */
+	@Test
+	public void testMakeUnmakeMove() {
+		TicTacToe2DBoard board = new TicTacToe2DBoard();
+		TicTacToe2DAction center = new TicTacToe2DAction(1, 1);
+		board.makeMove(center, 1);
+		// a move in a taken square is ignored
+		board.makeMove(center, 2);
+		assertEquals(1, board.getCell(1, 1));
+		assertEquals(1, board.getBoard()[1][1]);
+		assertEquals(TicTacToe2DBoard.FULL_MASK & ~TicTacToe2DBoard.getCellBit(1, 1), board.getEmptyMask());
+
+		board.makeMove(new TicTacToe2DAction(0, 0), 1);
+		board.makeMove(new TicTacToe2DAction(2, 2), 1);
+		assertEquals(1, board.getWinningPlayer());
+
+		board.unMakeMove(center);
+		assertEquals(0, board.getWinningPlayer());
+		assertEquals(0, board.getCell(1, 1));
+
+		TicTacToe2DBoard copy = new TicTacToe2DBoard();
+		copy.setBoard(board.getBoard());
+		assertEquals(board.toString(), copy.toString());
+	}
+}
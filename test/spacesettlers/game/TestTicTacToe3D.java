@@ -1,5 +1,6 @@
 package spacesettlers.game;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -217,6 +218,40 @@ public class TestTicTacToe3D {
 
 		
 	}
-	
-	
-}
\ No newline at end of file
+
+	/**
+	 * Every straight line through the cube wins (including the 3D diagonals on the
+	 * outside faces)
+	 */
+	@Test
+	public void testAllWinLines() {
+		assertEquals(49, TicTacToe3DBoard.WIN_LINES.length);
+
+		int [][][] board = new int[3][3][3];
+		board[0][2][0] = 2;
+		board[1][2][1] = 2;
+		board[2][2][2] = 2;
+		game = new TicTacToe3D(board, true, mockAgent, mockAgent);
+		assertTrue(game.isGameOver());
+		assertEquals(2, game.getWinner());
+	}
+
+	/**
+	 * Make and unmake moves and check the array view matches
+	 */
+	@Test
+	public void testMakeUnmakeMove() {
+		TicTacToe3DBoard board = new TicTacToe3DBoard();
+		TicTacToe3DAction move = new TicTacToe3DAction(2, 1, 0);
+		board.makeMove(move, 2);
+		assertEquals(2, board.getCell(2, 1, 0));
+		assertEquals(2, board.getBoard()[2][1][0]);
+		assertEquals(TicTacToe3DBoard.getCellBit(2, 1, 0), board.getPlayerMask(2));
+
+		TicTacToe3DBoard clone = board.deepClone();
+		board.unMakeMove(move);
+		assertEquals(0, board.getCell(2, 1, 0));
+		assertEquals(2, clone.getCell(2, 1, 0));
+		assertEquals(0, board.getWinningPlayer());
+	}
+}
@@ -0,0 +1,156 @@
+package spacesettlers.game;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Test the perfect play tables for tic tac toe
+ * @author amy
+ */
+public class TestTicTacToeTable {
+
+	/**
+	 * Boards that are rotations or reflections of each other have the same key
+	 */
+	@Test
+	public void testCanonicalKey() {
+		TicTacToeTable table = TicTacToeTable.get2DTable();
+		// corner and center against the other three corners (and the center on its own)
+		int corner = TicTacToe2DBoard.getCellBit(0, 0);
+		int center = TicTacToe2DBoard.getCellBit(1, 1);
+		long key = table.getKey(corner, center);
+		assertEquals(key, table.getKey(TicTacToe2DBoard.getCellBit(0, 2), center));
+		assertEquals(key, table.getKey(TicTacToe2DBoard.getCellBit(2, 0), center));
+		assertEquals(key, table.getKey(TicTacToe2DBoard.getCellBit(2, 2), center));
+		assertNotEquals(key, table.getKey(TicTacToe2DBoard.getCellBit(0, 1), center));
+		assertNotEquals(key, table.getKey(center, corner));
+
+		TicTacToeTable table3D = TicTacToeTable.get3DTable();
+		assertEquals(table3D.getKey(TicTacToe3DBoard.getCellBit(0, 0, 0), 0),
+				table3D.getKey(TicTacToe3DBoard.getCellBit(2, 0, 2), 0));
+		assertEquals(table3D.getKey(TicTacToe3DBoard.getCellBit(0, 1, 1), 0),
+				table3D.getKey(TicTacToe3DBoard.getCellBit(1, 1, 2), 0));
+	}
+
+	/**
+	 * 2D tic tac toe is a draw and 3D is a win for the first player
+	 */
+	@Test
+	public void testGameValues() {
+		assertEquals(TicTacToeTable.DRAW, TicTacToeTable.get2DTable().getValue(0, 0));
+		assertEquals(TicTacToeTable.WIN, TicTacToeTable.get3DTable().getValue(0, 0));
+
+		// player to move has two in a row with the third square open
+		int mine = TicTacToe2DBoard.getCellBit(0, 0) | TicTacToe2DBoard.getCellBit(0, 1);
+		int theirs = TicTacToe2DBoard.getCellBit(1, 1) | TicTacToe2DBoard.getCellBit(2, 2);
+		assertEquals(TicTacToeTable.WIN, TicTacToeTable.get2DTable().getValue(mine, theirs));
+		assertEquals(2, TicTacToeTable.get2DTable().getBestMove(mine, theirs));
+	}
+
+	/**
+	 * The table agrees with an exhaustive search on random positions
+	 */
+	@Test
+	public void testAgreesWithSearch() {
+		TicTacToeTable table = TicTacToeTable.get2DTable();
+		GameTreeSearch search = new GameTreeSearch();
+		Random random = new Random(36);
+		AbstractGameAgent agent = new HeuristicGameAgent();
+		for (int i = 0; i < 100; i++) {
+			TicTacToe2D game = new TicTacToe2D(new int[3][3], true, agent, new HeuristicGameAgent());
+			int numMoves = random.nextInt(6);
+			int[] moves = new int[TicTacToe2DBoard.NUM_CELLS];
+			for (int move = 0; move < numMoves && !game.isGameOver(); move++) {
+				game.makeMove(moves[random.nextInt(game.getLegalMoves(moves))]);
+			}
+			if (game.isGameOver()) {
+				continue;
+			}
+
+			search.search(game.copyForSearch(), Long.MAX_VALUE, GameTreeSearch.MAX_PLY);
+			int score = search.getBestScore();
+			int player = game.getCurrentPlayerNumber();
+			int mine = game.myBoard.getPlayerMask(player);
+			int theirs = game.myBoard.getPlayerMask(player == AbstractGame.player1 ? AbstractGame.player2 : AbstractGame.player1);
+			int expected = (score > 0) ? TicTacToeTable.WIN : (score < 0) ? TicTacToeTable.LOSS : TicTacToeTable.DRAW;
+			assertEquals(expected, table.getValue(mine, theirs));
+		}
+	}
+
+	/**
+	 * A perfect player never loses 2D and always wins 3D when it goes first
+	 */
+	@Test
+	public void testPerfectPlay() {
+		for (int i = 0; i < 20; i++) {
+			HeuristicGameAgent perfect = new HeuristicGameAgent(true);
+			TicTacToe2D game2D = new TicTacToe2D(perfect, new SearchGameAgent(5, 2));
+			while (!game2D.isGameOver()) {
+				game2D.playAction(game2D.getCurrentPlayer().getNextMove(game2D));
+			}
+			assertNotEquals(game2D.getWinner(), 3 - perfect.getPlayer());
+
+			perfect = new HeuristicGameAgent(true);
+			TicTacToe3D game3D = new TicTacToe3D(new int[3][3][3], true, perfect, new HeuristicGameAgent());
+			while (!game3D.isGameOver()) {
+				game3D.playAction(game3D.getCurrentPlayer().getNextMove(game3D));
+			}
+			assertEquals(AbstractGame.player1, game3D.getWinner());
+		}
+	}
+
+	/**
+	 * Writing and reading a table gives back the same values
+	 */
+	/**
+	 * Looking up positions the table doesn't have (here the player to move has an extra
+	 * piece) doesn't change the shared table
+	 */
+	@Test
+	public void testSharedTableIsNotChanged() {
+		TicTacToeTable table = TicTacToeTable.get2DTable();
+		int numEntries = table.getNumEntries();
+		int mine = TicTacToe2DBoard.getCellBit(0, 0) | TicTacToe2DBoard.getCellBit(2, 1);
+		int theirs = 0;
+		assertEquals(TicTacToeTable.UNKNOWN, table.getValue(mine, theirs));
+		assertNotEquals(TranspositionTable.NO_MOVE, table.getBestMove(mine, theirs));
+		assertEquals(numEntries, table.getNumEntries());
+	}
+
+	@Test
+	public void testWriteAndRead() throws Exception {
+		File file = File.createTempFile("tictactoe", ".table");
+		try {
+			TicTacToeTable table = TicTacToeTable.get3DTable();
+			table.write(file);
+			TicTacToeTable readTable = TicTacToeTable.read(file);
+			assertEquals(table.getNumEntries(), readTable.getNumEntries());
+			assertEquals(table.getMaxPieces(), readTable.getMaxPieces());
+
+			Random random = new Random(3);
+			for (int i = 0; i < 200; i++) {
+				int mine = 0, theirs = 0;
+				for (int piece = 0; piece < random.nextInt(5); piece++) {
+					int bit = 1 << random.nextInt(TicTacToe3DBoard.NUM_CELLS);
+					if (((mine | theirs) & bit) == 0) {
+						if (piece % 2 == 0) {
+							mine |= bit;
+						} else {
+							theirs |= bit;
+						}
+					}
+				}
+				assertEquals(table.getValue(mine, theirs), readTable.getValue(mine, theirs));
+			}
+			assertTrue(file.length() > 0);
+		} finally {
+			file.delete();
+		}
+	}
+}
@@ -0,0 +1,182 @@
+package spacesettlers.ladder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import spacesettlers.configs.HighLevelTeamConfig;
+
+/**
+ * Test the ratings and the adaptive ladder matches
+ * @author amy
+ */
+public class TestAdaptiveScheduler {
+	static final int NUM_TEAMS = 12;
+	static final int TEAMS_PER_GAME = 4;
+
+	HighLevelTeamConfig[] variableTeams, staticTeams;
+	TeamRecord[] records;
+	AdaptiveScheduler scheduler;
+	Random random;
+
+	@Before
+	public void setUp() {
+		variableTeams = new HighLevelTeamConfig[NUM_TEAMS];
+		records = new TeamRecord[NUM_TEAMS];
+		for (int i = 0; i < NUM_TEAMS; i++) {
+			variableTeams[i] = new HighLevelTeamConfig();
+			variableTeams[i].setTeamName("Team" + i);
+			records[i] = new TeamRecord("Team" + i);
+		}
+		staticTeams = new HighLevelTeamConfig[1];
+		staticTeams[0] = new HighLevelTeamConfig();
+		staticTeams[0].setTeamName("Static");
+
+		random = new Random(42);
+		scheduler = new AdaptiveScheduler(variableTeams, records, staticTeams, TEAMS_PER_GAME, 0.95, 2.0, random);
+	}
+
+	@Test
+	public void testUpdateRatings() {
+		TeamRecord winner = new TeamRecord("winner");
+		TeamRecord loser = new TeamRecord("loser");
+		TeamRecord.updateRatings(new TeamRecord[] {winner, loser}, new double[] {10, 5});
+
+		assertTrue(winner.getRatingMean() > TeamRecord.INITIAL_RATING_MEAN);
+		assertTrue(loser.getRatingMean() < TeamRecord.INITIAL_RATING_MEAN);
+		assertEquals(TeamRecord.INITIAL_RATING_MEAN * 2, winner.getRatingMean() + loser.getRatingMean(), 1e-9);
+		assertTrue(winner.getRatingDeviation() < TeamRecord.INITIAL_RATING_DEVIATION);
+		assertTrue(winner.getWinProbability(loser) > 0.5);
+
+		// a tie between equal teams doesn't change the means
+		TeamRecord tie1 = new TeamRecord("tie1");
+		TeamRecord tie2 = new TeamRecord("tie2");
+		TeamRecord.updateRatings(new TeamRecord[] {tie1, tie2}, new double[] {3, 3});
+		assertEquals(TeamRecord.INITIAL_RATING_MEAN, tie1.getRatingMean(), 1e-9);
+	}
+
+	@Test
+	public void testNextMatch() {
+		HighLevelTeamConfig[] match = scheduler.nextMatch();
+		assertEquals(TEAMS_PER_GAME + 1, match.length);
+		assertTrue(match[TEAMS_PER_GAME] == staticTeams[0]);
+
+		HashSet<HighLevelTeamConfig> teams = new HashSet<HighLevelTeamConfig>();
+		for (int i = 0; i < TEAMS_PER_GAME; i++) {
+			teams.add(match[i]);
+		}
+		assertEquals(TEAMS_PER_GAME, teams.size());
+
+		// teams already in a running game are picked last
+		HighLevelTeamConfig[] match2 = scheduler.nextMatch();
+		for (int i = 0; i < TEAMS_PER_GAME; i++) {
+			assertFalse(teams.contains(match2[i]));
+		}
+	}
+
+	@Test
+	public void testRankingBecomesStable() {
+		// team i has skill i (so the best team is the last one)
+		int numGames = 0;
+		int fullLadder = 495;
+		while (!scheduler.isStable() && numGames < fullLadder) {
+			HighLevelTeamConfig[] match = scheduler.nextMatch();
+			TeamRecord[] matchRecords = new TeamRecord[TEAMS_PER_GAME];
+			double[] scores = new double[TEAMS_PER_GAME];
+			for (int i = 0; i < TEAMS_PER_GAME; i++) {
+				int team = Integer.parseInt(match[i].getTeamName().substring(4));
+				matchRecords[i] = records[team];
+				scores[i] = team + random.nextGaussian();
+				records[team].numGames++;
+			}
+			TeamRecord.updateRatings(matchRecords, scores);
+			scheduler.matchFinished(match, false);
+			numGames++;
+		}
+
+		assertTrue(scheduler.isStable());
+		assertTrue(numGames < fullLadder / 2);
+
+		// the ranking is nearly right (no team more than one place off)
+		TeamRecord[] ranking = records.clone();
+		java.util.Arrays.sort(ranking, new TeamRatingComparator());
+		for (int place = 0; place < NUM_TEAMS; place++) {
+			int team = Integer.parseInt(ranking[place].teamName.substring(4));
+			assertTrue(Math.abs((NUM_TEAMS - 1 - place) - team) <= 1);
+		}
+	}
+
+	@Test
+	public void testUpdateRatingsSkipsSameClient() {
+		// the same client in a game twice doesn't play itself (so alone it learns nothing)
+		TeamRecord twice = new TeamRecord("twice");
+		TeamRecord.updateRatings(new TeamRecord[] {twice, twice}, new double[] {10, 5});
+		assertEquals(TeamRecord.INITIAL_RATING_MEAN, twice.getRatingMean(), 1e-9);
+		assertEquals(TeamRecord.INITIAL_RATING_DEVIATION, twice.getRatingDeviation(), 1e-9);
+	}
+
+	@Test
+	public void testFailingTeamIsNotPicked() {
+		// every variable team in a failed game gets a failure and a good game clears them
+		HighLevelTeamConfig[] match = scheduler.nextMatch();
+		scheduler.matchFinished(match, true);
+		for (int i = 0; i < NUM_TEAMS; i++) {
+			boolean inMatch = false;
+			for (int m = 0; m < TEAMS_PER_GAME; m++) {
+				inMatch |= match[m] == variableTeams[i];
+			}
+			assertEquals(inMatch ? 1 : 0, scheduler.numFailures[i]);
+		}
+		scheduler.numRunning[0]++;
+		scheduler.matchFinished(new HighLevelTeamConfig[] {variableTeams[0]}, false);
+		assertEquals(0, scheduler.numFailures[0]);
+
+		// a failing team has the highest uncertainty but isn't picked while there are enough other teams
+		for (int i = 0; i < NUM_TEAMS; i++) {
+			scheduler.numFailures[i] = 0;
+		}
+		scheduler.numFailures[0] = AdaptiveScheduler.MAX_CONSECUTIVE_FAILURES;
+		for (int game = 0; game < 10; game++) {
+			match = scheduler.nextMatch();
+			for (int i = 0; i < TEAMS_PER_GAME; i++) {
+				assertFalse(match[i] == variableTeams[0]);
+			}
+			scheduler.matchFinished(match, false);
+		}
+
+		// and a ladder with too few other teams still uses it
+		AdaptiveScheduler small = new AdaptiveScheduler(new HighLevelTeamConfig[] {variableTeams[0], variableTeams[1]}, 
+				new TeamRecord[] {records[0], records[1]}, staticTeams, 2, 0.95, 2.0, random);
+		small.numFailures[0] = AdaptiveScheduler.MAX_CONSECUTIVE_FAILURES;
+		match = small.nextMatch();
+		assertTrue(match[0] == variableTeams[1]);
+		assertTrue(match[1] == variableTeams[0]);
+	}
+
+	@Test
+	public void testFailingTeamsAreSettled() {
+		// every team has played except one that always fails
+		for (int i = 1; i < NUM_TEAMS; i++) {
+			records[i].numGames = 1;
+		}
+		assertFalse(scheduler.isStable());
+
+		// equal well known ratings are a tie so only the failing team kept it from being stable
+		for (int i = 1; i < NUM_TEAMS; i++) {
+			records[i].ratingVariance = 1;
+		}
+		scheduler.numFailures[0] = AdaptiveScheduler.MAX_CONSECUTIVE_FAILURES;
+		assertTrue(scheduler.isStable());
+
+		// a good game brings it back
+		scheduler.numRunning[0]++;
+		scheduler.matchFinished(new HighLevelTeamConfig[] {variableTeams[0]}, false);
+		assertFalse(scheduler.isStable());
+	}
+}
@@ -0,0 +1,187 @@
+package spacesettlers.ladder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import spacesettlers.configs.GameAgentConfig;
+import spacesettlers.configs.GameTournamentConfig;
+import spacesettlers.game.AbstractGame;
+import spacesettlers.game.AbstractGameAction;
+import spacesettlers.game.AbstractGameAgent;
+import spacesettlers.game.HeuristicGameAgent;
+
+/**
+ * Test the mini-game tournament
+ * @author amy
+ */
+public class TestGameTournament {
+	GameTournamentConfig config;
+
+	/**
+	 * Plays tic tac toe from the perfect play tables
+	 */
+	public static class PerfectAgent extends HeuristicGameAgent {
+		public PerfectAgent() {
+			super(true);
+		}
+	}
+
+	/**
+	 * Plays a random legal move
+	 */
+	public static class RandomAgent extends AbstractGameAgent {
+		public AbstractGameAction getNextMove(AbstractGame game) {
+			int[] moves = new int[game.getMaxMoves()];
+			int numMoves = game.getLegalMoves(moves);
+			return game.getAction(moves[ThreadLocalRandom.current().nextInt(numMoves)]);
+		}
+	}
+
+	/**
+	 * Never moves
+	 */
+	public static class NoMoveAgent extends AbstractGameAgent {
+		public AbstractGameAction getNextMove(AbstractGame game) {
+			return null;
+		}
+	}
+
+	/**
+	 * Never returns from its first move (for a couple of seconds, ignoring interrupts)
+	 */
+	public static class HungAgent extends AbstractGameAgent {
+		public AbstractGameAction getNextMove(AbstractGame game) {
+			long endTime = System.currentTimeMillis() + 2000;
+			while (System.currentTimeMillis() < endTime) {
+				try {
+					Thread.sleep(10);
+				} catch (InterruptedException e) {
+					// keep going
+				}
+			}
+			return null;
+		}
+	}
+
+	static GameAgentConfig makeAgentConfig(String name, Class<?> agentClass) {
+		GameAgentConfig agent = new GameAgentConfig();
+		agent.setAgentName(name);
+		agent.setAgentClass(agentClass.getName());
+		return agent;
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		config = new GameTournamentConfig();
+		config.setAgents(new GameAgentConfig[] {
+				makeAgentConfig("Random", RandomAgent.class),
+				makeAgentConfig("Perfect", PerfectAgent.class),
+				makeAgentConfig("NoMove", NoMoveAgent.class)});
+		config.setGames(new String[] {"TicTacToe2D", "TicTacToe3D", "Mancala"});
+		config.setNumGamesPerPairing(GameTournament.BATCH_SIZE + 100);
+		config.setNumThreads(2);
+		config.setMoveTimeLimit(1000);
+	}
+
+	@Test
+	public void testResults() throws Exception {
+		GameTournament tournament = new GameTournament(config);
+		tournament.run();
+
+		// every pairing played every game once from each side's point of view
+		for (int game = 0; game < 3; game++) {
+			for (int agent = 0; agent < 3; agent++) {
+				for (int opponent = 0; opponent < 3; opponent++) {
+					if (agent == opponent) {
+						continue;
+					}
+					long played = tournament.getResult(game, agent, opponent, GameTournament.WINS)
+							+ tournament.getResult(game, agent, opponent, GameTournament.DRAWS)
+							+ tournament.getResult(game, agent, opponent, GameTournament.LOSSES);
+					assertEquals(config.getNumGamesPerPairing(), played);
+					assertEquals(tournament.getResult(game, agent, opponent, GameTournament.WINS),
+							tournament.getResult(game, opponent, agent, GameTournament.LOSSES));
+				}
+			}
+		}
+
+		// perfect never loses at 2D tic tac toe and the agent that never moves forfeits everything
+		assertEquals(0, tournament.getResult(0, 1, 0, GameTournament.LOSSES));
+		assertEquals(6 * config.getNumGamesPerPairing(), tournament.getTotal(2, GameTournament.FORFEITS));
+		assertEquals(0, tournament.getScore(2), 0);
+		assertEquals(2, (int) tournament.getSortedAgents().get(2));
+		assertEquals(1, (int) tournament.getSortedAgents().get(0));
+		assertTrue(tournament.getConfidence(0) > 0);
+		assertTrue(tournament.getConfidence(0) < 0.05);
+
+		File file = File.createTempFile("tournament", ".html");
+		try {
+			tournament.printResultsToHTML(file.getPath());
+			String html = new String(Files.readAllBytes(file.toPath()));
+			assertTrue(html.contains("Perfect"));
+			assertTrue(html.contains("Mancala"));
+		} finally {
+			file.delete();
+		}
+	}
+
+	/**
+	 * An agent that hangs forfeits each game at the move time limit instead of hanging the tournament
+	 */
+	@Test
+	public void testHungAgentForfeits() throws Exception {
+		config.setAgents(new GameAgentConfig[] {
+				makeAgentConfig("Random", RandomAgent.class),
+				makeAgentConfig("Hung", HungAgent.class)});
+		config.setGames(new String[] {"TicTacToe2D"});
+		config.setNumGamesPerPairing(6);
+		config.setMoveTimeLimit(50);
+
+		long startTime = System.currentTimeMillis();
+		GameTournament tournament = new GameTournament(config);
+		tournament.run();
+		assertTrue(System.currentTimeMillis() - startTime < 2000);
+		assertEquals(6, tournament.getTotal(1, GameTournament.FORFEITS));
+		assertEquals(6, tournament.getTotal(0, GameTournament.WINS));
+	}
+
+	/**
+	 * Agent names are escaped in the results
+	 */
+	@Test
+	public void testNamesAreEscaped() throws Exception {
+		config.setAgents(new GameAgentConfig[] {
+				makeAgentConfig("<b>Random</b>", RandomAgent.class),
+				makeAgentConfig("Perfect", PerfectAgent.class)});
+		config.setGames(new String[] {"TicTacToe2D"});
+		config.setNumGamesPerPairing(2);
+		GameTournament tournament = new GameTournament(config);
+		tournament.run();
+
+		File file = File.createTempFile("tournament", ".html");
+		try {
+			tournament.printResultsToHTML(file.getPath());
+			String html = new String(Files.readAllBytes(file.toPath()));
+			assertTrue(html.contains("&lt;b&gt;Random&lt;/b&gt;"));
+			assertFalse(html.contains("<b>"));
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testConfidence() {
+		assertEquals(0.5, GameTournament.getScore(0, 10, 0), 1e-9);
+		assertEquals(0, GameTournament.getConfidence(0, 10, 0), 1e-9);
+		assertEquals(0.5, GameTournament.getScore(50, 0, 50), 1e-9);
+		assertEquals(1.96 * 0.05, GameTournament.getConfidence(50, 0, 50), 1e-9);
+	}
+}
@@ -292,6 +292,46 @@ public class TestLadder {
 		assertEquals(ladder.calculateNChooseK(4, 3), 4, 0);
 		assertEquals(ladder.calculateNChooseK(1, 1), 1, 0);
 		assertEquals(ladder.calculateNChooseK(0, 0), 0, 0);
+
+		// these overflowed when it used factorials
+		assertEquals(1716, ladder.calculateNChooseK(13, 6));
+		assertEquals(487635, ladder.calculateNChooseK(60, 4));
+		assertEquals(118264581564861424L, ladder.calculateNChooseK(60, 30));
+	}
+
+	@Test
+	public void testHeadToHeadAndScoreStatistics() {
+		// A beats B twice, then they tie; C only plays A
+		addGame("game1", new String[] {"A", "B"}, new double[] {10, 4});
+		addGame("game2", new String[] {"A", "B"}, new double[] {20, 5});
+		addGame("game3", new String[] {"A", "B", "C"}, new double[] {6, 6, 30});
+
+		TeamRecord a = ladder.getTeamRecord("A");
+		TeamRecord b = ladder.getTeamRecord("B");
+		TeamRecord c = ladder.getTeamRecord("C");
+
+		HeadToHeadRecord aVersusB = a.getHeadToHead(b);
+		assertEquals(2, aVersusB.getWins());
+		assertEquals(0, aVersusB.getLosses());
+		assertEquals(1, aVersusB.getTies());
+		assertEquals((6 + 15 + 0) / 3.0, aVersusB.getScoreDifference().getMean(), 0.0001);
+		assertEquals(2, b.getHeadToHead(a).getLosses());
+		assertEquals(1, c.getHeadToHead(a).getWins());
+		assertNull(c.getHeadToHead(c));
+		assertEquals(2, a.getHeadToHeadRecords().size());
+
+		assertEquals(3, a.getScoreStatistics().getCount());
+		assertEquals(12, a.getScoreStatistics().getMean(), 0.0001);
+		assertEquals(7.2111, a.getScoreStatistics().getStandardDeviation(), 0.0001);
+		assertEquals(10, a.getScoreQuantile(0.5), 0.0001);
+	}
+
+	void addGame(String key, String[] teams, double[] scores) {
+		LadderGameResult result = new LadderGameResult(key);
+		for (int i = 0; i < teams.length; i++) {
+			result.teamStats.add(TestLadderJournal.makeResult(key, teams[i], scores[i]).getTeamStats().get(0));
+		}
+		ladder.addToRecords(result);
 	}
 
 }
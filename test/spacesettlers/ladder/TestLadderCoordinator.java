@@ -0,0 +1,260 @@
+package spacesettlers.ladder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import spacesettlers.configs.ConfigRepository;
+import spacesettlers.configs.HighLevelTeamConfig;
+import spacesettlers.simulator.SimulatorException;
+
+/**
+ * Test handing games to workers over sockets (with pretend workers instead of simulators)
+ * @author amy
+ */
+public class TestLadderCoordinator {
+	LadderCoordinator coordinator;
+
+	@Before
+	public void setUp() throws Exception {
+		coordinator = new LadderCoordinator(null, 0, 0, null, 0);
+	}
+
+	@After
+	public void tearDown() {
+		coordinator.shutdown();
+	}
+
+	static HighLevelTeamConfig[] makeTeams(String... names) {
+		HighLevelTeamConfig[] teams = new HighLevelTeamConfig[names.length];
+		for (int i = 0; i < names.length; i++) {
+			teams[i] = new HighLevelTeamConfig();
+			teams[i].setTeamName(names[i]);
+		}
+		return teams;
+	}
+
+	/**
+	 * Connect as a worker and read the first game
+	 */
+	Socket connect(DataInputStream[] input, DataOutputStream[] output) throws Exception {
+		Socket socket = new Socket(InetAddress.getLoopbackAddress(), coordinator.serverSocket.getLocalPort());
+		input[0] = new DataInputStream(socket.getInputStream());
+		output[0] = new DataOutputStream(socket.getOutputStream());
+		output[0].writeInt(LadderCoordinator.HELLO);
+		output[0].writeInt(LadderCoordinator.PROTOCOL_VERSION);
+		output[0].flush();
+		assertEquals(LadderCoordinator.GAME, input[0].readInt());
+		return socket;
+	}
+
+	@Test
+	public void testLostWorkerGameIsRequeued() throws Exception {
+		coordinator.submit("repeat0:A:B", makeTeams("A", "B"), 1, 1);
+
+		// the first worker dies after getting the game
+		DataInputStream[] input = new DataInputStream[1];
+		DataOutputStream[] output = new DataOutputStream[1];
+		Socket socket = connect(input, output);
+		assertEquals("repeat0:A:B", input[0].readUTF());
+		socket.close();
+
+		// so the next one gets it
+		socket = connect(input, output);
+		String gameKey = input[0].readUTF();
+		assertEquals("repeat0:A:B", gameKey);
+		assertEquals(1, input[0].readInt());
+		assertEquals(1, input[0].readInt());
+		long seed = input[0].readLong();
+		assertEquals(true, seed != 0);
+		String teamsXML = new String(LadderCoordinator.readBytes(input[0]), StandardCharsets.UTF_8);
+		HighLevelTeamConfig[] teams = (HighLevelTeamConfig[]) ConfigRepository.fromXML(teamsXML);
+		assertEquals("B", teams[1].getTeamName());
+
+		LadderGameResult result = TestLadderJournal.makeResult(gameKey, "A", 7);
+		output[0].writeInt(LadderCoordinator.RESULT);
+		LadderCoordinator.writeBytes(output[0], LadderJournal.encode(result));
+		output[0].flush();
+
+		LadderGameResult received = coordinator.take();
+		assertEquals(gameKey, received.getKey());
+		assertEquals(7, received.getTeamStats().get(0).getScore(), 0);
+		socket.close();
+	}
+
+	/**
+	 * A game that kills every worker it is sent to is failed instead of being requeued forever
+	 */
+	@Test
+	public void testPoisonGameFails() throws Exception {
+		coordinator.submit("repeat0:A:B", makeTeams("A", "B"), 1, 1);
+
+		DataInputStream[] input = new DataInputStream[1];
+		DataOutputStream[] output = new DataOutputStream[1];
+		for (int i = 0; i < LadderCoordinator.MAX_GAME_ATTEMPTS; i++) {
+			Socket socket = connect(input, output);
+			assertEquals("repeat0:A:B", input[0].readUTF());
+			socket.close();
+		}
+
+		// the worker that lost it is still connected while the game comes back
+		Socket socket = new Socket(InetAddress.getLoopbackAddress(), coordinator.serverSocket.getLocalPort());
+		LadderGameResult result = coordinator.take();
+		assertEquals("repeat0:A:B", result.getKey());
+		assertTrue(result.isFailed());
+		socket.close();
+	}
+
+	/**
+	 * A worker that goes quiet is given up on (one that sends heartbeats isn't)
+	 */
+	@Test
+	public void testSilentWorkerTimesOut() throws Exception {
+		int workerTimeout = LadderCoordinator.WORKER_TIMEOUT;
+		LadderCoordinator.WORKER_TIMEOUT = 300;
+		try {
+			coordinator.submit("repeat0:A:B", makeTeams("A", "B"), 1, 1);
+			DataInputStream[] input = new DataInputStream[1];
+			DataOutputStream[] output = new DataOutputStream[1];
+			Socket socket = connect(input, output);
+			for (int i = 0; i < 6; i++) {
+				Thread.sleep(100);
+				output[0].writeInt(LadderCoordinator.HEARTBEAT);
+				output[0].flush();
+			}
+			assertTrue(coordinator.waitingGames.isEmpty());
+
+			// once it goes quiet the worker is dropped and the game is requeued
+			long startTime = System.currentTimeMillis();
+			while (coordinator.waitingGames.isEmpty()) {
+				assertTrue("never timed out", System.currentTimeMillis() - startTime < 5000);
+				Thread.sleep(10);
+			}
+			assertEquals("repeat0:A:B", coordinator.waitingGames.peek().gameKey);
+			assertEquals(1, coordinator.waitingGames.peek().attempts);
+			socket.close();
+		} finally {
+			LadderCoordinator.WORKER_TIMEOUT = workerTimeout;
+		}
+	}
+
+	@Test
+	public void testListensOnLoopback() throws Exception {
+		assertTrue(coordinator.serverSocket.getInetAddress().isLoopbackAddress());
+	}
+
+	/**
+	 * Only teams are read from the XML a worker is sent
+	 */
+	@Test
+	public void testWorkerOnlyReadsTeams() throws Exception {
+		HighLevelTeamConfig[] teams = ConfigRepository.teamsFromXML(ConfigRepository.toXML(makeTeams("A", "B")));
+		assertEquals("B", teams[1].getTeamName());
+
+		try {
+			ConfigRepository.teamsFromXML(ConfigRepository.toXML(new java.util.ArrayList<String>()));
+			fail("read something other than teams");
+		} catch (SimulatorException e) {
+			// expected
+		}
+	}
+
+	@Test(expected = SimulatorException.class)
+	public void testNoWorkers() throws Exception {
+		coordinator.setWorkerWaitTime(500);
+		coordinator.submit("repeat0:A:B", makeTeams("A", "B"), 1, 1);
+		coordinator.take();
+	}
+
+	/**
+	 * With only workers from other machines, the coordinator waits for the first one to connect
+	 */
+	@Test
+	public void testWaitsForFirstWorker() throws Exception {
+		coordinator.setWorkerWaitTime(5000);
+		assertEquals(1, coordinator.getNumParallelGames());
+		coordinator.submit("repeat0:A:B", makeTeams("A", "B"), 1, 1);
+
+		Thread worker = new Thread(new Runnable() {
+			public void run() {
+				try {
+					Thread.sleep(1500);
+					DataInputStream[] input = new DataInputStream[1];
+					DataOutputStream[] output = new DataOutputStream[1];
+					Socket socket = connect(input, output);
+					String gameKey = input[0].readUTF();
+					input[0].readInt();
+					input[0].readInt();
+					input[0].readLong();
+					LadderCoordinator.readBytes(input[0]);
+					output[0].writeInt(LadderCoordinator.RESULT);
+					LadderCoordinator.writeBytes(output[0], LadderJournal.encode(TestLadderJournal.makeResult(gameKey, "A", 3)));
+					output[0].flush();
+					input[0].readInt();
+					socket.close();
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+			}
+		});
+		worker.setDaemon(true);
+		worker.start();
+
+		assertEquals("repeat0:A:B", coordinator.take().getKey());
+	}
+
+	/**
+	 * A worker started before the coordinator keeps trying to connect
+	 */
+	@Test
+	public void testWorkerRetriesConnection() throws Exception {
+		int retryInterval = LadderWorker.CONNECT_RETRY_INTERVAL;
+		LadderWorker.CONNECT_RETRY_INTERVAL = 50;
+		try {
+			ServerSocket freePort = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+			final int port = freePort.getLocalPort();
+			freePort.close();
+
+			final boolean[] stopped = new boolean[1];
+			Thread worker = new Thread(new Runnable() {
+				public void run() {
+					try {
+						new LadderWorker(null).run(InetAddress.getLoopbackAddress().getHostAddress(), port);
+						stopped[0] = true;
+					} catch (Exception e) {
+						e.printStackTrace();
+					}
+				}
+			});
+			worker.setDaemon(true);
+			worker.start();
+			Thread.sleep(300);
+
+			LadderCoordinator late = new LadderCoordinator(null, 0, port, null, 0);
+			try {
+				long startTime = System.currentTimeMillis();
+				while (late.numConnectedWorkers.get() == 0) {
+					assertTrue("never connected", System.currentTimeMillis() - startTime < 10000);
+					Thread.sleep(10);
+				}
+			} finally {
+				late.shutdown();
+			}
+			worker.join(5000);
+			assertTrue(stopped[0]);
+		} finally {
+			LadderWorker.CONNECT_RETRY_INTERVAL = retryInterval;
+		}
+	}
+}
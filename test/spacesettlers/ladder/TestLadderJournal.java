@@ -0,0 +1,183 @@
+package spacesettlers.ladder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import spacesettlers.clients.ClientPhase;
+import spacesettlers.configs.LadderConfig;
+import spacesettlers.utilities.LatencyHistogram;
+
+/**
+ * Test writing and reading back the ladder journal
+ * @author amy
+ */
+public class TestLadderJournal {
+	File file;
+
+	@Before
+	public void setUp() throws Exception {
+		file = File.createTempFile("ladder", ".journal");
+		file.delete();
+	}
+
+	@After
+	public void tearDown() {
+		file.delete();
+	}
+
+	static LadderGameResult makeResult(String key, String teamName, double score) {
+		LadderGameResult result = new LadderGameResult(key);
+		TeamGameStats stats = new TeamGameStats();
+		stats.ladderName = teamName;
+		stats.score = score;
+		stats.resources = 1234.5;
+		stats.beacons = 3;
+		stats.kills = 2;
+		stats.phaseLatency = new LatencyHistogram[ClientPhase.values().length];
+		for (int i = 0; i < stats.phaseLatency.length; i++) {
+			stats.phaseLatency[i] = new LatencyHistogram();
+			stats.phaseLatency[i].record(100 * (i + 1), i == 0);
+		}
+		result.teamStats.add(stats);
+		result.outputStrings.add("Team: " + teamName + " scored " + score);
+		return result;
+	}
+
+	@Test
+	public void testResume() throws Exception {
+		LadderJournal journal = new LadderJournal(file);
+		assertEquals(0, journal.getCompletedGames().size());
+		journal.append(makeResult("repeat0:A:S1", "A", 10.25));
+		journal.append(makeResult("repeat0:B:S1", "Tab\tand\nnewline \\ team", 3));
+		journal.close();
+
+		journal = new LadderJournal(file);
+		assertEquals(2, journal.getCompletedGames().size());
+		LadderGameResult result = journal.getCompletedGames().get("repeat0:B:S1");
+		TeamGameStats stats = result.getTeamStats().get(0);
+		assertEquals("Tab\tand\nnewline \\ team", stats.getLadderName());
+		assertEquals(3, stats.getScore(), 0);
+		assertEquals(1234.5, stats.getResources(), 0);
+		assertEquals(3, stats.getBeacons());
+		assertEquals(1, stats.getPhaseLatency(ClientPhase.MOVEMENT_START).getTimeouts());
+		assertEquals("Team: Tab\tand\nnewline \\ team scored 3.0", result.getOutputStrings().get(0));
+		journal.close();
+	}
+
+	/**
+	 * A game is flushed after the flush interval even if no more games finish
+	 */
+	@Test
+	public void testFlushedWithoutMoreGames() throws Exception {
+		LadderJournal journal = new LadderJournal(file, 100);
+		journal.append(makeResult("repeat0:A:S1", "A", 10.25));
+		assertEquals(0, file.length());
+
+		long deadline = System.currentTimeMillis() + 5000;
+		while (file.length() == 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertTrue(file.length() > 0);
+		synchronized (journal) {
+			assertEquals(0, journal.numUnflushed);
+		}
+		journal.close();
+	}
+
+	@Test
+	public void testResultsCantBeChanged() {
+		ArrayList<String> outputStrings = new ArrayList<String>();
+		outputStrings.add("Team: A scored 1.0");
+		LadderGameResult result = new LadderGameResult("game1", makeResult("game1", "A", 1).getTeamStats(), outputStrings);
+
+		// changing the lists the result was made from doesn't change it
+		outputStrings.add("another line");
+		assertEquals(1, result.getOutputStrings().size());
+
+		try {
+			result.getOutputStrings().add("another line");
+			fail("The output of a finished game can be changed");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+		assertEquals(1, result.getTeamStats().size());
+	}
+
+	@Test
+	public void testPartialGameIsDropped() throws Exception {
+		LadderJournal journal = new LadderJournal(file);
+		journal.append(makeResult("game1", "A", 1));
+		journal.close();
+		long length = file.length();
+
+		// the ladder died part way through writing the next game
+		FileWriter writer = new FileWriter(file, true);
+		writer.write("GAME\tgame2\nTEAM\tB\t4.");
+		writer.close();
+
+		journal = new LadderJournal(file);
+		assertEquals(1, journal.getCompletedGames().size());
+		assertEquals(length, file.length());
+		journal.append(makeResult("game2", "B", 4));
+		journal.close();
+
+		journal = new LadderJournal(file);
+		assertEquals(2, journal.getCompletedGames().size());
+		assertTrue(journal.getCompletedGames().containsKey("game2"));
+		journal.close();
+	}
+
+	/**
+	 * A failed game isn't journaled (and is dropped from an older journal) so it is played again
+	 */
+	@Test
+	public void testFailedGameIsRerun() throws Exception {
+		LadderJournal journal = new LadderJournal(file);
+		journal.append(new LadderGameResult("game1"));
+		journal.append(makeResult("game2", "A", 2));
+		journal.close();
+
+		Ladder ladder = new Ladder(new LadderConfig());
+		ladder.journal = new LadderJournal(file);
+		assertEquals(1, ladder.journal.getCompletedGames().size());
+		assertFalse(ladder.journal.getCompletedGames().containsKey("game1"));
+
+		ladder.addGameResults(new LadderGameResult("game3"));
+		ladder.addGameResults(makeResult("game4", "A", 4));
+		ladder.closeJournal();
+
+		journal = new LadderJournal(file);
+		assertFalse(journal.getCompletedGames().containsKey("game3"));
+		assertTrue(journal.getCompletedGames().containsKey("game4"));
+		journal.close();
+	}
+
+	@Test
+	public void testReplayIntoLadder() throws Exception {
+		LadderJournal journal = new LadderJournal(file);
+		journal.append(makeResult("game1", "A", 10));
+		journal.append(makeResult("game2", "A", 20));
+		journal.close();
+
+		Ladder ladder = new Ladder(new LadderConfig());
+		ladder.journal = new LadderJournal(file);
+		ladder.report = new LadderReport(file.getPath() + ".html");
+		assertEquals(2, ladder.replayJournal(null));
+		TeamRecord record = ladder.getTeamRecord("A");
+		assertEquals(2, record.getNumGames());
+		assertEquals(15, record.getAverageScore(), 0);
+		assertEquals(2, ladder.report.numFinishedGames);
+		assertEquals(2, ladder.report.pageLines.size());
+		ladder.closeJournal();
+	}
+}
@@ -0,0 +1,251 @@
+package spacesettlers.ladder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import spacesettlers.clients.DoNothingTeamClient;
+import spacesettlers.clients.TeamClient;
+import spacesettlers.clients.knowledge.KnowledgeStore;
+import spacesettlers.configs.ConfigRepository;
+import spacesettlers.configs.HighLevelTeamConfig;
+
+/**
+ * Test giving each ladder game its own copy of the knowledge and merging it back
+ * @author amy
+ */
+public class TestLadderKnowledge {
+	File directory;
+
+	File knowledgeFile;
+
+	String configPath;
+
+	LadderKnowledge knowledge;
+
+	@Before
+	public void setUp() throws Exception {
+		directory = Files.createTempDirectory("ladderKnowledge").toFile();
+		configPath = directory.getPath() + File.separator;
+		knowledgeFile = new File(directory, "knowledge.bin");
+		writeClientConfig("donothing-clientinit.xml", "spacesettlers.clients.DoNothingTeamClient");
+		writeClientConfig("ga-clientinit.xml", "spacesettlers.clients.examples.ExampleGAClient");
+		knowledge = new LadderKnowledge(configPath);
+	}
+
+	@After
+	public void tearDown() {
+		for (File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+		ConfigRepository.clear();
+	}
+
+	void writeClientConfig(String name, String className) throws Exception {
+		String xml = "<TeamClientConfig>\n"
+				+ "	<classname>" + className + "</classname>\n"
+				+ "	<ladderName>" + className + "</ladderName>\n"
+				+ "	<knowledgeFile>" + knowledgeFile.getPath() + "</knowledgeFile>\n"
+				+ "</TeamClientConfig>\n";
+		Files.write(new File(directory, name).toPath(), xml.getBytes(StandardCharsets.UTF_8));
+	}
+
+	HighLevelTeamConfig[] makeTeams(String configFile) {
+		HighLevelTeamConfig team = new HighLevelTeamConfig();
+		team.setTeamName("A");
+		team.setConfigFile(configFile);
+		return new HighLevelTeamConfig[] {team};
+	}
+
+	/**
+	 * Start a game the way the ladder does and return the team's copy of the knowledge
+	 */
+	File startGame(String gameKey, HighLevelTeamConfig[] teams, int gameIndex) throws Exception {
+		knowledge.gameSubmitted(gameKey, teams, gameIndex);
+		HighLevelTeamConfig[] gameTeams = HighLevelTeamConfig.deepClone(teams);
+		LadderKnowledge.startGame(gameTeams, configPath, gameIndex);
+		return new File(gameTeams[0].getKnowledgeFile());
+	}
+
+	byte[] read(File file) throws Exception {
+		return Files.readAllBytes(file.toPath());
+	}
+
+	@Test
+	public void testEachGameGetsItsOwnCopy() throws Exception {
+		Files.write(knowledgeFile.toPath(), new byte[] {1, 2, 3});
+		HighLevelTeamConfig[] teams = makeTeams("donothing-clientinit.xml");
+		File game1 = startGame("g1", teams, 1);
+		File game2 = startGame("g2", teams, 2);
+
+		assertNotEquals(game1, game2);
+		assertArrayEquals(new byte[] {1, 2, 3}, read(game1));
+		assertArrayEquals(new byte[] {1, 2, 3}, read(game2));
+		// the ladder's own teams still point at the client's knowledge file
+		assertEquals(null, teams[0].getKnowledgeFile());
+	}
+
+	@Test
+	public void testUnsavedAndFailedGamesAreNotMerged() throws Exception {
+		Files.write(knowledgeFile.toPath(), new byte[] {1});
+		HighLevelTeamConfig[] teams = makeTeams("donothing-clientinit.xml");
+		File unsaved = startGame("g1", teams, 1);
+		File failed = startGame("g2", teams, 2);
+		Files.write(failed.toPath(), new byte[] {2});
+
+		knowledge.gameFinished(TestLadderJournal.makeResult("g1", "A", 1));
+		knowledge.gameFinished(new LadderGameResult("g2"));
+
+		assertArrayEquals(new byte[] {1}, read(knowledgeFile));
+		assertFalse(unsaved.exists());
+		assertFalse(failed.exists());
+	}
+
+	/**
+	 * If the file system won't keep the copy's modification time, its contents tell if it was saved
+	 */
+	@Test
+	public void testUnchangedByContents() throws Exception {
+		Files.write(knowledgeFile.toPath(), new byte[] {1});
+		HighLevelTeamConfig[] teams = makeTeams("donothing-clientinit.xml");
+		File unsaved = startGame("g1", teams, 1);
+		File saved = startGame("g2", teams, 2);
+		for (File file : new File[] {unsaved, saved}) {
+			LadderKnowledge.saveDigest(file);
+			file.setLastModified(System.currentTimeMillis());
+		}
+		Files.write(saved.toPath(), new byte[] {2});
+		Files.write(knowledgeFile.toPath(), new byte[] {3});
+
+		// the unsaved copy isn't moved over the newer knowledge
+		knowledge.gameFinished(TestLadderJournal.makeResult("g1", "A", 1));
+		assertArrayEquals(new byte[] {3}, read(knowledgeFile));
+		assertFalse(unsaved.exists());
+		assertFalse(LadderKnowledge.getDigestFile(unsaved).exists());
+
+		knowledge.gameFinished(TestLadderJournal.makeResult("g2", "A", 1));
+		assertArrayEquals(new byte[] {2}, read(knowledgeFile));
+		assertFalse(LadderKnowledge.getDigestFile(saved).exists());
+	}
+
+	/**
+	 * Copies left by games that never finished are deleted when the ladder starts
+	 */
+	@Test
+	public void testOldCopiesAreRemoved() throws Exception {
+		Files.write(knowledgeFile.toPath(), new byte[] {1});
+		HighLevelTeamConfig[] teams = makeTeams("donothing-clientinit.xml");
+		File crashed = startGame("g1", teams, 12);
+		LadderKnowledge.saveDigest(crashed);
+		assertTrue(LadderKnowledge.getBaseFile(crashed).exists());
+		File otherTeam = new File(directory, "knowledge-game12-AB.bin");
+		File unmerged = new File(directory, "knowledge-unmerged-game3-A-100.bin");
+		Files.write(otherTeam.toPath(), new byte[] {2});
+		Files.write(unmerged.toPath(), new byte[] {3});
+
+		new LadderKnowledge(configPath).removeOldCopies(teams);
+		assertFalse(crashed.exists());
+		assertFalse(LadderKnowledge.getDigestFile(crashed).exists());
+		assertFalse(LadderKnowledge.getBaseFile(crashed).exists());
+		assertTrue(otherTeam.exists());
+		assertTrue(unmerged.exists());
+		assertTrue(knowledgeFile.exists());
+	}
+
+	/**
+	 * Clients that don't merge keep the knowledge of the last game to finish
+	 */
+	@Test
+	public void testDefaultMergeKeepsLastGame() throws Exception {
+		HighLevelTeamConfig[] teams = makeTeams("donothing-clientinit.xml");
+		File game1 = startGame("g1", teams, 1);
+		File game2 = startGame("g2", teams, 2);
+		Files.write(game1.toPath(), new byte[] {1});
+		Files.write(game2.toPath(), new byte[] {2});
+
+		knowledge.gameFinished(TestLadderJournal.makeResult("g2", "A", 1));
+		knowledge.gameFinished(TestLadderJournal.makeResult("g1", "A", 1));
+
+		assertArrayEquals(new byte[] {1}, read(knowledgeFile));
+		assertFalse(game1.exists());
+		assertFalse(game2.exists());
+	}
+
+	/**
+	 * Save a population whose first member has chosen the actions for the states
+	 */
+	void savePopulation(File file, double[] states, byte[] choices) throws Exception {
+		KnowledgeStore store = new KnowledgeStore();
+		store.putInts("population.counter", new int[] {0});
+		store.putDoubles("population.fitness", new double[3]);
+		store.putInts("population.policySizes", new int[] {states.length, 0, 0});
+		store.putDoubles("population.states", states);
+		store.putBytes("population.choices", choices);
+		store.save(file);
+	}
+
+	/**
+	 * The example GA client keeps what it learned in both games (and the base only once)
+	 */
+	@Test
+	public void testClientMerge() throws Exception {
+		savePopulation(knowledgeFile, new double[] {5, 6}, new byte[] {1, 1});
+		HighLevelTeamConfig[] teams = makeTeams("ga-clientinit.xml");
+		File game1 = startGame("g1", teams, 1);
+		File game2 = startGame("g2", teams, 2);
+		assertTrue(LadderKnowledge.getBaseFile(game1).exists());
+		// the first game learns a new state and the second changes its choice for one it started with
+		savePopulation(game1, new double[] {5, 6, 7}, new byte[] {1, 1, 0});
+		savePopulation(game2, new double[] {5, 6}, new byte[] {0, 1});
+
+		knowledge.gameFinished(TestLadderJournal.makeResult("g1", "A", 1));
+		knowledge.gameFinished(TestLadderJournal.makeResult("g2", "A", 1));
+
+		KnowledgeStore merged = KnowledgeStore.open(knowledgeFile);
+		assertEquals(3, merged.getInts("population.policySizes").get(0));
+		for (int i = 0; i < 3; i++) {
+			double state = merged.getDoubles("population.states").get(i);
+			byte choice = merged.getBytes("population.choices").get(i);
+			assertEquals(state == 6 ? 1 : 0, choice);
+		}
+		assertFalse(game1.exists());
+		assertFalse(LadderKnowledge.getBaseFile(game1).exists());
+		assertFalse(LadderKnowledge.getBaseFile(game2).exists());
+		assertTrue(knowledgeFile.exists());
+	}
+
+	/**
+	 * Clients that don't merge keep a game's knowledge whole if nothing else was merged while it ran
+	 */
+	@Test
+	public void testDefaultMergeWithBase() throws Exception {
+		Files.write(knowledgeFile.toPath(), new byte[] {1});
+		HighLevelTeamConfig[] teams = makeTeams("donothing-clientinit.xml");
+		File game1 = startGame("g1", teams, 1);
+		Files.write(game1.toPath(), new byte[] {1, 2});
+		assertArrayEquals(new byte[] {1}, read(LadderKnowledge.getBaseFile(game1)));
+
+		knowledge.gameFinished(TestLadderJournal.makeResult("g1", "A", 1));
+		assertArrayEquals(new byte[] {1, 2}, read(knowledgeFile));
+		assertFalse(LadderKnowledge.getBaseFile(game1).exists());
+
+		TeamClient client = new DoNothingTeamClient();
+		File base = new File(directory, "base.bin");
+		File game = new File(directory, "game.bin");
+		Files.write(base.toPath(), new byte[] {1, 3});
+		Files.write(game.toPath(), new byte[] {4});
+		client.mergeKnowledge(base, knowledgeFile, game);
+		assertArrayEquals(new byte[] {4}, read(knowledgeFile));
+	}
+}
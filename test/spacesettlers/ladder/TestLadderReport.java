@@ -0,0 +1,142 @@
+package spacesettlers.ladder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the incremental ladder pages
+ * @author amy
+ */
+public class TestLadderReport {
+	File directory;
+
+	LadderReport report;
+
+	@Before
+	public void setUp() throws Exception {
+		directory = Files.createTempDirectory("ladderReport").toFile();
+		report = new LadderReport(new File(directory, "ladder.html").getPath());
+	}
+
+	@After
+	public void tearDown() {
+		for (File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	String read(String name) throws Exception {
+		return new String(Files.readAllBytes(new File(directory, name).toPath()), StandardCharsets.UTF_8);
+	}
+
+	ArrayList<TeamRecord> makeStandings() {
+		ArrayList<TeamRecord> standings = new ArrayList<TeamRecord>();
+		TeamRecord record = new TeamRecord("A");
+		record.update(TestLadderJournal.makeResult("game", "A", 10).getTeamStats().get(0));
+		standings.add(record);
+		return standings;
+	}
+
+	@Test
+	public void testFullPagesAreWrittenOnce() throws Exception {
+		report.setNumGames(LadderReport.GAMES_PER_PAGE + 1);
+		for (int i = 0; i < LadderReport.GAMES_PER_PAGE; i++) {
+			report.addGame(TestLadderJournal.makeResult("game" + i, "A", i));
+		}
+
+		// the first page is written as soon as it is full
+		assertTrue(new File(directory, "ladder-log1.html").exists());
+		assertEquals(2, report.numPages);
+		assertEquals(0, report.pageLines.size());
+		String page = read("ladder-log1.html");
+		assertTrue(page.contains("A scored 0.0"));
+		assertTrue(page.contains("A scored 99.0"));
+		assertFalse(page.contains("refresh"));
+
+		report.addGame(TestLadderJournal.makeResult("last", "A", 1000));
+		assertFalse(new File(directory, "ladder-log2.html").exists());
+
+		report.finish(makeStandings());
+		assertTrue(read("ladder-log2.html").contains("A scored 1000.0"));
+		assertFalse(read("ladder-log1.html").contains("A scored 1000.0"));
+	}
+
+	@Test
+	public void testEveryPageLinksToEveryOtherPage() throws Exception {
+		int numGames = 2 * LadderReport.GAMES_PER_PAGE + 1;
+		report.setNumGames(numGames);
+		for (int i = 0; i < numGames; i++) {
+			report.addGame(TestLadderJournal.makeResult("game" + i, "A", i));
+		}
+
+		// while the ladder runs a full page links to the next one
+		assertTrue(read("ladder-log1.html").contains("ladder-log2.html"));
+		assertFalse(read("ladder-log1.html").contains("ladder-log3.html"));
+
+		report.finish(makeStandings());
+		for (int page = 1; page <= 3; page++) {
+			String log = read("ladder-log" + page + ".html");
+			for (int other = 1; other <= 3; other++) {
+				assertTrue(log.contains("\"ladder-log" + other + ".html\""));
+			}
+		}
+		// only the links of the full pages were rewritten
+		assertTrue(read("ladder-log1.html").contains("A scored 99.0"));
+		assertTrue(read("ladder-log2.html").contains("A scored 199.0"));
+		assertEquals(4, directory.listFiles().length);
+	}
+
+	@Test
+	public void testStandings() throws Exception {
+		report.setNumGames(4);
+		report.addGame(TestLadderJournal.makeResult("game1", "A", 10));
+		report.update(makeStandings());
+
+		String standings = read("ladder.html");
+		assertTrue(standings.contains("1 of 4 games"));
+		assertTrue(standings.contains("refresh"));
+		assertTrue(standings.contains("ladder-log1.html"));
+		assertTrue(read("ladder-log1.html").contains("A scored 10.0"));
+
+		// updates are throttled
+		assertFalse(report.isUpdateDue());
+		report.addGame(TestLadderJournal.makeResult("game2", "A", 20));
+		report.update(makeStandings());
+		assertTrue(read("ladder.html").contains("1 of 4 games"));
+
+		report.finish(makeStandings());
+		standings = read("ladder.html");
+		assertTrue(standings.contains("Final standings after 2 games"));
+		assertFalse(standings.contains("refresh"));
+
+		// only the pages are left (no temporary files)
+		assertEquals(2, directory.listFiles().length);
+	}
+
+	@Test
+	public void testNamesAreEscaped() throws Exception {
+		ArrayList<TeamRecord> standings = new ArrayList<TeamRecord>();
+		TeamRecord record = new TeamRecord("<b>Tom & Jerry</b>");
+		record.update(TestLadderJournal.makeResult("game", "<b>Tom & Jerry</b>", 10).getTeamStats().get(0));
+		standings.add(record);
+		report.addGame(TestLadderJournal.makeResult("game", "<b>Tom & Jerry</b>", 10));
+		report.finish(standings);
+
+		String page = read("ladder.html");
+		assertTrue(page.contains("&lt;b&gt;Tom &amp; Jerry&lt;/b&gt;"));
+		assertFalse(page.contains("<b>"));
+		assertTrue(read("ladder-log1.html").contains("&lt;b&gt;Tom &amp; Jerry&lt;/b&gt; scored"));
+		assertEquals("&amp;lt;", LadderReport.escapeHTML("&lt;"));
+	}
+}
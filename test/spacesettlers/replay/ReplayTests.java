@@ -0,0 +1,13 @@
+package spacesettlers.replay;
+
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+
+@RunWith(Suite.class)
+@Suite.SuiteClasses({
+  TestReplay.class,
+})
+
+public class ReplayTests {
+
+}
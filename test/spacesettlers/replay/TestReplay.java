@@ -0,0 +1,192 @@
+package spacesettlers.replay;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import spacesettlers.clients.DoNothingTeamClient;
+import spacesettlers.clients.Team;
+import spacesettlers.objects.Beacon;
+import spacesettlers.objects.Ship;
+import spacesettlers.objects.resources.ResourcePile;
+import spacesettlers.objects.resources.ResourceTypes;
+import spacesettlers.simulator.Toroidal2DPhysics;
+import spacesettlers.utilities.Position;
+
+/**
+ * Round trips small replays through the recorder and the memory mapped reader
+ * @author amy
+ *
+ */
+public class TestReplay {
+	Toroidal2DPhysics space;
+	LinkedHashSet<Team> teams;
+	Team team1, team2;
+	Ship ship1, ship2;
+	Beacon beacon;
+	File replayFile;
+
+	@Before
+	public void setUp() throws Exception {
+		space = new Toroidal2DPhysics(480, 640, 1);
+
+		team1 = makeTeam("team1", "ladder1");
+		team2 = makeTeam("team2", "ladder2");
+		teams = new LinkedHashSet<Team>();
+		teams.add(team1);
+		teams.add(team2);
+
+		ship1 = new Ship("team1", Color.BLUE, new Position(10, 20, 0.5));
+		ship1.addResources(new ResourcePile(1, 2, 3));
+		space.addObject(ship1);
+		ship2 = new Ship("team2", Color.RED, new Position(300, 300));
+		team2.addShip(ship2);
+		space.addObject(ship2);
+		beacon = new Beacon(new Position(100, 200));
+		space.addObject(beacon);
+
+		replayFile = File.createTempFile("replay", ".ssrp");
+	}
+
+	private Team makeTeam(String teamName, String ladderName) {
+		DoNothingTeamClient client = new DoNothingTeamClient();
+		client.setTeamName(teamName);
+		client.setTeamColor(Color.BLUE);
+		return new Team(client, ladderName, 1);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		replayFile.delete();
+	}
+
+	private void recordSteps(int numSteps) throws IOException {
+		ReplayRecorder recorder = new ReplayRecorder(replayFile, space, teams);
+		for (int step = 0; step < numSteps; step++) {
+			team1.setScore(step * 10);
+			if (step == 3) {
+				// team stats are aggregated from the ships at the end of movement
+				ship2.incrementKillsInflicted();
+				team2.getTeamMovementEnd(space);
+			}
+			recorder.recordStep(step, space);
+		}
+		recorder.close();
+	}
+
+	@Test
+	public void testHeader() throws IOException {
+		recordSteps(1);
+		try (ReplayReader reader = new ReplayReader(replayFile)) {
+			assertEquals(640, reader.getWidth());
+			assertEquals(480, reader.getHeight());
+			assertEquals(2, reader.getNumTeams());
+			assertEquals("team1", reader.getTeamName(0));
+			assertEquals("ladder2", reader.getLadderName(1));
+			assertEquals(1, reader.getTeamIndex("team2"));
+			assertEquals(-1, reader.getTeamIndex("nobody"));
+			assertEquals(1, reader.getNumSteps());
+		}
+	}
+
+	@Test
+	public void testObjectRecords() throws IOException {
+		recordSteps(1);
+		try (ReplayReader reader = new ReplayReader(replayFile)) {
+			ReplayCursor cursor = reader.cursor();
+			assertTrue(cursor.next());
+			assertEquals(3, cursor.getNumObjects());
+
+			boolean foundShip = false, foundBeacon = false;
+			for (int i = 0; i < cursor.getNumObjects(); i++) {
+				if (cursor.getObjectType(i) == ReplayObjectType.SHIP && cursor.getObjectTeam(i) == 0) {
+					foundShip = true;
+					assertEquals(ship1.getId(), cursor.getObjectId(i));
+					assertEquals(0, cursor.getObjectTeam(i));
+					assertEquals(10, cursor.getObjectX(i), 0.001);
+					assertEquals(20, cursor.getObjectY(i), 0.001);
+					assertEquals(0.5, cursor.getObjectOrientation(i), 0.001);
+					assertEquals((int) ship1.getEnergy(), cursor.getObjectEnergy(i));
+					assertEquals(3, cursor.getObjectResource(i, ResourceTypes.METALS));
+					assertTrue(cursor.isObjectAlive(i));
+				} else if (cursor.getObjectType(i) == ReplayObjectType.BEACON) {
+					foundBeacon = true;
+					assertEquals(-1, cursor.getObjectTeam(i));
+					assertEquals(-1, cursor.getObjectEnergy(i));
+					assertEquals(beacon.getRadius(), cursor.getObjectRadius(i));
+				}
+			}
+			assertTrue(foundShip);
+			assertTrue(foundBeacon);
+			assertFalse(cursor.next());
+		}
+	}
+
+	@Test
+	public void testSeekAndTeamRecords() throws IOException {
+		recordSteps(10);
+		try (ReplayReader reader = new ReplayReader(replayFile)) {
+			assertEquals(10, reader.getNumSteps());
+			ReplayCursor cursor = reader.cursor();
+			cursor.seek(7);
+			assertEquals(7, cursor.getTimestep());
+			assertEquals(70, cursor.getTeamScore(0), 0.0);
+			assertEquals(1, cursor.getTeamKillsInflicted(1));
+			cursor.seek(2);
+			assertEquals(0, cursor.getTeamKillsInflicted(1));
+		}
+	}
+
+	@Test
+	public void testTruncatedStepIsIgnored() throws IOException {
+		recordSteps(5);
+		try (FileOutputStream out = new FileOutputStream(replayFile, true)) {
+			out.write(new byte[] {0, 0, 1, 0, 0, 0});
+		}
+		try (ReplayReader reader = new ReplayReader(replayFile)) {
+			assertEquals(5, reader.getNumSteps());
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testNotAReplay() throws IOException {
+		try (FileOutputStream out = new FileOutputStream(replayFile)) {
+			out.write(new byte[100]);
+		}
+		new ReplayReader(replayFile);
+	}
+
+	@Test
+	public void testParallelVisitor() throws IOException {
+		recordSteps(10);
+		File badFile = File.createTempFile("replay", ".ssrp");
+		try {
+			ArrayList<File> files = new ArrayList<File>();
+			files.add(badFile);
+			files.add(replayFile);
+
+			LinkedHashMap<File, TimeToFirstKillVisitor> results = 
+					ReplayAnalyzer.visitAll(files, TimeToFirstKillVisitor::new, 2);
+
+			assertEquals(1, results.size());
+			TimeToFirstKillVisitor visitor = results.get(replayFile);
+			assertEquals(3, visitor.getFirstKillTimestep());
+			assertEquals(-1, visitor.getTeamFirstKillTimestep(0));
+			assertEquals(3, visitor.getTeamFirstKillTimestep(1));
+		} finally {
+			badFile.delete();
+		}
+	}
+}
@@ -0,0 +1,237 @@
+package spacesettlers.simulator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import spacesettlers.game.AbstractGame;
+import spacesettlers.game.AbstractGameAction;
+import spacesettlers.game.AbstractGameAgent;
+import spacesettlers.game.HeuristicGameAgent;
+import spacesettlers.objects.Ship;
+import spacesettlers.objects.resources.ResourcePile;
+import spacesettlers.utilities.Position;
+
+/**
+ * Checks that slow, hung and broken game agents lose their asteroid games without
+ * holding up the physics
+ * @author amy
+ *
+ */
+public class TestMiniGameExecutor {
+	MiniGameExecutor miniGames;
+	Ship ship;
+	ResourcePile prize;
+
+	/**
+	 * Plays like the heuristic agent but sleeps first
+	 */
+	class SlowGameAgent extends AbstractGameAgent {
+		HeuristicGameAgent heuristic = new HeuristicGameAgent();
+		long sleepMillis;
+
+		SlowGameAgent(long sleepMillis) {
+			this.sleepMillis = sleepMillis;
+		}
+
+		@Override
+		public AbstractGameAction getNextMove(AbstractGame game) {
+			try {
+				Thread.sleep(sleepMillis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			heuristic.setPlayer(getPlayer());
+			return heuristic.getNextMove(game);
+		}
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		miniGames = new MiniGameExecutor(2, 20, 200);
+		ship = new Ship("team1", Color.BLUE, new Position(10, 20));
+		prize = new ResourcePile(10, 20, 30);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		miniGames.shutdown();
+	}
+
+	/**
+	 * Apply the results as the physics would at the next step (every game is over after it)
+	 */
+	void finishGames() throws InterruptedException {
+		miniGames.applyResults();
+		assertEquals(0, miniGames.getNumPendingGames());
+	}
+
+	/**
+	 * Hangs (ignoring interrupts) for the specified time
+	 */
+	static AbstractGameAgent makeHungAgent(final long hangMillis) {
+		return new AbstractGameAgent() {
+			@Override
+			public AbstractGameAction getNextMove(AbstractGame game) {
+				long endTime = System.currentTimeMillis() + hangMillis;
+				while (System.currentTimeMillis() < endTime) {
+					try {
+						Thread.sleep(10);
+					} catch (InterruptedException e) {
+						// keep going
+					}
+				}
+				return null;
+			}
+		};
+	}
+
+	@Test
+	public void testSlowMoveLoses() throws Exception {
+		miniGames.startGame(ship, new SlowGameAgent(50), prize);
+		finishGames();
+
+		assertEquals(1, miniGames.getNumGames());
+		assertEquals(0, miniGames.getNumShipWins());
+		assertEquals(1, miniGames.getNumTimeouts());
+		assertEquals(0, ship.getResources().getTotal());
+	}
+
+	@Test
+	public void testHungAgentLosesAtMoveTimeout() throws Exception {
+		miniGames.startGame(ship, new SlowGameAgent(60000), prize);
+
+		// the physics only waits for the move timeout
+		long startTime = System.currentTimeMillis();
+		finishGames();
+		long elapsed = System.currentTimeMillis() - startTime;
+		assertTrue("waited " + elapsed + "ms", elapsed < 1000);
+		assertEquals(1, miniGames.getNumTimeouts());
+		assertEquals(0, ship.getResources().getTotal());
+	}
+
+	/**
+	 * Every game's result lands at the next step, however long it takes
+	 */
+	@Test
+	public void testResultsLandAtNextStep() throws Exception {
+		for (int step = 0; step < 5; step++) {
+			miniGames.startGame(ship, new SlowGameAgent(step), prize);
+			miniGames.startGame(new Ship("team2", Color.RED, new Position(0, 0)), new HeuristicGameAgent(), prize);
+			finishGames();
+			assertEquals(2 * (step + 1), miniGames.getNumGames());
+		}
+		assertEquals(0, miniGames.getNumTimeouts());
+	}
+
+	/**
+	 * Ships of a team that share an agent take turns instead of forfeiting
+	 */
+	@Test
+	public void testSharedAgentWaitsForItsTurn() throws Exception {
+		HeuristicGameAgent agent = new HeuristicGameAgent();
+		for (int i = 0; i < 4; i++) {
+			miniGames.startGame(new Ship("team1", Color.BLUE, new Position(i, 0)), agent, prize);
+		}
+		finishGames();
+		assertEquals(0, miniGames.getNumTimeouts());
+		assertTrue(miniGames.busyTeams.isEmpty());
+	}
+
+	@Test
+	public void testSlowGameLosesAtGameTimeout() throws Exception {
+		miniGames.shutdown();
+		miniGames = new MiniGameExecutor(2, 200, 30);
+		miniGames.startGame(ship, new SlowGameAgent(20), prize);
+		finishGames();
+
+		assertEquals(1, miniGames.getNumTimeouts());
+		assertEquals(0, ship.getResources().getTotal());
+	}
+
+	/**
+	 * The asteroid's thinking time doesn't count against the ship
+	 */
+	@Test
+	public void testAsteroidTimeIsNotCharged() throws Exception {
+		miniGames.shutdown();
+		miniGames = new MiniGameExecutor(2, 200, 200);
+		miniGames.setAsteroidBudget(150);
+		HeuristicGameAgent agent = new HeuristicGameAgent();
+		for (int i = 0; i < 3; i++) {
+			miniGames.startGame(ship, agent, prize);
+			finishGames();
+		}
+
+		assertEquals(3, miniGames.getNumGames());
+		assertEquals(0, miniGames.getNumTimeouts());
+	}
+
+	/**
+	 * Hung agents that ignore interrupts keep their own threads but not the game threads
+	 */
+	@Test
+	public void testHungAgentsDontStopOtherGames() throws Exception {
+		Ship[] hungShips = new Ship[3];
+		for (int i = 0; i < hungShips.length; i++) {
+			hungShips[i] = new Ship("hung" + i, Color.BLUE, new Position(i, 0));
+			miniGames.startGame(hungShips[i], makeHungAgent(3000), prize);
+		}
+		finishGames();
+		assertEquals(3, miniGames.getNumTimeouts());
+
+		// everyone else still gets to play
+		HeuristicGameAgent agent = new HeuristicGameAgent();
+		for (int i = 0; i < 10; i++) {
+			miniGames.startGame(ship, agent, prize);
+			finishGames();
+		}
+		assertEquals(13, miniGames.getNumGames());
+		assertEquals(3, miniGames.getNumTimeouts());
+	}
+
+	/**
+	 * A team that makes a new agent each step while one hangs waits for it (and loses at
+	 * the deadline) instead of using up a thread every step
+	 */
+	@Test
+	public void testHungTeamHoldsOneThread() throws Exception {
+		miniGames.startGame(ship, makeHungAgent(60000), prize);
+		finishGames();
+		int numMoveThreads = miniGames.moveExecutor.getPoolSize();
+
+		long startTime = System.currentTimeMillis();
+		for (int i = 0; i < 2; i++) {
+			miniGames.startGame(ship, makeHungAgent(60000), prize);
+			finishGames();
+		}
+		long elapsed = System.currentTimeMillis() - startTime;
+		assertTrue("waited " + elapsed + "ms", elapsed >= 2 * miniGames.getGameDeadlineNanos() / 1000000);
+		assertEquals(3, miniGames.getNumTimeouts());
+		assertEquals(numMoveThreads, miniGames.moveExecutor.getPoolSize());
+		assertTrue(miniGames.busyTeams.get("team1").isEmpty());
+	}
+
+	@Test
+	public void testBrokenAndMissingAgentsLose() throws Exception {
+		AbstractGameAgent brokenAgent = new AbstractGameAgent() {
+			@Override
+			public AbstractGameAction getNextMove(AbstractGame game) {
+				throw new IllegalStateException("no moves");
+			}
+		};
+		miniGames.startGame(ship, brokenAgent, prize);
+		miniGames.startGame(ship, null, prize);
+		finishGames();
+
+		assertEquals(2, miniGames.getNumGames());
+		assertEquals(0, miniGames.getNumShipWins());
+		assertEquals(0, miniGames.getNumTimeouts());
+		assertEquals(0, ship.getResources().getTotal());
+	}
+}
@@ -0,0 +1,87 @@
+package spacesettlers.simulator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Test that the phase profiler adds up the time of each phase and only runs when asked for
+ * @author amy
+ *
+ */
+public class TestPhaseProfiler {
+
+	void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Test
+	public void testPhasesAddUp() {
+		PhaseProfiler profiler = new PhaseProfiler();
+		for (int step = 0; step < 3; step++) {
+			profiler.beginStep();
+			sleep(2);
+			profiler.mark(SimulatorPhase.TEAM_ACTIONS);
+			profiler.mark(SimulatorPhase.CLEANUP);
+			profiler.endStep(step);
+		}
+
+		assertEquals(3, profiler.getNumSteps());
+		long actions = profiler.getTotalNanos(SimulatorPhase.TEAM_ACTIONS);
+		assertTrue(actions >= 3 * 2000000L);
+		assertTrue(profiler.getMaxNanos(SimulatorPhase.TEAM_ACTIONS) >= 2000000L);
+		assertTrue(profiler.getMaxNanos(SimulatorPhase.TEAM_ACTIONS) <= actions);
+		// each step starts over so a phase isn't charged for the steps before it
+		assertTrue(profiler.getMaxNanos(SimulatorPhase.CLEANUP) < 2000000L);
+		assertTrue(profiler.getSummary().contains("TEAM_ACTIONS"));
+	}
+
+	@Test
+	public void testReset() {
+		PhaseProfiler profiler = new PhaseProfiler();
+		profiler.beginStep();
+		sleep(1);
+		profiler.mark(SimulatorPhase.TEAM_ACTIONS);
+		profiler.endStep(0);
+
+		profiler.reset();
+		assertEquals(0, profiler.getNumSteps());
+		assertEquals(0, profiler.getTotalNanos(SimulatorPhase.TEAM_ACTIONS));
+		assertEquals(0, profiler.getMaxNanos(SimulatorPhase.TEAM_ACTIONS));
+
+		profiler.beginStep();
+		profiler.endStep(1);
+		assertEquals(1, profiler.getNumSteps());
+	}
+
+	@Test
+	public void testOffUnlessAskedFor() throws Exception {
+		assertNull(PhaseProfiler.createProfiler(false, null));
+		assertNotNull(PhaseProfiler.createProfiler(true, null));
+
+		File traceFile = File.createTempFile("phases", ".csv");
+		try {
+			PhaseProfiler profiler = PhaseProfiler.createProfiler(false, traceFile.getPath());
+			profiler.beginStep();
+			profiler.endStep(7);
+			profiler.close();
+			List<String> lines = Files.readAllLines(traceFile.toPath());
+			assertEquals(2, lines.size());
+			assertTrue(lines.get(0).startsWith("timestep,"));
+			assertTrue(lines.get(1).startsWith("7,"));
+		} finally {
+			traceFile.delete();
+		}
+	}
+}
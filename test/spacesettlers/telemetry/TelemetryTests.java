@@ -0,0 +1,13 @@
+package spacesettlers.telemetry;
+
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+
+@RunWith(Suite.class)
+@Suite.SuiteClasses({
+  TestTelemetry.class,
+})
+
+public class TelemetryTests {
+
+}
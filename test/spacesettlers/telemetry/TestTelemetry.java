@@ -0,0 +1,113 @@
+package spacesettlers.telemetry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import spacesettlers.clients.DoNothingTeamClient;
+import spacesettlers.clients.Team;
+
+/**
+ * Tests the telemetry recorder and the CSV sink
+ * @author amy
+ *
+ */
+public class TestTelemetry {
+	LinkedHashSet<Team> teams;
+	Team team1, team2;
+	File telemetryFile;
+
+	@Before
+	public void setUp() throws Exception {
+		team1 = makeTeam("team1", "ladder1");
+		team2 = makeTeam("team2", "ladder,2");
+		teams = new LinkedHashSet<Team>();
+		teams.add(team1);
+		teams.add(team2);
+		telemetryFile = File.createTempFile("telemetry", ".csv");
+	}
+
+	private Team makeTeam(String teamName, String ladderName) {
+		DoNothingTeamClient client = new DoNothingTeamClient();
+		client.setTeamName(teamName);
+		client.setTeamColor(Color.BLUE);
+		return new Team(client, ladderName, 1);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		telemetryFile.delete();
+	}
+
+	@Test
+	public void testCsvHasEveryStep() throws IOException {
+		int numSteps = 3 * TelemetryRecorder.STEPS_PER_BATCH + 7;
+		TelemetryRecorder recorder = new TelemetryRecorder(new CsvTelemetrySink(), telemetryFile.getPath(), teams);
+		for (int step = 0; step < numSteps; step++) {
+			team1.setScore(step);
+			recorder.recordStep(step);
+		}
+		recorder.close();
+
+		List<String> lines = Files.readAllLines(telemetryFile.toPath());
+		assertEquals(String.join(",", TelemetryBatch.COLUMN_NAMES), lines.get(0));
+		assertEquals(1 + 2 * numSteps - 2 * recorder.getTotalCoalescedSteps(), lines.size());
+		assertTrue(lines.get(1).startsWith("0,ladder1,0.0,"));
+		assertTrue(lines.get(2).startsWith("0,\"ladder,2\","));
+		assertTrue(lines.get(lines.size() - 2).startsWith((numSteps - 1) + ",ladder1," + (double) (numSteps - 1)));
+	}
+
+	/**
+	 * A sink that blocks until it is released
+	 */
+	class StuckSink implements TelemetrySink {
+		CountDownLatch release = new CountDownLatch(1);
+		int rows;
+
+		public void open(String fileName, String[] ladderNames) {
+		}
+
+		public void write(TelemetryBatch batch) {
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+			}
+			rows += batch.size();
+		}
+
+		public void close() {
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testSlowSinkCoalescesInsteadOfBlocking() {
+		StuckSink sink = new StuckSink();
+		TelemetryRecorder recorder = null;
+		try {
+			recorder = new TelemetryRecorder(sink, null, teams);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+
+		int numSteps = 10 * TelemetryRecorder.STEPS_PER_BATCH;
+		for (int step = 0; step < numSteps; step++) {
+			recorder.recordStep(step);
+		}
+		assertTrue(recorder.getTotalCoalescedSteps() > 0);
+
+		sink.release.countDown();
+		recorder.close();
+		assertEquals(2 * (numSteps - recorder.getTotalCoalescedSteps()), sink.rows);
+	}
+}
@@ -0,0 +1,86 @@
+package spacesettlers.utilities;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestLatencyHistogram {
+	LatencyHistogram histogram;
+
+	@Before
+	public void setUp() throws Exception {
+		histogram = new LatencyHistogram();
+	}
+
+	@Test
+	public void testEmpty() {
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getValueAtPercentile(50));
+		assertEquals(0, histogram.getMax());
+	}
+
+	@Test
+	public void testSmallValuesAreExact() {
+		for (int i = 1; i <= 10; i++) {
+			histogram.record(i);
+		}
+		assertEquals(5, histogram.getValueAtPercentile(50));
+		assertEquals(10, histogram.getValueAtPercentile(99));
+		assertEquals(10, histogram.getMax());
+		assertEquals(5.5, histogram.getMean(), 0.0001);
+	}
+
+	@Test
+	public void testPercentilesWithinPrecision() {
+		for (int i = 1; i <= 100000; i++) {
+			histogram.record(i);
+		}
+		long p50 = histogram.getValueAtPercentile(50);
+		long p99 = histogram.getValueAtPercentile(99);
+		assertTrue(Math.abs(p50 - 50000) <= 50000 / 16);
+		assertTrue(Math.abs(p99 - 99000) <= 99000 / 16);
+		assertEquals(100000, histogram.getMax());
+	}
+
+	@Test
+	public void testBucketBoundaries() {
+		for (long value : new long[] {0, 15, 16, 31, 32, 33, 1000, 300000, LatencyHistogram.MAX_TRACKABLE_VALUE}) {
+			int bucket = LatencyHistogram.getBucket(value);
+			assertTrue(value <= LatencyHistogram.getBucketUpperBound(bucket));
+			if (bucket > 0) {
+				assertTrue(value > LatencyHistogram.getBucketUpperBound(bucket - 1));
+			}
+		}
+		assertEquals(LatencyHistogram.NUM_BUCKETS - 1, LatencyHistogram.getBucket(Long.MAX_VALUE));
+	}
+
+	@Test
+	public void testTimeoutsAndMerge() {
+		histogram.record(100);
+		histogram.record(300000, true);
+		LatencyHistogram other = new LatencyHistogram();
+		other.record(400000, true);
+		histogram.add(other);
+
+		LatencySummary summary = histogram.getSummary();
+		assertEquals(3, summary.getCount());
+		assertEquals(2, summary.getTimeouts());
+		assertEquals(400000, summary.getMax());
+	}
+
+	@Test
+	public void testEncodeDecode() {
+		for (int i = 1; i <= 1000; i++) {
+			histogram.record(i * 37, i % 100 == 0);
+		}
+		LatencyHistogram copy = LatencyHistogram.decode(histogram.encode());
+		assertEquals(histogram.getCount(), copy.getCount());
+		assertEquals(histogram.getMax(), copy.getMax());
+		assertEquals(histogram.getTimeouts(), copy.getTimeouts());
+		assertEquals(histogram.getMean(), copy.getMean(), 0);
+		assertEquals(histogram.getValueAtPercentile(99), copy.getValueAtPercentile(99));
+		assertEquals(histogram.encode(), copy.encode());
+	}
+}
@@ -0,0 +1,64 @@
+package spacesettlers.utilities;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestQuantileSketch {
+	QuantileSketch sketch;
+
+	@Before
+	public void setUp() throws Exception {
+		sketch = new QuantileSketch();
+	}
+
+	@Test
+	public void testEmpty() {
+		assertEquals(0, sketch.getCount());
+		assertEquals(0, sketch.getMedian(), 0);
+	}
+
+	@Test
+	public void testExactWithFewValues() {
+		for (int i = 10; i >= 1; i--) {
+			sketch.add(i);
+		}
+		assertEquals(5, sketch.getMedian(), 0);
+		assertEquals(1, sketch.getQuantile(0), 0);
+		assertEquals(10, sketch.getQuantile(1), 0);
+		assertEquals(9, sketch.getQuantile(0.9), 0);
+	}
+
+	@Test
+	public void testRepeatedValuesShareABin() {
+		for (int i = 0; i < 1000; i++) {
+			sketch.add(i % 3);
+		}
+		assertEquals(3, sketch.getNumBins());
+		assertEquals(1000, sketch.getCount());
+	}
+
+	@Test
+	public void testBoundedAndApproximate() {
+		Random random = new Random(7);
+		double[] values = new double[20000];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = random.nextGaussian() * 100 + 1000;
+			sketch.add(values[i]);
+		}
+		assertTrue(sketch.getNumBins() <= QuantileSketch.DEFAULT_MAX_BINS);
+
+		Arrays.sort(values);
+		double[] quantiles = {0.1, 0.25, 0.5, 0.75, 0.9};
+		for (double q : quantiles) {
+			double exact = values[(int) (q * values.length)];
+			// within a few percent of the standard deviation
+			assertEquals(exact, sketch.getQuantile(q), 5);
+		}
+	}
+}
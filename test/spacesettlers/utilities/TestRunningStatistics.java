@@ -0,0 +1,79 @@
+package spacesettlers.utilities;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestRunningStatistics {
+	RunningStatistics statistics;
+
+	@Before
+	public void setUp() throws Exception {
+		statistics = new RunningStatistics();
+	}
+
+	@Test
+	public void testEmpty() {
+		assertEquals(0, statistics.getCount());
+		assertEquals(0, statistics.getMean(), 0);
+		assertEquals(0, statistics.getVariance(), 0);
+		assertEquals(0, statistics.getMin(), 0);
+		assertEquals(0, statistics.getMax(), 0);
+	}
+
+	@Test
+	public void testMeanAndVariance() {
+		double[] values = {2, 4, 4, 4, 5, 5, 7, 9};
+		for (double value : values) {
+			statistics.add(value);
+		}
+		assertEquals(8, statistics.getCount());
+		assertEquals(5, statistics.getMean(), 0.000001);
+		// sample variance (n - 1)
+		assertEquals(32.0 / 7.0, statistics.getVariance(), 0.000001);
+		assertEquals(2, statistics.getMin(), 0);
+		assertEquals(9, statistics.getMax(), 0);
+		assertEquals(RunningStatistics.Z_95 * Math.sqrt(32.0 / 7.0) / Math.sqrt(8), statistics.getConfidenceInterval95(), 0.000001);
+	}
+
+	/**
+	 * Summing the squares loses all precision here but Welford's update doesn't
+	 */
+	@Test
+	public void testLargeOffset() {
+		for (int i = 0; i < 1000; i++) {
+			statistics.add(1e9 + (i % 2));
+		}
+		assertEquals(1e9 + 0.5, statistics.getMean(), 0.000001);
+		assertEquals(0.25 * 1000 / 999, statistics.getVariance(), 0.000001);
+	}
+
+	@Test
+	public void testMerge() {
+		Random random = new Random(42);
+		RunningStatistics first = new RunningStatistics();
+		RunningStatistics second = new RunningStatistics();
+		for (int i = 0; i < 1000; i++) {
+			double value = random.nextGaussian() * 10 + 50;
+			statistics.add(value);
+			if (i < 300) {
+				first.add(value);
+			} else {
+				second.add(value);
+			}
+		}
+		first.add(second);
+		assertEquals(statistics.getCount(), first.getCount());
+		assertEquals(statistics.getMean(), first.getMean(), 0.000001);
+		assertEquals(statistics.getVariance(), first.getVariance(), 0.000001);
+		assertEquals(statistics.getMin(), first.getMin(), 0);
+		assertEquals(statistics.getMax(), first.getMax(), 0);
+
+		// merging nothing changes nothing
+		first.add(new RunningStatistics());
+		assertEquals(statistics.getMean(), first.getMean(), 0.000001);
+	}
+}
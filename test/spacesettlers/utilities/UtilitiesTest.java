@@ -6,6 +6,9 @@ import org.junit.runners.Suite;
 @RunWith(Suite.class)
 @Suite.SuiteClasses({
   TestVector2D.class,
+  TestLatencyHistogram.class,
+  TestRunningStatistics.class,
+  TestQuantileSketch.class,
 })
 
 public class UtilitiesTest {
@@ -0,0 +1,220 @@
+package spacesettlers.wire;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashSet;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import spacesettlers.actions.MoveAction;
+import spacesettlers.clients.DoNothingTeamClient;
+import spacesettlers.clients.ImmutableTeamInfo;
+import spacesettlers.clients.Team;
+import spacesettlers.clients.remote.XStreamWorldStateCodec;
+import spacesettlers.objects.AbstractObject;
+import spacesettlers.objects.AiCore;
+import spacesettlers.objects.Asteroid;
+import spacesettlers.objects.Base;
+import spacesettlers.objects.Beacon;
+import spacesettlers.objects.Drone;
+import spacesettlers.objects.Flag;
+import spacesettlers.objects.Ship;
+import spacesettlers.objects.Star;
+import spacesettlers.objects.powerups.SpaceSettlersPowerupEnum;
+import spacesettlers.objects.resources.ResourcePile;
+import spacesettlers.objects.weapons.EMP;
+import spacesettlers.objects.weapons.Missile;
+import spacesettlers.simulator.Toroidal2DPhysics;
+import spacesettlers.utilities.Position;
+import spacesettlers.utilities.Vector2D;
+
+/**
+ * Round trips of the world through the wire format compared with deepClone
+ *
+ * @author amy
+ */
+public class TestWorldStateEncoder {
+	Toroidal2DPhysics space;
+	Team team;
+	Ship ship;
+	Beacon beacon;
+	WorldStateEncoder encoder;
+	WorldStateDecoder decoder;
+
+	@Before
+	public void setUp() throws Exception {
+		space = new Toroidal2DPhysics(480, 640, 0.05);
+
+		DoNothingTeamClient client = new DoNothingTeamClient();
+		client.setTeamName("team1");
+		client.setTeamColor(Color.BLUE);
+		team = new Team(client, "ladder1", 2);
+
+		Position shipPosition = new Position(10, 20, 0.5);
+		shipPosition.setTranslationalVelocity(new Vector2D(3, -4));
+		ship = new Ship("team1", Color.BLUE, shipPosition);
+		ship.addResources(new ResourcePile(1, 2, 3));
+		ship.addPowerup(SpaceSettlersPowerupEnum.FIRE_MISSILE);
+		ship.updateEnergy(-100);
+		team.addShip(ship);
+		space.addObject(ship);
+
+		Base base = new Base(new Position(100, 100), "team1", team, true);
+		team.addBase(base);
+		space.addObject(base);
+		beacon = new Beacon(new Position(100, 200));
+		space.addObject(beacon);
+		space.addObject(new Star(new Position(200, 200)));
+		space.addObject(new Asteroid(new Position(300, 50), true, false, 10, true, 0.2, 0.3, 0.5));
+		space.addObject(new AiCore(new Position(50, 300), "team1", Color.BLUE));
+		Flag flag = new Flag(new Position(400, 400), "team1", team, new Position[] {new Position(400, 400), new Position(10, 10)});
+		space.addObject(flag);
+		space.addObject(new Drone("team1", Color.BLUE, team, new Position(30, 30), new ResourcePile(4, 5, 6)));
+		space.addObject(new Missile(new Position(15, 25), ship));
+		space.addObject(new EMP(new Position(16, 26), ship));
+
+		LinkedHashSet<ImmutableTeamInfo> teamInfo = new LinkedHashSet<ImmutableTeamInfo>();
+		teamInfo.add(new ImmutableTeamInfo(team));
+		space.setTeamInfo(teamInfo);
+
+		encoder = new WorldStateEncoder(XStreamWorldStateCodec.newXStream(getClass().getClassLoader()));
+		decoder = new WorldStateDecoder(XStreamWorldStateCodec.newXStream(getClass().getClassLoader()));
+	}
+
+	/**
+	 * Every field of every object in the wire format is the same as in the clone
+	 */
+	private void assertSameWorld(Toroidal2DPhysics expected, Toroidal2DPhysics actual) {
+		assertEquals(expected.getWidth(), actual.getWidth());
+		assertEquals(expected.getHeight(), actual.getHeight());
+		assertEquals(expected.getCurrentTimestep(), actual.getCurrentTimestep());
+		assertEquals(expected.getMaxTime(), actual.getMaxTime());
+		assertEquals(expected.getAllObjects().size(), actual.getAllObjects().size());
+
+		for (AbstractObject object : expected.getAllObjects()) {
+			AbstractObject copy = actual.getObjectById(object.getId());
+			assertNotNull(copy);
+			assertSame(object.getClass(), copy.getClass());
+			RecordSchema schema = RecordSchema.forClass(object.getClass());
+			Object[] expectedValues = schema.getValues(encoder, object, null);
+			Object[] actualValues = schema.getValues(encoder, copy, null);
+			for (int i = 0; i < expectedValues.length; i++) {
+				assertTrue(schema.names[i], schema.kinds[i].same(expectedValues[i], actualValues[i]));
+			}
+		}
+
+		assertEquals(expected.getTeamInfo().size(), actual.getTeamInfo().size());
+		ImmutableTeamInfo expectedInfo = expected.getTeamInfo().iterator().next();
+		ImmutableTeamInfo actualInfo = actual.getTeamInfo().iterator().next();
+		assertEquals(expectedInfo.getTeamName(), actualInfo.getTeamName());
+		assertEquals(expectedInfo.getLadderName(), actualInfo.getLadderName());
+		assertEquals(expectedInfo.getScore(), actualInfo.getScore(), 0);
+	}
+
+	@Test
+	public void testKeyFrameRoundTrip() throws Exception {
+		Toroidal2DPhysics clone = space.deepClone();
+		Toroidal2DPhysics decoded = decoder.decode(ByteBuffer.wrap(encoder.encode(clone)));
+		assertSameWorld(clone, decoded);
+
+		// the objects point at each other in the decoded space
+		Base base = decoded.getBases().iterator().next();
+		assertEquals("ladder1", base.getTeam().getLadderName());
+		assertSame(decoded.getObjectById(ship.getId()), base.getTeam().getShips().iterator().next());
+		Missile missile = (Missile) decoded.getWeapons().iterator().next();
+		assertSame(decoded.getObjectById(ship.getId()), missile.getFiringShip());
+	}
+
+	@Test
+	public void testDeltaFrames() throws Exception {
+		byte[] keyFrame = encoder.encode(space.deepClone());
+		decoder.decode(ByteBuffer.wrap(keyFrame));
+
+		// nothing changed: the delta is just the header and an index for each object
+		byte[] sameFrame = encoder.encode(space.deepClone());
+		assertTrue(sameFrame.length < keyFrame.length / 4);
+		decoder.decode(ByteBuffer.wrap(sameFrame));
+
+		ship.getPosition().setX(50);
+		ship.updateEnergy(-10);
+		ship.addPowerup(SpaceSettlersPowerupEnum.TOGGLE_SHIELD);
+		ship.setCurrentAction(new MoveAction(space, ship.getPosition(), new Position(200, 300), new Vector2D(0, 0)));
+		space.removeObject(beacon);
+		space.addObject(new Asteroid(new Position(320, 60), false, false, 12, false, 0.1, 0.1, 0.8));
+
+		Toroidal2DPhysics clone = space.deepClone();
+		byte[] deltaFrame = encoder.encode(clone);
+		assertTrue(deltaFrame.length < keyFrame.length);
+		assertSameWorld(clone, decoder.decode(ByteBuffer.wrap(deltaFrame)));
+
+		// the action is only sent again when it changes
+		Toroidal2DPhysics nextClone = space.deepClone();
+		byte[] nextFrame = encoder.encode(nextClone);
+		assertTrue(nextFrame.length < deltaFrame.length);
+		assertSameWorld(nextClone, decoder.decode(ByteBuffer.wrap(nextFrame)));
+	}
+
+	/**
+	 * An action that changes is sent again even though the ship still has the same object,
+	 * and every frame decodes its own copy of it
+	 */
+	@Test
+	public void testChangedActionIsResent() throws Exception {
+		MoveAction action = new MoveAction(space, ship.getPosition(), new Position(200, 300), new Vector2D(0, 0));
+		ship.setCurrentAction(action);
+		Toroidal2DPhysics first = decoder.decode(ByteBuffer.wrap(encoder.encode(space.deepClone())));
+		Ship firstShip = (Ship) first.getObjectById(ship.getId());
+		Field isFinished = MoveAction.class.getDeclaredField("isFinished");
+		isFinished.setAccessible(true);
+		assertFalse(isFinished.getBoolean(firstShip.getCurrentAction()));
+
+		isFinished.setBoolean(action, true);
+		Toroidal2DPhysics second = decoder.decode(ByteBuffer.wrap(encoder.encode(space.deepClone())));
+		Ship secondShip = (Ship) second.getObjectById(ship.getId());
+		assertTrue(isFinished.getBoolean(secondShip.getCurrentAction()));
+		assertNotSame(firstShip.getCurrentAction(), secondShip.getCurrentAction());
+		assertFalse(isFinished.getBoolean(firstShip.getCurrentAction()));
+	}
+
+	@Test
+	public void testMissingFrame() throws Exception {
+		decoder.decode(ByteBuffer.wrap(encoder.encode(space.deepClone())));
+		encoder.encode(space.deepClone());
+		try {
+			decoder.decode(ByteBuffer.wrap(encoder.encode(space.deepClone())));
+			fail("decoded a delta without the frame before it");
+		} catch (IOException e) {
+			// expected
+		}
+
+		// a key frame starts over
+		encoder.requestKeyFrame();
+		Toroidal2DPhysics clone = space.deepClone();
+		assertSameWorld(clone, decoder.decode(ByteBuffer.wrap(encoder.encode(clone))));
+	}
+
+	/**
+	 * A frame in the middle of a larger buffer (like the ring) is read in place
+	 */
+	@Test
+	public void testDecodeSlice() throws Exception {
+		byte[] frame = encoder.encode(space.deepClone());
+		ByteBuffer buffer = ByteBuffer.allocateDirect(frame.length + 20);
+		buffer.position(10);
+		buffer.put(frame);
+		buffer.position(10);
+		buffer.limit(10 + frame.length);
+		assertSameWorld(space.deepClone(), decoder.decode(buffer.slice()));
+	}
+}